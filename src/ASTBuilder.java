@@ -4,6 +4,14 @@ import ast.*;
 
 public class ASTBuilder extends CoolParserBaseVisitor<Tree> {
 
+    // symbols are entered in the tables of this compilation
+    // (the name ctx is left to the parse tree contexts)
+    private final CompilationContext cc;
+
+    public ASTBuilder(CompilationContext cc) {
+        this.cc = cc;
+    }
+
     @Override
     public Tree visitProgram(CoolParser.ProgramContext ctx) {
 
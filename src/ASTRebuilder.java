@@ -13,16 +13,24 @@ import java.util.List;
 
 public class ASTRebuilder extends ASTParserBaseVisitor<Tree> {
 
+    // symbols are entered in the tables of this compilation
+    // (the name ctx is left to the parse tree contexts)
+    private final CompilationContext cc;
+
+    private ASTRebuilder(CompilationContext cc) {
+        this.cc = cc;
+    }
+
     /** Reads AST from from console */
-    public static ProgramNode readAST(String inputfile) {
+    public static ProgramNode readAST(CompilationContext cc, String inputfile) {
         ProgramNode program = null;
 
         try {
             ANTLRInputStream input = null;
             if ((Flags.verbose > 0) && (inputfile != null))
-                input = new ANTLRFileStream(inputfile);
+                input = new CoolCharStream(inputfile);
             else
-                input = new ANTLRInputStream(System.in);
+                input = new CoolCharStream(System.in);
 
             ASTLexer lexer = new ASTLexer(input);
             CommonTokenStream tokens = new CommonTokenStream(lexer);
@@ -45,13 +53,13 @@ public class ASTRebuilder extends ASTParserBaseVisitor<Tree> {
             if (Flags.verbose > 0)
                 System.out.println(tree.toStringTree(parser));
 
-            ASTRebuilder b = new ASTRebuilder();
+            ASTRebuilder b = new ASTRebuilder(cc);
             program = (ProgramNode) b.visit(tree);
 
         } catch (FileNotFoundException ex) {
-            Utilities.fatalError(Utilities.ErrorCode.OPEN_FILE, inputfile);
+            Utilities.fatalError(cc, Utilities.ErrorCode.OPEN_FILE, inputfile);
         } catch (IOException ex) {
-            Utilities.fatalError(Utilities.ErrorCode.EXCEPTION_LEXER);
+            Utilities.fatalError(cc, Utilities.ErrorCode.EXCEPTION_LEXER);
         }
 
         return program;
@@ -79,7 +87,7 @@ public class ASTRebuilder extends ASTParserBaseVisitor<Tree> {
 
         Symbol name = (Symbol) visitType(ctx.type(0));
         Symbol parent = (Symbol) visitType(ctx.type(1));
-        Symbol filename = StringTable.stringtable.addString(ctx.STR_CONST().getSymbol().getText());
+        Symbol filename = cc.stringtable.addString(ctx.STR_CONST().getSymbol().getText());
 
         ClassNode c = new ClassNode(ln, name, parent, filename);
         if (ctx.feature() != null)
@@ -263,14 +271,14 @@ public class ASTRebuilder extends ASTParserBaseVisitor<Tree> {
     @Override
     public Tree visitConstInt(ASTParser.ConstIntContext ctx) {
         int ln = getLINENO(ctx.LINENO().getSymbol().getText());
-        Symbol sym = StringTable.inttable.addString(ctx.INT_CONST().getSymbol().getText());
+        Symbol sym = CoolCharStream.intern(cc.inttable, ctx.INT_CONST().getSymbol());
         return new IntConstNode(ln, sym);
     }
 
     @Override
     public Tree visitConstStr(ASTParser.ConstStrContext ctx) {
         int ln = getLINENO(ctx.LINENO().getSymbol().getText());
-        Symbol sym = StringTable.stringtable.addString(ctx.STR_CONST().getSymbol().getText());
+        Symbol sym = cc.stringtable.addString(ctx.STR_CONST().getSymbol().getText());
         return new StringConstNode(ln, sym);
     }
 
@@ -309,11 +317,11 @@ public class ASTRebuilder extends ASTParserBaseVisitor<Tree> {
 
     @Override
     public Tree visitType(ASTParser.TypeContext ctx) {
-        return StringTable.idtable.addString(ctx.TYPE().getSymbol().getText());
+        return CoolCharStream.intern(cc.idtable, ctx.TYPE().getSymbol());
     }
 
     @Override
     public Tree visitId(ASTParser.IdContext ctx) {
-        return StringTable.idtable.addString(ctx.ID().getSymbol().getText());
+        return CoolCharStream.intern(cc.idtable, ctx.ID().getSymbol());
     }
 }
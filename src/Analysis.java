@@ -15,13 +15,20 @@ public class Analysis {
 //        if ((Flags.semant_debug) && (args.length == 1))
 //           filename = args[0];
 
-        ProgramNode program = ASTRebuilder.readAST(filename);
+        CompilationContext ctx = new CompilationContext();
+        ProgramNode program = Flags.binary_ast
+                ? BinaryASTReader.readAST(ctx, filename)
+                : ASTRebuilder.readAST(ctx, filename);
 
         if (program != null) {
-            Semant.analyze(program);
-
-            DumpVisitor d = new DumpVisitor(System.out);
-            d.visit(program, "");
+            Semant.analyze(ctx, program);
+
+            if (Flags.binary_ast) {
+                BinaryASTWriter.writeAST(ctx, program, System.out);
+            } else {
+                DumpVisitor d = new DumpVisitor(System.out);
+                d.visit(program, "");
+            }
         }
     }
 
@@ -9,9 +9,12 @@ public class Backend {
         if ((args.length > 0) && (Flags.verbose > 0))
             Utilities.warning(Utilities.ErrorCode.IGNORE_INPUT_FILES);
 
-        ProgramNode program = ASTRebuilder.readAST(null);
+        CompilationContext ctx = new CompilationContext();
+        ProgramNode program = Flags.binary_ast
+                ? BinaryASTReader.readAST(ctx, null)
+                : ASTRebuilder.readAST(ctx, null);
 
         if (program != null)
-            Cgen.emit(program);
+            Cgen.emit(ctx, program);
     }
 }
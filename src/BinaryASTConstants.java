@@ -0,0 +1,59 @@
+/**
+ * Constants describing the binary AST interchange format that can be
+ * used between compiler phases instead of the textual dump produced by
+ * DumpVisitor.
+ * <p>
+ * A binary AST file has the following layout:
+ * <pre>
+ *   magic            4 bytes, MAGIC
+ *   version          1 byte, VERSION
+ *   symbol section   the idtable, stringtable and inttable, in this order;
+ *                    each is a varint count followed by the entries in
+ *                    Symbol.getIndex() order, each entry being a varint
+ *                    byte length and the UTF-8 bytes of the name
+ *   node section     varint byte length of the node stream, followed by
+ *                    the node stream
+ * </pre>
+ * The node stream is a pre-order walk of the tree.  Every node starts with
+ * a one byte tag and a varint line number.  Symbols are written as varint
+ * indices into the symbol section, lists as a varint count followed by the
+ * elements, and every expression ends with the index of its type plus one
+ * (zero meaning no type).
+ */
+final class BinaryASTConstants {
+
+    final static int MAGIC = 0x434f4f4c;    // "COOL"
+    final static int VERSION = 1;
+
+    // Node tags
+    final static int PROGRAM = 1;
+    final static int CLASS = 2;
+    final static int METHOD = 3;
+    final static int ATTR = 4;
+    final static int FORMAL = 5;
+    final static int BRANCH = 6;
+    final static int ASSIGN = 7;
+    final static int STATIC_DISPATCH = 8;
+    final static int DISPATCH = 9;
+    final static int COND = 10;
+    final static int LOOP = 11;
+    final static int TYPCASE = 12;
+    final static int BLOCK = 13;
+    final static int LET = 14;
+    final static int PLUS = 15;
+    final static int SUB = 16;
+    final static int MUL = 17;
+    final static int DIVIDE = 18;
+    final static int NEG = 19;
+    final static int LT = 20;
+    final static int EQ = 21;
+    final static int LEQ = 22;
+    final static int COMP = 23;
+    final static int INT = 24;
+    final static int STR = 25;
+    final static int BOOL = 26;
+    final static int NEW = 27;
+    final static int ISVOID = 28;
+    final static int OBJECT = 29;
+    final static int NO_EXPR = 30;
+}
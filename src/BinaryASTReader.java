@@ -0,0 +1,332 @@
+import ast.*;
+
+import java.io.BufferedInputStream;
+import java.io.EOFException;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.LinkedList;
+import java.util.List;
+
+/**
+ * Reads an AST in the binary interchange format described in
+ * BinaryASTConstants and builds the ProgramNode directly from the
+ * stream, without an intermediate parse tree.
+ */
+public class BinaryASTReader {
+
+    private CompilationContext ctx;
+    private InputStream in;
+
+    // number of node stream bytes still to be read
+    private int remaining;
+
+    // symbol section, indexed by the writer's Symbol.getIndex()
+    private Symbol[] ids;
+    private Symbol[] strings;
+    private Symbol[] ints;
+
+    private byte[] buf = new byte[StringTable.MAXSIZE * 4];
+
+    /** Reads AST from from console */
+    public static ProgramNode readAST(CompilationContext ctx, String inputfile) {
+        ProgramNode program = null;
+
+        try {
+            InputStream input;
+            if ((Flags.verbose > 0) && (inputfile != null))
+                input = new FileInputStream(inputfile);
+            else
+                input = System.in;
+
+            BinaryASTReader r = new BinaryASTReader(ctx, new BufferedInputStream(input, 1 << 16));
+            program = r.read();
+
+        } catch (FileNotFoundException ex) {
+            Utilities.fatalError(ctx, Utilities.ErrorCode.OPEN_FILE, inputfile);
+        } catch (IOException ex) {
+            Utilities.fatalError(ctx, Utilities.ErrorCode.ERROR_AST_PARSING);
+        }
+
+        return program;
+    }
+
+    private BinaryASTReader(CompilationContext ctx, InputStream in) {
+        this.ctx = ctx;
+        this.in = in;
+    }
+
+    private ProgramNode read() throws IOException {
+        int magic = (readByte() << 24) | (readByte() << 16) | (readByte() << 8) | readByte();
+        if (magic != BinaryASTConstants.MAGIC || readByte() != BinaryASTConstants.VERSION)
+            throw new IOException("Not a binary AST");
+
+        ids = readTable(ctx.idtable);
+        strings = readTable(ctx.stringtable);
+        ints = readTable(ctx.inttable);
+
+        remaining = readVarint();
+        if (readByte() != BinaryASTConstants.PROGRAM)
+            throw new IOException("Expected program");
+        ProgramNode p = new ProgramNode(readLine());
+        for (int n = readCount(); n > 0; n--)
+            p.add(readClass());
+        if (remaining != 0)
+            throw new IOException("Trailing bytes in node stream");
+        return p;
+    }
+
+    private Symbol[] readTable(StringTable table) throws IOException {
+        Symbol[] syms = new Symbol[readVarint()];
+        for (int i = 0; i < syms.length; i++) {
+            int len = readVarint();
+            if (len > buf.length)
+                buf = new byte[len];
+            readFully(buf, len);
+            syms[i] = table.addString(new String(buf, 0, len, StandardCharsets.UTF_8));
+        }
+        return syms;
+    }
+
+    private int readByte() throws IOException {
+        int b = in.read();
+        if (b < 0)
+            throw new EOFException();
+        remaining--;
+        return b;
+    }
+
+    private void readFully(byte[] b, int len) throws IOException {
+        int off = 0;
+        while (off < len) {
+            int n = in.read(b, off, len - off);
+            if (n < 0)
+                throw new EOFException();
+            off += n;
+        }
+        remaining -= len;
+    }
+
+    private int readVarint() throws IOException {
+        int v = 0;
+        for (int shift = 0; shift < 32; shift += 7) {
+            int b = readByte();
+            v |= (b & 0x7f) << shift;
+            if ((b & 0x80) == 0)
+                return v;
+        }
+        throw new IOException("Malformed varint");
+    }
+
+    private int readLine() throws IOException {
+        return readVarint();
+    }
+
+    private int readCount() throws IOException {
+        return readVarint();
+    }
+
+    private Symbol readSym(Symbol[] table) throws IOException {
+        int i = readVarint();
+        if (i >= table.length)
+            throw new IOException("Bad symbol index " + i);
+        return table[i];
+    }
+
+    private Symbol readId() throws IOException {
+        return readSym(ids);
+    }
+
+    private ClassNode readClass() throws IOException {
+        if (readByte() != BinaryASTConstants.CLASS)
+            throw new IOException("Expected class");
+        int ln = readLine();
+        Symbol name = readId();
+        Symbol parent = readId();
+        Symbol filename = readSym(strings);
+        ClassNode c = new ClassNode(ln, name, parent, filename);
+        for (int n = readCount(); n > 0; n--)
+            c.add(readFeature());
+        return c;
+    }
+
+    private FeatureNode readFeature() throws IOException {
+        int tag = readByte();
+        int ln = readLine();
+        switch (tag) {
+            case BinaryASTConstants.METHOD: {
+                Symbol name = readId();
+                List<FormalNode> formals = new LinkedList<FormalNode>();
+                for (int n = readCount(); n > 0; n--)
+                    formals.add(readFormal());
+                Symbol return_type = readId();
+                ExpressionNode body = readExpr();
+                return new MethodNode(ln, name, formals, return_type, body);
+            }
+            case BinaryASTConstants.ATTR: {
+                Symbol name = readId();
+                Symbol type = readId();
+                ExpressionNode init = readExpr();
+                return new AttributeNode(ln, name, type, init);
+            }
+            default:
+                throw new IOException("Unknown feature tag " + tag);
+        }
+    }
+
+    private FormalNode readFormal() throws IOException {
+        if (readByte() != BinaryASTConstants.FORMAL)
+            throw new IOException("Expected formal");
+        int ln = readLine();
+        Symbol name = readId();
+        Symbol type = readId();
+        return new FormalNode(ln, name, type);
+    }
+
+    private BranchNode readBranch() throws IOException {
+        if (readByte() != BinaryASTConstants.BRANCH)
+            throw new IOException("Expected branch");
+        int ln = readLine();
+        Symbol name = readId();
+        Symbol type = readId();
+        ExpressionNode e = readExpr();
+        return new BranchNode(ln, name, type, e);
+    }
+
+    private List<ExpressionNode> readExprs() throws IOException {
+        List<ExpressionNode> l = new LinkedList<ExpressionNode>();
+        for (int n = readCount(); n > 0; n--)
+            l.add(readExpr());
+        return l;
+    }
+
+    private ExpressionNode readExpr() throws IOException {
+        int tag = readByte();
+        int ln = readLine();
+        ExpressionNode e;
+        switch (tag) {
+            case BinaryASTConstants.ASSIGN: {
+                Symbol name = readId();
+                e = new AssignNode(ln, name, readExpr());
+                break;
+            }
+            case BinaryASTConstants.STATIC_DISPATCH: {
+                ExpressionNode expr = readExpr();
+                Symbol type = readId();
+                Symbol name = readId();
+                e = new StaticDispatchNode(ln, expr, type, name, readExprs());
+                break;
+            }
+            case BinaryASTConstants.DISPATCH: {
+                ExpressionNode expr = readExpr();
+                Symbol name = readId();
+                e = new DispatchNode(ln, expr, name, readExprs());
+                break;
+            }
+            case BinaryASTConstants.COND: {
+                ExpressionNode cond = readExpr();
+                ExpressionNode e1 = readExpr();
+                ExpressionNode e2 = readExpr();
+                e = new CondNode(ln, cond, e1, e2);
+                break;
+            }
+            case BinaryASTConstants.LOOP: {
+                ExpressionNode cond = readExpr();
+                e = new LoopNode(ln, cond, readExpr());
+                break;
+            }
+            case BinaryASTConstants.TYPCASE: {
+                ExpressionNode expr = readExpr();
+                List<BranchNode> branches = new LinkedList<BranchNode>();
+                for (int n = readCount(); n > 0; n--)
+                    branches.add(readBranch());
+                e = new CaseNode(ln, expr, branches);
+                break;
+            }
+            case BinaryASTConstants.BLOCK:
+                e = new BlockNode(ln, readExprs());
+                break;
+            case BinaryASTConstants.LET: {
+                Symbol name = readId();
+                Symbol type = readId();
+                ExpressionNode init = readExpr();
+                e = new LetNode(ln, name, type, init, readExpr());
+                break;
+            }
+            case BinaryASTConstants.PLUS: {
+                ExpressionNode e1 = readExpr();
+                e = new PlusNode(ln, e1, readExpr());
+                break;
+            }
+            case BinaryASTConstants.SUB: {
+                ExpressionNode e1 = readExpr();
+                e = new SubNode(ln, e1, readExpr());
+                break;
+            }
+            case BinaryASTConstants.MUL: {
+                ExpressionNode e1 = readExpr();
+                e = new MulNode(ln, e1, readExpr());
+                break;
+            }
+            case BinaryASTConstants.DIVIDE: {
+                ExpressionNode e1 = readExpr();
+                e = new DivideNode(ln, e1, readExpr());
+                break;
+            }
+            case BinaryASTConstants.LT: {
+                ExpressionNode e1 = readExpr();
+                e = new LTNode(ln, e1, readExpr());
+                break;
+            }
+            case BinaryASTConstants.EQ: {
+                ExpressionNode e1 = readExpr();
+                e = new EqNode(ln, e1, readExpr());
+                break;
+            }
+            case BinaryASTConstants.LEQ: {
+                ExpressionNode e1 = readExpr();
+                e = new LEqNode(ln, e1, readExpr());
+                break;
+            }
+            case BinaryASTConstants.NEG:
+                e = new NegNode(ln, readExpr());
+                break;
+            case BinaryASTConstants.COMP:
+                e = new CompNode(ln, readExpr());
+                break;
+            case BinaryASTConstants.INT:
+                e = new IntConstNode(ln, readSym(ints));
+                break;
+            case BinaryASTConstants.STR:
+                e = new StringConstNode(ln, readSym(strings));
+                break;
+            case BinaryASTConstants.BOOL:
+                e = new BoolConstNode(ln, readByte() != 0);
+                break;
+            case BinaryASTConstants.NEW:
+                e = new NewNode(ln, readId());
+                break;
+            case BinaryASTConstants.ISVOID:
+                e = new IsVoidNode(ln, readExpr());
+                break;
+            case BinaryASTConstants.OBJECT:
+                e = new ObjectNode(ln, readId());
+                break;
+            case BinaryASTConstants.NO_EXPR:
+                e = new NoExpressionNode(ln);
+                break;
+            default:
+                throw new IOException("Unknown expression tag " + tag);
+        }
+
+        int type = readVarint();
+        if (type != 0) {
+            if (type > ids.length)
+                throw new IOException("Bad type index " + type);
+            e.setType(ids[type - 1]);
+        }
+        return e;
+    }
+}
@@ -0,0 +1,336 @@
+import ast.*;
+import ast.visitor.BaseVisitor;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+/**
+ * Writes an AST in the binary interchange format described in
+ * BinaryASTConstants.
+ */
+public class BinaryASTWriter extends BaseVisitor<Void, Void> {
+
+    /** Buffer holding the node stream until its length is known */
+    private ByteArrayOutputStream nodes = new ByteArrayOutputStream(1 << 16);
+
+    /** Writes the AST to the given stream */
+    public static void writeAST(CompilationContext ctx, ProgramNode program, OutputStream out) {
+        try {
+            BufferedOutputStream bout = new BufferedOutputStream(out, 1 << 16);
+            new BinaryASTWriter().write(ctx, program, bout);
+            bout.flush();
+        } catch (IOException ex) {
+            Utilities.fatalError(ctx, Utilities.ErrorCode.ERROR_AST_WRITING, ex);
+        }
+    }
+
+    private void write(CompilationContext ctx, ProgramNode program, OutputStream out) throws IOException {
+        out.write(BinaryASTConstants.MAGIC >>> 24);
+        out.write(BinaryASTConstants.MAGIC >>> 16);
+        out.write(BinaryASTConstants.MAGIC >>> 8);
+        out.write(BinaryASTConstants.MAGIC);
+        out.write(BinaryASTConstants.VERSION);
+
+        writeTable(ctx.idtable, out);
+        writeTable(ctx.stringtable, out);
+        writeTable(ctx.inttable, out);
+
+        nodes.reset();
+        program.accept(this, null);
+        writeVarint(out, nodes.size());
+        nodes.writeTo(out);
+    }
+
+    private static void writeTable(StringTable table, OutputStream out) throws IOException {
+        writeVarint(out, table.size());
+        for (Symbol sym : table) {
+            byte[] b = sym.getName().getBytes(StandardCharsets.UTF_8);
+            writeVarint(out, b.length);
+            out.write(b);
+        }
+    }
+
+    private static void writeVarint(OutputStream out, int v) throws IOException {
+        while ((v & ~0x7f) != 0) {
+            out.write((v & 0x7f) | 0x80);
+            v >>>= 7;
+        }
+        out.write(v);
+    }
+
+    private void varint(int v) {
+        while ((v & ~0x7f) != 0) {
+            nodes.write((v & 0x7f) | 0x80);
+            v >>>= 7;
+        }
+        nodes.write(v);
+    }
+
+    private void header(int tag, TreeNode node) {
+        nodes.write(tag);
+        varint(node.getLineNumber());
+    }
+
+    private void sym(Symbol sym) {
+        varint(sym.getIndex());
+    }
+
+    private void type(ExpressionNode node) {
+        varint(node.getType() == null ? 0 : node.getType().getIndex() + 1);
+    }
+
+    private void list(List<? extends Tree> l) {
+        varint(l.size());
+        for (Tree n : l)
+            n.accept(this, null);
+    }
+
+    private Void binop(int tag, BinopNode node) {
+        header(tag, node);
+        node.getE1().accept(this, null);
+        node.getE2().accept(this, null);
+        type(node);
+        return null;
+    }
+
+    private Void unop(int tag, UnopNode node) {
+        header(tag, node);
+        node.getE1().accept(this, null);
+        type(node);
+        return null;
+    }
+
+    @Override
+    public Void visit(ProgramNode node, Void data) {
+        header(BinaryASTConstants.PROGRAM, node);
+        list(node.getClasses());
+        return null;
+    }
+
+    @Override
+    public Void visit(ClassNode node, Void data) {
+        header(BinaryASTConstants.CLASS, node);
+        sym(node.getName());
+        sym(node.getParent());
+        sym(node.getFilename());
+        list(node.getFeatures());
+        return null;
+    }
+
+    @Override
+    public Void visit(MethodNode node, Void data) {
+        header(BinaryASTConstants.METHOD, node);
+        sym(node.getName());
+        list(node.getFormals());
+        sym(node.getReturn_type());
+        node.getExpr().accept(this, null);
+        return null;
+    }
+
+    @Override
+    public Void visit(AttributeNode node, Void data) {
+        header(BinaryASTConstants.ATTR, node);
+        sym(node.getName());
+        sym(node.getType_decl());
+        node.getInit().accept(this, null);
+        return null;
+    }
+
+    @Override
+    public Void visit(FormalNode node, Void data) {
+        header(BinaryASTConstants.FORMAL, node);
+        sym(node.getName());
+        sym(node.getType_decl());
+        return null;
+    }
+
+    @Override
+    public Void visit(BranchNode node, Void data) {
+        header(BinaryASTConstants.BRANCH, node);
+        sym(node.getName());
+        sym(node.getType_decl());
+        node.getExpr().accept(this, null);
+        return null;
+    }
+
+    @Override
+    public Void visit(AssignNode node, Void data) {
+        header(BinaryASTConstants.ASSIGN, node);
+        sym(node.getName());
+        node.getExpr().accept(this, null);
+        type(node);
+        return null;
+    }
+
+    @Override
+    public Void visit(StaticDispatchNode node, Void data) {
+        header(BinaryASTConstants.STATIC_DISPATCH, node);
+        node.getExpr().accept(this, null);
+        sym(node.getType_name());
+        sym(node.getName());
+        list(node.getActuals());
+        type(node);
+        return null;
+    }
+
+    @Override
+    public Void visit(DispatchNode node, Void data) {
+        header(BinaryASTConstants.DISPATCH, node);
+        node.getExpr().accept(this, null);
+        sym(node.getName());
+        list(node.getActuals());
+        type(node);
+        return null;
+    }
+
+    @Override
+    public Void visit(CondNode node, Void data) {
+        header(BinaryASTConstants.COND, node);
+        node.getCond().accept(this, null);
+        node.getThenExpr().accept(this, null);
+        node.getElseExpr().accept(this, null);
+        type(node);
+        return null;
+    }
+
+    @Override
+    public Void visit(LoopNode node, Void data) {
+        header(BinaryASTConstants.LOOP, node);
+        node.getCond().accept(this, null);
+        node.getBody().accept(this, null);
+        type(node);
+        return null;
+    }
+
+    @Override
+    public Void visit(CaseNode node, Void data) {
+        header(BinaryASTConstants.TYPCASE, node);
+        node.getExpr().accept(this, null);
+        list(node.getCases());
+        type(node);
+        return null;
+    }
+
+    @Override
+    public Void visit(BlockNode node, Void data) {
+        header(BinaryASTConstants.BLOCK, node);
+        list(node.getExprs());
+        type(node);
+        return null;
+    }
+
+    @Override
+    public Void visit(LetNode node, Void data) {
+        header(BinaryASTConstants.LET, node);
+        sym(node.getIdentifier());
+        sym(node.getType_decl());
+        node.getInit().accept(this, null);
+        node.getBody().accept(this, null);
+        type(node);
+        return null;
+    }
+
+    @Override
+    public Void visit(PlusNode node, Void data) {
+        return binop(BinaryASTConstants.PLUS, node);
+    }
+
+    @Override
+    public Void visit(SubNode node, Void data) {
+        return binop(BinaryASTConstants.SUB, node);
+    }
+
+    @Override
+    public Void visit(MulNode node, Void data) {
+        return binop(BinaryASTConstants.MUL, node);
+    }
+
+    @Override
+    public Void visit(DivideNode node, Void data) {
+        return binop(BinaryASTConstants.DIVIDE, node);
+    }
+
+    @Override
+    public Void visit(NegNode node, Void data) {
+        return unop(BinaryASTConstants.NEG, node);
+    }
+
+    @Override
+    public Void visit(LTNode node, Void data) {
+        return binop(BinaryASTConstants.LT, node);
+    }
+
+    @Override
+    public Void visit(EqNode node, Void data) {
+        return binop(BinaryASTConstants.EQ, node);
+    }
+
+    @Override
+    public Void visit(LEqNode node, Void data) {
+        return binop(BinaryASTConstants.LEQ, node);
+    }
+
+    @Override
+    public Void visit(CompNode node, Void data) {
+        return unop(BinaryASTConstants.COMP, node);
+    }
+
+    @Override
+    public Void visit(IntConstNode node, Void data) {
+        header(BinaryASTConstants.INT, node);
+        sym(node.getVal());
+        type(node);
+        return null;
+    }
+
+    @Override
+    public Void visit(BoolConstNode node, Void data) {
+        header(BinaryASTConstants.BOOL, node);
+        nodes.write(node.getVal() ? 1 : 0);
+        type(node);
+        return null;
+    }
+
+    @Override
+    public Void visit(StringConstNode node, Void data) {
+        header(BinaryASTConstants.STR, node);
+        sym(node.getVal());
+        type(node);
+        return null;
+    }
+
+    @Override
+    public Void visit(NewNode node, Void data) {
+        header(BinaryASTConstants.NEW, node);
+        sym(node.getType_name());
+        type(node);
+        return null;
+    }
+
+    @Override
+    public Void visit(IsVoidNode node, Void data) {
+        header(BinaryASTConstants.ISVOID, node);
+        node.getE1().accept(this, null);
+        type(node);
+        return null;
+    }
+
+    @Override
+    public Void visit(ObjectNode node, Void data) {
+        header(BinaryASTConstants.OBJECT, node);
+        sym(node.getName());
+        type(node);
+        return null;
+    }
+
+    @Override
+    public Void visit(NoExpressionNode node, Void data) {
+        header(BinaryASTConstants.NO_EXPR, node);
+        type(node);
+        return null;
+    }
+}
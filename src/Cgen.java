@@ -3,24 +3,48 @@ import ast.*;
 
 public class Cgen  {
 
-    static CgenEmit emitter;
-    /* inhertiance tree */
-    static CgenClassTable classTable;
     /**
      * This method is the meat of the code generator.
      */
-    public static void emit(ProgramNode program) {
+    public static void emit(CompilationContext ctx, ProgramNode program) {
         CgenVisitor cgenVisitor;
-        classTable = new CgenClassTable(program.getClasses());
+
+        CgenClassTable classTable = new CgenClassTable(ctx, program.getClasses());
+        ctx.cgenClassTable = classTable;
 
         // Compute class tags and various offsets
-        CgenOffsetsVisitor offsetsVisitor = new CgenOffsetsVisitor();
+        CgenOffsetsVisitor offsetsVisitor = new CgenOffsetsVisitor(ctx);
         offsetsVisitor.visit(classTable.root());
 
+        // Bind dispatches statically where the class hierarchy allows
+        if (Flags.cgen_optimize) {
+            if (Flags.cgen_debug) System.err.println("devirtualizing");
+            new CgenDevirtualize(ctx).visit(classTable.root());
+            if (Flags.cgen_debug) System.err.println("inlining");
+            new CgenInliner(ctx).visit(classTable.root());
+
+            // Keep objects that do not escape out of the heap, fold constant
+            // expressions, and count the temporaries of the methods again
+            if (Flags.cgen_debug) System.err.println("analyzing escapes");
+            program.accept(new CgenEscapeAnalysis(ctx), null);
+            if (Flags.cgen_debug) System.err.println("folding constants");
+            program.accept(new CgenConstantFolder(ctx), null);
+            for (ClassNode c : program.getClasses())
+                for (FeatureNode f : c.getFeatures())
+                    if (f instanceof MethodNode)
+                        classTable.get(c.getName()).env.countTemps((MethodNode) f);
+
+            if (Flags.cgen_debug) System.err.println("finding tail calls");
+            new CgenTailCalls(ctx).visit(classTable.root());
+            if (Flags.cgen_debug) System.err.println("finding reachable code");
+            new CgenReachability(ctx).analyze();
+        }
+
         int st = classTable.get(TreeConstants.Str).env.getClassTag();
         int it = classTable.get(TreeConstants.Int).env.getClassTag();
         int bt = classTable.get(TreeConstants.Bool).env.getClassTag();
-        emitter = new CgenEmit(st, it, bt);
+        CgenEmit emitter = new CgenEmit(ctx, st, it, bt);
+        ctx.emitter = emitter;
 
         if (Flags.cgen_debug) System.err.println("coding global data");
         emitter.codeGlobalData();
@@ -38,23 +62,51 @@ public class Cgen  {
         emitter.codeProtObjectTable();
 
         if (Flags.cgen_debug) System.err.println("coding dispatch tables");
-        cgenVisitor = new CgenEmitDispatchTables();
+        cgenVisitor = new CgenEmitDispatchTables(ctx);
         cgenVisitor.visit(classTable.root());
 
         if (Flags.cgen_debug) System.err.println("coding prototypes");
-        cgenVisitor = new CgenEmitPrototypeObjects();
+        cgenVisitor = new CgenEmitPrototypeObjects(ctx);
         cgenVisitor.visit(classTable.root());
 
         if (Flags.cgen_debug) System.out.println("coding global text");
         emitter.codeGlobalText();
 
         if (Flags.cgen_debug) System.err.println("coding init methods");
-        cgenVisitor = new CgenEmitConstructors();
+        cgenVisitor = new CgenEmitConstructors(ctx);
         cgenVisitor.visit(classTable.root());
 
         if (Flags.cgen_debug) System.err.println("coding methods");
-        cgenVisitor = new CgenEmitMethods();
+        cgenVisitor = new CgenEmitMethods(ctx);
         cgenVisitor.visit(classTable.root());
+
+        if (Flags.cgen_debug) System.err.println("coding the Int cache");
+        emitter.codeIntCache();
+
+        if (Flags.cgen_debug) System.err.println("coding inline caches");
+        emitter.codeInlineCaches();
+
+        if (Flags.cgen_debug) System.err.println("coding allocation sites");
+        emitter.codeAllocSites();
+
+        if (Flags.cgen_debug) System.err.println("coding stack maps");
+        emitter.codeStackMaps();
+
+        emitter.close();
+
+        if (Flags.cgen_optimize && (Flags.cgen_debug || Flags.phase_timing)) {
+            System.err.println("devirtualization: " + ctx.devirtualized + " static, "
+                    + ctx.virtualCalls + " virtual dispatches, " + ctx.inlined + " inlined, "
+                    + ctx.tailCalls + " tail calls");
+            System.err.println("escape analysis: " + ctx.scalarReplaced + " objects replaced, "
+                    + ctx.frameAllocated + " allocated in frames");
+            System.err.println("constant folding: " + ctx.folded + " expressions folded");
+            System.err.println("reachability: dropped " + ctx.unreachableMethods + " methods, "
+                    + ctx.unreachableClasses + " classes");
+            System.err.println("peephole: removed " + ctx.peepholeRemoved + " instructions");
+        }
+        if (Flags.pretenure_profile != null && (Flags.cgen_debug || Flags.phase_timing))
+            System.err.println("pretenuring: " + ctx.pretenured + " allocations in the old area");
     }
 
     public static class MethodInfo {
@@ -72,6 +124,18 @@ public class Cgen  {
         // number of temporaries required by the method
         int temps;
 
+        // number of words above the temporaries for the objects allocated
+        // in the frame (CgenEscapeAnalysis)
+        int objects;
+
+        // whether the method may be called; cleared by CgenReachability
+        // for the methods no reachable code calls
+        boolean reachable = true;
+
+        // whether the body has self calls in tail position; set by
+        // CgenTailCalls
+        boolean tailCalls;
+
         public MethodInfo(Symbol classname, Symbol name, int offset, int temps) {
             this.classname = classname;
             this.methodname = name;
@@ -94,6 +158,18 @@ public class Cgen  {
         public int getTemps() {
             return temps;
         }
+
+        public int getObjects() {
+            return objects;
+        }
+
+        public boolean isReachable() {
+            return reachable;
+        }
+
+        public boolean hasTailCalls() {
+            return tailCalls;
+        }
     }
 
 
@@ -112,14 +188,20 @@ public class Cgen  {
         }
 
         @Override
-        public String emitRef(String optionalDest) {
+        public String emitRef(CgenEmit emitter, String optionalDest) {
             /* TODO */
             return null;
         }
 
+        // Under GenGC, a store of an object that may be new into an old
+        // object must be known to the minor collections; the write
+        // barrier marks the card of self.
         @Override
-        public void emitUpdate(String source) {
-            /* TODO */
+        public void emitUpdate(CgenEmit emitter, String source) {
+            boolean constant = emitter.holdsConstant(source);
+            emitter.emitStore(source, CgenConstants.DEFAULT_OBJFIELDS + offset, CgenConstants.SELF);
+            if (Flags.cgen_Memmgr == Flags.GC_GENGC && !constant)
+                emitter.emitWriteBarrier(source);
         }
     }
 
@@ -130,33 +212,19 @@ public class Cgen  {
             offset = i;
         }
 
+        // Locals live in the stack frame; CgenRegAlloc moves them into
+        // registers after the method is generated.
         @Override
-        public String emitRef(String optionalDest) {
-            String reg = CgenConstants.getRegister(offset);
-            if (reg != null)
-            {
-                if (Flags.cgen_debug) System.err.println("     Local read from register "+ reg );
-                return reg;
-            } else {
-                if (Flags.cgen_debug) System.err.println("     Local load from FP offset "+ offset );
-                emitter.emitLoad(optionalDest, offset, CgenConstants.FP);
-                return optionalDest;
-            }
+        public String emitRef(CgenEmit emitter, String optionalDest) {
+            if (Flags.cgen_debug) System.err.println("     Local load from FP offset "+ offset );
+            emitter.emitLoad(optionalDest, offset, CgenConstants.FP);
+            return optionalDest;
         }
 
         @Override
-        public void emitUpdate(String source) {
-            String reg = CgenConstants.getRegister(offset);
-            if (reg != null)
-            {
-                if (Flags.cgen_debug) System.err.println("     Local store to register" + reg);
-                emitter.emitMove(reg, source);
-            }
-            else
-            {
-                if (Flags.cgen_debug) System.err.println("     Local store to FP offset " + offset);
-                emitter.emitStore(source, offset, CgenConstants.FP);
-            }
+        public void emitUpdate(CgenEmit emitter, String source) {
+            if (Flags.cgen_debug) System.err.println("     Local store to FP offset " + offset);
+            emitter.emitStore(source, offset, CgenConstants.FP);
         }
     }
 
@@ -167,12 +235,12 @@ public class Cgen  {
         }
 
         @Override
-        public String emitRef(String optionalDest) {
+        public String emitRef(CgenEmit emitter, String optionalDest) {
             emitter.emitMove(optionalDest, CgenConstants.SELF);
             return optionalDest;
         }
         @Override
-        public void emitUpdate(String source) {
+        public void emitUpdate(CgenEmit emitter, String source) {
             Utilities.fatalError("Cannot assign to self.");
         }
     }
@@ -184,8 +252,7 @@ public class Cgen  {
         public int getOffset() {
             return offset;
         }
-        abstract public String emitRef(String optionalDest);
-        abstract public void emitUpdate(String source);
-        public String getRegister() { return null; }
+        abstract public String emitRef(CgenEmit emitter, String optionalDest);
+        abstract public void emitUpdate(CgenEmit emitter, String source);
     }
 }
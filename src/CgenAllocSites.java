@@ -0,0 +1,131 @@
+import java.io.BufferedReader;
+import java.io.FileReader;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashSet;
+
+/**
+ * The allocation sites of the program, for the allocation-site profile
+ * of GenGC.
+ * <p>
+ * Every new and copy dispatch coded on the heap is a site, numbered in the
+ * order the sites are coded.  Under -a, the code calls _Prof_Alloc in
+ * lib/trap.handler after each of them to enter the new object in a log,
+ * and each minor collection counts the logged objects for their sites,
+ * and those it copies out as survivors.  The program prints the counts
+ * when it ends, one line for each site:
+ * <pre>
+ *     #alloc-site site objects survivors
+ * </pre>
+ * Under -A, those lines are read from the file given, and the new sites
+ * with at least MIN_OBJECTS objects counted, at least half of which
+ * survived, allocate their objects in the old area with _GenGC_OldCopy:
+ * they are pretenured.  The numbers of the sites depend on the code, so
+ * the program must be compiled with the same other flags both times.
+ * <p>
+ * The counts are emitted as _alloc_sites, a word with the number of sites
+ * and two words for each, and the log as _alloc_log: the number of
+ * entries, the capacity and room for two words, the object and its site,
+ * per entry.  Without -a both are empty.
+ */
+class CgenAllocSites {
+
+    /**
+     * The fewest objects a site must have had counted to be pretenured.
+     */
+    static final int MIN_OBJECTS = 16;
+
+    /**
+     * The fewest entries of the log; it also holds one entry for each 16
+     * bytes of the work area, the size of the smallest object.
+     */
+    static final int LOG_ENTRIES = 4096;
+
+    // what each site allocates and where, for the comments of the table
+    private final ArrayList<String> sites = new ArrayList<>();
+
+    // the sites the profile read under -A pretenures
+    private final HashSet<Integer> pretenured = new HashSet<>();
+
+    CgenAllocSites(CompilationContext ctx) {
+        if (Flags.pretenure_profile != null)
+            read(ctx, Flags.pretenure_profile);
+    }
+
+    static boolean enabled() {
+        return Flags.alloc_profile || Flags.pretenure_profile != null;
+    }
+
+    private void read(CompilationContext ctx, String filename) {
+        try (BufferedReader in = new BufferedReader(new FileReader(filename))) {
+            String line;
+            while ((line = in.readLine()) != null) {
+                String[] w = line.trim().split("\\s+");
+                if (w.length != 4 || !w[0].equals("#alloc-site"))
+                    continue;
+                try {
+                    int site = Integer.parseInt(w[1]);
+                    int objects = Integer.parseInt(w[2]);
+                    int survivors = Integer.parseInt(w[3]);
+                    if (objects >= MIN_OBJECTS && 2L * survivors >= objects)
+                        pretenured.add(site);
+                } catch (NumberFormatException ex) {
+                    // not a line of the profile
+                }
+            }
+        } catch (IOException ex) {
+            Utilities.fatalError(ctx, "Cannot read allocation profile " + filename);
+        }
+    }
+
+    /**
+     * Numbers the next site.
+     *
+     * @param description what the site allocates and where
+     * @return the number of the site
+     */
+    int add(String description) {
+        sites.add(description);
+        return sites.size() - 1;
+    }
+
+    /**
+     * Checks whether the objects of the site are allocated in the old area.
+     */
+    boolean pretenures(int site) {
+        return pretenured.contains(site);
+    }
+
+    /**
+     * Emits _alloc_sites and _alloc_log.
+     */
+    void print(CgenOutput s) {
+        s.print(CgenConstants.GLOBAL);
+        s.println(CgenConstants.ALLOC_SITES);
+        s.print(CgenConstants.ALLOC_SITES);
+        s.print(CgenConstants.LABEL);
+        s.print(CgenConstants.WORD);
+        s.println(Flags.alloc_profile ? sites.size() : 0);
+        if (Flags.alloc_profile) {
+            for (int i = 0; i < sites.size(); i++) {
+                s.print(CgenConstants.WORD);
+                s.println("0\t# site " + i + ": " + sites.get(i));
+                s.print(CgenConstants.WORD);
+                s.println(0);
+            }
+        }
+        int entries = Flags.alloc_profile ? Math.max(LOG_ENTRIES, Flags.nursery_size / 16) : 0;
+        s.print(CgenConstants.GLOBAL);
+        s.println(CgenConstants.ALLOC_LOG);
+        s.print(CgenConstants.ALLOC_LOG);
+        s.print(CgenConstants.LABEL);
+        s.print(CgenConstants.WORD);
+        s.println(0);
+        s.print(CgenConstants.WORD);
+        s.println(entries);
+        if (entries > 0) {
+            s.print("\t.space\t");
+            s.println(entries * 2 * CgenConstants.WORD_SIZE);
+        }
+    }
+}
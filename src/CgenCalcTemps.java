@@ -6,12 +6,21 @@ import ast.visitor.BaseVisitor;
 // $a0.   The Cool features which require temporaries are:
 //
 //   1. binary arithmetic & relational operators
-//      (+,*,/,-, <, <=, =)
+//      (+,*,/,-, <, <=, =): an Int result is boxed into an object kept in
+//      a temporary, unless CgenUnboxed.cachesInts, and a left operand is
+//      held in one while the right operand is evaluated if
+//      CgenUnboxed.holdsOperand says so
 //
 //   2. constructs that introduce new bindings
 //      (let, case)
 //
 //   3. new SELF_TYPE
+//
+//   4. inlined dispatches, which keep the arguments and the caller's self
+//      in temporaries
+//
+// The words of the objects that lets allocate in the frame are counted
+// separately; they are placed above the temporaries.
 public class CgenCalcTemps extends BaseVisitor<Void, Void> {
 
     //  keeps track of the # of temporaries currently in use
@@ -30,11 +39,20 @@ public class CgenCalcTemps extends BaseVisitor<Void, Void> {
         assert(num>=0);
     }
 
+    // the words of frame objects currently in use, and the maximum
+    private int objects = 0;
+    private int maxObjects = 0;
+
     /* return maximum number of temps */
     int get() {
         return max;
     }
 
+    /* return maximum number of words for objects in the frame */
+    int getObjects() {
+        return maxObjects;
+    }
+
     @Override
     public Void visit(AttributeNode node, Void data) {
         node.getInit().accept(this, data);
@@ -43,24 +61,93 @@ public class CgenCalcTemps extends BaseVisitor<Void, Void> {
 
     @Override
     public Void visit(BinopNode node, Void data) {
-        /* TODO */
+        if (!CgenUnboxed.isRaw(node)) {
+            node.getE1().accept(this, null);
+            inc();
+            node.getE2().accept(this, null);
+            dec();
+            return null;
+        }
+        return visitBoxed(node);
+    }
+
+    @Override
+    public Void visit(UnopNode node, Void data) {
+        return visitBoxed(node);
+    }
+
+    // the temporaries of CgenEmitVisitor.emitBoxedInt and emitBoxedBool
+    private Void visitBoxed(ExpressionNode node) {
+        boolean box = (node instanceof IntBinopNode || node instanceof NegNode)
+                && !CgenUnboxed.cachesInts();
+        if (box)
+            inc();
+        visitRaw(node, 0);
+        if (box)
+            dec();
         return null;
     }
 
+    // the temporaries of CgenEmitVisitor.emitRaw
+    private void visitRaw(ExpressionNode e, int k) {
+        if (e instanceof BinopNode && CgenUnboxed.isRaw(e)) {
+            BinopNode node = (BinopNode) e;
+            if (CgenUnboxed.holdsOperand(node, k)) {
+                if (CgenUnboxed.holdsRaw())
+                    visitRaw(node.getE1(), k);
+                else
+                    node.getE1().accept(this, null);
+                inc();
+                visitRaw(node.getE2(), k);
+                dec();
+            } else {
+                visitRaw(node.getE1(), k);
+                visitRaw(node.getE2(), k + 1);
+            }
+        } else if (e instanceof NegNode || e instanceof CompNode) {
+            visitRaw(((UnopNode) e).getE1(), k);
+        } else {
+            e.accept(this, null);
+        }
+    }
+
     @Override
     public Void visit(LetNode node, Void data) {
         ExpressionNode init = node.getInit();
         if (!(init instanceof NoExpressionNode))
             init.accept(this, null);
+        int words = init instanceof NewNode ? ((NewNode) init).getFrameWords() : 0;
+        objects += words;
+        maxObjects = Math.max(maxObjects, objects);
         inc();
         node.getBody().accept(this, null);
         dec();
+        objects -= words;
         return null;
     }
 
     @Override
     public Void visit(BranchNode node, Void data) {
-        /* TODO */
+        inc();
+        node.getExpr().accept(this, null);
+        dec();
+        return null;
+    }
+
+    @Override
+    public Void visit(DispatchNode node, Void data) {
+        if (node.getInlined() == null)
+            return super.visit(node, data);
+        int n = node.getActuals().size();
+        for (ExpressionNode e : node.getActuals()) {
+            e.accept(this, null);
+            inc();
+        }
+        node.getExpr().accept(this, null);
+        inc();
+        node.getInlined().getExpr().accept(this, null);
+        for (int i = 0; i <= n; i++)
+            dec();
         return null;
     }
 
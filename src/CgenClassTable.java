@@ -1,6 +1,7 @@
 import ast.*;
 
-import java.util.HashMap;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
 import java.util.LinkedList;
 import java.util.List;
 
@@ -9,11 +10,11 @@ import java.util.List;
  * generation. You will need to fill in some of its methods and
  * potentially extend it in other useful ways.
  */
-class CgenClassTable extends  HashMap<Symbol,CgenNode> {
+class CgenClassTable extends  LinkedHashMap<Symbol,CgenNode> {
 
-    private void installBasicClasses() {
+    private void installBasicClasses(CompilationContext ctx) {
         Symbol filename
-                = StringTable.stringtable.addString("<basic class>");
+                = ctx.stringtable.addString("<basic class>");
 
 
         LinkedList<FormalNode> formals;
@@ -243,11 +244,11 @@ class CgenClassTable extends  HashMap<Symbol,CgenNode> {
     /**
      * Constructs a new class table and inheritance graph
      */
-    public CgenClassTable(List<ClassNode> cls) {
+    public CgenClassTable(CompilationContext ctx, List<ClassNode> cls) {
 
         if (Flags.cgen_debug) System.out.println("Building CgenClassTable");
 
-        installBasicClasses();
+        installBasicClasses(ctx);
         installClasses(cls);
         buildInheritanceTree();
     }
@@ -258,6 +259,38 @@ class CgenClassTable extends  HashMap<Symbol,CgenNode> {
     public CgenNode root() {
         return get(TreeConstants.Object_);
     }
+
+    /**
+     * Returns the classes of the inheritance tree, indexed by class tag.
+     */
+    public CgenNode[] byTag() {
+        ArrayList<CgenNode> nodes = new ArrayList<>();
+        collect(root(), nodes);
+        CgenNode[] a = new CgenNode[nodes.size()];
+        for (CgenNode nd : nodes)
+            a[nd.env.getClassTag()] = nd;
+        return a;
+    }
+
+    private void collect(CgenNode nd, ArrayList<CgenNode> nodes) {
+        nodes.add(nd);
+        for (CgenNode child : nd.getChildren())
+            collect(child, nodes);
+    }
+
+    /**
+     * Returns true if some class below nd in the inheritance tree binds
+     * the method to a different definition than nd does.
+     */
+    public boolean isOverridden(CgenNode nd, Symbol method) {
+        Cgen.MethodInfo minfo = nd.env.methods.lookup(method);
+        for (CgenNode child : nd.getChildren()) {
+            if (child.env.methods.lookup(method).getClassname() != minfo.getClassname()
+                    || isOverridden(child, method))
+                return true;
+        }
+        return false;
+    }
 }
 
     
@@ -0,0 +1,430 @@
+import ast.Symbol;
+
+/**
+ * The instructions of one method, between code generation and the
+ * assembly output.
+ * <p>
+ * CgenEmit appends the instructions of a method body here instead of
+ * writing them out, so they can be examined and rewritten before print()
+ * renders them as assembly.  The list is stored in parallel int arrays,
+ * one entry per instruction: the opcode and up to three operands x, y
+ * and z, whose meaning depends on the opcode:
+ * <pre>
+ *   LW, SW, SB      x register, y base register, z byte offset
+ *   LI              x register, z immediate
+ *   LA              x register, y address kind, z address
+ *   MOVE, NEG       x destination, y source
+ *   ADD ... DIV     x destination, y and z sources
+ *   SLT, XOR        x destination, y and z sources
+ *   ADDIU, SLL, SRL x destination, y source, z immediate
+ *   SLTIU, XORI     x destination, y source, z immediate
+ *   ANDI            x destination, y source, z immediate
+ *   JALR, JR        x register
+ *   JAL             y address kind, z address
+ *   BEQZ            x register, z label
+ *   BEQ ... BGT     x and y registers, z label
+ *   BLTI, BGTI      x register, y immediate, z label
+ *   B, LABEL        z label
+ *   JT              z label
+ * </pre>
+ * A JR through a jump table is followed by the table: a label and one JT
+ * per entry, each a branch to the code of the entry.
+ * Registers are indices into REGISTERS and labels are the numbers from
+ * CgenEnv.getFreshLabel.  An address is a kind and a value: the index of
+ * a string or integer constant, the value of a boolean constant, or an
+ * index into the operand pool for named addresses.
+ */
+public class CgenCode {
+
+    // Opcodes
+    static final int LW = 0;
+    static final int SW = 1;
+    static final int LI = 2;
+    static final int LA = 3;
+    static final int MOVE = 4;
+    static final int NEG = 5;
+    static final int ADD = 6;
+    static final int ADDU = 7;
+    static final int SUB = 8;
+    static final int MUL = 9;
+    static final int DIV = 10;
+    static final int ADDIU = 11;
+    static final int SLL = 12;
+    static final int JALR = 13;
+    static final int JAL = 14;
+    static final int RET = 15;
+    static final int BEQZ = 16;
+    static final int BEQ = 17;
+    static final int BNE = 18;
+    static final int BLEQ = 19;
+    static final int BLT = 20;
+    static final int BGT = 21;
+    static final int BLTI = 22;
+    static final int BGTI = 23;
+    static final int B = 24;
+    static final int LABEL = 25;
+    static final int OMITTED_MOVE = 26;     // a move to itself, printed as a comment with -c
+    static final int SLT = 27;
+    static final int XOR = 28;
+    static final int SLTIU = 29;
+    static final int XORI = 30;
+    static final int JR = 31;               // jump through a jump table
+    static final int JT = 32;               // jump table entry, printed as a branch
+    static final int SRL = 33;
+    static final int ANDI = 34;
+    static final int SB = 35;
+    static final int DELETED = -1;          // removed by an optimization, dropped by compact()
+
+    // Mnemonics of the opcodes, as in CgenConstants
+    private static final String[] MNEMONICS = {
+            CgenConstants.LW, CgenConstants.SW, CgenConstants.LI, CgenConstants.LA,
+            CgenConstants.MOVE, CgenConstants.NEG, CgenConstants.ADD, CgenConstants.ADDU,
+            CgenConstants.SUB, CgenConstants.MUL, CgenConstants.DIV, CgenConstants.ADDIU,
+            CgenConstants.SLL, CgenConstants.JALR, CgenConstants.JAL, CgenConstants.RET,
+            CgenConstants.BEQZ, CgenConstants.BEQ, CgenConstants.BNE, CgenConstants.BLEQ,
+            CgenConstants.BLT, CgenConstants.BGT, CgenConstants.BLT, CgenConstants.BGT,
+            CgenConstants.BRANCH, null, "#" + CgenConstants.MOVE,
+            CgenConstants.SLT, CgenConstants.XOR, CgenConstants.SLTIU, CgenConstants.XORI,
+            CgenConstants.JR, CgenConstants.BRANCH, CgenConstants.SRL, CgenConstants.ANDI,
+            CgenConstants.SB
+    };
+
+    // Address kinds
+    static final int ADDR_NAME = 0;         // pool entry, printed as is
+    static final int ADDR_STR = 1;          // string constant index
+    static final int ADDR_INT = 2;          // integer constant index
+    static final int ADDR_BOOL = 3;         // 0 or 1
+    static final int ADDR_INIT = 4;         // pool entry: class name
+    static final int ADDR_METHOD = 5;       // two pool entries: class and method names
+    static final int ADDR_LABEL = 6;        // label number
+
+    /**
+     * The register names.  A null register, returned by code generation
+     * that is not written yet, is kept as NULL_REG and printed as "null".
+     */
+    static final String[] REGISTERS = {
+            CgenConstants.ZERO, "$at", "$v0", "$v1",
+            CgenConstants.ACC, CgenConstants.A1, "$a2", "$a3",
+            CgenConstants.T0, CgenConstants.T1, CgenConstants.T2, CgenConstants.T3,
+            "$t4", "$t5", "$t6", "$t7",
+            CgenConstants.SELF, "$s1", "$s2", "$s3",
+            "$s4", "$s5", "$s6", "$s7",
+            "$t8", "$t9", "$k0", "$k1",
+            "$gp", CgenConstants.SP, CgenConstants.FP, CgenConstants.RA,
+            "null"
+    };
+    static final int NULL_REG = 32;
+
+    private int[] op = new int[256];
+    private int[] x = new int[256];
+    private int[] y = new int[256];
+    private int[] z = new int[256];
+    private int size = 0;
+
+    private Object[] pool = new Object[16];
+    private int poolSize = 0;
+
+    /**
+     * Returns the index of the named register.
+     */
+    static int reg(String name) {
+        if (name == null)
+            return NULL_REG;
+        for (int i = 0; i < NULL_REG; i++)
+            if (REGISTERS[i] == name)
+                return i;
+        for (int i = 0; i < NULL_REG; i++)
+            if (REGISTERS[i].equals(name))
+                return i;
+        Utilities.fatalError("Unknown register " + name);
+        return NULL_REG;
+    }
+
+    /**
+     * Appends an instruction.
+     */
+    void add(int opcode, int x, int y, int z) {
+        if (size == op.length)
+            grow(2 * size);
+        op[size] = opcode;
+        this.x[size] = x;
+        this.y[size] = y;
+        this.z[size] = z;
+        size++;
+    }
+
+    /**
+     * Adds an entry to the operand pool and returns its index.
+     */
+    int addToPool(Object o) {
+        if (poolSize == pool.length) {
+            Object[] p = new Object[2 * poolSize];
+            System.arraycopy(pool, 0, p, 0, poolSize);
+            pool = p;
+        }
+        pool[poolSize] = o;
+        return poolSize++;
+    }
+
+    int size() {
+        return size;
+    }
+
+    int op(int i) {
+        return op[i];
+    }
+
+    int x(int i) {
+        return x[i];
+    }
+
+    int y(int i) {
+        return y[i];
+    }
+
+    int z(int i) {
+        return z[i];
+    }
+
+    Object pool(int i) {
+        return pool[i];
+    }
+
+    /**
+     * Replaces instruction i.
+     */
+    void set(int i, int opcode, int x, int y, int z) {
+        op[i] = opcode;
+        this.x[i] = x;
+        this.y[i] = y;
+        this.z[i] = z;
+    }
+
+    /**
+     * Inserts an instruction before instruction i.
+     */
+    void insert(int i, int opcode, int x, int y, int z) {
+        if (size == op.length)
+            grow(2 * size);
+        System.arraycopy(op, i, op, i + 1, size - i);
+        System.arraycopy(this.x, i, this.x, i + 1, size - i);
+        System.arraycopy(this.y, i, this.y, i + 1, size - i);
+        System.arraycopy(this.z, i, this.z, i + 1, size - i);
+        size++;
+        set(i, opcode, x, y, z);
+    }
+
+    /**
+     * Marks instruction i as deleted.  It stays in place, so the indices
+     * of the other instructions do not change, until compact() is called.
+     */
+    void delete(int i) {
+        op[i] = DELETED;
+    }
+
+    /**
+     * Removes the deleted instructions.
+     *
+     * @return the number of instructions removed
+     */
+    int compact() {
+        int n = 0;
+        for (int i = 0; i < size; i++) {
+            if (op[i] != DELETED) {
+                set(n, op[i], x[i], y[i], z[i]);
+                n++;
+            }
+        }
+        int removed = size - n;
+        size = n;
+        return removed;
+    }
+
+    /**
+     * Forgets all instructions, keeping the arrays for the next method.
+     */
+    void clear() {
+        size = 0;
+        for (int i = 0; i < poolSize; i++)
+            pool[i] = null;
+        poolSize = 0;
+    }
+
+    private void grow(int n) {
+        op = copyOf(op, n);
+        x = copyOf(x, n);
+        y = copyOf(y, n);
+        z = copyOf(z, n);
+    }
+
+    private static int[] copyOf(int[] a, int n) {
+        int[] b = new int[n];
+        System.arraycopy(a, 0, b, 0, Math.min(a.length, n));
+        return b;
+    }
+
+    /**
+     * Writes the instructions as assembly code.
+     */
+    void print(CgenOutput s) {
+        for (int i = 0; i < size; i++)
+            print(s, i);
+    }
+
+    /**
+     * Writes instruction i as a line of assembly code.
+     */
+    void print(CgenOutput s, int i) {
+        int o = op[i];
+        switch (o) {
+            case LW:
+            case SW:
+            case SB:
+                s.print(MNEMONICS[o]);
+                s.print(REGISTERS[x[i]]);
+                s.print(' ');
+                s.print(z[i]);
+                s.print('(');
+                s.print(REGISTERS[y[i]]);
+                s.print(')');
+                break;
+            case LI:
+                s.print(MNEMONICS[o]);
+                s.print(REGISTERS[x[i]]);
+                s.print(' ');
+                s.print(z[i]);
+                break;
+            case LA:
+                s.print(MNEMONICS[o]);
+                s.print(REGISTERS[x[i]]);
+                s.print(' ');
+                printAddress(s, y[i], z[i]);
+                break;
+            case MOVE:
+            case NEG:
+            case OMITTED_MOVE:
+                s.print(MNEMONICS[o]);
+                s.print(REGISTERS[x[i]]);
+                s.print(' ');
+                s.print(REGISTERS[y[i]]);
+                break;
+            case ADD:
+            case ADDU:
+            case SUB:
+            case MUL:
+            case DIV:
+            case SLT:
+            case XOR:
+                s.print(MNEMONICS[o]);
+                s.print(REGISTERS[x[i]]);
+                s.print(' ');
+                s.print(REGISTERS[y[i]]);
+                s.print(' ');
+                s.print(REGISTERS[z[i]]);
+                break;
+            case ADDIU:
+            case SLL:
+            case SLTIU:
+            case XORI:
+            case SRL:
+            case ANDI:
+                s.print(MNEMONICS[o]);
+                s.print(REGISTERS[x[i]]);
+                s.print(' ');
+                s.print(REGISTERS[y[i]]);
+                s.print(' ');
+                s.print(z[i]);
+                break;
+            case JALR:
+            case JR:
+                s.print(MNEMONICS[o]);
+                s.print(REGISTERS[x[i]]);
+                break;
+            case JAL:
+                s.print(MNEMONICS[o]);
+                printAddress(s, y[i], z[i]);
+                break;
+            case RET:
+                s.print(MNEMONICS[o]);
+                break;
+            case BEQZ:
+                s.print(MNEMONICS[o]);
+                s.print(REGISTERS[x[i]]);
+                s.print(' ');
+                printLabel(s, z[i]);
+                break;
+            case BEQ:
+            case BNE:
+            case BLEQ:
+            case BLT:
+            case BGT:
+                s.print(MNEMONICS[o]);
+                s.print(REGISTERS[x[i]]);
+                s.print(' ');
+                s.print(REGISTERS[y[i]]);
+                s.print(' ');
+                printLabel(s, z[i]);
+                break;
+            case BLTI:
+            case BGTI:
+                s.print(MNEMONICS[o]);
+                s.print(REGISTERS[x[i]]);
+                s.print(' ');
+                s.print(y[i]);
+                s.print(' ');
+                printLabel(s, z[i]);
+                break;
+            case B:
+            case JT:
+                s.print(MNEMONICS[o]);
+                printLabel(s, z[i]);
+                break;
+            case LABEL:
+                printLabel(s, z[i]);
+                s.print(':');
+                break;
+            default:
+                throw new IllegalStateException("Unknown opcode " + o);
+        }
+        s.println();
+    }
+
+    private static void printLabel(CgenOutput s, int label) {
+        s.print("label");
+        s.print(label);
+    }
+
+    private void printAddress(CgenOutput s, int kind, int value) {
+        switch (kind) {
+            case ADDR_NAME:
+                s.print(pool[value].toString());
+                break;
+            case ADDR_STR:
+                s.print(CgenConstants.STRCONST_PREFIX);
+                s.print(value);
+                break;
+            case ADDR_INT:
+                s.print(CgenConstants.INTCONST_PREFIX);
+                s.print(value);
+                break;
+            case ADDR_BOOL:
+                s.print(CgenConstants.BOOLCONST_PREFIX);
+                s.print(value);
+                break;
+            case ADDR_INIT:
+                s.print((Symbol) pool[value]);
+                s.print(CgenConstants.CLASSINIT_SUFFIX);
+                break;
+            case ADDR_METHOD:
+                s.print((Symbol) pool[value]);
+                s.print(CgenConstants.METHOD_SEP);
+                s.print((Symbol) pool[value + 1]);
+                break;
+            case ADDR_LABEL:
+                printLabel(s, value);
+                break;
+            default:
+                throw new IllegalStateException("Unknown address kind " + kind);
+        }
+    }
+}
@@ -0,0 +1,291 @@
+import ast.*;
+import ast.visitor.BaseVisitor;
+
+import java.util.HashMap;
+import java.util.ListIterator;
+
+/**
+ * Folds constant expressions in the AST before code is generated.
+ * <p>
+ * Every expression visitor returns the expression that replaces the node,
+ * which is the node itself unless it folds.  Arithmetic, comparisons,
+ * not and ~ on constants fold to a constant; isvoid of new folds to false
+ * when creating the object runs no code with effects, and a conditional
+ * on a constant folds to the branch it takes.  A let variable initialized
+ * to a constant and never assigned is replaced by the constant, and the
+ * let by its body.  Integers that are results are entered in the inttable,
+ * so they are coded with the other constants.
+ * <p>
+ * Folding keeps the run-time behaviour: a division by zero, and any
+ * operation whose result does not fit in 32 bits, is left to trap at run
+ * time as before.  A node that replaces another takes over its static
+ * type, which is never more precise, so later passes see the same types.
+ * <p>
+ * The pass runs under -O after CgenEscapeAnalysis; the temporaries of the
+ * methods are counted again after it.
+ */
+class CgenConstantFolder extends CgenVisitor<ExpressionNode, Void> {
+
+    // let variables bound to constants, and HIDDEN for the variables that
+    // hide them; SymbolTable.lookup passes over null entries to the outer
+    // scopes, so null cannot hide a constant
+    private final SymbolTable<ExpressionNode> constants = new SymbolTable<>();
+    private static final ExpressionNode HIDDEN = new NoExpressionNode(0);
+
+    // the classes of the program by name; the basic classes are not in it
+    private final HashMap<Symbol, ClassNode> classes = new HashMap<>();
+
+    CgenConstantFolder(CompilationContext ctx) {
+        super(ctx);
+        constants.enterScope();
+    }
+
+    private ExpressionNode fold(ExpressionNode e) {
+        return e.accept(this, null);
+    }
+
+    @Override
+    protected ExpressionNode base(Tree node, Void data) {
+        return node instanceof ExpressionNode ? (ExpressionNode) node : null;
+    }
+
+    @Override
+    public ExpressionNode visit(ProgramNode node, Void data) {
+        for (ClassNode c : node.getClasses())
+            classes.put(c.getName(), c);
+        return super.visit(node, data);
+    }
+
+    @Override
+    public ExpressionNode visit(AttributeNode node, Void data) {
+        node.setInit(fold(node.getInit()));
+        return null;
+    }
+
+    @Override
+    public ExpressionNode visit(MethodNode node, Void data) {
+        constants.enterScope();
+        for (FormalNode f : node.getFormals())
+            constants.addId(f.getName(), HIDDEN);
+        node.setExpr(fold(node.getExpr()));
+        constants.exitScope();
+        return null;
+    }
+
+    @Override
+    public ExpressionNode visit(AssignNode node, Void data) {
+        node.setExpr(fold(node.getExpr()));
+        return node;
+    }
+
+    @Override
+    public ExpressionNode visit(DispatchNode node, Void data) {
+        node.setExpr(fold(node.getExpr()));
+        foldAll(node.getActuals().listIterator());
+        return node;
+    }
+
+    @Override
+    public ExpressionNode visit(StaticDispatchNode node, Void data) {
+        node.setExpr(fold(node.getExpr()));
+        foldAll(node.getActuals().listIterator());
+        return node;
+    }
+
+    @Override
+    public ExpressionNode visit(BlockNode node, Void data) {
+        foldAll(node.getExprs().listIterator());
+        return node;
+    }
+
+    private void foldAll(ListIterator<ExpressionNode> it) {
+        while (it.hasNext())
+            it.set(fold(it.next()));
+    }
+
+    @Override
+    public ExpressionNode visit(CondNode node, Void data) {
+        node.setCond(fold(node.getCond()));
+        node.setThenExpr(fold(node.getThenExpr()));
+        node.setElseExpr(fold(node.getElseExpr()));
+        if (node.getCond() instanceof BoolConstNode) {
+            boolean c = ((BoolConstNode) node.getCond()).getVal();
+            return replace(node, c ? node.getThenExpr() : node.getElseExpr());
+        }
+        return node;
+    }
+
+    @Override
+    public ExpressionNode visit(LoopNode node, Void data) {
+        node.setCond(fold(node.getCond()));
+        node.setBody(fold(node.getBody()));
+        return node;
+    }
+
+    @Override
+    public ExpressionNode visit(CaseNode node, Void data) {
+        node.setExpr(fold(node.getExpr()));
+        for (BranchNode b : node.getCases()) {
+            constants.enterScope();
+            constants.addId(b.getName(), HIDDEN);
+            b.setExpr(fold(b.getExpr()));
+            constants.exitScope();
+        }
+        return node;
+    }
+
+    @Override
+    public ExpressionNode visit(LetNode node, Void data) {
+        if (!(node.getInit() instanceof NoExpressionNode))
+            node.setInit(fold(node.getInit()));
+        ExpressionNode init = node.getInit();
+        boolean propagate = isConstant(init) && !isAssigned(node.getIdentifier(), node.getBody());
+        constants.enterScope();
+        constants.addId(node.getIdentifier(), propagate ? init : HIDDEN);
+        node.setBody(fold(node.getBody()));
+        constants.exitScope();
+        if (propagate) {
+            ctx.folded++;
+            return node.getBody();
+        }
+        return node;
+    }
+
+    @Override
+    public ExpressionNode visit(ObjectNode node, Void data) {
+        ExpressionNode c = constants.lookup(node.getName());
+        if (c == null || c == HIDDEN)
+            return node;
+        ctx.folded++;
+        return copy(c, node);
+    }
+
+    @Override
+    public ExpressionNode visit(BinopNode node, Void data) {
+        node.setE1(fold(node.getE1()));
+        node.setE2(fold(node.getE2()));
+        ExpressionNode e1 = node.getE1(), e2 = node.getE2();
+        if (node instanceof EqNode && !(e1 instanceof IntConstNode)) {
+            if (isConstant(e1) && e1.getClass() == e2.getClass())
+                return bool(node, value(e1).equals(value(e2)));
+            return node;
+        }
+        if (!(e1 instanceof IntConstNode && e2 instanceof IntConstNode))
+            return node;
+        Integer v1 = CgenUnboxed.intValue((IntConstNode) e1);
+        Integer v2 = CgenUnboxed.intValue((IntConstNode) e2);
+        if (v1 == null || v2 == null)
+            return node;
+        if (node instanceof EqNode)
+            return bool(node, v1.intValue() == v2.intValue());
+        if (node instanceof LTNode)
+            return bool(node, v1 < v2);
+        if (node instanceof LEqNode)
+            return bool(node, v1 <= v2);
+        try {
+            if (node instanceof PlusNode)
+                return integer(node, Math.addExact(v1, v2));
+            if (node instanceof SubNode)
+                return integer(node, Math.subtractExact(v1, v2));
+            if (node instanceof MulNode)
+                return integer(node, v1 * v2);     // mul wraps around
+            if (v2 != 0 && !(v1 == Integer.MIN_VALUE && v2 == -1))
+                return integer(node, v1 / v2);
+        } catch (ArithmeticException ex) {
+            // add and sub trap on overflow at run time
+        }
+        return node;
+    }
+
+    @Override
+    public ExpressionNode visit(UnopNode node, Void data) {
+        node.setE1(fold(node.getE1()));
+        ExpressionNode e1 = node.getE1();
+        if (node instanceof CompNode && e1 instanceof BoolConstNode)
+            return bool(node, !((BoolConstNode) e1).getVal());
+        if (node instanceof NegNode && e1 instanceof IntConstNode) {
+            Integer v = CgenUnboxed.intValue((IntConstNode) e1);
+            if (v != null && v != Integer.MIN_VALUE)
+                return integer(node, -v);
+        }
+        return node;
+    }
+
+    @Override
+    public ExpressionNode visit(IsVoidNode node, Void data) {
+        node.setE1(fold(node.getE1()));
+        ExpressionNode e1 = node.getE1();
+        if (isConstant(e1) || e1 instanceof NewNode && hasPureInit(((NewNode) e1).getType_name()))
+            return bool(node, false);
+        return node;
+    }
+
+    private static boolean isConstant(ExpressionNode e) {
+        return e instanceof IntConstNode || e instanceof BoolConstNode || e instanceof StringConstNode;
+    }
+
+    // the value of a Bool or String constant; Symbols are interned, so
+    // equal String constants have the same Symbol
+    private static Object value(ExpressionNode e) {
+        return ((ConstNode<?>) e).getVal();
+    }
+
+    private ExpressionNode bool(ExpressionNode node, boolean val) {
+        return replace(node, new BoolConstNode(node.getLineNumber(), val));
+    }
+
+    private ExpressionNode integer(ExpressionNode node, int val) {
+        Symbol sym = ctx.inttable.addString(Integer.toString(val));
+        return replace(node, new IntConstNode(node.getLineNumber(), sym));
+    }
+
+    private ExpressionNode replace(ExpressionNode node, ExpressionNode by) {
+        ctx.folded++;
+        by.setType(node.getType());
+        return by;
+    }
+
+    // a fresh copy of constant c to stand for node
+    private static ExpressionNode copy(ExpressionNode c, ExpressionNode node) {
+        ExpressionNode e;
+        if (c instanceof IntConstNode)
+            e = new IntConstNode(node.getLineNumber(), ((IntConstNode) c).getVal());
+        else if (c instanceof BoolConstNode)
+            e = new BoolConstNode(node.getLineNumber(), ((BoolConstNode) c).getVal());
+        else
+            e = new StringConstNode(node.getLineNumber(), ((StringConstNode) c).getVal());
+        e.setType(node.getType());
+        return e;
+    }
+
+    // Checks whether new of the class only runs initializers that are
+    // constants, in the class and its ancestors.
+    private boolean hasPureInit(Symbol classname) {
+        if (classname == TreeConstants.SELF_TYPE)
+            return false;
+        for (ClassNode c = classes.get(classname); c != null; c = classes.get(c.getParent())) {
+            for (FeatureNode f : c.getFeatures()) {
+                if (f instanceof AttributeNode) {
+                    ExpressionNode init = ((AttributeNode) f).getInit();
+                    if (!(init instanceof NoExpressionNode || isConstant(init)))
+                        return false;
+                }
+            }
+        }
+        return true;
+    }
+
+    // Checks whether the expression assigns to a variable of the name.
+    private static boolean isAssigned(Symbol name, ExpressionNode e) {
+        boolean[] found = new boolean[1];
+        e.accept(new BaseVisitor<Void, Void>() {
+            @Override
+            public Void visit(AssignNode node, Void data) {
+                if (node.getName() == name)
+                    found[0] = true;
+                return super.visit(node, data);
+            }
+        }, null);
+        return found[0];
+    }
+}
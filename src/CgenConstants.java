@@ -30,6 +30,12 @@ final class CgenConstants {
     final static String BOOLTAG = "_bool_tag";
     final static String STRINGTAG = "_string_tag";
     final static String HEAP_START = "heap_start";
+    final static String STACK_MAPS = "_stack_maps";
+    final static String ALLOC_SITES = "_alloc_sites";
+    final static String ALLOC_LOG = "_alloc_log";
+    final static String MEMMGR_CONFIG = "_memmgr_config";
+    final static String INT_CACHE = "_int_cache";
+    final static String INLINE_CACHE = "_inline_cache";
 
     // Naming conventions
     final static String DISPTAB_SUFFIX = "_dispTab";
@@ -50,6 +56,7 @@ final class CgenConstants {
     final static int TAG_OFFSET = 0;
     final static int SIZE_OFFSET = 1;
     final static int DISPTABLE_OFFSET = 2;
+    final static int EYECATCH_OFFSET = -1;
 
     final static int STRING_SLOTS = 1;
     final static int INT_SLOTS = 1;
@@ -63,6 +70,7 @@ final class CgenConstants {
     final static String ZERO = "$zero";        // Zero register
     final static String ACC = "$a0";        // Accumulator
     final static String A1 = "$a1";        // For arguments to prim funcs
+    final static String T0 = "$t0";        // Site number for _Prof_Alloc
     final static String SELF = "$s0";        // Ptr to self (callee saves)
     final static String T1 = "$t1";        // Temporary 1
     final static String T2 = "$t2";            // Temporary 2
@@ -70,6 +78,8 @@ final class CgenConstants {
     final static String SP = "$sp";        // Stack pointer
     final static String FP = "$fp";        // Frame pointer
     final static String RA = "$ra";        // Return address
+    final static String GP = "$gp";        // Heap allocation pointer
+    final static String HEAP_LIMIT = "$s7";    // Limit of the allocation area
 
     //
     // General-purpose registers for use by the register allocator:
@@ -102,9 +112,11 @@ final class CgenConstants {
     // Opcodes
     final static String JALR = "\tjalr\t";
     final static String JAL = "\tjal\t";
+    final static String JR = "\tjr\t";
     final static String RET = "\tjr\t" + RA + "\t";
 
     final static String SW = "\tsw\t";
+    final static String SB = "\tsb\t";
     final static String LW = "\tlw\t";
     final static String LI = "\tli\t";
     final static String LA = "\tla\t";
@@ -119,6 +131,12 @@ final class CgenConstants {
     final static String MUL = "\tmul\t";
     final static String SUB = "\tsub\t";
     final static String SLL = "\tsll\t";
+    final static String SRL = "\tsrl\t";
+    final static String SLT = "\tslt\t";
+    final static String SLTIU = "\tsltiu\t";
+    final static String XOR = "\txor\t";
+    final static String XORI = "\txori\t";
+    final static String ANDI = "\tandi\t";
     final static String BEQZ = "\tbeqz\t";
     final static String BRANCH = "\tb\t";
     final static String BEQ = "\tbeq\t";
@@ -128,7 +146,17 @@ final class CgenConstants {
     final static String BGT = "\tbgt\t";
 
     final static String OBJECT_COPY = "Object.copy";
-    final static String GENGC_ASSIGN = "_GenGC_Assign";
+    final static String MEMMGR_ALLOC = "_MemMgr_Alloc";
+    final static String PROF_ALLOC = "_Prof_Alloc";
+    final static String GENGC_OLDCOPY = "_GenGC_OldCopy";
+    final static String INT_BOX = "_Int_box";
+
+    // The card table of GenGC, as in lib/trap.handler: one byte for each
+    // 2^CARD_SHIFT bytes of memory, the addresses wrapping around after
+    // CARD_MASK + 1 cards
+    final static String GENGC_CARDS = "_GenGC_cards";
+    final static int CARD_SHIFT = 9;
+    final static int CARD_MASK = 8191;
     final static String EQUALITY_TEST = "equality_test";
     final static String CASE_ABORT = "_case_abort";
     final static String CASE_ABORT2 = "_case_abort2";
@@ -139,42 +167,4 @@ final class CgenConstants {
     // user-defined names.
     final static String TEMP1 = "_1";
 
-    // For function prologues and epilogues: how many registers/stack slots
-    // do we need?
-
-    // How many of these temps will be put in registers
-    static int getRegisterTemps(int temps) {
-        if (Flags.disable_reg_alloc)
-            return 0;
-        if (CgenConstants.NUM_REGS < temps)
-            return CgenConstants.NUM_REGS;
-        else
-            return temps;
-    }
-    // How many of these temps will be put on the stack
-    static int getStackTemps(int temps) {
-        int result = temps - getRegisterTemps(temps);
-        assert(result >= 0);
-        return result;
-    }
-
-    // If the local var denoted by the specified offset is
-    // stored in a register, returns the name of that register.
-    //
-    // Returns null if
-    //  1) register allocation is disabled, or
-    //  2) the offset refers to a formal var, or
-    //  3) the offset refers a local for which there were not enough registers.
-    // A negative value of "offset" means it's a local variable.
-
-    static String getRegister(int offset) {
-        if (!Flags.disable_reg_alloc && offset < 0) { // local variables
-            int reg = -1 - offset;  /// === (-offset -1)
-            assert (reg < CgenConstants.NUM_REGS);
-            return CgenConstants.regNames[reg];
-        }
-        else
-            return null;
-    }
-
 }
@@ -0,0 +1,49 @@
+import ast.*;
+
+/**
+ * Class hierarchy analysis: binds a dynamic dispatch statically when no
+ * class below the static type of the receiver overrides the method.
+ * <p>
+ * Since the receiver of a dispatch is an instance of its static type or
+ * of a subclass, a method that no subclass redefines is the one that is
+ * called whatever the receiver's class.  Such dispatches are marked with
+ * the class defining the method, and CgenEmitVisitor calls it directly
+ * instead of going through the dispatch table.  The dispatch still
+ * checks the receiver for void.
+ * <p>
+ * The pass runs over the whole inheritance tree under -O, once the
+ * method tables of all classes have been built.
+ */
+class CgenDevirtualize extends CgenVisitor<Void, Void> {
+
+    private CgenNode current;   // the class whose features are visited
+
+    CgenDevirtualize(CompilationContext ctx) {
+        super(ctx);
+    }
+
+    @Override
+    Void visit(CgenNode v) {
+        if (!v.basic()) {
+            current = v;
+            visit(v.getClassNode().getFeatures(), null);
+        }
+        return super.visit(v);
+    }
+
+    @Override
+    public Void visit(DispatchNode node, Void data) {
+        super.visit(node, data);
+        Symbol classname = node.getExpr().getType();
+        CgenNode c = classname == TreeConstants.SELF_TYPE
+                ? current
+                : ctx.cgenClassTable.get(classname);
+        if (ctx.cgenClassTable.isOverridden(c, node.getName())) {
+            ctx.virtualCalls++;
+        } else {
+            node.setStaticBinding(c.env.methods.lookup(node.getName()).getClassname());
+            ctx.devirtualized++;
+        }
+        return null;
+    }
+}
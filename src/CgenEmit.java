@@ -1,12 +1,14 @@
 
 import ast.Symbol;
 
-import java.io.FileOutputStream;
 import java.io.IOException;
-import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.HashMap;
 
 public class CgenEmit  {
 
+    private CompilationContext ctx;
+
     private int stringclasstag;
     private int intclasstag;
     private int boolclasstag;
@@ -14,39 +16,94 @@ public class CgenEmit  {
     /**
      * This is the stream to which assembly instructions are output
      */
-    private PrintStream s = createPrintStream();
+    private CgenOutput s;
 
-    public PrintStream getStream() {
+    public CgenOutput getStream() {
         return s;
     }
 
-    public CgenEmit(int st, int it, int bt) {
+    /**
+     * The instructions of the method being generated.  They are written
+     * to the stream at the end of the method.
+     */
+    private final CgenCode code = new CgenCode();
+
+    /**
+     * The stack maps of the calls coded so far, if a garbage collector
+     * is on.
+     */
+    private final CgenStackMaps stackMaps;
+
+    /**
+     * The allocation sites coded so far, if they are profiled or
+     * pretenured.
+     */
+    private final CgenAllocSites allocSites;
+
+    /**
+     * The class tags and methods the inline caches coded so far are
+     * primed with, by cache number; a null method is an empty cache.
+     */
+    private final ArrayList<Integer> inlineCacheTags = new ArrayList<>();
+    private final ArrayList<Cgen.MethodInfo> inlineCacheTargets = new ArrayList<>();
+
+    /**
+     * Whether the code boxes an Int through the cache of Int objects, so
+     * that the cache is emitted.
+     */
+    private boolean intCacheUsed;
+
+    /**
+     * Writes out the instructions generated since the last call,
+     * optimizing them first if code optimization is on, and records the
+     * stack maps of their calls.
+     */
+    protected void flushCode() {
+        if (Flags.cgen_optimize)
+            ctx.peepholeRemoved += CgenPeephole.optimize(code);
+        if (stackMaps != null && code.size() > 0)
+            stackMaps.record(code, frameSize, frameTemps);
+        code.print(s);
+        code.clear();
+    }
+
+    /**
+     * Flushes the output, closing it unless it is the console
+     */
+    protected void close() {
+        flushCode();
+        s.close();
+    }
+
+    public CgenEmit(CompilationContext ctx, int st, int it, int bt) {
         //this.classTable = classTable;
+        this.ctx = ctx;
+        this.s = createOutput();
         this.stringclasstag = st;
         this.intclasstag = it;
         this.boolclasstag = bt;
+        this.stackMaps = CgenStackMaps.enabled() ? new CgenStackMaps(ctx) : null;
+        this.allocSites = CgenAllocSites.enabled() ? new CgenAllocSites(ctx) : null;
     }
 
-    private PrintStream createPrintStream() {
+    private CgenOutput createOutput() {
 
-        PrintStream output = System.out;
+        CgenOutput output = null;
         String filename = null;
-        if (Flags.out_filename == null) {
-            if (Flags.in_filename != null) {
-                filename = Flags.in_filename.substring(0,
-                        Flags.in_filename.lastIndexOf('.'))
+        if (ctx.out_filename == null) {
+            if (ctx.in_filename != null) {
+                filename = ctx.in_filename.substring(0,
+                        ctx.in_filename.lastIndexOf('.'))
                         + ".s";
             }
         } else {
-            filename = Flags.out_filename;
+            filename = ctx.out_filename;
         }
 
-        if (filename != null) {
-            try {
-                output = new PrintStream(new FileOutputStream(filename));
-            } catch (IOException ex) {
-                Utilities.fatalError("Cannot open output file " + filename);
-            }
+        try {
+            output = new CgenOutput(ctx, filename);
+        } catch (IOException ex) {
+            Utilities.fatalError(ctx, "Cannot open output file " + filename);
         }
         return output;
     }
@@ -62,8 +119,10 @@ public class CgenEmit  {
     protected void codeGlobalData() {
         // The following global names must be defined first.
 
-        s.print("\t.data\n" + CgenConstants.ALIGN);
-        s.println(CgenConstants.GLOBAL + CgenConstants.CLASSNAMETAB);
+        s.print("\t.data\n");
+        s.print(CgenConstants.ALIGN);
+        s.print(CgenConstants.GLOBAL);
+        s.println(CgenConstants.CLASSNAMETAB);
         s.print(CgenConstants.GLOBAL);
         emitProtObjRef(TreeConstants.Main);
         s.println("");
@@ -79,38 +138,50 @@ public class CgenEmit  {
         s.print(CgenConstants.GLOBAL);
         codeRef(true);
         s.println("");
-        s.println(CgenConstants.GLOBAL + CgenConstants.INTTAG);
-        s.println(CgenConstants.GLOBAL + CgenConstants.BOOLTAG);
-        s.println(CgenConstants.GLOBAL + CgenConstants.STRINGTAG);
+        s.print(CgenConstants.GLOBAL);
+        s.println(CgenConstants.INTTAG);
+        s.print(CgenConstants.GLOBAL);
+        s.println(CgenConstants.BOOLTAG);
+        s.print(CgenConstants.GLOBAL);
+        s.println(CgenConstants.STRINGTAG);
 
         // We also need to know the tag of the Int, String, and Bool classes
         // during code generation.
-        s.println(CgenConstants.INTTAG + CgenConstants.LABEL
-                + CgenConstants.WORD + intclasstag);
-        s.println(CgenConstants.BOOLTAG + CgenConstants.LABEL
-                + CgenConstants.WORD + boolclasstag);
-        s.println(CgenConstants.STRINGTAG + CgenConstants.LABEL
-                + CgenConstants.WORD + stringclasstag);
+        s.print(CgenConstants.INTTAG);
+        s.print(CgenConstants.LABEL);
+        s.print(CgenConstants.WORD);
+        s.println(intclasstag);
+        s.print(CgenConstants.BOOLTAG);
+        s.print(CgenConstants.LABEL);
+        s.print(CgenConstants.WORD);
+        s.println(boolclasstag);
+        s.print(CgenConstants.STRINGTAG);
+        s.print(CgenConstants.LABEL);
+        s.print(CgenConstants.WORD);
+        s.println(stringclasstag);
     }
 
     /**
      * Generates GC choice constants (pointers to GC functions)
      */
     protected void codeSelectGc() {
-        s.println(CgenConstants.GLOBAL + "_MemMgr_INITIALIZER");
+        s.print(CgenConstants.GLOBAL);
+        s.println("_MemMgr_INITIALIZER");
         s.println("_MemMgr_INITIALIZER:");
-        s.println(CgenConstants.WORD
-                + CgenConstants.gcInitNames[Flags.cgen_Memmgr]);
+        s.print(CgenConstants.WORD);
+        s.println(CgenConstants.gcInitNames[Flags.cgen_Memmgr]);
 
-        s.println(CgenConstants.GLOBAL + "_MemMgr_COLLECTOR");
+        s.print(CgenConstants.GLOBAL);
+        s.println("_MemMgr_COLLECTOR");
         s.println("_MemMgr_COLLECTOR:");
-        s.println(CgenConstants.WORD
-                + CgenConstants.gcCollectNames[Flags.cgen_Memmgr]);
+        s.print(CgenConstants.WORD);
+        s.println(CgenConstants.gcCollectNames[Flags.cgen_Memmgr]);
 
-        s.println(CgenConstants.GLOBAL + "_MemMgr_TEST");
+        s.print(CgenConstants.GLOBAL);
+        s.println("_MemMgr_TEST");
         s.println("_MemMgr_TEST:");
-        s.println(CgenConstants.WORD
-                + ((Flags.cgen_Memmgr_Test == Flags.GC_TEST) ? "1" : "0"));
+        s.print(CgenConstants.WORD);
+        s.println((Flags.cgen_Memmgr_Test == Flags.GC_TEST) ? "1" : "0");
     }
 
     /**
@@ -125,20 +196,25 @@ public class CgenEmit  {
     protected void codeConstants() {
 
         // Add constants that are required by the code generator
-        StringTable.stringtable.addString("");
-        StringTable.inttable.addString("0");
+        ctx.stringtable.addString("");
+        ctx.inttable.addString("0");
 
         // Add class names to string table for code generation
-        for (Symbol sym : CgenEnv.classTags)
-            StringTable.stringtable.addString(sym.getName());
+        for (Symbol sym : ctx.classTags)
+            ctx.stringtable.addString(sym.getName());
 
         // Generates code definitions for all string constants in the string table.
-        for (Symbol sym : StringTable.stringtable.values())
-            codeDefString(sym);
+        // With -O, only the constants found live by CgenReachability are coded.
+        for (Symbol sym : ctx.stringtable)
+            if (isLive(sym))
+                codeDefString(sym);
 
         // Generates code definitions for all int constants in the int table.
-        for (Symbol sym : StringTable.inttable.values())
-            codeDefInt(sym);
+        // Those in the range of the cache of Int objects are defined after
+        // the code, by codeIntCache.
+        for (Symbol sym : ctx.inttable)
+            if (isLive(sym) && cachedValue(sym) == null)
+                codeDefInt(sym);
 
         // Emits code definitions for boolean constants.
         codeDef(false);
@@ -147,14 +223,85 @@ public class CgenEmit  {
     }
 
 
+    private boolean isLive(Symbol sym) {
+        return ctx.liveConstants == null || ctx.liveConstants.contains(sym);
+    }
+
+    // the value of an int constant in the range of the cache of Int
+    // objects, or null
+    private static Integer cachedValue(Symbol sym) {
+        if (!CgenUnboxed.cachesInts())
+            return null;
+        try {
+            int v = Integer.parseInt(sym.getName());
+            return v >= Flags.int_cache_min && v <= Flags.int_cache_max ? v : null;
+        } catch (NumberFormatException ex) {
+            return null;
+        }
+    }
+
+    /**
+     * Returns the label of the cache of Int objects, which is emitted
+     * once the code has used it.
+     */
+    protected String intCache() {
+        intCacheUsed = true;
+        return CgenConstants.INT_CACHE;
+    }
+
+    /**
+     * Emits the cache of Int objects if the code boxes an Int through it:
+     * one object for each value from Flags.int_cache_min to
+     * Flags.int_cache_max, in order, with its eye catcher.  The first is
+     * _int_cache, and the int constants with a value in the range are
+     * defined as the object of the value, so an Int in the range has a
+     * single object.  Otherwise these constants are defined as the others.
+     */
+    protected void codeIntCache() {
+        if (!CgenUnboxed.cachesInts())
+            return;
+        s.print("\t.data\n");
+        s.print(CgenConstants.ALIGN);
+        if (!intCacheUsed) {
+            for (Symbol sym : ctx.inttable)
+                if (isLive(sym) && cachedValue(sym) != null)
+                    codeDefInt(sym);
+            return;
+        }
+        HashMap<Integer, ArrayList<Symbol>> constants = new HashMap<>();
+        for (Symbol sym : ctx.inttable)
+            if (isLive(sym) && cachedValue(sym) != null)
+                constants.computeIfAbsent(cachedValue(sym), v -> new ArrayList<>()).add(sym);
+        s.print(CgenConstants.GLOBAL);
+        s.println(CgenConstants.INT_CACHE);
+        for (int v = Flags.int_cache_min; v <= Flags.int_cache_max; v++) {
+            s.print(CgenConstants.WORD);
+            s.println("-1");
+            if (v == Flags.int_cache_min) {
+                s.print(CgenConstants.INT_CACHE);
+                s.print(CgenConstants.LABEL);
+            }
+            for (Symbol sym : constants.getOrDefault(v, new ArrayList<>())) {
+                codeRefInt(sym);
+                s.print(CgenConstants.LABEL);
+            }
+            s.print(CgenConstants.WORD);
+            s.println(intclasstag);
+            s.print(CgenConstants.WORD);
+            s.println(CgenConstants.DEFAULT_OBJFIELDS + CgenConstants.INT_SLOTS);
+            s.print(CgenConstants.WORD);
+            emitDispTableRef(TreeConstants.Int);
+            s.println();
+            s.print(CgenConstants.WORD);
+            s.println(v);
+        }
+    }
+
     /**
      * Emits code to start the .text segment and to
      * declare the global names.
      */
     protected void codeGlobalText() {
-        s.println(CgenConstants.GLOBAL + CgenConstants.HEAP_START);
-        s.print(CgenConstants.HEAP_START + CgenConstants.LABEL);
-        s.println(CgenConstants.WORD + 0);
         s.println("\t.text");
         s.print(CgenConstants.GLOBAL);
         emitInitRef(TreeConstants.Main);
@@ -182,10 +329,13 @@ public class CgenEmit  {
     {
         s.print(CgenConstants.CLASSNAMETAB);
         s.print(CgenConstants.LABEL);
-        for (Symbol c : CgenEnv.classTags) {
+        for (Symbol c : ctx.classTags) {
             assert (c != null);
             s.print(CgenConstants.WORD);
-            codeRefString(c);
+            if (isLive(c))
+                codeRefString(c);
+            else
+                s.print(0);     // no objects of the class are created
             s.println();
         }
     }
@@ -196,13 +346,19 @@ public class CgenEmit  {
     {
         s.print(CgenConstants.CLASSOBJTAB);
         s.print(CgenConstants.LABEL);
-        for (Symbol c : CgenEnv.classTags) {
-            assert (c != null);
+        for (CgenNode nd : ctx.cgenClassTable.byTag()) {
+            Symbol c = nd.env.getClassname();
             s.print(CgenConstants.WORD);
-            emitProtObjRef(c);
+            if (nd.isInstantiated())
+                emitProtObjRef(c);
+            else
+                s.print(0);
             s.println();
             s.print(CgenConstants.WORD);
-            emitInitRef(c);
+            if (nd.isReachable())
+                emitInitRef(c);
+            else
+                s.print(0);
             s.println();
         }
     }
@@ -239,9 +395,9 @@ public class CgenEmit  {
             Symbol type_decl = env.attributeOffsets.lookup(i).getNode().getType_decl();
 
             if (TreeConstants.Int == type_decl)
-                codeRefInt(StringTable.inttable.addString("0"));
+                codeRefInt(ctx.inttable.addString("0"));
             else if (TreeConstants.Str == type_decl)
-                codeRefString(StringTable.stringtable.addString(""));
+                codeRefString(ctx.stringtable.addString(""));
             else if (TreeConstants.Bool == type_decl)
                 codeRef(false);
             else
@@ -251,9 +407,6 @@ public class CgenEmit  {
         }
     }
 
-    protected void emitNewline() {
-        s.println();
-    }
     /**
      * Emits an LW instruction.
      *
@@ -262,14 +415,8 @@ public class CgenEmit  {
      * @param source_reg the source register
      */
     protected void emitLoad(String dest_reg, int offset, String source_reg) {
-        s.print(CgenConstants.LW);
-        s.print(dest_reg);
-        s.print(" ");
-        s.print(offset * CgenConstants.WORD_SIZE);
-        s.print("(");
-        s.print(source_reg);
-        s.print(")");
-        s.println();
+        code.add(CgenCode.LW, CgenCode.reg(dest_reg), CgenCode.reg(source_reg),
+                offset * CgenConstants.WORD_SIZE);
     }
 
     /**
@@ -281,9 +428,19 @@ public class CgenEmit  {
      */
     protected void emitStore(String source_reg, int offset, String dest_reg
     ) {
-        s.println(CgenConstants.SW + source_reg + " "
-                + offset * CgenConstants.WORD_SIZE
-                + "(" + dest_reg + ")");
+        code.add(CgenCode.SW, CgenCode.reg(source_reg), CgenCode.reg(dest_reg),
+                offset * CgenConstants.WORD_SIZE);
+    }
+
+    /**
+     * Emits an SB instruction.
+     *
+     * @param source_reg the register whose low byte is stored
+     * @param offset     the byte offset from the destination register
+     * @param dest_reg   the destination register
+     */
+    protected void emitStoreByte(String source_reg, int offset, String dest_reg) {
+        code.add(CgenCode.SB, CgenCode.reg(source_reg), CgenCode.reg(dest_reg), offset);
     }
 
     /**
@@ -293,11 +450,7 @@ public class CgenEmit  {
      * @param val      the integer value
      */
     protected void emitLoadImm(String dest_reg, int val) {
-        s.print(CgenConstants.LI);
-        s.print(dest_reg);
-        s.print(" ");
-        s.print(val);
-        s.println();
+        code.add(CgenCode.LI, CgenCode.reg(dest_reg), 0, val);
     }
 
     /**
@@ -307,22 +460,17 @@ public class CgenEmit  {
      * @param address  the address from which a word is loaded
      */
     protected void emitLoadAddress(String dest_reg, String address) {
-        s.print(CgenConstants.LA);
-        s.print(dest_reg);
-        s.print(" ");
-        s.print(address);
-        s.println();
+        code.add(CgenCode.LA, CgenCode.reg(dest_reg), CgenCode.ADDR_NAME, code.addToPool(address));
     }
 
     /**
-     * Emits an LA instruction without the address part.
+     * Emits an LA instruction for a label of the method.
      *
      * @param dest_reg the destination register
+     * @param label    the label number
      */
-    protected void emitPartialLoadAddress(String dest_reg) {
-        s.print(CgenConstants.LA);
-        s.print(dest_reg);
-        s.print(" ");
+    protected void emitLoadLabel(String dest_reg, int label) {
+        code.add(CgenCode.LA, CgenCode.reg(dest_reg), CgenCode.ADDR_LABEL, label);
     }
 
     /**
@@ -332,9 +480,7 @@ public class CgenEmit  {
      * @param b        the boolean constant
      */
     protected void emitLoadBool(String dest_reg, Boolean b) {
-        emitPartialLoadAddress(dest_reg);
-        codeRef(b);
-        s.println("");
+        code.add(CgenCode.LA, CgenCode.reg(dest_reg), CgenCode.ADDR_BOOL, b ? 1 : 0);
     }
 
     /**
@@ -344,9 +490,7 @@ public class CgenEmit  {
      * @param str      the string constant
      */
     protected void emitLoadString(String dest_reg, Symbol str) {
-        emitPartialLoadAddress(dest_reg);
-        codeRefString(str);
-        s.println("");
+        code.add(CgenCode.LA, CgenCode.reg(dest_reg), CgenCode.ADDR_STR, str.getIndex());
     }
 
     /**
@@ -356,9 +500,7 @@ public class CgenEmit  {
      * @param i        the integer constant
      */
     protected void emitLoadInt(String dest_reg, Symbol i) {
-        emitPartialLoadAddress(dest_reg);
-        codeRefInt(i);
-        s.println("");
+        code.add(CgenCode.LA, CgenCode.reg(dest_reg), CgenCode.ADDR_INT, i.getIndex());
     }
 
     /**
@@ -374,12 +516,11 @@ public class CgenEmit  {
             {
                 System.err.println("    Omitting move from "
                         + source_reg + " to " + dest_reg);
-                s.print("#");
+                code.add(CgenCode.OMITTED_MOVE, CgenCode.reg(dest_reg), CgenCode.reg(source_reg), 0);
             }
-            else
-                return;
+            return;
         }
-        s.println(CgenConstants.MOVE + dest_reg + " " + source_reg);
+        code.add(CgenCode.MOVE, CgenCode.reg(dest_reg), CgenCode.reg(source_reg), 0);
     }
 
     /**
@@ -389,19 +530,34 @@ public class CgenEmit  {
      * @param source_reg the source register
      */
     protected void emitNeg(String dest_reg, String source_reg) {
-        s.println(CgenConstants.NEG + dest_reg + " " + source_reg);
+        code.add(CgenCode.NEG, CgenCode.reg(dest_reg), CgenCode.reg(source_reg), 0);
     }
 
     /**
      * Emits a binary operation instruction.
      *
-     * @param opcode the destination register
+     * @param opcode the operation, one of the arithmetic opcodes of CgenConstants
      * @param dest_reg the destination register
      * @param src1     the source register 1
      * @param src2     the source register 2
      */
     protected void emitBinop(String opcode, String dest_reg, String src1, String src2) {
-        s.println(opcode + dest_reg + " " + src1 + " " + src2);
+        int op;
+        if (opcode.equals(CgenConstants.ADD))
+            op = CgenCode.ADD;
+        else if (opcode.equals(CgenConstants.ADDU))
+            op = CgenCode.ADDU;
+        else if (opcode.equals(CgenConstants.SUB))
+            op = CgenCode.SUB;
+        else if (opcode.equals(CgenConstants.MUL))
+            op = CgenCode.MUL;
+        else if (opcode.equals(CgenConstants.DIV))
+            op = CgenCode.DIV;
+        else {
+            Utilities.fatalError(ctx, "Unknown binary operation " + opcode.trim());
+            return;
+        }
+        code.add(op, CgenCode.reg(dest_reg), CgenCode.reg(src1), CgenCode.reg(src2));
     }
 
     /**
@@ -412,7 +568,7 @@ public class CgenEmit  {
      * @param src2     the source register 2
      */
     protected void emitAdd(String dest_reg, String src1, String src2) {
-        s.println(CgenConstants.ADD + dest_reg + " " + src1 + " " + src2);
+        code.add(CgenCode.ADD, CgenCode.reg(dest_reg), CgenCode.reg(src1), CgenCode.reg(src2));
     }
 
     /**
@@ -424,7 +580,7 @@ public class CgenEmit  {
      */
     protected void emitAddu(String dest_reg, String src1, String src2
     ) {
-        s.println(CgenConstants.ADDU + dest_reg + " " + src1 + " " + src2);
+        code.add(CgenCode.ADDU, CgenCode.reg(dest_reg), CgenCode.reg(src1), CgenCode.reg(src2));
     }
 
     /**
@@ -436,7 +592,7 @@ public class CgenEmit  {
      */
     protected void emitAddiu(String dest_reg, String src, int imm
     ) {
-        s.println(CgenConstants.ADDIU + dest_reg + " " + src + " " + imm);
+        code.add(CgenCode.ADDIU, CgenCode.reg(dest_reg), CgenCode.reg(src), imm);
     }
 
     /**
@@ -448,7 +604,7 @@ public class CgenEmit  {
      */
     protected void emitDiv(String dest_reg, String src1, String src2
     ) {
-        s.println(CgenConstants.DIV + dest_reg + " " + src1 + " " + src2);
+        code.add(CgenCode.DIV, CgenCode.reg(dest_reg), CgenCode.reg(src1), CgenCode.reg(src2));
     }
 
     /**
@@ -459,7 +615,7 @@ public class CgenEmit  {
      * @param src2     the source register 2
      */
     protected void emitMul(String dest_reg, String src1, String src2) {
-        s.println(CgenConstants.MUL + dest_reg + " " + src1 + " " + src2);
+        code.add(CgenCode.MUL, CgenCode.reg(dest_reg), CgenCode.reg(src1), CgenCode.reg(src2));
     }
 
     /**
@@ -470,7 +626,7 @@ public class CgenEmit  {
      * @param src2     the source register 2
      */
     protected void emitSub(String dest_reg, String src1, String src2) {
-        s.println(CgenConstants.SUB + dest_reg + " " + src1 + " " + src2);
+        code.add(CgenCode.SUB, CgenCode.reg(dest_reg), CgenCode.reg(src1), CgenCode.reg(src2));
     }
 
     /**
@@ -481,7 +637,73 @@ public class CgenEmit  {
      * @param num      the number of bits to shift
      */
     protected void emitSll(String dest_reg, String src1, int num) {
-        s.println(CgenConstants.SLL + dest_reg + " " + src1 + " " + num);
+        code.add(CgenCode.SLL, CgenCode.reg(dest_reg), CgenCode.reg(src1), num);
+    }
+
+    /**
+     * Emits an SRL instruction.
+     *
+     * @param dest_reg the destination register
+     * @param src1     the source register 1
+     * @param num      the number of bits to shift
+     */
+    protected void emitSrl(String dest_reg, String src1, int num) {
+        code.add(CgenCode.SRL, CgenCode.reg(dest_reg), CgenCode.reg(src1), num);
+    }
+
+    /**
+     * Emits an SLT instruction.
+     *
+     * @param dest_reg the destination register
+     * @param src1     the source register 1
+     * @param src2     the source register 2
+     */
+    protected void emitSlt(String dest_reg, String src1, String src2) {
+        code.add(CgenCode.SLT, CgenCode.reg(dest_reg), CgenCode.reg(src1), CgenCode.reg(src2));
+    }
+
+    /**
+     * Emits an SLTIU instruction.
+     *
+     * @param dest_reg the destination register
+     * @param src      the source register
+     * @param imm      the immediate
+     */
+    protected void emitSltiu(String dest_reg, String src, int imm) {
+        code.add(CgenCode.SLTIU, CgenCode.reg(dest_reg), CgenCode.reg(src), imm);
+    }
+
+    /**
+     * Emits an XOR instruction.
+     *
+     * @param dest_reg the destination register
+     * @param src1     the source register 1
+     * @param src2     the source register 2
+     */
+    protected void emitXor(String dest_reg, String src1, String src2) {
+        code.add(CgenCode.XOR, CgenCode.reg(dest_reg), CgenCode.reg(src1), CgenCode.reg(src2));
+    }
+
+    /**
+     * Emits an XORI instruction.
+     *
+     * @param dest_reg the destination register
+     * @param src      the source register
+     * @param imm      the immediate
+     */
+    protected void emitXori(String dest_reg, String src, int imm) {
+        code.add(CgenCode.XORI, CgenCode.reg(dest_reg), CgenCode.reg(src), imm);
+    }
+
+    /**
+     * Emits an ANDI instruction.
+     *
+     * @param dest_reg the destination register
+     * @param src      the source register
+     * @param imm      the immediate
+     */
+    protected void emitAndi(String dest_reg, String src, int imm) {
+        code.add(CgenCode.ANDI, CgenCode.reg(dest_reg), CgenCode.reg(src), imm);
     }
 
     /**
@@ -490,7 +712,26 @@ public class CgenEmit  {
      * @param dest_reg the register with target address
      */
     protected void emitJalr(String dest_reg) {
-        s.println(CgenConstants.JALR + dest_reg);
+        code.add(CgenCode.JALR, CgenCode.reg(dest_reg), 0, 0);
+    }
+
+    /**
+     * Emits a JR instruction through a jump table, which must follow as a
+     * label and emitJumpTableEntry for every entry.
+     *
+     * @param dest_reg the register with target address
+     */
+    protected void emitJr(String dest_reg) {
+        code.add(CgenCode.JR, CgenCode.reg(dest_reg), 0, 0);
+    }
+
+    /**
+     * Emits an entry of a jump table: a branch to the label.
+     *
+     * @param label the label number
+     */
+    protected void emitJumpTableEntry(int label) {
+        code.add(CgenCode.JT, 0, 0, label);
     }
 
     /**
@@ -499,41 +740,119 @@ public class CgenEmit  {
      * @param dest the target address or label
      */
     protected void emitJal(String dest) {
-        s.println(CgenConstants.JAL + dest);
+        code.add(CgenCode.JAL, 0, CgenCode.ADDR_NAME, code.addToPool(dest));
+    }
+
+    /**
+     * Emits a JAL instruction to a method.
+     *
+     * @param classname  the class defining the method
+     * @param methodname the name of the method
+     */
+    protected void emitJal(Symbol classname, Symbol methodname) {
+        int i = code.addToPool(classname);
+        code.addToPool(methodname);
+        code.add(CgenCode.JAL, 0, CgenCode.ADDR_METHOD, i);
     }
 
     /**
      * Emits a RET instruction.
      */
     protected void emitReturn() {
-        s.println(CgenConstants.RET);
+        code.add(CgenCode.RET, 0, 0, 0);
+    }
+
+    /**
+     * Emits the write barrier of GenGC after a store into an attribute of
+     * self: the card of self is marked dirty in the card table, and the
+     * minor collections check the attributes of the old objects whose
+     * cards are dirty.
+     *
+     * @param source the register stored
+     */
+    protected void emitWriteBarrier(String source) {
+        String card = CgenConstants.T1.equals(source) ? CgenConstants.T3 : CgenConstants.T1;
+        String table = CgenConstants.T2.equals(source) ? CgenConstants.T3 : CgenConstants.T2;
+        emitSrl(card, CgenConstants.SELF, CgenConstants.CARD_SHIFT);
+        emitAndi(card, card, CgenConstants.CARD_MASK);
+        emitLoadAddress(table, CgenConstants.GENGC_CARDS);
+        emitAddu(card, card, table);
+        emitStoreByte(CgenConstants.ZERO, 0, card);
     }
 
     /**
-     * Emits a call to gc_assign.
+     * Checks whether the last instruction emitted, but for stores, loads a
+     * constant object or void into the register.  Constants are not in the
+     * heap, so storing one needs no write barrier.
      */
-    protected void emitGenGCAssign() {
-        s.println(CgenConstants.JAL + CgenConstants.GENGC_ASSIGN);
+    protected boolean holdsConstant(String reg) {
+        int i = code.size() - 1;
+        while (i >= 0 && (code.op(i) == CgenCode.SW || code.op(i) == CgenCode.SB))
+            i--;
+        if (i < 0 || code.x(i) != CgenCode.reg(reg))
+            return false;
+        if (code.op(i) == CgenCode.LA)
+            return code.y(i) == CgenCode.ADDR_STR || code.y(i) == CgenCode.ADDR_INT
+                    || code.y(i) == CgenCode.ADDR_BOOL;
+        return code.op(i) == CgenCode.MOVE && code.y(i) == CgenCode.reg(CgenConstants.ZERO);
     }
 
     protected void emitCopy() {
-        s.println(CgenConstants.JAL + CgenConstants.OBJECT_COPY);
+        emitJal(CgenConstants.OBJECT_COPY);
+    }
+
+    /**
+     * Numbers an allocation site, if the sites are profiled or pretenured.
+     *
+     * @param description what the site allocates and where
+     * @return the number of the site, or -1
+     */
+    protected int allocSite(String description) {
+        return allocSites == null ? -1 : allocSites.add(description);
+    }
+
+    /**
+     * Checks whether the objects of the allocation site are allocated in
+     * the old area of GenGC.
+     */
+    protected boolean pretenures(int site) {
+        return site >= 0 && Flags.cgen_Memmgr == Flags.GC_GENGC && allocSites.pretenures(site);
+    }
+
+    /**
+     * Emits a call to _GenGC_OldCopy, which copies the object in $a0 into
+     * the old area.
+     */
+    protected void emitOldCopy() {
+        ctx.pretenured++;
+        emitJal(CgenConstants.GENGC_OLDCOPY);
+    }
+
+    /**
+     * Enters the object just allocated at the site, in $a0, into the log
+     * of the allocation-site profile, if it is on.
+     */
+    protected void emitAllocSite(int site) {
+        if (!Flags.alloc_profile || site < 0)
+            return;
+        emitLoadImm(CgenConstants.T0, site);
+        emitJal(CgenConstants.PROF_ALLOC);
     }
 
     protected void emitEqualityTest() {
-        s.println(CgenConstants.JAL + CgenConstants.EQUALITY_TEST);
+        emitJal(CgenConstants.EQUALITY_TEST);
     }
 
     protected void emitCaseAbort() {
-        s.println(CgenConstants.JAL + CgenConstants.CASE_ABORT);
+        emitJal(CgenConstants.CASE_ABORT);
     }
 
     protected void emitCaseAbort2() {
-        s.println(CgenConstants.JAL + CgenConstants.CASE_ABORT2);
+        emitJal(CgenConstants.CASE_ABORT2);
     }
 
     protected void emitDispatchAbort() {
-        s.println(CgenConstants.JAL + CgenConstants.DISPATCH_ABORT);
+        emitJal(CgenConstants.DISPATCH_ABORT);
     }
 
     /**
@@ -543,9 +862,7 @@ public class CgenEmit  {
      * @param label the label number
      */
     protected void emitBeqz(String src, int label) {
-        s.print(CgenConstants.BEQZ + src + " ");
-        emitLabelRef(label);
-        s.println("");
+        code.add(CgenCode.BEQZ, CgenCode.reg(src), 0, label);
     }
 
     /**
@@ -556,9 +873,7 @@ public class CgenEmit  {
      * @param label the label number
      */
     protected void emitBeq(String src1, String src2, int label) {
-        s.print(CgenConstants.BEQ + src1 + " " + src2 + " ");
-        emitLabelRef(label);
-        s.println("");
+        code.add(CgenCode.BEQ, CgenCode.reg(src1), CgenCode.reg(src2), label);
     }
 
     /**
@@ -569,23 +884,34 @@ public class CgenEmit  {
      * @param label the label number
      */
     protected void emitBne(String src1, String src2, int label) {
-        s.print(CgenConstants.BNE + src1 + " " + src2 + " ");
-        emitLabelRef(label);
-        s.println("");
+        code.add(CgenCode.BNE, CgenCode.reg(src1), CgenCode.reg(src2), label);
     }
 
     /**
      * Emits a conditional branch instruction.
      *
-     * @param opcode the operation
+     * @param opcode the operation, one of the branch opcodes of CgenConstants
      * @param src1  the source register 1
      * @param src2  the source register 2
      * @param label the label number
      */
     protected void emitBranchCond(String opcode, String src1, String src2, int label) {
-        s.print(opcode + src1 + " " + src2 + " ");
-        emitLabelRef(label);
-        s.println("");
+        int op;
+        if (opcode.equals(CgenConstants.BEQ))
+            op = CgenCode.BEQ;
+        else if (opcode.equals(CgenConstants.BNE))
+            op = CgenCode.BNE;
+        else if (opcode.equals(CgenConstants.BLEQ))
+            op = CgenCode.BLEQ;
+        else if (opcode.equals(CgenConstants.BLT))
+            op = CgenCode.BLT;
+        else if (opcode.equals(CgenConstants.BGT))
+            op = CgenCode.BGT;
+        else {
+            Utilities.fatalError(ctx, "Unknown branch " + opcode.trim());
+            return;
+        }
+        code.add(op, CgenCode.reg(src1), CgenCode.reg(src2), label);
     }
 
     /**
@@ -596,9 +922,7 @@ public class CgenEmit  {
      * @param label the label number
      */
     protected void emitBleq(String src1, String src2, int label) {
-        s.print(CgenConstants.BLEQ + src1 + " " + src2 + " ");
-        emitLabelRef(label);
-        s.println("");
+        code.add(CgenCode.BLEQ, CgenCode.reg(src1), CgenCode.reg(src2), label);
     }
 
     /**
@@ -609,9 +933,7 @@ public class CgenEmit  {
      * @param label the label number
      */
     protected void emitBlt(String src1, String src2, int label) {
-        s.print(CgenConstants.BLT + src1 + " " + src2 + " ");
-        emitLabelRef(label);
-        s.println("");
+        code.add(CgenCode.BLT, CgenCode.reg(src1), CgenCode.reg(src2), label);
     }
 
     /**
@@ -622,9 +944,7 @@ public class CgenEmit  {
      * @param label the label number
      */
     protected void emitBlti(String src, int imm, int label) {
-        s.print(CgenConstants.BLT + src + " " + imm + " ");
-        emitLabelRef(label);
-        s.println("");
+        code.add(CgenCode.BLTI, CgenCode.reg(src), imm, label);
     }
 
     /**
@@ -635,9 +955,7 @@ public class CgenEmit  {
      * @param label the label number
      */
     protected void emitBgti(String src, int imm, int label) {
-        s.print(CgenConstants.BGT + src + " " + imm + " ");
-        emitLabelRef(label);
-        s.println("");
+        code.add(CgenCode.BGTI, CgenCode.reg(src), imm, label);
     }
 
     /**
@@ -646,9 +964,7 @@ public class CgenEmit  {
      * @param label the label number
      */
     protected void emitBranch(int label) {
-        s.print(CgenConstants.BRANCH);
-        emitLabelRef(label);
-        s.println("");
+        code.add(CgenCode.B, 0, 0, label);
     }
 
     /**
@@ -688,7 +1004,8 @@ public class CgenEmit  {
      * @param sym the name of the class
      */
     protected void emitDispTableRef(Symbol sym) {
-        s.print(sym + CgenConstants.DISPTAB_SUFFIX);
+        s.print(sym);
+        s.print(CgenConstants.DISPTAB_SUFFIX);
     }
 
     /**
@@ -697,7 +1014,8 @@ public class CgenEmit  {
      * @param sym the name of the class
      */
     protected void emitInitRef(Symbol sym) {
-        s.print(sym + CgenConstants.CLASSINIT_SUFFIX);
+        s.print(sym);
+        s.print(CgenConstants.CLASSINIT_SUFFIX);
     }
 
     /**
@@ -706,7 +1024,8 @@ public class CgenEmit  {
      * @param sym the name of the class
      */
     protected void emitProtObjRef(Symbol sym) {
-        s.print(sym + CgenConstants.PROTOBJ_SUFFIX);
+        s.print(sym);
+        s.print(CgenConstants.PROTOBJ_SUFFIX);
     }
 
     /**
@@ -717,22 +1036,13 @@ public class CgenEmit  {
      */
     protected void emitMethodRef(Symbol classname,
                        Symbol methodname) {
-        s.print(classname + CgenConstants.METHOD_SEP + methodname);
-    }
-
-    /**
-     * Emits a reference to a label
-     *
-     * @param label the label number
-     */
-    protected void emitLabelRef(int label) {
-        s.print("label" + label);
+        s.print(classname);
+        s.print(CgenConstants.METHOD_SEP);
+        s.print(methodname);
     }
 
     protected void emitInit(Symbol classname) {
-        s.print(CgenConstants.JAL);
-        emitInitRef(classname);
-        s.println();
+        code.add(CgenCode.JAL, 0, CgenCode.ADDR_INIT, code.addToPool(classname));
     }
 
     /**
@@ -741,8 +1051,7 @@ public class CgenEmit  {
      * @param label the label number
      */
     protected void emitLabelDef(int label) {
-        emitLabelRef(label);
-        s.println(":");
+        code.add(CgenCode.LABEL, 0, 0, label);
     }
 
     /**
@@ -752,7 +1061,7 @@ public class CgenEmit  {
         emitPush(CgenConstants.ACC);
         emitMove(CgenConstants.ACC, CgenConstants.SP);
         emitMove(CgenConstants.A1, CgenConstants.ZERO);
-        s.println(CgenConstants.JAL + CgenConstants.gcCollectNames[Flags.cgen_Memmgr]);
+        emitJal(CgenConstants.gcCollectNames[Flags.cgen_Memmgr]);
         emitAddiu(CgenConstants.SP, CgenConstants.SP, 4);
         emitLoad(CgenConstants.ACC, 0, CgenConstants.SP);
     }
@@ -763,7 +1072,7 @@ public class CgenEmit  {
      */
     protected void emitGCCheck(String source) {
         if (source != CgenConstants.A1) emitMove(CgenConstants.A1, source);
-        s.println(CgenConstants.JAL + "_gc_check");
+        emitJal("_gc_check");
     }
 
 
@@ -811,7 +1120,8 @@ public class CgenEmit  {
                     break;
                 case '\\':
                     byteMode();
-                    s.println("\t.byte\t" + (byte) '\\');
+                    s.print("\t.byte\t");
+                    s.println((byte) '\\');
                     break;
                 case '"':
                     asciiMode();
@@ -823,7 +1133,8 @@ public class CgenEmit  {
                         s.print(c);
                     } else {
                         byteMode();
-                        s.println("\t.byte\t" + (byte) c);
+                        s.print("\t.byte\t");
+                        s.println((byte) c);
                     }
             }
         }
@@ -836,7 +1147,8 @@ public class CgenEmit  {
      * Emits a reference to this boolean constant.
      */
     protected void codeRef(Boolean val) {
-        s.print(CgenConstants.BOOLCONST_PREFIX + (val ? "1" : "0"));
+        s.print(CgenConstants.BOOLCONST_PREFIX);
+        s.print(val ? "1" : "0");
     }
 
     /**
@@ -846,12 +1158,15 @@ public class CgenEmit  {
      */
     protected void codeDef(Boolean val) {
         // Add -1 eye catcher
-        s.println(CgenConstants.WORD + "-1");
+        s.print(CgenConstants.WORD);
+        s.println("-1");
         codeRef(val);
         s.print(CgenConstants.LABEL); // label
-        s.println(CgenConstants.WORD + boolclasstag); // tag
-        s.println(CgenConstants.WORD + (CgenConstants.DEFAULT_OBJFIELDS +
-                CgenConstants.BOOL_SLOTS)); // size
+        s.print(CgenConstants.WORD);
+        s.println(boolclasstag); // tag
+        s.print(CgenConstants.WORD);
+        s.println(CgenConstants.DEFAULT_OBJFIELDS +
+                CgenConstants.BOOL_SLOTS); // size
         s.print(CgenConstants.WORD);
         /* Add code to reference the dispatch table for class Bool here */
         emitDispTableRef(TreeConstants.Bool);
@@ -879,16 +1194,21 @@ public class CgenEmit  {
 
     protected void codeDefString(Symbol sym) {
         int l = sym.getName().length();
-        Symbol lensym = StringTable.inttable.addString(Integer.toString(l));
+        Symbol lensym = ctx.inttable.addString(Integer.toString(l));
+        if (ctx.liveConstants != null)
+            ctx.liveConstants.add(lensym);
 
         // Add -1 eye catcher
-        s.println(CgenConstants.WORD + "-1");
+        s.print(CgenConstants.WORD);
+        s.println("-1");
         codeRefString(sym);
         s.print(CgenConstants.LABEL); // label
-        s.println(CgenConstants.WORD + stringclasstag); // tag
-        s.println(CgenConstants.WORD + (CgenConstants.DEFAULT_OBJFIELDS +
+        s.print(CgenConstants.WORD);
+        s.println(stringclasstag); // tag
+        s.print(CgenConstants.WORD);
+        s.println(CgenConstants.DEFAULT_OBJFIELDS +
                 CgenConstants.STRING_SLOTS +
-                (sym.getName().length() + 4) / 4)); // object size
+                (sym.getName().length() + 4) / 4); // object size
         s.print(CgenConstants.WORD);
     	/* Add code to reference the dispatch table for class String here */
         emitDispTableRef(TreeConstants.Str);
@@ -908,24 +1228,29 @@ public class CgenEmit  {
      */
     protected void codeDefInt(Symbol sym) {
         // Add -1 eye catcher
-        s.println(CgenConstants.WORD + "-1");
+        s.print(CgenConstants.WORD);
+        s.println("-1");
         codeRefInt(sym);
         s.print(CgenConstants.LABEL); // label
-        s.println(CgenConstants.WORD + intclasstag); // tag
-        s.println(CgenConstants.WORD + (CgenConstants.DEFAULT_OBJFIELDS +
-                CgenConstants.INT_SLOTS)); // size
+        s.print(CgenConstants.WORD);
+        s.println(intclasstag); // tag
+        s.print(CgenConstants.WORD);
+        s.println(CgenConstants.DEFAULT_OBJFIELDS +
+                CgenConstants.INT_SLOTS); // size
         s.print(CgenConstants.WORD);
         /* Add code to reference the dispatch table for class Int here */
         emitDispTableRef(TreeConstants.Int);
         s.println();        // dispatch table
-        s.println(CgenConstants.WORD + sym.getName()); // integer value
+        s.print(CgenConstants.WORD);
+        s.println(sym.getName()); // integer value
     }
 
     /**
      * Emits a reference to this integer constant.
      */
     protected void codeRefInt(Symbol sym) {
-        s.print(CgenConstants.INTCONST_PREFIX + sym.getIndex());
+        s.print(CgenConstants.INTCONST_PREFIX);
+        s.print(sym.getIndex());
     }
 
     protected void emitLabel() {
@@ -937,12 +1262,121 @@ public class CgenEmit  {
     }
 
 
+    /**
+     * Adds an inline cache primed with a class tag and the method the
+     * class binds.
+     *
+     * @param tag    the class tag, -1 for an empty cache
+     * @param target the method, null for an empty cache
+     * @return the label of the cache
+     */
+    protected String inlineCache(int tag, Cgen.MethodInfo target) {
+        inlineCacheTags.add(tag);
+        inlineCacheTargets.add(target);
+        return CgenConstants.INLINE_CACHE + (inlineCacheTags.size() - 1);
+    }
+
+    /**
+     * Emits the inline caches, each a class tag and the address of the
+     * method that class binds.
+     */
+    protected void codeInlineCaches() {
+        if (inlineCacheTags.isEmpty())
+            return;
+        s.print("\t.data\n");
+        s.print(CgenConstants.ALIGN);
+        for (int i = 0; i < inlineCacheTags.size(); i++) {
+            s.print(CgenConstants.INLINE_CACHE + i);
+            s.print(CgenConstants.LABEL);
+            s.print(CgenConstants.WORD);
+            s.println(inlineCacheTags.get(i));
+            s.print(CgenConstants.WORD);
+            Cgen.MethodInfo target = inlineCacheTargets.get(i);
+            if (target == null)
+                s.print(0);
+            else
+                emitMethodRef(target.getClassname(), target.getMethodname());
+            s.println();
+        }
+    }
+
+    /**
+     * Emits the counts of the allocation sites and the log of the
+     * allocation-site profile; both are empty unless it is on.
+     */
+    protected void codeAllocSites() {
+        s.print("\t.data\n");
+        s.print(CgenConstants.ALIGN);
+        if (allocSites != null) {
+            allocSites.print(s);
+            return;
+        }
+        for (String name : new String[] {CgenConstants.ALLOC_SITES, CgenConstants.ALLOC_LOG}) {
+            s.print(CgenConstants.GLOBAL);
+            s.println(name);
+            s.print(name);
+            s.print(CgenConstants.LABEL);
+            s.print(CgenConstants.WORD);
+            s.println(0);
+        }
+        s.print(CgenConstants.WORD);
+        s.println(0);
+    }
+
+    /**
+     * Emits the stack maps and the configuration of the memory manager,
+     * then heap_start, which must be the last word of the data segment:
+     * the heap starts after it.  heap_start holds the address of the
+     * configuration, which the runtime copies over its defaults; it is 0
+     * in program files that have none.
+     */
+    protected void codeStackMaps() {
+        s.print("\t.data\n");
+        s.print(CgenConstants.ALIGN);
+        s.print(CgenConstants.GLOBAL);
+        s.println(CgenConstants.STACK_MAPS);
+        s.print(CgenConstants.STACK_MAPS);
+        s.print(CgenConstants.LABEL);
+        if (stackMaps != null) {
+            stackMaps.print(s);
+        } else {
+            s.print(CgenConstants.WORD);
+            s.println(0);
+        }
+        s.print(CgenConstants.MEMMGR_CONFIG);
+        s.print(CgenConstants.LABEL);
+        s.print(CgenConstants.WORD);
+        s.println(Flags.nursery_size + 3 & ~3);
+        s.print(CgenConstants.WORD);
+        s.println(Flags.old_ratio);
+        for (String name : new String[] {CgenConstants.STACK_MAPS, CgenConstants.ALLOC_SITES, CgenConstants.ALLOC_LOG}) {
+            s.print(CgenConstants.WORD);
+            s.println(name);
+        }
+        s.print(CgenConstants.GLOBAL);
+        s.println(CgenConstants.HEAP_START);
+        s.print(CgenConstants.HEAP_START);
+        s.print(CgenConstants.LABEL);
+        s.print(CgenConstants.WORD);
+        s.println(CgenConstants.MEMMGR_CONFIG);
+    }
+
+    // The number of temporaries of the current method, those of them below
+    // the objects allocated in the frame, and where its body starts in the
+    // code; for the register allocator and the stack maps.
+    private int frameSize;
+    private int frameTemps;
+    private int bodyStart;
+
     protected void prologue(int temps)
     {
-        int reg_temps = CgenConstants.getRegisterTemps(temps);
-        int stack_temps = CgenConstants.getStackTemps(temps);
-        assert ( (reg_temps + stack_temps) == temps);
+        prologue(temps, 0);
+    }
 
+    // The last objects words of the temporaries hold objects allocated in
+    // the frame; they are not allocated registers.
+    protected void prologue(int temps, int objects)
+    {
         emitAddiu(CgenConstants.SP, CgenConstants.SP,-(3 + temps) * CgenConstants.WORD_SIZE);   // allocate frame
         emitStore(CgenConstants.FP, 3 + temps, CgenConstants.SP);               // save caller's FP
         emitStore(CgenConstants.SELF, 2 + temps, CgenConstants.SP);             //  "    "       SELF
@@ -950,16 +1384,19 @@ public class CgenEmit  {
         emitAddiu(CgenConstants.FP, CgenConstants.SP, 4);                           // set new FP
         emitMove(CgenConstants.SELF, CgenConstants.ACC);                            // set SELF register
 
-        //Save callee-save registers
-        for(int i = 0; i < reg_temps; i++) {
-            //The first slot for saving registers is at FP + num_temps - 1.
-            //So the ith register is at FP + num_temps - i - 1
-            emitStore(CgenConstants.regNames[i], temps - i - 1, CgenConstants.FP);// save caller's $si
-        }
+        // With register allocation, the allocator inserts the saves of the
+        // callee-save registers it uses and clears the temporaries it
+        // leaves on the stack here once the body is complete.
+        frameSize = temps;
+        frameTemps = temps - objects;
+        bodyStart = code.size();
 
-        // Clear temporaries for GC
+        // Clear temporaries for GC, but for those the stack maps cover
+        if (Flags.disable_reg_alloc && Flags.cgen_Memmgr != Flags.GC_NOGC)
+            for (int i = CgenStackMaps.firstCleared(); i < frameTemps; i++)
+                emitStore(CgenConstants.ZERO, i, CgenConstants.FP);
         if (Flags.cgen_Memmgr != Flags.GC_NOGC)
-            for (int i = 0; i < stack_temps; i++)
+            for (int i = frameTemps; i < temps; i++)
                 emitStore(CgenConstants.ZERO, i, CgenConstants.FP);
 
         if (Flags.cgen_Memmgr_Debug == Flags.GC_DEBUG)
@@ -971,11 +1408,8 @@ public class CgenEmit  {
         if (Flags.cgen_Memmgr_Debug == Flags.GC_DEBUG)
             emitGCCheck(CgenConstants.ACC);
 
-        //Restore callee-save registers
-        int reg_temps = CgenConstants.getRegisterTemps(temps);
-        for(int i = 0; i < reg_temps; i++) {
-            emitLoad(CgenConstants.regNames[i], temps - i - 1, CgenConstants.FP); // restore caller's $si
-        }
+        // the register allocator restores the callee-save registers here
+        int bodyEnd = code.size();
 
         emitLoad(CgenConstants.FP, 3  + temps, CgenConstants.SP);               // restore caller's FP
         emitLoad(CgenConstants.SELF, 2 + temps, CgenConstants.SP);              // restore caller's SELF
@@ -983,5 +1417,9 @@ public class CgenEmit  {
         // deallocate frame
         emitAddiu(CgenConstants.SP, CgenConstants.SP, (3 + temps + num_formals) * CgenConstants.WORD_SIZE);
         emitReturn();
+
+        if (!Flags.disable_reg_alloc)
+            CgenRegAlloc.allocate(code, bodyStart, bodyEnd, frameTemps);
+        flushCode();
     }
 }
@@ -4,15 +4,22 @@ import ast.ExpressionNode;
 import ast.NoExpressionNode;
 
 class CgenEmitConstructors extends CgenEmitVisitor {
+
+    CgenEmitConstructors(CompilationContext ctx) {
+        super(ctx);
+    }
+
     @Override
     Void visit(CgenNode v) {
+        if (!v.isReachable())
+            return super.visit(v);
         env = v.env;
         if (Flags.cgen_debug) System.err.println("Coding init method of class " + env.getClassname() +
                 " first attribute: " + env.getFirstAttributeOffset() +
                 " # attributes: " + env.getNumAttributes() );
 
-        Cgen.emitter.emitInitRef(env.getClassname());
-        Cgen.emitter.emitLabel();
+        ctx.emitter.emitInitRef(env.getClassname());
+        ctx.emitter.emitLabel();
 
         int num_temps = v.env.getAttrTemps();
         if (Flags.cgen_debug) System.err.println("Number of temporaries = " + num_temps);
@@ -21,14 +28,14 @@ class CgenEmitConstructors extends CgenEmitVisitor {
         // no formals
         env.vars.addId(TreeConstants.self, new Cgen.SelfInfo());
 
-        Cgen.emitter.prologue(num_temps);
+        ctx.emitter.prologue(num_temps);
 
         // constructor of the parent class
         // must be invoked prior to initializing any of the attributes
         // of the class.
         // root does not have a parent
-        if (v != Cgen.classTable.root()) {
-            Cgen.emitter.emitInit(v.getClassNode().getParent());
+        if (v != ctx.cgenClassTable.root()) {
+            ctx.emitter.emitInit(v.getClassNode().getParent());
         }
 
         for(int i = env.getFirstAttributeOffset(); i < env.getFirstAttributeOffset() + env.getNumAttributes(); i++){
@@ -36,9 +43,9 @@ class CgenEmitConstructors extends CgenEmitVisitor {
         }
 
         // result of evaluting a constructor is self
-        Cgen.emitter.emitMove(CgenConstants.ACC,CgenConstants.SELF);
+        ctx.emitter.emitMove(CgenConstants.ACC,CgenConstants.SELF);
 
-        Cgen.emitter.epilogue(num_temps,0);
+        ctx.emitter.epilogue(num_temps,0);
         env.vars.exitScope();
 
         super.visit(v);
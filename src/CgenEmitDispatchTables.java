@@ -2,10 +2,29 @@ import ast.Symbol;
 
 class CgenEmitDispatchTables extends CgenVisitor {
 
-    // Emit the dispatch table of a class
+    CgenEmitDispatchTables(CompilationContext ctx) {
+        super(ctx);
+    }
+
+    // Emit the dispatch table of a class: the methods in the order of
+    // their offsets.  The entries of methods found unreachable under -O
+    // are 0, since no dispatch selects them.
     @Override
     Void visit(CgenNode v) {
-      /* TODO */
-        return null;
+        if (v.isReachable()) {
+            CgenOutput s = ctx.emitter.getStream();
+            ctx.emitter.emitDispTableRef(v.env.getClassname());
+            s.print(CgenConstants.LABEL);
+            for (int i = 0; i < v.env.getNumMethods(); i++) {
+                Cgen.MethodInfo minfo = v.env.methodOffsets.lookup(i);
+                s.print(CgenConstants.WORD);
+                if (minfo.isReachable())
+                    ctx.emitter.emitMethodRef(minfo.getClassname(), minfo.getMethodname());
+                else
+                    s.print(0);
+                s.println();
+            }
+        }
+        return super.visit(v);
     }
 }
@@ -3,6 +3,11 @@ import ast.FormalNode;
 import ast.MethodNode;
 
 class CgenEmitMethods extends CgenEmitVisitor {
+
+    CgenEmitMethods(CompilationContext ctx) {
+        super(ctx);
+    }
+
     @Override
     Void visit(CgenNode v) {
         if (!v.basic()) {
@@ -21,36 +26,51 @@ class CgenEmitMethods extends CgenEmitVisitor {
 
     @Override
     public String visit(MethodNode node, String target) {
+        Cgen.MethodInfo minfo = env.methods.lookup(node.getName());
+        if (!minfo.isReachable()) {
+            if (Flags.cgen_debug) System.err.println("  Skipping unreachable method: " + node.getName().getName());
+            return null;
+        }
         if (Flags.cgen_debug) System.err.println("  Coding method: " + node.getName().getName());
-        int num_temps = env.methods.lookup(node.getName()).getTemps();
+        // the frame objects are above the temporaries
+        int num_temps = minfo.getTemps() + minfo.getObjects();
         int num_formals = node.getFormals().size();
         env.vars.enterScope();
+        env.setNextObjectOffset(minfo.getTemps());
 
         // The first formal is at the highest address of the stack frame,
         // which is beyond all the temporaries (num_temporaries), the
         // callee-save area (3 words), and at the end of formals (num_formals-1).
         int next_formal = num_temps + 2 + num_formals;
+        firstFormal = next_formal;
         for (FormalNode f : node.getFormals()) {
             Cgen.LocalInfo linfo = new Cgen.LocalInfo(next_formal--);
             env.vars.addId(f.getName(), linfo);
         }
         env.vars.addId(TreeConstants.self, new Cgen.SelfInfo());
 
-        Cgen.emitter.emitMethodRef(env.getClassname(), node.getName());
-        Cgen.emitter.emitLabel();
-        Cgen.emitter.prologue(num_temps);
+        ctx.emitter.emitMethodRef(env.getClassname(), node.getName());
+        ctx.emitter.emitLabel();
+        ctx.emitter.prologue(num_temps, minfo.getObjects());
 
         if (Flags.cgen_Memmgr_Debug == Flags.GC_DEBUG)
             for (int i = num_formals - 1; i >= 0; i--)
             {
-                Cgen.emitter.emitLoad(CgenConstants.A1, 3 + num_temps + i, CgenConstants.FP);
-                Cgen.emitter.emitGCCheck(CgenConstants.A1);
+                ctx.emitter.emitLoad(CgenConstants.A1, 3 + num_temps + i, CgenConstants.FP);
+                ctx.emitter.emitGCCheck(CgenConstants.A1);
             }
 
+        // Self calls in tail position jump here with the new arguments in
+        // the formals and the receiver in self.
+        if (minfo.hasTailCalls()) {
+            tailCallEntry = env.getFreshLabel();
+            ctx.emitter.emitLabelDef(tailCallEntry);
+        }
+
         String result = node.getExpr().accept(this, CgenConstants.ACC);
-        Cgen.emitter.emitMove(CgenConstants.ACC, result);
+        ctx.emitter.emitMove(CgenConstants.ACC, result);
 
-        Cgen.emitter.epilogue(num_temps,num_formals);
+        ctx.emitter.epilogue(num_temps,num_formals);
         env.vars.exitScope();
 
         return null;
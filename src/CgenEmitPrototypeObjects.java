@@ -1,7 +1,13 @@
 class CgenEmitPrototypeObjects extends CgenVisitor {
+
+    CgenEmitPrototypeObjects(CompilationContext ctx) {
+        super(ctx);
+    }
+
     @Override
     Void visit(CgenNode v) {
-        Cgen.emitter.codePrototypeObject(v.env);
+        if (v.isInstantiated())
+            ctx.emitter.codePrototypeObject(v.env);
         super.visit(v);
         return null;
     }
@@ -1,5 +1,6 @@
 import ast.*;
 
+import java.util.Arrays;
 import java.util.List;
 
 public class CgenEmitVisitor extends CgenVisitor<String, String>{
@@ -7,6 +8,18 @@ public class CgenEmitVisitor extends CgenVisitor<String, String>{
     /* Emit code for expressions */
     CgenEnv env;
 
+    // the label tail calls jump to, after the prologue of the method being
+    // coded, and the frame offset of its first formal
+    int tailCallEntry;
+    int firstFormal;
+
+    // the classes by tag, for priming inline caches
+    private CgenNode[] byTag;
+
+    public CgenEmitVisitor(CompilationContext ctx) {
+        super(ctx);
+    }
+
     //  target: if there is any choice, put the result here, but
     //  there are no guarantees.
     //  Use forceDest instead if you really care.
@@ -17,7 +30,7 @@ public class CgenEmitVisitor extends CgenVisitor<String, String>{
     public String visit(AssignNode node, String target) {
         Cgen.VarInfo lhs = env.vars.lookup(node.getName());
         String rhs_value = node.getExpr().accept(this, target);
-        lhs.emitUpdate(rhs_value);
+        lhs.emitUpdate(ctx.emitter, rhs_value);
         return rhs_value;
     }
 
@@ -29,6 +42,8 @@ public class CgenEmitVisitor extends CgenVisitor<String, String>{
     //    5. The dispatch table of the dispatch value is loaded.
     //    6. The dispatch table is indexed with the method offset.
     //    7. Jump to the method.
+    //// A dispatch bound statically by CgenDevirtualize jumps to the method
+    //// directly after step 4.
     //// Static dispatch has the same steps as normal dispatch, except
     //// the dispatch table is taken from the user-specified class.
 
@@ -37,112 +52,327 @@ public class CgenEmitVisitor extends CgenVisitor<String, String>{
         Symbol classname = node.getExpr().getType();
         if (classname == TreeConstants.SELF_TYPE)
             classname = env.getClassname();
-        CgenNode c = Cgen.classTable.get(classname);
+        CgenNode c = ctx.cgenClassTable.get(classname);
         Cgen.MethodInfo minfo = c.env.methods.lookup(node.getName());
+        if (node.getInlined() != null) {
+            emitInlinedDispatch(node);
+            return CgenConstants.ACC;
+        }
+        if (node.isTailCall()) {
+            emitTailCall(node);
+            return CgenConstants.ACC;
+        }
         for (ExpressionNode e : node.getActuals()) {
             String r_actual = e.accept(this, CgenConstants.ACC);
-            Cgen.emitter.emitPush(r_actual);
+            ctx.emitter.emitPush(r_actual);
         }
         forceDest(node.getExpr(), CgenConstants.ACC);
         if (Flags.cgen_debug) System.err.println("    Dispatch to " + node.getName());
-        int lab = CgenEnv.getFreshLabel();
-        Cgen.emitter.emitBne(CgenConstants.ACC,CgenConstants.ZERO,lab);      // test for void
-        Cgen.emitter.emitLoadString(CgenConstants.ACC, env.getFilename());
-        Cgen.emitter.emitLoadImm(CgenConstants.T1, node.getLineNumber());
-        Cgen.emitter.emitDispatchAbort();
-        Cgen.emitter.emitLabelDef(lab);
-        Cgen.emitter.emitLoad(CgenConstants.T1, CgenConstants.DISPTABLE_OFFSET, CgenConstants.ACC);
-        Cgen.emitter.emitLoad(CgenConstants.T1, minfo.getOffset(), CgenConstants.T1);
-        Cgen.emitter.emitJalr(CgenConstants.T1);
+        emitVoidDispatchCheck(node);
+        if (node.getStaticBinding() != null) {
+            ctx.emitter.emitJal(node.getStaticBinding(), node.getName());
+        } else if (Flags.inline_caches) {
+            emitCachedDispatch(c, minfo);
+        } else {
+            ctx.emitter.emitLoad(CgenConstants.T1, CgenConstants.DISPTABLE_OFFSET, CgenConstants.ACC);
+            ctx.emitter.emitLoad(CgenConstants.T1, minfo.getOffset(), CgenConstants.T1);
+            ctx.emitter.emitJalr(CgenConstants.T1);
+        }
+        if (node.getName() == TreeConstants.copy && node.getActuals().isEmpty())
+            ctx.emitter.emitAllocSite(ctx.emitter.allocSite("copy" + siteOf(node)));
         return CgenConstants.ACC;
     }
 
+    // where an allocation site is, for the table of the profile
+    private String siteOf(ExpressionNode node) {
+        return " in " + env.getClassname() + ", line " + node.getLineNumber();
+    }
+
+    // Aborts the program if the receiver in $a0 is void
+    private void emitVoidDispatchCheck(DispatchNode node) {
+        int lab = env.getFreshLabel();
+        ctx.emitter.emitBne(CgenConstants.ACC,CgenConstants.ZERO,lab);      // test for void
+        ctx.emitter.emitLoadString(CgenConstants.ACC, env.getFilename());
+        ctx.emitter.emitLoadImm(CgenConstants.T1, node.getLineNumber());
+        ctx.emitter.emitDispatchAbort();
+        ctx.emitter.emitLabelDef(lab);
+    }
+
+    //// Inlined dispatch (CgenInliner):
+    //    1. The arguments are evaluated and stored in fresh temporaries.
+    //    2. The dispatch expression is evaluated into $a0 and tested for void.
+    //    3. self is saved in another temporary, and the receiver becomes self.
+    //    4. The method body is coded in the environment of the class that
+    //       defines it, with the formals bound to the temporaries of step 1.
+    //    5. self is restored; the result is in $a0.
+    private void emitInlinedDispatch(DispatchNode node) {
+        MethodNode method = node.getInlined();
+        if (Flags.cgen_debug) System.err.println("    Inlining " + node.getName());
+        Symbol temp = ctx.idtable.addString(CgenConstants.TEMP1);
+        int[] formals = new int[node.getActuals().size()];
+        int i = 0;
+        for (ExpressionNode e : node.getActuals()) {
+            String r_actual = e.accept(this, CgenConstants.ACC);
+            formals[i++] = env.getNextTempOffset();
+            env.addLocal(temp);
+            env.vars.lookup(temp).emitUpdate(ctx.emitter, r_actual);
+        }
+        forceDest(node.getExpr(), CgenConstants.ACC);
+        emitVoidDispatchCheck(node);
+
+        int saved_self = env.getNextTempOffset();
+        env.addLocal(temp);
+        env.vars.lookup(temp).emitUpdate(ctx.emitter, CgenConstants.SELF);
+        ctx.emitter.emitMove(CgenConstants.SELF, CgenConstants.ACC);
+
+        CgenEnv caller = env;
+        env = new CgenEnv(ctx.cgenClassTable.get(node.getStaticBinding()).env, caller.getNextTempOffset());
+        env.setNextObjectOffset(caller.getNextObjectOffset());
+        env.vars.enterScope();
+        env.vars.addId(TreeConstants.self, new Cgen.SelfInfo());
+        i = 0;
+        for (FormalNode f : method.getFormals())
+            env.vars.addId(f.getName(), new Cgen.LocalInfo(formals[i++]));
+        forceDest(method.getExpr(), CgenConstants.ACC);
+        env = caller;
+
+        ctx.emitter.emitLoad(CgenConstants.SELF, saved_self, CgenConstants.FP);
+        for (i = 0; i <= formals.length; i++)
+            env.removeLocal();
+    }
+
+    //// Self call in tail position (CgenTailCalls):
+    //    1. The arguments are evaluated and pushed, as for a call.
+    //    2. The dispatch expression is evaluated into $a0 and tested for void.
+    //    3. The arguments are popped into the formals of the current frame;
+    //       all are evaluated first, as they may read the formals.
+    //    4. The receiver becomes self, and the code jumps back to the start
+    //       of the body.
+    private void emitTailCall(DispatchNode node) {
+        if (Flags.cgen_debug) System.err.println("    Tail call to " + node.getName());
+        for (ExpressionNode e : node.getActuals()) {
+            String r_actual = e.accept(this, CgenConstants.ACC);
+            ctx.emitter.emitPush(r_actual);
+        }
+        forceDest(node.getExpr(), CgenConstants.ACC);
+        emitVoidDispatchCheck(node);
+        for (int i = node.getActuals().size() - 1; i >= 0; i--) {
+            ctx.emitter.emitLoad(CgenConstants.T1, 1, CgenConstants.SP);
+            ctx.emitter.emitAddiu(CgenConstants.SP, CgenConstants.SP, 4);
+            ctx.emitter.emitStore(CgenConstants.T1, firstFormal - i, CgenConstants.FP);
+        }
+        ctx.emitter.emitMove(CgenConstants.SELF, CgenConstants.ACC);
+        ctx.emitter.emitBranch(tailCallEntry);
+    }
+
+    //// Inline cache for a dispatch on a receiver in $a0 (flag -i):
+    //    1. Each dispatch has a cache, a class tag and the method that class
+    //       binds, primed with the first instantiated class at or below the
+    //       static type of the receiver.
+    //    2. The receiver's class tag is compared with the cached tag; on a
+    //       hit, the cached method is called.
+    //    3. On a miss, the method is looked up in the dispatch table, and
+    //       the cache is rewritten with the receiver's tag and the method.
+    private void emitCachedDispatch(CgenNode c, Cgen.MethodInfo minfo) {
+        CgenNode primed = primedClass(c);
+        String cache = primed == null ? ctx.emitter.inlineCache(-1, null)
+                : ctx.emitter.inlineCache(primed.env.getClassTag(), primed.env.methods.lookup(minfo.getMethodname()));
+        int hit = env.getFreshLabel();
+        int call = env.getFreshLabel();
+        ctx.emitter.emitLoadAddress(CgenConstants.T2, cache);
+        ctx.emitter.emitLoad(CgenConstants.T1, CgenConstants.TAG_OFFSET, CgenConstants.ACC);
+        ctx.emitter.emitLoad(CgenConstants.T3, 0, CgenConstants.T2);
+        ctx.emitter.emitBeq(CgenConstants.T1, CgenConstants.T3, hit);
+        ctx.emitter.emitStore(CgenConstants.T1, 0, CgenConstants.T2);
+        ctx.emitter.emitLoad(CgenConstants.T1, CgenConstants.DISPTABLE_OFFSET, CgenConstants.ACC);
+        ctx.emitter.emitLoad(CgenConstants.T1, minfo.getOffset(), CgenConstants.T1);
+        ctx.emitter.emitStore(CgenConstants.T1, 1, CgenConstants.T2);
+        ctx.emitter.emitBranch(call);
+        ctx.emitter.emitLabelDef(hit);
+        ctx.emitter.emitLoad(CgenConstants.T1, 1, CgenConstants.T2);
+        ctx.emitter.emitLabelDef(call);
+        ctx.emitter.emitJalr(CgenConstants.T1);
+    }
+
+    // The class an inline cache on receivers of static type c is primed
+    // with: the first instantiated class in tag order at or below c, or c
+    // itself when reachability has not run.  Null if none is instantiated.
+    private CgenNode primedClass(CgenNode c) {
+        if (ctx.liveConstants == null)
+            return c;
+        if (byTag == null)
+            byTag = ctx.cgenClassTable.byTag();
+        for (int tag = c.env.getClassTag(); tag <= c.env.getMaxChildTag(); tag++)
+            if (byTag[tag].isInstantiated())
+                return byTag[tag];
+        return null;
+    }
+
     @Override
     public String visit(StaticDispatchNode node, String target) {
         /* TODO */
         return CgenConstants.ACC;
     }
 
-    // The cases are tested in the order
-    // of most specific to least specific.  Since tags are assigned
-    // in depth-first order with the root being assigned 0, tests for higher-numbered
-    // classes should be emitted before lower-numbered classes.
+    //// Case:
+    //    1. The expression is evaluated and tested for void, and its class
+    //       tag is loaded into $t2.
+    //    2. Every class tag selects the branch for its closest ancestor
+    //       among the branch types, or the abort code if there is none.
+    //       Tags are assigned in depth-first order, so the tags below a
+    //       class are the range from its tag to its max child tag, and the
+    //       selection is found in one sweep over the tags (caseTargets).
+    //    3. The code jumps to the selected branch through a table indexed
+    //       by the tag if the tags that select a branch form at least
+    //       TABLE_MIN_RUNS runs of the same label, and the table has no
+    //       more than TABLE_DENSITY entries per run.  Otherwise it finds
+    //       the run of the tag by binary search.
+    //    4. Each branch binds its variable to $a0, evaluates its body and
+    //       jumps to the end.
+
+    // the fewest runs of tags selecting the same branch, and the most
+    // entries per run, for which a case jumps through a table
+    static final int TABLE_MIN_RUNS = 4;
+    static final int TABLE_DENSITY = 4;
 
     @Override
     public String visit(CaseNode node, String target) {
-        int out_label = CgenEnv.getFreshLabel();
+        int out_label = env.getFreshLabel();
 
         String r_expr = node.getExpr().accept(this, CgenConstants.ACC);
-        int lab = CgenEnv.getFreshLabel();
-        Cgen.emitter.emitBne(r_expr,CgenConstants.ZERO,lab);      // test for void
-        Cgen.emitter.emitLoadString(CgenConstants.ACC, env.getFilename());
-        Cgen.emitter.emitLoadImm(CgenConstants.T1, node.getLineNumber());
-        Cgen.emitter.emitCaseAbort2();
-        Cgen.emitter.emitLabelDef(lab);
-        Cgen.emitter.emitLoad(CgenConstants.T2, CgenConstants.TAG_OFFSET, r_expr);  // fetch the class tag
-
-        for (int class_num = CgenEnv.getLastTag()-1; class_num >=0; class_num--)
-            for(BranchNode b : node.getCases()) {
-                int tag = Cgen.classTable.get(b.getType_decl()).env.getClassTag();
-                if (class_num == tag) {
-                    if (Flags.cgen_debug) System.err.println("    Coding case " + b.getType_decl());
-                    // result is in ACC
-                    // r_newvar is the value that we did the case on.  It will be bound to the new var.
-                    String r_newvar = CgenConstants.ACC;
-
-                    lab = CgenEnv.getFreshLabel();
-                    CgenEnv downcast = Cgen.classTable.get(b.getType_decl()).env;
-                    int class_tag = downcast.getClassTag();
-                    int last_tag  = downcast.getMaxChildTag();
-
-                    Cgen.emitter.emitBlti(CgenConstants.T2, class_tag, lab);
-                    Cgen.emitter.emitBgti(CgenConstants.T2, last_tag, lab);
-                    env.addLocal(b.getName());
-                    env.vars.lookup(b.getName()).emitUpdate(r_newvar);
-                    forceDest(b.getExpr(), CgenConstants.ACC);
-                    env.removeLocal();
-                    Cgen.emitter.emitBranch(out_label);
-                    Cgen.emitter.emitLabelDef(lab);
-                }
+        int lab = env.getFreshLabel();
+        ctx.emitter.emitBne(r_expr,CgenConstants.ZERO,lab);      // test for void
+        ctx.emitter.emitLoadString(CgenConstants.ACC, env.getFilename());
+        ctx.emitter.emitLoadImm(CgenConstants.T1, node.getLineNumber());
+        ctx.emitter.emitCaseAbort2();
+        ctx.emitter.emitLabelDef(lab);
+        ctx.emitter.emitLoad(CgenConstants.T2, CgenConstants.TAG_OFFSET, r_expr);  // fetch the class tag
+
+        List<BranchNode> cases = node.getCases();
+        int[] labels = new int[cases.size()];
+        for (int i = 0; i < labels.length; i++)
+            labels[i] = env.getFreshLabel();
+        int abort = env.getFreshLabel();
+        int[] select = caseTargets(cases, labels, abort);
+
+        // The runs of tags that select the same label
+        int runs = 0;
+        int[] starts = new int[select.length];
+        int[] targets = new int[select.length];
+        for (int tag = 0; tag < select.length; tag++) {
+            if (tag == 0 || select[tag] != select[tag - 1]) {
+                starts[runs] = tag;
+                targets[runs++] = select[tag];
             }
-        Cgen.emitter.emitCaseAbort();
-        Cgen.emitter.emitLabelDef(out_label);
+        }
+        // The tags from lo to hi are those that select a branch, with the
+        // runs that abort between them
+        int first = targets[0] == abort ? 1 : 0;
+        int last = targets[runs - 1] == abort ? runs - 2 : runs - 1;
+        int lo = starts[first];
+        int hi = last + 1 < runs ? starts[last + 1] - 1 : select.length - 1;
+        int inner = last - first + 1;
+        if (inner >= TABLE_MIN_RUNS && hi - lo + 1 <= TABLE_DENSITY * inner)
+            emitCaseTable(select, lo, hi, abort);
+        else
+            emitCaseSearch(starts, targets, 0, runs - 1);
+
+        for (int i = 0; i < labels.length; i++) {
+            BranchNode b = cases.get(i);
+            if (Flags.cgen_debug) System.err.println("    Coding case " + b.getType_decl());
+            // r_newvar is the value that we did the case on.  It will be bound to the new var.
+            String r_newvar = CgenConstants.ACC;
+            ctx.emitter.emitLabelDef(labels[i]);
+            env.addLocal(b.getName());
+            env.vars.lookup(b.getName()).emitUpdate(ctx.emitter, r_newvar);
+            forceDest(b.getExpr(), CgenConstants.ACC);
+            env.removeLocal();
+            ctx.emitter.emitBranch(out_label);
+        }
+        ctx.emitter.emitLabelDef(abort);
+        ctx.emitter.emitCaseAbort();
+        ctx.emitter.emitLabelDef(out_label);
         return CgenConstants.ACC;
     }
 
+    // Returns the label every class tag selects: that of the branch for the
+    // closest ancestor of the class, or abort.  The branches whose ranges
+    // contain the current tag are kept on a stack, innermost on top.
+    private int[] caseTargets(List<BranchNode> cases, int[] labels, int abort) {
+        int[] branchAt = new int[env.getLastTag()];
+        int[] lastTag = new int[cases.size()];
+        Arrays.fill(branchAt, -1);
+        for (int i = 0; i < cases.size(); i++) {
+            CgenEnv downcast = ctx.cgenClassTable.get(cases.get(i).getType_decl()).env;
+            branchAt[downcast.getClassTag()] = i;
+            lastTag[i] = downcast.getMaxChildTag();
+        }
+        int[] select = new int[branchAt.length];
+        int[] open = new int[cases.size()];
+        int top = 0;
+        for (int tag = 0; tag < select.length; tag++) {
+            while (top > 0 && lastTag[open[top - 1]] < tag)
+                top--;
+            if (branchAt[tag] >= 0)
+                open[top++] = branchAt[tag];
+            select[tag] = top > 0 ? labels[open[top - 1]] : abort;
+        }
+        return select;
+    }
+
+    // Jumps through a table of the labels selected by tags lo to hi.
+    private void emitCaseTable(int[] select, int lo, int hi, int abort) {
+        if (lo > 0)
+            ctx.emitter.emitBlti(CgenConstants.T2, lo, abort);
+        if (hi < select.length - 1)
+            ctx.emitter.emitBgti(CgenConstants.T2, hi, abort);
+        int table = env.getFreshLabel();
+        ctx.emitter.emitLoadLabel(CgenConstants.T1, table);
+        if (lo > 0)
+            ctx.emitter.emitAddiu(CgenConstants.T2, CgenConstants.T2, -lo);
+        ctx.emitter.emitSll(CgenConstants.T2, CgenConstants.T2, 2);
+        ctx.emitter.emitAddu(CgenConstants.T1, CgenConstants.T1, CgenConstants.T2);
+        ctx.emitter.emitJr(CgenConstants.T1);
+        ctx.emitter.emitLabelDef(table);
+        for (int tag = lo; tag <= hi; tag++)
+            ctx.emitter.emitJumpTableEntry(select[tag]);
+    }
+
+    // Finds the run of the tag among runs i to j by binary search, and
+    // branches to its label.
+    private void emitCaseSearch(int[] starts, int[] targets, int i, int j) {
+        if (i == j) {
+            ctx.emitter.emitBranch(targets[i]);
+            return;
+        }
+        int mid = (i + j + 1) / 2;
+        int left = env.getFreshLabel();
+        ctx.emitter.emitBlti(CgenConstants.T2, starts[mid], left);
+        emitCaseSearch(starts, targets, mid, j);
+        ctx.emitter.emitLabelDef(left);
+        emitCaseSearch(starts, targets, i, mid - 1);
+    }
+
     @Override
     public String visit(LetNode node, String target) {
-        // r_newvar is the register to which we think the new variable will be
-        //  assigned.
-        // r_newvar is null if register allocation is disabled or no regs availible.
-        //r_init is the register that holds the result of the init expr.  We'd like
-        //  r_init to be the same as r_newvar.
-        String r_newvar = CgenConstants.getRegister(env.getNextTempOffset());
-
-        String r_init = r_newvar;
-        if (r_init == null){
-            r_init = CgenConstants.ACC;
-        }
+        // r_init is the register that holds the result of the init expr.
+        // The new variable gets a stack slot; the register allocator may
+        // later move it into a register.
+        String r_init = CgenConstants.ACC;
 
         if (node.getInit() instanceof NoExpressionNode)
         {
             if (TreeConstants.Int == node.getType_decl())
             {
-                Cgen.emitter.emitPartialLoadAddress(r_init);
-                Cgen.emitter.codeRefInt(StringTable.inttable.get("0"));
-                Cgen.emitter.emitNewline();
+                ctx.emitter.emitLoadInt(r_init, ctx.inttable.lookup("0"));
             }
             else if (TreeConstants.Str == node.getType_decl())
             {
-                Cgen.emitter.emitPartialLoadAddress(r_init);
-                Cgen.emitter.codeRefString(StringTable.stringtable.get(""));
-                Cgen.emitter.emitNewline();
+                ctx.emitter.emitLoadString(r_init, ctx.stringtable.lookup(""));
             }
             else if (TreeConstants.Bool == node.getType_decl())
             {
-                Cgen.emitter.emitPartialLoadAddress(r_init);
-                Cgen.emitter.codeRef(false);
-                Cgen.emitter.emitNewline();
+                ctx.emitter.emitLoadBool(r_init, false);
             }
             else
             {
@@ -155,27 +385,150 @@ public class CgenEmitVisitor extends CgenVisitor<String, String>{
         }
 
         //Register r_init now holds the location of the value to which newvar should
-        //be initialized.  Hopefully, r_init and newvar are one and the same, in
-        //which case the code_update is a nop.
+        //be initialized.
         env.addLocal(node.getIdentifier());
         Cgen.VarInfo newvar = env.vars.lookup(node.getIdentifier());
-        newvar.emitUpdate(r_init);
-
-        //test that r_newvar really contains the register to which newvar
-        //was assigned.
-        assert( CgenConstants.regEq(newvar.getRegister(), r_newvar) );
+        newvar.emitUpdate(ctx.emitter, r_init);
 
+        // an object allocated in the frame keeps its words until the end
+        // of the body
+        int words = node.getInit() instanceof NewNode ? ((NewNode) node.getInit()).getFrameWords() : 0;
+        env.setNextObjectOffset(env.getNextObjectOffset() + words);
         String r_body = node.getBody().accept(this, target);
+        env.setNextObjectOffset(env.getNextObjectOffset() - words);
         env.removeLocal();
         return r_body;
     }
 
+    //// New:
+    //    new C copies the prototype object of C and calls the init method
+    //    of C on the copy.  new SELF_TYPE finds both in class_objTab by the
+    //    class tag of self.
+    //    Under -O the copy of a prototype of at most INLINE_NEW_WORDS words
+    //    is made inline (emitAllocate), and the init method is not called
+    //    when neither the class nor its ancestors initialize attributes.
+    //    The objects CgenEscapeAnalysis keeps out of the heap are the
+    //    prototype object itself, or a copy of it in the next free words
+    //    of the frame; they have no initializers to run.
+
+    // the largest prototype object, in words, that is copied inline
+    static final int INLINE_NEW_WORDS = 16;
+
     @Override
     public String visit(NewNode node, String target) {
-        /* TODO */
+        Symbol classname = node.getType_name();
+        if (classname == TreeConstants.SELF_TYPE) {
+            ctx.emitter.emitLoadAddress(CgenConstants.T1, CgenConstants.CLASSOBJTAB);
+            ctx.emitter.emitLoad(CgenConstants.T2, CgenConstants.TAG_OFFSET, CgenConstants.SELF);
+            ctx.emitter.emitSll(CgenConstants.T2, CgenConstants.T2, 3);
+            ctx.emitter.emitAddu(CgenConstants.T1, CgenConstants.T1, CgenConstants.T2);
+            ctx.emitter.emitPush(CgenConstants.T1);
+            ctx.emitter.emitLoad(CgenConstants.ACC, 0, CgenConstants.T1);
+            int site = ctx.emitter.allocSite("new SELF_TYPE" + siteOf(node));
+            if (ctx.emitter.pretenures(site))
+                ctx.emitter.emitOldCopy();
+            else
+                ctx.emitter.emitCopy();
+            ctx.emitter.emitAllocSite(site);
+            ctx.emitter.emitLoad(CgenConstants.T1, 1, CgenConstants.SP);
+            ctx.emitter.emitAddiu(CgenConstants.SP, CgenConstants.SP, 4);
+            ctx.emitter.emitLoad(CgenConstants.T1, 1, CgenConstants.T1);
+            ctx.emitter.emitJalr(CgenConstants.T1);
+            return CgenConstants.ACC;
+        }
+        CgenNode c = ctx.cgenClassTable.get(classname);
+        if (node.sharesPrototype()) {
+            ctx.emitter.emitLoadAddress(CgenConstants.ACC, classname + CgenConstants.PROTOBJ_SUFFIX);
+            return CgenConstants.ACC;
+        }
+        if (node.getFrameWords() > 0) {
+            int eyecatcher = env.getNextObjectOffset();
+            ctx.emitter.emitAddiu(CgenConstants.ACC, CgenConstants.FP, (eyecatcher + 1) * CgenConstants.WORD_SIZE);
+            emitCopyWords(c);
+            return CgenConstants.ACC;
+        }
+        int site = ctx.emitter.allocSite("new " + classname + siteOf(node));
+        if (ctx.emitter.pretenures(site)) {
+            ctx.emitter.emitLoadAddress(CgenConstants.ACC, classname + CgenConstants.PROTOBJ_SUFFIX);
+            ctx.emitter.emitOldCopy();
+            ctx.emitter.emitAllocSite(site);
+            ctx.emitter.emitInit(classname);
+            return CgenConstants.ACC;
+        }
+        emitCopyPrototype(c);
+        ctx.emitter.emitAllocSite(site);
+        if (!(allocatesInline(c) && !initializesAttributes(c)))
+            ctx.emitter.emitInit(classname);
         return CgenConstants.ACC;
     }
 
+    // Copies the prototype object of the class into $a0.
+    private void emitCopyPrototype(CgenNode c) {
+        if (allocatesInline(c)) {
+            emitAllocate(c);
+            return;
+        }
+        ctx.emitter.emitLoadAddress(CgenConstants.ACC, c.env.getClassname() + CgenConstants.PROTOBJ_SUFFIX);
+        ctx.emitter.emitCopy();
+    }
+
+    private static boolean allocatesInline(CgenNode c) {
+        return Flags.cgen_optimize && Flags.cgen_Memmgr_Test != Flags.GC_TEST
+                && objectWords(c) <= INLINE_NEW_WORDS;
+    }
+
+    // the size of the objects of the class, as in its prototype object
+    private static int objectWords(CgenNode c) {
+        return CgenConstants.DEFAULT_OBJFIELDS + c.env.getFirstAttributeOffset() + c.env.getNumAttributes();
+    }
+
+    // Checks whether the init method of the class evaluates any attribute
+    // initializer, in the class or its ancestors.
+    private boolean initializesAttributes(CgenNode c) {
+        for (CgenNode a = c; ; a = a.getParentNd()) {
+            for (FeatureNode f : a.getClassNode().getFeatures())
+                if (f instanceof AttributeNode && !(((AttributeNode) f).getInit() instanceof NoExpressionNode))
+                    return true;
+            if (a == ctx.cgenClassTable.root())
+                return false;
+        }
+    }
+
+    //// Inline allocation (emitAllocate):
+    //    1. The object, with its eye catcher, is allocated by bumping $gp,
+    //       and the new $gp is checked against the limit in $s7.
+    //    2. If it is beyond the limit, $gp is restored and _MemMgr_Alloc
+    //       allocates the object, collecting garbage first.  Both paths
+    //       leave $gp just past the object.
+    //    3. The eye catcher is stored, and the words of the prototype
+    //       object are copied one by one.
+    private void emitAllocate(CgenNode c) {
+        int words = objectWords(c);
+        int bytes = (words + 1) * CgenConstants.WORD_SIZE;
+        int allocated = env.getFreshLabel();
+        ctx.emitter.emitAddiu(CgenConstants.GP, CgenConstants.GP, bytes);
+        ctx.emitter.emitBlt(CgenConstants.GP, CgenConstants.HEAP_LIMIT, allocated);
+        ctx.emitter.emitAddiu(CgenConstants.GP, CgenConstants.GP, -bytes);
+        ctx.emitter.emitLoadImm(CgenConstants.ACC, bytes);
+        ctx.emitter.emitJal(CgenConstants.MEMMGR_ALLOC);
+        ctx.emitter.emitLabelDef(allocated);
+        ctx.emitter.emitAddiu(CgenConstants.ACC, CgenConstants.GP, -words * CgenConstants.WORD_SIZE);
+        emitCopyWords(c);
+    }
+
+    // Stores the eye catcher before the object at $a0, and copies the
+    // prototype object of the class into it.
+    private void emitCopyWords(CgenNode c) {
+        int words = objectWords(c);
+        ctx.emitter.emitLoadImm(CgenConstants.T1, -1);
+        ctx.emitter.emitStore(CgenConstants.T1, CgenConstants.EYECATCH_OFFSET, CgenConstants.ACC);
+        ctx.emitter.emitLoadAddress(CgenConstants.T2, c.env.getClassname() + CgenConstants.PROTOBJ_SUFFIX);
+        for (int i = 0; i < words; i++) {
+            ctx.emitter.emitLoad(CgenConstants.T1, i, CgenConstants.T2);
+            ctx.emitter.emitStore(CgenConstants.T1, i, CgenConstants.ACC);
+        }
+    }
+
     @Override
     public String visit(CondNode node, String target) {
         /* TODO */
@@ -184,7 +537,7 @@ public class CgenEmitVisitor extends CgenVisitor<String, String>{
 
     @Override
     public String visit(LoopNode node, String target) {
-        int loop_label = CgenEnv.getFreshLabel();
+        int loop_label = env.getFreshLabel();
         /* TODO */
         return CgenConstants.ACC;
     }
@@ -195,28 +548,33 @@ public class CgenEmitVisitor extends CgenVisitor<String, String>{
         return null;
     }
 
+    //// Arithmetic and comparisons (see CgenUnboxed):
+    ////   The tree of arithmetic and comparison nodes below the node is
+    ////   evaluated to a raw value by emitRaw, and only that value is boxed.
+    ////   An Int result is stored into a copy of Int_protObj.  The copy is
+    ////   made before the tree is evaluated and kept in a temporary, so that
+    ////   no raw value is live across the copy; with the cache of Int
+    ////   objects, see emitCachedInt instead.  A Bool
+    ////   result selects one of the two Bool constants.
+
     @Override
-    public String visit(PlusNode node, String data) {
-        /* TODO */
-        return null;
+    public String visit(PlusNode node, String target) {
+        return emitBoxedInt(node);
     }
 
     @Override
-    public String visit(SubNode node, String data) {
-        /* TODO */
-        return null;
+    public String visit(SubNode node, String target) {
+        return emitBoxedInt(node);
     }
 
     @Override
-    public String visit(MulNode node, String data) {
-        /* TODO */
-        return null;
+    public String visit(MulNode node, String target) {
+        return emitBoxedInt(node);
     }
 
     @Override
-    public String visit(DivideNode node, String data) {
-        /* TODO */
-        return null;
+    public String visit(DivideNode node, String target) {
+        return emitBoxedInt(node);
     }
 
     //The calling convention for equality_test:
@@ -225,44 +583,177 @@ public class CgenEmitVisitor extends CgenVisitor<String, String>{
     //          Initial value of $a1, otherwise
     @Override
     public String visit(EqNode node, String target) {
+        if (CgenUnboxed.isRaw(node))
+            return emitBoxedBool(node);
         /* TODO */
         return CgenConstants.ACC;
     }
 
     @Override
-    public String visit(LEqNode node, String data) {
-        /* TODO */
-        return null;
+    public String visit(LEqNode node, String target) {
+        return emitBoxedBool(node);
     }
 
     @Override
-    public String visit(LTNode node, String data) {
-        /* TODO */
-        return null;
+    public String visit(LTNode node, String target) {
+        return emitBoxedBool(node);
     }
 
     @Override
     public String visit(NegNode node, String target) {
-        /* TODO */
-        return null;
+        return emitBoxedInt(node);
     }
 
     @Override
     public String visit(CompNode node, String target) {
-        /* TODO */
-        return null;
+        return emitBoxedBool(node);
+    }
+
+    private String emitBoxedInt(ExpressionNode node) {
+        if (CgenUnboxed.cachesInts())
+            return emitCachedInt(node);
+        Symbol temp = ctx.idtable.addString(CgenConstants.TEMP1);
+        emitCopyPrototype(ctx.cgenClassTable.get(TreeConstants.Int));
+        env.addLocal(temp);
+        Cgen.VarInfo box = env.vars.lookup(temp);
+        box.emitUpdate(ctx.emitter, CgenConstants.ACC);
+        String r = emitRaw(node, 0);
+        String r_box = box.emitRef(ctx.emitter, CgenConstants.ACC);
+        ctx.emitter.emitStoreInt(r, r_box);
+        env.removeLocal();
+        return r_box;
+    }
+
+    //// Boxing through the cache of Int objects (emitCachedInt):
+    ////   1. The tree is evaluated to a raw value v.
+    ////   2. If v - Flags.int_cache_min, unsigned, is below the size of the
+    ////      cache, the result is the object at _int_cache plus 20 bytes,
+    ////      an Int object and its eye catcher, for each value below v.
+    ////   3. Otherwise a copy of Int_protObj is allocated inline, as by
+    ////      emitAllocate, and v is stored into it.  If the work area is
+    ////      full, _Int_box copies Int_protObj and stores v into it; it
+    ////      keeps v out of the frame while the garbage is collected.
+    private String emitCachedInt(ExpressionNode node) {
+        String r = emitRaw(node, 0);
+        int uncached = env.getFreshLabel();
+        int done = env.getFreshLabel();
+        ctx.emitter.emitAddiu(CgenConstants.T2, r, -Flags.int_cache_min);
+        ctx.emitter.emitSltiu(CgenConstants.T3, CgenConstants.T2, Flags.int_cache_max - Flags.int_cache_min + 1);
+        ctx.emitter.emitBeqz(CgenConstants.T3, uncached);
+        ctx.emitter.emitSll(CgenConstants.T3, CgenConstants.T2, 4);
+        ctx.emitter.emitSll(CgenConstants.T2, CgenConstants.T2, 2);
+        ctx.emitter.emitAddu(CgenConstants.T2, CgenConstants.T2, CgenConstants.T3);
+        ctx.emitter.emitLoadAddress(CgenConstants.ACC, ctx.emitter.intCache());
+        ctx.emitter.emitAddu(CgenConstants.ACC, CgenConstants.ACC, CgenConstants.T2);
+        ctx.emitter.emitBranch(done);
+        ctx.emitter.emitLabelDef(uncached);
+        CgenNode c = ctx.cgenClassTable.get(TreeConstants.Int);
+        int words = objectWords(c);
+        int bytes = (words + 1) * CgenConstants.WORD_SIZE;
+        int allocated = env.getFreshLabel();
+        if (allocatesInline(c)) {
+            ctx.emitter.emitAddiu(CgenConstants.GP, CgenConstants.GP, bytes);
+            ctx.emitter.emitBlt(CgenConstants.GP, CgenConstants.HEAP_LIMIT, allocated);
+            ctx.emitter.emitAddiu(CgenConstants.GP, CgenConstants.GP, -bytes);
+        }
+        ctx.emitter.emitMove(CgenConstants.T1, r);
+        ctx.emitter.emitJal(CgenConstants.INT_BOX);
+        if (allocatesInline(c)) {
+            ctx.emitter.emitBranch(done);
+            ctx.emitter.emitLabelDef(allocated);
+            ctx.emitter.emitAddiu(CgenConstants.ACC, CgenConstants.GP, -words * CgenConstants.WORD_SIZE);
+            ctx.emitter.emitLoadImm(CgenConstants.T3, -1);
+            ctx.emitter.emitStore(CgenConstants.T3, CgenConstants.EYECATCH_OFFSET, CgenConstants.ACC);
+            ctx.emitter.emitLoadAddress(CgenConstants.T2, TreeConstants.Int + CgenConstants.PROTOBJ_SUFFIX);
+            for (int i = 0; i < CgenConstants.DEFAULT_OBJFIELDS; i++) {
+                ctx.emitter.emitLoad(CgenConstants.T3, i, CgenConstants.T2);
+                ctx.emitter.emitStore(CgenConstants.T3, i, CgenConstants.ACC);
+            }
+            ctx.emitter.emitStoreInt(r, CgenConstants.ACC);
+        }
+        ctx.emitter.emitLabelDef(done);
+        return CgenConstants.ACC;
+    }
+
+    private String emitBoxedBool(ExpressionNode node) {
+        String r = emitRaw(node, 0);
+        int done = env.getFreshLabel();
+        ctx.emitter.emitLoadBool(CgenConstants.ACC, false);
+        ctx.emitter.emitBeqz(r, done);
+        ctx.emitter.emitLoadBool(CgenConstants.ACC, true);
+        ctx.emitter.emitLabelDef(done);
+        return CgenConstants.ACC;
+    }
+
+    // Evaluates e to a raw Int or Bool value in CgenUnboxed.RAW_REGS[k],
+    // or in a register it returns.  Raw nodes are coded here; any other
+    // expression is evaluated to an object, whose value is fetched.
+    private String emitRaw(ExpressionNode e, int k) {
+        String r = CgenUnboxed.RAW_REGS[k];
+        if (e instanceof IntConstNode && CgenUnboxed.intValue((IntConstNode) e) != null) {
+            ctx.emitter.emitLoadImm(r, CgenUnboxed.intValue((IntConstNode) e));
+        } else if (e instanceof BoolConstNode) {
+            ctx.emitter.emitLoadImm(r, ((BoolConstNode) e).getVal() ? 1 : 0);
+        } else if (e instanceof BinopNode && CgenUnboxed.isRaw(e)) {
+            BinopNode node = (BinopNode) e;
+            String r1, r2;
+            if (CgenUnboxed.holdsOperand(node, k)) {
+                Symbol temp = ctx.idtable.addString(CgenConstants.TEMP1);
+                if (CgenUnboxed.holdsRaw()) {
+                    String r_e1 = emitRaw(node.getE1(), k);
+                    env.addLocal(temp);
+                    env.vars.lookup(temp).emitUpdate(ctx.emitter, r_e1);
+                } else {
+                    storeOperand(temp, node.getE1());
+                }
+                r2 = emitRaw(node.getE2(), k);
+                r1 = env.vars.lookup(temp).emitRef(ctx.emitter, CgenConstants.ACC);
+                if (!CgenUnboxed.holdsRaw()) {
+                    ctx.emitter.emitFetchInt(CgenConstants.ACC, r1);
+                    r1 = CgenConstants.ACC;
+                }
+                env.removeLocal();
+            } else {
+                r1 = emitRaw(node.getE1(), k);
+                r2 = emitRaw(node.getE2(), k + 1);
+            }
+            if (e instanceof PlusNode)
+                ctx.emitter.emitAdd(r, r1, r2);
+            else if (e instanceof SubNode)
+                ctx.emitter.emitSub(r, r1, r2);
+            else if (e instanceof MulNode)
+                ctx.emitter.emitMul(r, r1, r2);
+            else if (e instanceof DivideNode)
+                ctx.emitter.emitDiv(r, r1, r2);
+            else if (e instanceof LTNode)
+                ctx.emitter.emitSlt(r, r1, r2);
+            else if (e instanceof LEqNode) {
+                ctx.emitter.emitSlt(r, r2, r1);
+                ctx.emitter.emitXori(r, r, 1);
+            } else {
+                ctx.emitter.emitXor(r, r1, r2);
+                ctx.emitter.emitSltiu(r, r, 1);
+            }
+        } else if (e instanceof NegNode) {
+            ctx.emitter.emitNeg(r, emitRaw(((NegNode) e).getE1(), k));
+        } else if (e instanceof CompNode) {
+            ctx.emitter.emitXori(r, emitRaw(((CompNode) e).getE1(), k), 1);
+        } else {
+            ctx.emitter.emitFetchInt(r, e.accept(this, CgenConstants.ACC));
+        }
+        return r;
     }
 
     @Override
     public String visit(IntConstNode node, String target) {
-        Cgen.emitter.emitLoadInt(target,node.getVal());
+        ctx.emitter.emitLoadInt(target,node.getVal());
         return target;
     }
 
     @Override
     public String visit(BoolConstNode node, String target) {
-        /* TODO */
-        return null;
+        ctx.emitter.emitLoadBool(target, node.getVal());
+        return target;
     }
 
     @Override
@@ -279,12 +770,12 @@ public class CgenEmitVisitor extends CgenVisitor<String, String>{
 
     @Override
     public String visit(ObjectNode node, String target) {
-        return env.vars.lookup(node.getName()).emitRef(target);
+        return env.vars.lookup(node.getName()).emitRef(ctx.emitter, target);
     }
 
     @Override
     public String visit(NoExpressionNode node, String data) {
-        Utilities.fatalError("Cgen reached no expr.\n");
+        Utilities.fatalError(ctx, "Cgen reached no expr.\n");
         return null;
     }
 
@@ -295,7 +786,7 @@ public class CgenEmitVisitor extends CgenVisitor<String, String>{
     private void forceDest(ExpressionNode e, String target)
     {
         String r = e.accept(this, target);
-        Cgen.emitter.emitMove(target, r);  //omitted if target = r.
+        ctx.emitter.emitMove(target, r);  //omitted if target = r.
     }
 
 
@@ -311,15 +802,10 @@ public class CgenEmitVisitor extends CgenVisitor<String, String>{
     // The caller of storeOperand function should deallocate the new variable.
     private void storeOperand(Symbol temp_var, ExpressionNode e1)
     {
-        //where will temp_var be allocated?
-        int offset = env.getNextTempOffset();
-        String dest = CgenConstants.getRegister(offset);
-        if (dest == null)
-        { //whoops, temp_var is going on the stack
-            dest = CgenConstants.ACC;
-        }
-        String r_e1 = e1.accept(this,dest); //r_e1 <- e1, where hopefully r_e1=dest
+        //temp_var goes on the stack; the register allocator may move it
+        //into a register.
+        String r_e1 = e1.accept(this,CgenConstants.ACC); //r_e1 <- e1
         env.addLocal(temp_var);
-        env.vars.lookup(temp_var).emitUpdate(r_e1);
+        env.vars.lookup(temp_var).emitUpdate(ctx.emitter, r_e1);
     }
 }
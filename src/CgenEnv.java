@@ -1,7 +1,5 @@
 import ast.*;
 
-import java.util.ArrayList;
-
 public class CgenEnv {
 
     private Symbol classname;           // name of the corresponding class
@@ -12,29 +10,26 @@ public class CgenEnv {
     // Because classes are numbered depth first, class A is a subclass of B if A's tag lies
     // in the range B's tag <= A's tag <= (max descendant of B)'s tag
 
-    public static int getLastTag() {
-        return lastTag;
-    }
-
-    private static int lastTag = 0;    // counter for creating unique class tags
+    private CompilationContext ctx;     // the compilation this class belongs to
 
-    /* Mapping from class tags to class names */
-    static ArrayList<Symbol> classTags = new ArrayList<>();
+    public int getLastTag() {
+        return ctx.lastTag;
+    }
 
     public void setClassTag() {
         assert (classTag == -1);
         assert(maxChildTag == -1);
-        classTag = lastTag;
-        lastTag = lastTag + 1;
+        classTag = ctx.lastTag;
+        ctx.lastTag = ctx.lastTag + 1;
 
-        assert(classTags.size() == classTag);
-        classTags.add(StringTable.stringtable.addString(classname.getName()));
+        assert(ctx.classTags.size() == classTag);
+        ctx.classTags.add(ctx.stringtable.addString(classname.getName()));
     }
 
     public void setMaxChildTag() {
         assert (classTag > -1);
         assert (maxChildTag == -1);
-        maxChildTag = lastTag-1;
+        maxChildTag = ctx.lastTag-1;
     }
 
     // number of methods, including inherited methods
@@ -60,24 +55,34 @@ public class CgenEnv {
         }
 
         // create new method info object for this method
-        CgenCalcTemps calcTemps = new CgenCalcTemps();
-        node.getExpr().accept(calcTemps, null);
-        minfo = new Cgen.MethodInfo(classname, name, offset, calcTemps.get());
+        minfo = new Cgen.MethodInfo(classname, name, offset, 0);
         // add it to the env in the current scope, keep both symbol tables in sync
         methods.addId(name,minfo);
         methodOffsets.addId(offset,minfo);
+        countTemps(node);
+    }
+
+    // Counts the temporaries and the words of objects in the frame that
+    // the method of this class needs; again after its body changes.
+    public void countTemps(MethodNode node) {
+        CgenCalcTemps calcTemps = new CgenCalcTemps();
+        node.getExpr().accept(calcTemps, null);
+        Cgen.MethodInfo minfo = methods.lookup(node.getName());
+        minfo.temps = calcTemps.get();
+        minfo.objects = calcTemps.getObjects();
     }
 
     CgenSymbolTable<Symbol, Cgen.VarInfo> vars;
-    CgenSymbolTable<Integer, Cgen.AttrInfo> attributeOffsets;
 
-    public static int getFreshLabel() {
-        return nextLabel++;
-    }
+    // the attributes only, without the scopes of the method being coded
+    private CgenSymbolTable<Symbol, Cgen.VarInfo> attributeVars;
+    CgenSymbolTable<Integer, Cgen.AttrInfo> attributeOffsets;
 
     // labels for jumps in generated code;
     // unique across the entire program.
-    private static int nextLabel = 0;
+    public int getFreshLabel() {
+        return ctx.nextLabel++;
+    }
 
     // the offset of the first attribute directly declared in this class
     // computed from the last offset of the parent class
@@ -113,8 +118,20 @@ public class CgenEnv {
 
     private int nextTempOffset = 0; // next available temporary location
 
+    // next available word for objects allocated in the stack frame, above
+    // the temporaries
+    private int nextObjectOffset = 0;
+
+    public int getNextObjectOffset() {
+        return nextObjectOffset;
+    }
+
+    public void setNextObjectOffset(int offset) {
+        nextObjectOffset = offset;
+    }
+
     //  Add a local variable.
-    //  A negative location is a register, a positive location is a stack slot.
+    //  The location is a stack slot at that word offset from the frame pointer.
     public void addLocal(Symbol sym) {
         if (Flags.cgen_debug) System.err.println("    Adding local binding "+ sym + " " + nextTempOffset);
         vars.enterScope();
@@ -129,7 +146,8 @@ public class CgenEnv {
       --nextTempOffset;
     }
 
-    CgenEnv(Symbol c, Symbol f, CgenEnv parent) {
+    CgenEnv(CompilationContext ctx, Symbol c, Symbol f, CgenEnv parent) {
+        this.ctx = ctx;
         this.classname = c;
         this.filename = f;
         if (parent == null) {
@@ -147,6 +165,29 @@ public class CgenEnv {
             this.attributeOffsets = new CgenSymbolTable<>(parent.attributeOffsets);
             this.firstAttributeOffset = parent.firstAttributeOffset+parent.numAttributes;
         }
+        this.attributeVars = new CgenSymbolTable<>(this.vars);
+    }
+
+    /**
+     * Creates the environment for the body of one of c's methods inlined
+     * into another method.  Variables are the attributes of c, and new
+     * locals take the caller's temporaries from the given offset on.
+     */
+    CgenEnv(CgenEnv c, int nextTempOffset) {
+        this.ctx = c.ctx;
+        this.classname = c.classname;
+        this.filename = c.filename;
+        this.classTag = c.classTag;
+        this.maxChildTag = c.maxChildTag;
+        this.numMethods = c.numMethods;
+        this.methods = c.methods;
+        this.methodOffsets = c.methodOffsets;
+        this.attributeOffsets = c.attributeOffsets;
+        this.firstAttributeOffset = c.firstAttributeOffset;
+        this.numAttributes = c.numAttributes;
+        this.attributeVars = c.attributeVars;
+        this.vars = new CgenSymbolTable<>(c.attributeVars);
+        this.nextTempOffset = nextTempOffset;
     }
 
     public Symbol getClassname() {
@@ -0,0 +1,221 @@
+import ast.*;
+import ast.visitor.BaseVisitor;
+
+import java.util.HashMap;
+
+/**
+ * Finds the objects created by new in a let binding that do not outlive
+ * the let, so that they need not be allocated in the heap.
+ * <p>
+ * The object of let x : T &lt;- new C in body escapes unless every use of
+ * x in the body is the operand of isvoid or =, the target of an
+ * assignment, or the receiver of a dispatch CgenInliner inlined.  The body
+ * of an inlined method uses its receiver as self: the object escapes if
+ * the body lets self escape, and is compared if the body compares self or
+ * assigns an attribute.  Passing x to any other dispatch, as the receiver
+ * or an argument, storing it anywhere, binding it in a case or making it
+ * the value of an expression lets it escape.  A class whose init method
+ * evaluates attribute initializers passes the object to them, so its
+ * objects always escape.
+ * <p>
+ * Attributes are only changed by the methods of the object, so the
+ * attributes of an object that does not escape keep the values of its
+ * prototype unless an inlined method assigns them; the object is then
+ * allocated in the frame.  Such an object is replaced by its parts where
+ * possible:
+ * <ul>
+ * <li>new Int and new Bool in a let become the constants 0 and false,
+ *     which CgenConstantFolder then propagates.</li>
+ * <li>An object that is never compared with = is replaced by the
+ *     prototype object of its class, and nothing is allocated.</li>
+ * <li>An object that is compared is copied from the prototype into the
+ *     stack frame of the method.  CgenCalcTemps reserves the words for it
+ *     above the temporaries.</li>
+ * </ul>
+ * The pass runs under -O after CgenInliner and before CgenConstantFolder.
+ * Attribute initializers are left alone.
+ */
+class CgenEscapeAnalysis extends CgenVisitor<Void, Void> {
+
+    // how the bound object is used in the body of its let
+    private static final int UNOBSERVED = 0;
+    private static final int COMPARED = 1;
+    private static final int ESCAPES = 2;
+
+    // the classes of the program by name; the basic classes are not in it
+    private final HashMap<Symbol, ClassNode> classes = new HashMap<>();
+
+    CgenEscapeAnalysis(CompilationContext ctx) {
+        super(ctx);
+    }
+
+    @Override
+    public Void visit(ProgramNode node, Void data) {
+        for (ClassNode c : node.getClasses())
+            classes.put(c.getName(), c);
+        return super.visit(node, data);
+    }
+
+    @Override
+    public Void visit(AttributeNode node, Void data) {
+        return null;
+    }
+
+    @Override
+    public Void visit(LetNode node, Void data) {
+        super.visit(node, data);
+        if (!(node.getInit() instanceof NewNode))
+            return null;
+        NewNode init = (NewNode) node.getInit();
+        Symbol classname = init.getType_name();
+        if (classname == TreeConstants.Int || classname == TreeConstants.Bool) {
+            ExpressionNode c = classname == TreeConstants.Int
+                    ? new IntConstNode(init.getLineNumber(), ctx.inttable.addString("0"))
+                    : new BoolConstNode(init.getLineNumber(), false);
+            c.setType(init.getType());
+            node.setInit(c);
+            ctx.scalarReplaced++;
+            return null;
+        }
+        if (classname == TreeConstants.SELF_TYPE || classname == TreeConstants.Str
+                || initializesAttributes(classname))
+            return null;
+        switch (uses(node.getIdentifier(), node.getBody())) {
+            case UNOBSERVED:
+                init.setSharesPrototype(true);
+                ctx.scalarReplaced++;
+                break;
+            case COMPARED:
+                init.setFrameWords(objectWords(classname) + 1);
+                ctx.frameAllocated++;
+                break;
+            default:
+                break;
+        }
+        return null;
+    }
+
+    // Checks whether the init method of the class evaluates any attribute
+    // initializer, in the class or its ancestors.
+    private boolean initializesAttributes(Symbol classname) {
+        for (ClassNode c = classes.get(classname); c != null; c = classes.get(c.getParent()))
+            for (FeatureNode f : c.getFeatures())
+                if (f instanceof AttributeNode && !(((AttributeNode) f).getInit() instanceof NoExpressionNode))
+                    return true;
+        return false;
+    }
+
+    // the size of the objects of the class, as in its prototype object;
+    // Object and IO, the basic ancestors of user classes, have no
+    // attributes
+    private int objectWords(Symbol classname) {
+        int words = CgenConstants.DEFAULT_OBJFIELDS;
+        for (ClassNode c = classes.get(classname); c != null; c = classes.get(c.getParent()))
+            for (FeatureNode f : c.getFeatures())
+                if (f instanceof AttributeNode)
+                    words++;
+        return words;
+    }
+
+    // Classifies the uses of the variable of the name in the body.
+    private static int uses(Symbol name, ExpressionNode body) {
+        int[] use = {UNOBSERVED};
+        body.accept(new BaseVisitor<Void, Void>() {
+            private boolean isVar(ExpressionNode e) {
+                return e instanceof ObjectNode && ((ObjectNode) e).getName() == name;
+            }
+
+            @Override
+            public Void visit(ObjectNode node, Void data) {
+                if (node.getName() == name)
+                    use[0] = ESCAPES;
+                return null;
+            }
+
+            @Override
+            public Void visit(DispatchNode node, Void data) {
+                if (node.getInlined() == null || !isVar(node.getExpr()))
+                    return super.visit(node, data);
+                MethodNode m = node.getInlined();
+                use[0] = Math.max(use[0], uses(TreeConstants.self, m.getExpr()));
+                if (assignsAttributes(m))
+                    use[0] = Math.max(use[0], COMPARED);
+                for (ExpressionNode e : node.getActuals())
+                    e.accept(this, data);
+                return null;
+            }
+
+            @Override
+            public Void visit(IsVoidNode node, Void data) {
+                if (!isVar(node.getE1()))
+                    node.getE1().accept(this, data);
+                return null;
+            }
+
+            @Override
+            public Void visit(EqNode node, Void data) {
+                for (ExpressionNode e : new ExpressionNode[] {node.getE1(), node.getE2()}) {
+                    if (isVar(e))
+                        use[0] = Math.max(use[0], COMPARED);
+                    else
+                        e.accept(this, data);
+                }
+                return null;
+            }
+
+            @Override
+            public Void visit(LetNode node, Void data) {
+                node.getInit().accept(this, data);
+                if (node.getIdentifier() != name)
+                    node.getBody().accept(this, data);
+                return null;
+            }
+
+            @Override
+            public Void visit(BranchNode node, Void data) {
+                if (node.getName() != name)
+                    node.getExpr().accept(this, data);
+                return null;
+            }
+        }, null);
+        return use[0];
+    }
+
+    // Checks whether the method assigns an attribute: a name that is not
+    // one of its formals or bound by a let or case around the assignment.
+    private static boolean assignsAttributes(MethodNode m) {
+        SymbolTable<Boolean> locals = new SymbolTable<>();
+        locals.enterScope();
+        for (FormalNode f : m.getFormals())
+            locals.addId(f.getName(), true);
+        boolean[] assigns = {false};
+        m.getExpr().accept(new BaseVisitor<Void, Void>() {
+            @Override
+            public Void visit(AssignNode node, Void data) {
+                if (locals.lookup(node.getName()) == null)
+                    assigns[0] = true;
+                return super.visit(node, data);
+            }
+
+            @Override
+            public Void visit(LetNode node, Void data) {
+                node.getInit().accept(this, data);
+                locals.enterScope();
+                locals.addId(node.getIdentifier(), true);
+                node.getBody().accept(this, data);
+                locals.exitScope();
+                return null;
+            }
+
+            @Override
+            public Void visit(BranchNode node, Void data) {
+                locals.enterScope();
+                locals.addId(node.getName(), true);
+                node.getExpr().accept(this, data);
+                locals.exitScope();
+                return null;
+            }
+        }, null);
+        return assigns[0];
+    }
+}
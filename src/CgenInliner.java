@@ -0,0 +1,91 @@
+import ast.*;
+import ast.visitor.BaseVisitor;
+
+/**
+ * Inlines small leaf methods at dispatches bound statically by
+ * CgenDevirtualize.
+ * <p>
+ * A dispatch is inlined if the method it calls is defined in a user
+ * class, makes no dispatches itself and has a body of at most MAX_SIZE
+ * nodes.  The dispatch is marked with the method, and CgenEmitVisitor
+ * then codes the method body in place of the call: the arguments and the
+ * caller's self are kept in fresh temporaries of the caller's frame, and
+ * self is rebound to the receiver while the body runs, so attributes and
+ * self in the body refer to the receiver.  The temporaries of the methods
+ * are counted again after CgenConstantFolder, so that the frame of a
+ * method with an inlined dispatch has room for them.
+ * <p>
+ * The pass runs under -O after CgenDevirtualize and before
+ * CgenEscapeAnalysis.  Attribute initializers are left alone.
+ */
+class CgenInliner extends CgenVisitor<Void, Void> {
+
+    // the largest method body, in AST nodes, that is inlined
+    static final int MAX_SIZE = 10;
+
+    CgenInliner(CompilationContext ctx) {
+        super(ctx);
+    }
+
+    @Override
+    Void visit(CgenNode v) {
+        if (!v.basic())
+            visit(v.getClassNode().getFeatures(), null);
+        return super.visit(v);
+    }
+
+    @Override
+    public Void visit(AttributeNode node, Void data) {
+        return null;
+    }
+
+    @Override
+    public Void visit(DispatchNode node, Void data) {
+        super.visit(node, data);
+        if (node.getStaticBinding() == null)
+            return null;
+        CgenNode c = ctx.cgenClassTable.get(node.getStaticBinding());
+        if (c.basic())
+            return null;
+        for (FeatureNode f : c.getClassNode().getFeatures()) {
+            if (f instanceof MethodNode && ((MethodNode) f).getName() == node.getName()) {
+                MethodNode m = (MethodNode) f;
+                if (isSmallLeaf(m.getExpr())) {
+                    node.setInlined(m);
+                    ctx.inlined++;
+                }
+                break;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Returns true if the expression has at most MAX_SIZE nodes and no
+     * dispatches.
+     */
+    private static boolean isSmallLeaf(ExpressionNode e) {
+        final int[] size = {0};
+        final boolean[] leaf = {true};
+        e.accept(new BaseVisitor<Void, Void>() {
+            @Override
+            protected Void base(Tree node, Void data) {
+                size[0]++;
+                return null;
+            }
+
+            @Override
+            public Void visit(DispatchNode node, Void data) {
+                leaf[0] = false;
+                return null;
+            }
+
+            @Override
+            public Void visit(StaticDispatchNode node, Void data) {
+                leaf[0] = false;
+                return null;
+            }
+        }, null);
+        return leaf[0] && size[0] <= MAX_SIZE;
+    }
+}
@@ -25,6 +25,14 @@ class CgenNode  {
      */
     private boolean basic_status;
 
+    /**
+     * Are objects of this class created, and is its init method called,
+     * as it is for the ancestors of such classes?  Both stay true unless
+     * CgenReachability finds otherwise.
+     */
+    private boolean instantiated = true;
+    private boolean reachable = true;
+
     /**
      * Constructs a new CgenNode to represent class "c".
      *
@@ -78,6 +86,22 @@ class CgenNode  {
         return basic_status;
     }
 
+    boolean isInstantiated() {
+        return instantiated;
+    }
+
+    void setInstantiated(boolean instantiated) {
+        this.instantiated = instantiated;
+    }
+
+    boolean isReachable() {
+        return reachable;
+    }
+
+    void setReachable(boolean reachable) {
+        this.reachable = reachable;
+    }
+
     public ClassNode getClassNode() {
         return c;
     }
@@ -3,6 +3,11 @@ import ast.MethodNode;
 import ast.Symbol;
 
 public class CgenOffsetsVisitor extends CgenVisitor<Void, CgenEnv> {
+
+    public CgenOffsetsVisitor(CompilationContext ctx) {
+        super(ctx);
+    }
+
     /*
        Traverse inheritance tree in DFS order and assign tags
        class last_tag is pre index of the node
@@ -17,7 +22,7 @@ public class CgenOffsetsVisitor extends CgenVisitor<Void, CgenEnv> {
 
         CgenNode p = v.getParentNd();
         assert (p != null);
-        v.env = new CgenEnv(classname, f, p.env);
+        v.env = new CgenEnv(ctx, classname, f, p.env);
         v.env.setClassTag();
         v.getClassNode().accept(this, v.env);
         super.visit(v);
@@ -0,0 +1,168 @@
+import ast.Symbol;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * The stream to which CgenEmit writes assembly code.
+ * <p>
+ * Text is encoded straight into a large byte buffer, and integers are
+ * formatted into it digit by digit, so emitting an instruction creates
+ * no intermediate Strings.  The buffer is written to a FileChannel when
+ * it fills up and when the output is closed.  Each thread keeps its
+ * buffer for the next program it compiles.
+ */
+public class CgenOutput {
+
+    private static final int BUFFER_SIZE = 1 << 16;
+
+    private static final ThreadLocal<ByteBuffer> buffers =
+            ThreadLocal.withInitial(() -> ByteBuffer.allocateDirect(BUFFER_SIZE));
+
+    private final CompilationContext ctx;
+    private final WritableByteChannel channel;
+    private final boolean console;
+    private final String filename;
+    private final ByteBuffer buf;
+
+    // digits of an integer, least significant first
+    private final byte[] digits = new byte[11];
+
+    /**
+     * Opens the given file for writing, or writes to the console if the
+     * file name is null.
+     *
+     * @param ctx the compilation, to which write errors are reported
+     */
+    public CgenOutput(CompilationContext ctx, String filename) throws IOException {
+        this.ctx = ctx;
+        this.filename = filename;
+        this.console = filename == null;
+        this.channel = console
+                ? Channels.newChannel(System.out)
+                : FileChannel.open(Paths.get(filename), StandardOpenOption.CREATE,
+                        StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE);
+        this.buf = buffers.get();
+        buf.clear();
+    }
+
+    public void print(String str) {
+        if (str == null)
+            str = "null";   // as PrintStream does
+        for (int i = 0, n = str.length(); i < n; i++) {
+            char c = str.charAt(i);
+            if (c < 0x80) {
+                if (!buf.hasRemaining())
+                    drain();
+                buf.put((byte) c);
+            } else if (Character.isHighSurrogate(c) && i + 1 < n
+                    && Character.isLowSurrogate(str.charAt(i + 1))) {
+                putCodePoint(Character.toCodePoint(c, str.charAt(++i)));
+            } else {
+                putCodePoint(c);
+            }
+        }
+    }
+
+    public void print(char c) {
+        if (c < 0x80) {
+            if (!buf.hasRemaining())
+                drain();
+            buf.put((byte) c);
+        } else {
+            putCodePoint(c);
+        }
+    }
+
+    public void print(int val) {
+        if (buf.remaining() < digits.length + 1)
+            drain();
+        if (val < 0) {
+            buf.put((byte) '-');
+        } else {
+            val = -val;     // work with negative values so MIN_VALUE fits
+        }
+        int n = 0;
+        do {
+            digits[n++] = (byte) ('0' - val % 10);
+            val /= 10;
+        } while (val != 0);
+        while (n > 0)
+            buf.put(digits[--n]);
+    }
+
+    public void print(Symbol sym) {
+        print(sym.getName());
+    }
+
+    public void println() {
+        print('\n');
+    }
+
+    public void println(String str) {
+        print(str);
+        print('\n');
+    }
+
+    public void println(int val) {
+        print(val);
+        print('\n');
+    }
+
+    /**
+     * Writes out the buffered output.
+     */
+    public void flush() {
+        drain();
+        if (console)
+            System.out.flush();
+    }
+
+    /**
+     * Writes out the buffered output and closes the file; the console
+     * is only flushed.
+     */
+    public void close() {
+        flush();
+        if (!console) {
+            try {
+                channel.close();
+            } catch (IOException ex) {
+                Utilities.fatalError(ctx, "Cannot write output file " + filename);
+            }
+        }
+    }
+
+    // Encodes a non-ASCII character as UTF-8
+    private void putCodePoint(int cp) {
+        if (buf.remaining() < 4)
+            drain();
+        if (cp < 0x800) {
+            buf.put((byte) (0xc0 | (cp >> 6)));
+        } else if (cp < 0x10000) {
+            buf.put((byte) (0xe0 | (cp >> 12)));
+            buf.put((byte) (0x80 | ((cp >> 6) & 0x3f)));
+        } else {
+            buf.put((byte) (0xf0 | (cp >> 18)));
+            buf.put((byte) (0x80 | ((cp >> 12) & 0x3f)));
+            buf.put((byte) (0x80 | ((cp >> 6) & 0x3f)));
+        }
+        buf.put((byte) (0x80 | (cp & 0x3f)));
+    }
+
+    private void drain() {
+        buf.flip();
+        try {
+            while (buf.hasRemaining())
+                channel.write(buf);
+        } catch (IOException ex) {
+            Utilities.fatalError(ctx, "Cannot write output file " + (console ? "<stdout>" : filename));
+        }
+        buf.clear();
+    }
+}
@@ -0,0 +1,205 @@
+/**
+ * A peephole optimizer over the instructions of one method.
+ * <p>
+ * The expression code generator works one node at a time, so it pushes
+ * values that are popped again right away, stores values that it loads
+ * again from the same slot, moves values back and forth between registers
+ * and branches to the label that follows the branch.  Each rule below
+ * looks at a short window of adjacent instructions and removes or
+ * simplifies such a pattern.  The rules are applied until none of them
+ * matches any more.
+ * <p>
+ * Windows never extend across a label, since control may arrive at the
+ * label from elsewhere, except for branches to the following label.
+ * The optimizer is run when code optimization (-O) is on.
+ */
+class CgenPeephole {
+
+    private static final int SP = CgenCode.reg(CgenConstants.SP);
+
+    private final CgenCode code;
+
+    private CgenPeephole(CgenCode code) {
+        this.code = code;
+    }
+
+    /**
+     * Optimizes the given instructions in place.
+     *
+     * @return the number of instructions removed
+     */
+    static int optimize(CgenCode code) {
+        CgenPeephole p = new CgenPeephole(code);
+        int removed = 0;
+        boolean changed = true;
+        while (changed) {
+            changed = false;
+            for (int i = 0; i < code.size(); i++) {
+                if (code.op(i) == CgenCode.DELETED)
+                    continue;
+                if (p.selfMove(i) || p.pushPop(i) || p.loadAfterStore(i)
+                        || p.storeAfterLoad(i) || p.moveBack(i) || p.deadMove(i)
+                        || p.branchToNext(i))
+                    changed = true;
+            }
+            removed += code.compact();
+        }
+        return removed;
+    }
+
+    // Returns the index of the first instruction after i that has not been
+    // deleted, or -1 if there is none.
+    private int next(int i) {
+        for (int j = i + 1; j < code.size(); j++)
+            if (code.op(j) != CgenCode.DELETED)
+                return j;
+        return -1;
+    }
+
+    private boolean is(int i, int opcode) {
+        return i >= 0 && code.op(i) == opcode;
+    }
+
+    // Replaces instruction i by a move, or deletes it if it would move a
+    // register to itself.
+    private void replaceByMove(int i, int dest, int src) {
+        if (dest == src)
+            code.delete(i);
+        else
+            code.set(i, CgenCode.MOVE, dest, src, 0);
+    }
+
+    /**
+     *   move r r       =>  (nothing)
+     */
+    private boolean selfMove(int i) {
+        if (is(i, CgenCode.MOVE) && code.x(i) == code.y(i)) {
+            code.delete(i);
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     *   sw r 0($sp)
+     *   addiu $sp $sp -4
+     *   lw s 4($sp)         =>  move s r
+     *   addiu $sp $sp 4
+     */
+    private boolean pushPop(int i) {
+        int j = next(i);
+        int k = next(j);
+        int l = next(k);
+        if (!(is(i, CgenCode.SW) && code.y(i) == SP && code.z(i) == 0
+                && isStackAdjust(j, -CgenConstants.WORD_SIZE)
+                && is(k, CgenCode.LW) && code.y(k) == SP && code.z(k) == CgenConstants.WORD_SIZE
+                && isStackAdjust(l, CgenConstants.WORD_SIZE)))
+            return false;
+        int r = code.x(i), s = code.x(k);
+        if (r == SP || s == SP)
+            return false;
+        code.delete(i);
+        code.delete(j);
+        code.delete(l);
+        replaceByMove(k, s, r);
+        return true;
+    }
+
+    private boolean isStackAdjust(int i, int amount) {
+        return is(i, CgenCode.ADDIU) && code.x(i) == SP && code.y(i) == SP && code.z(i) == amount;
+    }
+
+    /**
+     *   sw r n(b)
+     *   lw s n(b)          =>  sw r n(b)
+     *                          move s r
+     */
+    private boolean loadAfterStore(int i) {
+        int j = next(i);
+        if (!(is(i, CgenCode.SW) && is(j, CgenCode.LW)
+                && code.y(i) == code.y(j) && code.z(i) == code.z(j)))
+            return false;
+        replaceByMove(j, code.x(j), code.x(i));
+        return true;
+    }
+
+    /**
+     *   lw r n(b)
+     *   sw r n(b)          =>  lw r n(b)
+     *
+     * unless r is b, which the load has overwritten.
+     */
+    private boolean storeAfterLoad(int i) {
+        int j = next(i);
+        if (!(is(i, CgenCode.LW) && is(j, CgenCode.SW) && code.x(i) == code.x(j)
+                && code.y(i) == code.y(j) && code.z(i) == code.z(j)
+                && code.x(i) != code.y(i)))
+            return false;
+        code.delete(j);
+        return true;
+    }
+
+    /**
+     *   move a b
+     *   move b a           =>  move a b
+     */
+    private boolean moveBack(int i) {
+        int j = next(i);
+        if (!(is(i, CgenCode.MOVE) && is(j, CgenCode.MOVE)
+                && code.x(i) == code.y(j) && code.y(i) == code.x(j)))
+            return false;
+        code.delete(j);
+        return true;
+    }
+
+    /**
+     *   move a b
+     *   move a c           =>  move a c
+     *
+     * when c is not a, so the first move is never read.
+     */
+    private boolean deadMove(int i) {
+        int j = next(i);
+        if (!(is(i, CgenCode.MOVE) && is(j, CgenCode.MOVE)
+                && code.x(i) == code.x(j) && code.y(j) != code.x(i)))
+            return false;
+        code.delete(i);
+        return true;
+    }
+
+    /**
+     *   b label1
+     *   label1:            =>  label1:
+     *
+     * and likewise for conditional branches, also when other labels come
+     * between the branch and its target.
+     */
+    private boolean branchToNext(int i) {
+        if (!isBranch(i))
+            return false;
+        for (int j = next(i); is(j, CgenCode.LABEL); j = next(j)) {
+            if (code.z(j) == code.z(i)) {
+                code.delete(i);
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private boolean isBranch(int i) {
+        switch (code.op(i)) {
+            case CgenCode.B:
+            case CgenCode.BEQZ:
+            case CgenCode.BEQ:
+            case CgenCode.BNE:
+            case CgenCode.BLEQ:
+            case CgenCode.BLT:
+            case CgenCode.BGT:
+            case CgenCode.BLTI:
+            case CgenCode.BGTI:
+                return true;
+            default:
+                return false;
+        }
+    }
+}
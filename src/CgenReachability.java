@@ -0,0 +1,190 @@
+import ast.*;
+
+import java.util.ArrayDeque;
+import java.util.HashMap;
+import java.util.HashSet;
+
+/**
+ * Finds the classes, methods and constants that the program can reach
+ * from Main.main, so that only they are coded.
+ * <p>
+ * The analysis starts from Main.main, with Main and the basic classes
+ * instantiated.  A method is reached when it may be called:
+ * <ul>
+ * <li>A dispatch on m whose receiver has static type T reaches the method
+ *     m of T, which devirtualized dispatches call by name.  It also
+ *     reaches the method m of every instantiated class below T, looked
+ *     up in the method tables of CgenEnv.</li>
+ * <li>A static dispatch on T reaches the method m of T.</li>
+ * </ul>
+ * A class is instantiated when a reached method or attribute initializer
+ * contains new of it.  The methods already dispatched on above it are
+ * then reached in the class as well.  An instantiated class and its
+ * ancestors are reachable: their init methods run when objects are
+ * created, so their attribute initializers are reached.
+ * <p>
+ * The results are kept in the CgenNodes, the MethodInfos and
+ * ctx.liveConstants.  Unreachable classes get no prototype object,
+ * dispatch table or init method.  Unreachable methods get no code, and
+ * their dispatch table entries are 0.  Constants no reached code uses
+ * are not coded.  The pass runs under -O after the dispatches have been
+ * bound and inlined.
+ */
+class CgenReachability extends CgenVisitor<Void, Void> {
+
+    private CgenNode current;   // the class of the method or attribute scanned
+
+    // the methods dispatched on, by the static type of the receiver
+    private final HashMap<CgenNode, HashSet<Symbol>> dispatched = new HashMap<>();
+
+    // reached methods and reachable classes whose code is still to be scanned
+    private final ArrayDeque<Cgen.MethodInfo> methods = new ArrayDeque<>();
+    private final ArrayDeque<CgenNode> classes = new ArrayDeque<>();
+
+    CgenReachability(CompilationContext ctx) {
+        super(ctx);
+    }
+
+    /**
+     * Runs the analysis over the whole class table.
+     */
+    void analyze() {
+        CgenClassTable table = ctx.cgenClassTable;
+        ctx.liveConstants = new HashSet<>();
+        ctx.liveConstants.add(ctx.stringtable.addString(""));
+        ctx.liveConstants.add(ctx.inttable.addString("0"));
+        visit(table.root());
+
+        for (Symbol basic : new Symbol[] {TreeConstants.Object_, TreeConstants.IO,
+                TreeConstants.Int, TreeConstants.Bool, TreeConstants.Str})
+            instantiate(table.get(basic));
+        instantiate(table.get(TreeConstants.Main));
+        reach(table.get(TreeConstants.Main).env.methods.lookup(TreeConstants.main_meth));
+
+        while (!methods.isEmpty() || !classes.isEmpty()) {
+            if (!classes.isEmpty()) {
+                CgenNode c = classes.remove();
+                current = c;
+                ctx.liveConstants.add(c.env.getFilename());
+                for (FeatureNode f : c.getClassNode().getFeatures())
+                    if (f instanceof AttributeNode)
+                        ((AttributeNode) f).getInit().accept(this, null);
+            } else {
+                Cgen.MethodInfo minfo = methods.remove();
+                current = table.get(minfo.getClassname());
+                ctx.liveConstants.add(current.env.getFilename());
+                for (FeatureNode f : current.getClassNode().getFeatures())
+                    if (f instanceof MethodNode && ((MethodNode) f).getName() == minfo.getMethodname())
+                        ((MethodNode) f).getExpr().accept(this, null);
+            }
+        }
+
+        for (CgenNode c : table.byTag()) {
+            if (c.basic())
+                continue;
+            if (!c.isReachable())
+                ctx.unreachableClasses++;
+            for (FeatureNode f : c.getClassNode().getFeatures())
+                if (f instanceof MethodNode && !c.env.methods.lookup(((MethodNode) f).getName()).isReachable())
+                    ctx.unreachableMethods++;
+        }
+    }
+
+    // Clears the marks of all classes and methods.
+    @Override
+    Void visit(CgenNode v) {
+        v.setInstantiated(false);
+        v.setReachable(false);
+        for (int i = 0; i < v.env.getNumMethods(); i++)
+            v.env.methodOffsets.lookup(i).reachable = false;
+        return super.visit(v);
+    }
+
+    private void reach(Cgen.MethodInfo minfo) {
+        if (minfo.reachable)
+            return;
+        minfo.reachable = true;
+        if (!ctx.cgenClassTable.get(minfo.getClassname()).basic())
+            methods.add(minfo);
+    }
+
+    private void instantiate(CgenNode c) {
+        if (c.isInstantiated())
+            return;
+        c.setInstantiated(true);
+        ctx.liveConstants.add(ctx.classTags.get(c.env.getClassTag()));
+        reachClass(c);
+        for (CgenNode a = c; a != null; a = parentOf(a))
+            for (Symbol m : dispatched.getOrDefault(a, new HashSet<>()))
+                reach(c.env.methods.lookup(m));
+    }
+
+    // Marks the class and its ancestors reachable.
+    private void reachClass(CgenNode c) {
+        for (CgenNode a = c; a != null && !a.isReachable(); a = parentOf(a)) {
+            a.setReachable(true);
+            if (!a.basic())
+                classes.add(a);
+        }
+    }
+
+    private CgenNode parentOf(CgenNode c) {
+        return c == ctx.cgenClassTable.root() ? null : c.getParentNd();
+    }
+
+    private void dispatch(CgenNode c, Symbol m) {
+        if (!dispatched.computeIfAbsent(c, k -> new HashSet<>()).add(m))
+            return;
+        reach(c.env.methods.lookup(m));
+        reachBelow(c, m);
+    }
+
+    private void reachBelow(CgenNode c, Symbol m) {
+        for (CgenNode child : c.getChildren()) {
+            if (child.isInstantiated())
+                reach(child.env.methods.lookup(m));
+            reachBelow(child, m);
+        }
+    }
+
+    private CgenNode classOf(Symbol type) {
+        return type == TreeConstants.SELF_TYPE ? current : ctx.cgenClassTable.get(type);
+    }
+
+    @Override
+    public Void visit(DispatchNode node, Void data) {
+        super.visit(node, data);
+        dispatch(classOf(node.getExpr().getType()), node.getName());
+        return null;
+    }
+
+    @Override
+    public Void visit(StaticDispatchNode node, Void data) {
+        super.visit(node, data);
+        CgenNode c = ctx.cgenClassTable.get(node.getType_name());
+        reach(c.env.methods.lookup(node.getName()));
+        reachClass(c);  // for its dispatch table
+        return null;
+    }
+
+    @Override
+    public Void visit(NewNode node, Void data) {
+        // new SELF_TYPE creates an object of the class of self, which
+        // has been instantiated already
+        if (node.getType_name() != TreeConstants.SELF_TYPE)
+            instantiate(ctx.cgenClassTable.get(node.getType_name()));
+        return null;
+    }
+
+    @Override
+    public Void visit(IntConstNode node, Void data) {
+        ctx.liveConstants.add(node.getVal());
+        return null;
+    }
+
+    @Override
+    public Void visit(StringConstNode node, Void data) {
+        ctx.liveConstants.add(node.getVal());
+        return null;
+    }
+}
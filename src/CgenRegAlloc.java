@@ -0,0 +1,469 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
+
+/**
+ * A linear-scan register allocator for the temporaries of one method.
+ * <p>
+ * The expression code generator keeps every temporary (let and case
+ * variables and saved operands) in a slot of the stack frame, at word
+ * offsets 0 to temps-1 from the frame pointer.  This pass runs over the
+ * finished instructions of a method and moves the slots into the
+ * callee-save registers of CgenConstants.regNames where it can:
+ * <ol>
+ * <li>The method is split into basic blocks and the live slots are
+ *     computed by backward dataflow.  A slot is defined by a store and
+ *     used by a load.</li>
+ * <li>Each slot gets a live interval, from the first to the last
+ *     instruction at which it is live.</li>
+ * <li>The intervals are visited in order of their start, and each gets a
+ *     register that is free at that point.  When none is free, the
+ *     interval that ends last is spilled and stays in its frame slot.</li>
+ * <li>Loads and stores of slots that got a register become moves.  Stores
+ *     to slots that are never loaded are dropped.</li>
+ * </ol>
+ * Only the registers that were handed out are saved and restored; each is
+ * saved in the frame slot of the first temporary it holds, since that
+ * slot is no longer used.  Slots that stay in memory are cleared for the
+ * garbage collector as before, unless the stack maps cover them.
+ */
+class CgenRegAlloc {
+
+    private static final int FP = CgenCode.reg(CgenConstants.FP);
+    private static final int ZERO = CgenCode.reg(CgenConstants.ZERO);
+    private static final int[] REGS = new int[CgenConstants.NUM_REGS];
+
+    static {
+        for (int i = 0; i < CgenConstants.NUM_REGS; i++)
+            REGS[i] = CgenCode.reg(CgenConstants.regNames[i]);
+    }
+
+    private final CgenCode code;
+    private final int start;    // first instruction of the body
+    private final int end;      // instruction after the body
+    private final int temps;
+
+    // the register of each slot, or -1 if it stays in memory
+    private final int[] slotReg;
+
+    // whether the body loads each slot; null if the body cannot be allocated
+    private boolean[] loaded;
+
+    private CgenRegAlloc(CgenCode code, int start, int end, int temps) {
+        this.code = code;
+        this.start = start;
+        this.end = end;
+        this.temps = temps;
+        this.slotReg = new int[temps];
+        Arrays.fill(slotReg, -1);
+    }
+
+    /**
+     * Allocates registers for the temporaries of a method and inserts the
+     * code to save and restore the registers used and to clear the slots
+     * that stay in memory.
+     *
+     * @param code    the instructions of the method
+     * @param saveAt  where the body starts, after the frame is set up
+     * @param restoreAt where the body ends, before the frame is torn down
+     * @param temps   the number of temporaries in the frame
+     */
+    static void allocate(CgenCode code, int saveAt, int restoreAt, int temps) {
+        CgenRegAlloc a = new CgenRegAlloc(code, saveAt, restoreAt, temps);
+        if (temps > 0 && a.canAllocate()) {
+            a.loaded = new boolean[temps];
+            for (int i = saveAt; i < restoreAt; i++)
+                if (code.op(i) == CgenCode.LW && a.slot(i) >= 0)
+                    a.loaded[a.slot(i)] = true;
+            a.scan(a.intervals());
+        }
+        a.rewrite();
+        code.compact();
+    }
+
+    // Returns the slot accessed by instruction i, or -1 if it does not
+    // access a temporary.
+    private int slot(int i) {
+        int op = code.op(i);
+        if ((op == CgenCode.LW || op == CgenCode.SW) && code.y(i) == FP) {
+            int off = code.z(i);
+            if (off >= 0 && off % CgenConstants.WORD_SIZE == 0 && off / CgenConstants.WORD_SIZE < temps)
+                return off / CgenConstants.WORD_SIZE;
+        }
+        return -1;
+    }
+
+    private static boolean isBranch(int op) {
+        switch (op) {
+            case CgenCode.B:
+            case CgenCode.BEQZ:
+            case CgenCode.BEQ:
+            case CgenCode.BNE:
+            case CgenCode.BLEQ:
+            case CgenCode.BLT:
+            case CgenCode.BGT:
+            case CgenCode.BLTI:
+            case CgenCode.BGTI:
+            case CgenCode.JT:
+                return true;
+            default:
+                return false;
+        }
+    }
+
+    private boolean reads(int i, int reg) {
+        switch (code.op(i)) {
+            case CgenCode.SW:
+            case CgenCode.SB:
+            case CgenCode.BEQ:
+            case CgenCode.BNE:
+            case CgenCode.BLEQ:
+            case CgenCode.BLT:
+            case CgenCode.BGT:
+                return code.x(i) == reg || code.y(i) == reg;
+            case CgenCode.ADD:
+            case CgenCode.ADDU:
+            case CgenCode.SUB:
+            case CgenCode.MUL:
+            case CgenCode.DIV:
+            case CgenCode.SLT:
+            case CgenCode.XOR:
+                return code.y(i) == reg || code.z(i) == reg;
+            case CgenCode.LW:
+            case CgenCode.MOVE:
+            case CgenCode.NEG:
+            case CgenCode.ADDIU:
+            case CgenCode.SLL:
+            case CgenCode.SRL:
+            case CgenCode.SLTIU:
+            case CgenCode.XORI:
+            case CgenCode.ANDI:
+            case CgenCode.OMITTED_MOVE:
+                return code.y(i) == reg;
+            case CgenCode.JALR:
+            case CgenCode.JR:
+            case CgenCode.BEQZ:
+            case CgenCode.BLTI:
+            case CgenCode.BGTI:
+                return code.x(i) == reg;
+            default:
+                return false;
+        }
+    }
+
+    private boolean writes(int i, int reg) {
+        switch (code.op(i)) {
+            case CgenCode.LW:
+            case CgenCode.LI:
+            case CgenCode.LA:
+            case CgenCode.MOVE:
+            case CgenCode.NEG:
+            case CgenCode.ADD:
+            case CgenCode.ADDU:
+            case CgenCode.SUB:
+            case CgenCode.MUL:
+            case CgenCode.DIV:
+            case CgenCode.ADDIU:
+            case CgenCode.SLL:
+            case CgenCode.SRL:
+            case CgenCode.SLT:
+            case CgenCode.XOR:
+            case CgenCode.SLTIU:
+            case CgenCode.XORI:
+            case CgenCode.ANDI:
+                return code.x(i) == reg;
+            default:
+                return false;
+        }
+    }
+
+    /**
+     * Checks that the body uses the frame pointer only as the base of loads
+     * and stores, and to address the objects above the temporaries, and
+     * that it leaves the allocatable registers alone.
+     */
+    private boolean canAllocate() {
+        for (int i = start; i < end; i++) {
+            int op = code.op(i);
+            if (op == CgenCode.LW || op == CgenCode.SW) {
+                if (code.x(i) == FP)
+                    return false;
+            } else if (op == CgenCode.ADDIU && code.y(i) == FP && code.x(i) != FP) {
+                if (code.z(i) < temps * CgenConstants.WORD_SIZE)
+                    return false;
+            } else if (reads(i, FP) || writes(i, FP)) {
+                return false;
+            }
+            for (int r : REGS)
+                if (reads(i, r) || writes(i, r))
+                    return false;
+        }
+        return true;
+    }
+
+    /**
+     * Returns the slots live after each call in the code, indexed by the
+     * instruction of the call less start; the other entries are null.
+     * The stack maps of the garbage collector are made from them.
+     *
+     * @return the live slots, or null if the control flow could not be
+     *         followed
+     */
+    static BitSet[] liveAfterCalls(CgenCode code, int start, int end, int temps) {
+        CgenRegAlloc a = new CgenRegAlloc(code, start, end, temps);
+        if (!a.liveness())
+            return null;
+        BitSet[] result = new BitSet[end - start];
+        for (int b = 0; b < a.first.length; b++) {
+            BitSet live = (BitSet) a.liveOut[b].clone();
+            for (int i = a.last[b]; i >= a.first[b]; i--) {
+                int op = code.op(i);
+                if (op == CgenCode.JAL || op == CgenCode.JALR)
+                    result[i - start] = (BitSet) live.clone();
+                int s = a.slot(i);
+                if (s >= 0 && op == CgenCode.SW)
+                    live.clear(s);
+                else if (s >= 0)
+                    live.set(s);
+            }
+        }
+        return result;
+    }
+
+    // the basic blocks of the body and the slots live at their ends;
+    // set by liveness()
+    private int[] first;
+    private int[] last;
+    private BitSet[] liveOut;
+
+    /**
+     * Splits the body into basic blocks and computes the slots live at the
+     * end of each by backward dataflow.
+     *
+     * @return false if the control flow could not be followed
+     */
+    private boolean liveness() {
+        // Basic blocks: leaders are the body start, labels, and the
+        // instructions after branches.  Every entry of a jump table is a
+        // block of its own, and the successors of the JR before the table.
+        ArrayList<Integer> leaders = new ArrayList<>();
+        HashMap<Integer, Integer> labelBlock = new HashMap<>();
+        for (int i = start; i < end; i++) {
+            int op = code.op(i);
+            if (i == start || op == CgenCode.LABEL || isBranch(code.op(i - 1)))
+                leaders.add(i);
+            if (op == CgenCode.LABEL)
+                labelBlock.put(code.z(i), leaders.size() - 1);
+        }
+        int n = leaders.size();
+        first = new int[n];
+        last = new int[n];
+        for (int b = 0; b < n; b++) {
+            first[b] = leaders.get(b);
+            last[b] = b + 1 < n ? leaders.get(b + 1) - 1 : end - 1;
+        }
+
+        // Successors, and the slots each block uses before defining and defines
+        int[][] succ = new int[n][];
+        BitSet[] use = new BitSet[n];
+        BitSet[] def = new BitSet[n];
+        for (int b = 0; b < n; b++) {
+            int op = code.op(last[b]);
+            boolean falls = op != CgenCode.B && op != CgenCode.JT && b + 1 < n;
+            Integer target = isBranch(op) ? labelBlock.get(code.z(last[b])) : null;
+            if (isBranch(op) && target == null)
+                return false;   // a branch out of the method
+            if (op == CgenCode.JR) {
+                int k = b + 1;
+                while (k < n && code.op(last[k]) == CgenCode.JT)
+                    k++;
+                succ[b] = new int[k - b - 1];
+                for (int e = b + 1; e < k; e++)
+                    succ[b][e - b - 1] = e;
+            } else if (target != null && falls)
+                succ[b] = new int[]{target, b + 1};
+            else if (target != null)
+                succ[b] = new int[]{target};
+            else if (falls)
+                succ[b] = new int[]{b + 1};
+            else
+                succ[b] = new int[0];
+
+            use[b] = new BitSet(temps);
+            def[b] = new BitSet(temps);
+            for (int i = first[b]; i <= last[b]; i++) {
+                int s = slot(i);
+                if (s < 0)
+                    continue;
+                if (code.op(i) == CgenCode.LW && !def[b].get(s))
+                    use[b].set(s);
+                else if (code.op(i) == CgenCode.SW)
+                    def[b].set(s);
+            }
+        }
+
+        // Backward dataflow to a fixed point
+        BitSet[] liveIn = new BitSet[n];
+        liveOut = new BitSet[n];
+        for (int b = 0; b < n; b++) {
+            liveIn[b] = new BitSet(temps);
+            liveOut[b] = new BitSet(temps);
+        }
+        boolean changed = true;
+        while (changed) {
+            changed = false;
+            for (int b = n - 1; b >= 0; b--) {
+                BitSet out = new BitSet(temps);
+                for (int t : succ[b])
+                    out.or(liveIn[t]);
+                BitSet in = (BitSet) out.clone();
+                in.andNot(def[b]);
+                in.or(use[b]);
+                if (!in.equals(liveIn[b]) || !out.equals(liveOut[b])) {
+                    liveIn[b] = in;
+                    liveOut[b] = out;
+                    changed = true;
+                }
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Computes the live interval of every slot from the live sets of the
+     * basic blocks.
+     *
+     * @return the intervals as {slot, first, last}, or null if the control
+     *         flow could not be followed
+     */
+    private int[][] intervals() {
+        if (!liveness())
+            return null;
+        int n = first.length;
+
+        // Intervals: every instruction at which a slot is live, defined or used
+        int[] from = new int[temps];
+        int[] to = new int[temps];
+        Arrays.fill(from, Integer.MAX_VALUE);
+        Arrays.fill(to, -1);
+        for (int b = 0; b < n; b++) {
+            BitSet live = (BitSet) liveOut[b].clone();
+            for (int i = last[b]; i >= first[b]; i--) {
+                int s = slot(i);
+                if (s >= 0 && code.op(i) == CgenCode.SW)
+                    live.clear(s);
+                if (s >= 0) {
+                    from[s] = Math.min(from[s], i);
+                    to[s] = Math.max(to[s], i);
+                }
+                if (s >= 0 && code.op(i) == CgenCode.LW)
+                    live.set(s);
+                for (int t = live.nextSetBit(0); t >= 0; t = live.nextSetBit(t + 1)) {
+                    from[t] = Math.min(from[t], i);
+                    to[t] = Math.max(to[t], i);
+                }
+            }
+        }
+
+        ArrayList<int[]> result = new ArrayList<>();
+        for (int s = 0; s < temps; s++)
+            if (to[s] >= 0)
+                result.add(new int[]{s, from[s], to[s]});
+        result.sort((a, b) -> Integer.compare(a[1], b[1]));
+        return result.toArray(new int[0][]);
+    }
+
+    /**
+     * Hands out registers to the intervals in order of their start.
+     */
+    private void scan(int[][] intervals) {
+        if (intervals == null)
+            return;
+        ArrayList<int[]> active = new ArrayList<>();   // sorted by end
+        boolean[] busy = new boolean[REGS.length];
+        for (int[] cur : intervals) {
+            if (!loaded[cur[0]])
+                continue;
+            // free the registers of the intervals that have ended
+            while (!active.isEmpty() && active.get(0)[2] < cur[1]) {
+                busy[regIndex(slotReg[active.get(0)[0]])] = false;
+                active.remove(0);
+            }
+            int free = -1;
+            for (int r = 0; r < REGS.length && free < 0; r++)
+                if (!busy[r])
+                    free = r;
+            if (free >= 0) {
+                busy[free] = true;
+                slotReg[cur[0]] = REGS[free];
+                insertByEnd(active, cur);
+            } else {
+                int[] last = active.get(active.size() - 1);
+                if (last[2] > cur[2]) {
+                    // spill the interval that ends last and take its register
+                    slotReg[cur[0]] = slotReg[last[0]];
+                    slotReg[last[0]] = -1;
+                    active.remove(active.size() - 1);
+                    insertByEnd(active, cur);
+                }
+            }
+        }
+    }
+
+    private static void insertByEnd(ArrayList<int[]> active, int[] interval) {
+        int i = 0;
+        while (i < active.size() && active.get(i)[2] <= interval[2])
+            i++;
+        active.add(i, interval);
+    }
+
+    private static int regIndex(int reg) {
+        for (int r = 0; r < REGS.length; r++)
+            if (REGS[r] == reg)
+                return r;
+        throw new IllegalStateException("Not an allocatable register " + reg);
+    }
+
+    /**
+     * Turns loads and stores of allocated slots into moves and inserts
+     * the saves, restores and clears.
+     */
+    private void rewrite() {
+        for (int i = start; i < end; i++) {
+            int s = slot(i);
+            if (s < 0)
+                continue;
+            if (loaded != null && !loaded[s])
+                code.delete(i);
+            else if (slotReg[s] < 0)
+                continue;
+            else if (code.op(i) == CgenCode.LW)
+                code.set(i, CgenCode.MOVE, code.x(i), slotReg[s], 0);
+            else
+                code.set(i, CgenCode.MOVE, slotReg[s], code.x(i), 0);
+        }
+
+        // the slot in which each register used is saved
+        int[] saveSlot = new int[REGS.length];
+        Arrays.fill(saveSlot, -1);
+        for (int s = 0; s < temps; s++)
+            if (slotReg[s] >= 0 && saveSlot[regIndex(slotReg[s])] < 0)
+                saveSlot[regIndex(slotReg[s])] = s;
+
+        // restores first, so that the start of the body does not move
+        int at = end;
+        for (int r = 0; r < REGS.length; r++)
+            if (saveSlot[r] >= 0)
+                code.insert(at++, CgenCode.LW, REGS[r], FP, saveSlot[r] * CgenConstants.WORD_SIZE);
+
+        at = start;
+        for (int r = 0; r < REGS.length; r++)
+            if (saveSlot[r] >= 0)
+                code.insert(at++, CgenCode.SW, REGS[r], FP, saveSlot[r] * CgenConstants.WORD_SIZE);
+        if (Flags.cgen_Memmgr != Flags.GC_NOGC)
+            for (int s = CgenStackMaps.firstCleared(); s < temps; s++)
+                if (slotReg[s] < 0)
+                    code.insert(at++, CgenCode.SW, ZERO, FP, s * CgenConstants.WORD_SIZE);
+    }
+}
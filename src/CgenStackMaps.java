@@ -0,0 +1,128 @@
+import java.util.ArrayList;
+import java.util.BitSet;
+
+/**
+ * The stack maps of the garbage collector: for every call in the code,
+ * which temporaries of the calling frame hold live pointers when the
+ * call returns.
+ * <p>
+ * Without maps, GenGC takes every word on the stack that looks like a
+ * heap pointer for a root, so every prologue clears the temporaries, lest
+ * a stale pointer left by an earlier frame be taken for one.  With maps,
+ * _GenGC_ScanStack in lib/trap.handler walks the frames of the compiled
+ * methods along the frame pointers and checks only the temporaries live
+ * after the call each frame is in, and the prologues no longer clear
+ * them.
+ * <p>
+ * Once a method has been register allocated and optimized, a label is put
+ * after each call and the temporaries live there are found from the final
+ * instructions by CgenRegAlloc.liveAfterCalls.  The slot in which the
+ * allocator saves a callee-save register is loaded at the end of the
+ * method, so it is live across the body and keeps the value of the
+ * register up to date; the registers themselves are still updated through
+ * the register mask of the collector.  The objects allocated in the frame
+ * are always live, and the collector always checks the temporaries from
+ * MAP_SLOTS on, which do not fit in the mask; these are still cleared.
+ * <p>
+ * The maps are emitted as _stack_maps at the end of the data segment, in
+ * the order of their return addresses: a word with their number and three
+ * words for each, the return address, the number of temporaries of the
+ * frame and the mask of the live ones.  They are on whenever a garbage
+ * collector is.
+ */
+class CgenStackMaps {
+
+    /**
+     * The number of temporaries a mask covers.
+     */
+    static final int MAP_SLOTS = 32;
+
+    private static final int FP = CgenCode.reg(CgenConstants.FP);
+    private static final int SP = CgenCode.reg(CgenConstants.SP);
+    private static final int ZERO = CgenCode.reg(CgenConstants.ZERO);
+
+    private final CompilationContext ctx;
+
+    // {label, temps, mask} of every call, in code order
+    private final ArrayList<int[]> maps = new ArrayList<>();
+
+    CgenStackMaps(CompilationContext ctx) {
+        this.ctx = ctx;
+    }
+
+    static boolean enabled() {
+        return Flags.cgen_Memmgr != Flags.GC_NOGC;
+    }
+
+    /**
+     * Returns the first temporary the prologue clears for the garbage
+     * collector; those below are covered by the maps.
+     */
+    static int firstCleared() {
+        return enabled() ? MAP_SLOTS : 0;
+    }
+
+    /**
+     * Labels the calls of a method and records their maps.
+     *
+     * @param code       the instructions of the method
+     * @param temps      the number of temporaries in the frame
+     * @param frameTemps the temporaries below the objects allocated in
+     *                   the frame
+     */
+    void record(CgenCode code, int temps, int frameTemps) {
+        int always = 0;
+        for (int s = frameTemps; s < Math.min(temps, MAP_SLOTS); s++)
+            always |= 1 << s;
+
+        BitSet[] live = CgenRegAlloc.liveAfterCalls(code, 0, code.size(), temps);
+        if (live == null) {
+            // all temporaries are live, so they must be cleared after all
+            int at = setFramePointer(code) + 1;
+            for (int s = 0; s < Math.min(frameTemps, MAP_SLOTS); s++) {
+                code.insert(at++, CgenCode.SW, ZERO, FP, s * CgenConstants.WORD_SIZE);
+                always |= 1 << s;
+            }
+        }
+
+        ArrayList<Integer> calls = new ArrayList<>();
+        for (int i = 0; i < code.size(); i++) {
+            if (code.op(i) == CgenCode.JAL || code.op(i) == CgenCode.JALR) {
+                int mask = always;
+                if (live != null)
+                    for (int s = live[i].nextSetBit(0); s >= 0 && s < MAP_SLOTS; s = live[i].nextSetBit(s + 1))
+                        mask |= 1 << s;
+                calls.add(i);
+                maps.add(new int[]{ctx.nextLabel++, temps, mask});
+            }
+        }
+        // from the last call, so that the indices of the others stay put
+        for (int k = calls.size() - 1; k >= 0; k--)
+            code.insert(calls.get(k) + 1, CgenCode.LABEL, 0, 0, maps.get(maps.size() - calls.size() + k)[0]);
+    }
+
+    // Returns the instruction of the prologue that sets the frame pointer.
+    private static int setFramePointer(CgenCode code) {
+        for (int i = 0; i < code.size(); i++)
+            if (code.op(i) == CgenCode.ADDIU && code.x(i) == FP && code.y(i) == SP)
+                return i;
+        throw new IllegalStateException("No frame pointer set");
+    }
+
+    /**
+     * Writes the maps.
+     */
+    void print(CgenOutput s) {
+        s.print(CgenConstants.WORD);
+        s.println(maps.size());
+        for (int[] map : maps) {
+            s.print(CgenConstants.WORD);
+            s.print("label");
+            s.println(map[0]);
+            s.print(CgenConstants.WORD);
+            s.println(map[1]);
+            s.print(CgenConstants.WORD);
+            s.println(map[2]);
+        }
+    }
+}
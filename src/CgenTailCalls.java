@@ -0,0 +1,82 @@
+import ast.*;
+
+import java.util.List;
+
+/**
+ * Finds the self-recursive calls in tail position, which CgenEmitVisitor
+ * codes as jumps back to the start of the method.
+ * <p>
+ * A dispatch is a tail call if its value is the value of the method: it
+ * is the method body, the body of a let, a branch of a case or of a
+ * conditional, or the last expression of a block that is itself in tail
+ * position.  A tail call is a self call if CgenDevirtualize bound it to
+ * the method that contains it.  Such a call reuses the frame of the
+ * method: the arguments are stored over the formals, self is rebound to
+ * the receiver, and the body runs again, so a loop written as recursion
+ * runs in constant stack space.
+ * <p>
+ * Dispatches that are inlined are left alone.  Static dispatches are not
+ * coded yet, so they are not marked either.  The pass runs under -O after
+ * CgenInliner.
+ */
+class CgenTailCalls extends CgenVisitor<Void, Void> {
+
+    private CgenNode current;   // the class whose methods are visited
+
+    CgenTailCalls(CompilationContext ctx) {
+        super(ctx);
+    }
+
+    @Override
+    Void visit(CgenNode v) {
+        if (!v.basic()) {
+            current = v;
+            visit(v.getClassNode().getFeatures(), null);
+        }
+        return super.visit(v);
+    }
+
+    @Override
+    public Void visit(AttributeNode node, Void data) {
+        return null;
+    }
+
+    @Override
+    public Void visit(MethodNode node, Void data) {
+        Cgen.MethodInfo minfo = current.env.methods.lookup(node.getName());
+        minfo.tailCalls = mark(node.getExpr(), node.getName());
+        return null;
+    }
+
+    // Marks the self calls to the method in tail position in e, and
+    // returns whether there are any.
+    private boolean mark(ExpressionNode e, Symbol method) {
+        if (e instanceof DispatchNode) {
+            DispatchNode d = (DispatchNode) e;
+            if (d.getInlined() == null && d.getStaticBinding() == current.env.getClassname()
+                    && d.getName() == method) {
+                d.setTailCall(true);
+                ctx.tailCalls++;
+                return true;
+            }
+            return false;
+        }
+        if (e instanceof LetNode)
+            return mark(((LetNode) e).getBody(), method);
+        if (e instanceof BlockNode) {
+            List<ExpressionNode> exprs = ((BlockNode) e).getExprs();
+            return !exprs.isEmpty() && mark(exprs.get(exprs.size() - 1), method);
+        }
+        if (e instanceof CondNode) {
+            boolean t = mark(((CondNode) e).getThenExpr(), method);
+            return mark(((CondNode) e).getElseExpr(), method) || t;
+        }
+        if (e instanceof CaseNode) {
+            boolean found = false;
+            for (BranchNode b : ((CaseNode) e).getCases())
+                found |= mark(b.getExpr(), method);
+            return found;
+        }
+        return false;
+    }
+}
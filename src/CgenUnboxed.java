@@ -0,0 +1,98 @@
+import ast.*;
+
+/**
+ * Which expressions are evaluated to raw Int and Bool values.
+ * <p>
+ * The operands and results of arithmetic (+, -, *, /, ~) and of the
+ * comparisons (&lt;, &lt;=, not, and = on Ints and Bools) are kept as raw
+ * values in registers while a tree of such nodes is evaluated, and only
+ * the value of the whole tree is boxed into an Int or Bool object.  The
+ * other expressions are the escape points: they evaluate to objects, and
+ * an operand that is one of them is unboxed when its value is fetched.
+ * <p>
+ * The raw values of a tree are kept in RAW_REGS, one register per level
+ * of nesting.  The right operand of a binary node is evaluated into the
+ * next register if it is pure, that is, if it is made of constants,
+ * variables and raw nodes only, so that nothing is called while the left
+ * operand waits in its register.  Otherwise, and when the registers run
+ * out, the left operand is held in a temporary.  CgenEmitVisitor and
+ * CgenCalcTemps make this choice through holdsOperand, so that the frame
+ * has room for the temporaries the code uses.
+ */
+final class CgenUnboxed {
+
+    // the registers holding raw values; none of them is used by the code
+    // of the pure nodes, which call nothing
+    static final String[] RAW_REGS = {
+            CgenConstants.T1, CgenConstants.T2, CgenConstants.T3,
+            "$t4", "$t5", "$t6", "$t7", "$t8", "$t9"
+    };
+
+    private CgenUnboxed() {
+    }
+
+    /**
+     * Checks whether the node computes a raw value from raw operands.
+     */
+    static boolean isRaw(ExpressionNode e) {
+        if (e instanceof IntBinopNode || e instanceof LTNode || e instanceof LEqNode
+                || e instanceof NegNode || e instanceof CompNode)
+            return true;
+        if (e instanceof EqNode) {
+            Symbol type = ((EqNode) e).getE1().getType();
+            return type == TreeConstants.Int || type == TreeConstants.Bool;
+        }
+        return false;
+    }
+
+    /**
+     * Checks whether evaluating the expression calls nothing.
+     */
+    static boolean isPure(ExpressionNode e) {
+        if (e instanceof IntConstNode || e instanceof BoolConstNode || e instanceof ObjectNode)
+            return true;
+        if (!isRaw(e))
+            return false;
+        if (e instanceof BinopNode)
+            return isPure(((BinopNode) e).getE1()) && isPure(((BinopNode) e).getE2());
+        return isPure(((UnopNode) e).getE1());
+    }
+
+    /**
+     * Checks whether the left operand of a raw node evaluated into
+     * RAW_REGS[k] is held in a temporary while the right one is evaluated.
+     */
+    static boolean holdsOperand(BinopNode node, int k) {
+        return k + 1 >= RAW_REGS.length || !isPure(node.getE2());
+    }
+
+    /**
+     * Checks whether an operand held in a temporary is kept raw.  The
+     * garbage collectors scan the frame for pointers, so a raw value
+     * could be taken for one; when they are on, the operand is boxed.
+     */
+    static boolean holdsRaw() {
+        return Flags.cgen_Memmgr == Flags.GC_NOGC;
+    }
+
+    /**
+     * Checks whether Int results are boxed into the cache of Int objects
+     * when they are in its range, which is coded with the constants.  The
+     * Int constants in the range are the objects of the cache.
+     */
+    static boolean cachesInts() {
+        return Flags.cgen_optimize && Flags.int_cache_min <= Flags.int_cache_max;
+    }
+
+    /**
+     * Returns the value of an integer constant, or null if it does not
+     * fit in a register.
+     */
+    static Integer intValue(IntConstNode node) {
+        try {
+            return Integer.valueOf(node.getVal().getName());
+        } catch (NumberFormatException ex) {
+            return null;
+        }
+    }
+}
@@ -2,6 +2,14 @@
 import ast.visitor.BaseVisitor;
 
 public class CgenVisitor<R,D> extends BaseVisitor<R,D> {
+
+    // the compilation whose code is generated
+    protected final CompilationContext ctx;
+
+    public CgenVisitor(CompilationContext ctx) {
+        this.ctx = ctx;
+    }
+
     Void visit(CgenNode v) {
         for (CgenNode n : v.getChildren())
             visit(n);
@@ -16,9 +16,9 @@ class ClassTable {
      * do anything useful; you will need to edit it to make if do what
      * you want.
      */
-    private void installBasicClasses() {
+    private void installBasicClasses(CompilationContext ctx) {
         Symbol filename
-                = StringTable.stringtable.addString("<basic class>");
+                = ctx.stringtable.addString("<basic class>");
 
         LinkedList<FormalNode> formals;
 
@@ -191,7 +191,7 @@ class ClassTable {
 
     }
 
-    public ClassTable(List<ClassNode> cls) {
+    public ClassTable(CompilationContext ctx, List<ClassNode> cls) {
     	/* fill this in */
     }
 }
@@ -0,0 +1,131 @@
+import ast.Symbol;
+
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Holds the state of one compilation: the string tables, the tables
+ * built by semantic analysis and code generation, and the error counts.
+ * <p>
+ * Every phase gets its state from the context it is given rather than
+ * from static fields, so several programs can be compiled concurrently
+ * in one JVM as long as each uses its own context.  Command line flags
+ * other than the file names are shared by all compilations.
+ */
+public class CompilationContext {
+
+    // Symbols for identifiers, string constants and integer constants.
+    // The idtable starts out with the predefined symbols of TreeConstants.
+    final StringTable idtable;
+    final StringTable stringtable;
+    final StringTable inttable;
+
+    // Input and output file names, initially those given on the command line
+    String in_filename = Flags.in_filename;
+    String out_filename = Flags.out_filename;
+
+    // Error counts; the files of a program are lexed and parsed concurrently
+    final AtomicInteger lexErrors;
+    final AtomicInteger parseErrors;
+    final AtomicInteger semantErrors;
+
+    // The stream the error messages of the compilation are printed to,
+    // and whether a fatal error exits the JVM or throws FatalError; both
+    // are taken from Utilities when the compilation starts.  The lex and
+    // parse errors of a file read concurrently with others go to
+    // errorBuffer instead, until they can be printed in file order; it is
+    // null to print them at once.
+    final PrintStream errorStream;
+    final boolean exitOnFatalError;
+    final ByteArrayOutputStream errorBuffer;
+
+    // Semantic analysis
+    ClassTable classTable;
+    SymbolTable symtable = new SymbolTable();
+
+    // Code generation
+    CgenEmit emitter;
+    CgenClassTable cgenClassTable;  // inheritance tree
+
+    int lastTag = 0;    // counter for creating unique class tags
+    int nextLabel = 0;  // counter for labels, unique across the entire program
+    int peepholeRemoved = 0;    // instructions removed by the peephole optimizer
+    int devirtualized = 0;      // dispatches bound statically by CgenDevirtualize
+    int virtualCalls = 0;       // dispatches left to the dispatch table
+    int inlined = 0;            // dispatches inlined by CgenInliner
+    int tailCalls = 0;          // self calls coded as jumps by CgenTailCalls
+    int folded = 0;             // expressions replaced by CgenConstantFolder
+    int scalarReplaced = 0;     // objects replaced by constants by CgenEscapeAnalysis
+    int frameAllocated = 0;     // objects allocated in frames by CgenEscapeAnalysis
+    int unreachableMethods = 0; // user methods dropped by CgenReachability
+    int unreachableClasses = 0; // user classes dropped by CgenReachability
+    int pretenured = 0;         // allocations coded into the old area by the profile
+
+    // the string and int constants reachable code uses, and the names of
+    // the instantiated classes; null if all are coded
+    Set<Symbol> liveConstants;
+
+    /* Mapping from class tags to class names */
+    ArrayList<Symbol> classTags = new ArrayList<>();
+
+    public CompilationContext() {
+        idtable = new StringTable(TreeConstants.predefined);
+        stringtable = new StringTable();
+        inttable = new StringTable();
+        lexErrors = new AtomicInteger();
+        parseErrors = new AtomicInteger();
+        semantErrors = new AtomicInteger();
+        errorStream = Utilities.getErrorStream();
+        exitOnFatalError = Utilities.exitsOnFatalError();
+        errorBuffer = null;
+    }
+
+    /**
+     * Creates the context in which Frontend lexes and parses one file of
+     * the program of the given context.  The file enters its symbols
+     * through tables of its own (see StringTable.forFile), which merge
+     * numbers in file order, and counts its errors in the program's
+     * context.
+     *
+     * @param program  the context of the program
+     * @param buffered whether the file's error messages are kept in
+     *                 errorBuffer rather than printed at once
+     */
+    CompilationContext(CompilationContext program, boolean buffered) {
+        idtable = program.idtable.forFile();
+        stringtable = program.stringtable.forFile();
+        inttable = program.inttable.forFile();
+        lexErrors = program.lexErrors;
+        parseErrors = program.parseErrors;
+        semantErrors = program.semantErrors;
+        in_filename = program.in_filename;
+        out_filename = program.out_filename;
+        exitOnFatalError = program.exitOnFatalError;
+        errorBuffer = buffered ? new ByteArrayOutputStream() : null;
+        errorStream = buffered ? new PrintStream(errorBuffer, true) : program.errorStream;
+    }
+
+    /**
+     * Numbers the symbols the files of the program entered again, in the
+     * order of the files (see StringTable.merge).
+     *
+     * @param files the contexts of the files, in command line order
+     */
+    void merge(List<CompilationContext> files) {
+        List<StringTable> ids = new ArrayList<>();
+        List<StringTable> strings = new ArrayList<>();
+        List<StringTable> ints = new ArrayList<>();
+        for (CompilationContext file : files) {
+            ids.add(file.idtable);
+            strings.add(file.stringtable);
+            ints.add(file.inttable);
+        }
+        idtable.merge(ids);
+        stringtable.merge(strings);
+        inttable.merge(ints);
+    }
+}
@@ -0,0 +1,128 @@
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.PrintStream;
+import java.net.StandardProtocolFamily;
+import java.net.UnixDomainSocketAddress;
+import java.nio.channels.Channels;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A long-lived compiler process that accepts compile requests over a
+ * Unix-domain socket.
+ * <p>
+ * The generated lexer and parser keep their DFA and prediction context
+ * caches in static fields, so they stay warm from one request to the next
+ * and only the first request pays for ANTLR's adaptive prediction warm-up.
+ * Every compilation gets a fresh CompilationContext and the flags are
+ * reset for every request, so each compilation behaves as if it ran in
+ * a fresh JVM.
+ * <p>
+ * A request is the client's working directory on one line, followed by
+ * the command line arguments for Runner, one per line, and ends with an
+ * empty line.  Relative file names are resolved against the working
+ * directory.  The server answers with the messages the compiler printed
+ * and a final line "exit N" carrying the exit status.  A request whose
+ * only argument is "--stop" shuts the server down.
+ * <p>
+ * Requests are served one at a time.
+ */
+public class CompileServer {
+
+    private static final String STOP = "--stop";
+
+    public static void main(String[] args) throws IOException {
+        if (args.length != 1) {
+            System.err.println("usage: CompileServer <socket-path>");
+            System.exit(1);
+        }
+
+        Path socket = Paths.get(args[0]);
+        Files.deleteIfExists(socket);
+
+        ServerSocketChannel server = ServerSocketChannel.open(StandardProtocolFamily.UNIX);
+        server.bind(UnixDomainSocketAddress.of(socket));
+        socket.toFile().deleteOnExit();
+
+        Utilities.setExitOnFatalError(false);
+
+        boolean running = true;
+        while (running) {
+            try (SocketChannel client = server.accept()) {
+                running = serve(client);
+            } catch (IOException ex) {
+                System.err.println("Compile request failed: " + ex);
+            }
+        }
+        server.close();
+    }
+
+    /**
+     * Serves one request.
+     *
+     * @return false if the server was asked to stop
+     */
+    private static boolean serve(SocketChannel client) throws IOException {
+        BufferedReader in = new BufferedReader(new InputStreamReader(Channels.newInputStream(client)));
+        PrintStream out = new PrintStream(Channels.newOutputStream(client), true);
+
+        String dir = in.readLine();
+        if (dir == null)
+            return true;
+        Path cwd = Paths.get(dir);
+        List<String> request = new ArrayList<>();
+        for (String line = in.readLine(); line != null && !line.isEmpty(); line = in.readLine())
+            request.add(line);
+
+        if (request.size() == 1 && request.get(0).equals(STOP)) {
+            out.println("exit 0");
+            return false;
+        }
+
+        PrintStream stdout = System.out;
+        PrintStream stderr = System.err;
+        System.setOut(out);
+        System.setErr(out);
+        Utilities.setErrorStream(out);
+
+        int status = 0;
+        try {
+            Flags.reset();
+            String[] files = Flags.handleFlags(request.toArray(new String[0]));
+            if (Flags.lexer_only)
+                Utilities.fatalError("-x is not supported by the compile server");
+
+            for (int i = 0; i < files.length; i++)
+                files[i] = cwd.resolve(files[i]).toString();
+            if (Flags.in_filename != null)
+                Flags.in_filename = cwd.resolve(Flags.in_filename).toString();
+            if (Flags.out_filename != null)
+                Flags.out_filename = cwd.resolve(Flags.out_filename).toString();
+
+            if (Flags.batch) {
+                if (Runner.compileBatch(files) > 0)
+                    status = 1;
+            } else {
+                Runner.compile(files);
+            }
+        } catch (Utilities.FatalError ex) {
+            status = 1;
+        } catch (RuntimeException ex) {
+            ex.printStackTrace(out);
+            status = 1;
+        } finally {
+            System.setOut(stdout);
+            System.setErr(stderr);
+            Utilities.setErrorStream(stderr);
+        }
+
+        out.println("exit " + status);
+        return true;
+    }
+}
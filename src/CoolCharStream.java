@@ -0,0 +1,57 @@
+import ast.Symbol;
+import org.antlr.v4.runtime.ANTLRInputStream;
+import org.antlr.v4.runtime.CharStream;
+import org.antlr.v4.runtime.Token;
+
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+
+/**
+ * A lexer input stream that also exposes its characters as a
+ * CharSequence, so symbols can be interned straight from the input
+ * without creating a String for every token.
+ */
+public class CoolCharStream extends ANTLRInputStream implements CharSequence {
+
+    /** Reads the given stream to the end */
+    public CoolCharStream(InputStream input) throws IOException {
+        super(input);
+    }
+
+    /** Reads the given file; the file name is used in error messages */
+    public CoolCharStream(String fileName) throws IOException {
+        try (InputStreamReader r = new InputStreamReader(new FileInputStream(fileName))) {
+            load(r, INITIAL_BUFFER_SIZE, READ_BUFFER_SIZE);
+        }
+        name = fileName;
+    }
+
+    @Override
+    public int length() {
+        return n;
+    }
+
+    @Override
+    public char charAt(int index) {
+        return data[index];
+    }
+
+    @Override
+    public CharSequence subSequence(int start, int end) {
+        return new String(data, start, end - start);
+    }
+
+    /**
+     * Returns the symbol for the text of a token, entering it in the table
+     * if it is new.  Only for tokens whose text is the matched input, that
+     * is, tokens whose lexer rule does not call setText.
+     */
+    public static Symbol intern(StringTable table, Token t) {
+        CharStream input = t.getInputStream();
+        if (input instanceof CharSequence)
+            return table.addString((CharSequence) input, t.getStartIndex(), t.getStopIndex() + 1);
+        return table.addString(t.getText());
+    }
+}
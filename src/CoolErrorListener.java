@@ -4,10 +4,23 @@ import java.io.PrintStream;
 
 public class CoolErrorListener extends BaseErrorListener {
 
+    private final CompilationContext ctx;
+
+    // number of syntax errors reported for this file
+    private int errors = 0;
+
+    public CoolErrorListener(CompilationContext ctx) {
+        this.ctx = ctx;
+    }
+
+    public int getErrors() {
+        return errors;
+    }
+
     @Override
     public void syntaxError(Recognizer<?, ?> recognizer, Object offendingSymbol, int line, int charPositionInLine, String msg, RecognitionException e) {
 
-        PrintStream s = Utilities.parseError(recognizer.getInputStream().getSourceName(), line);
+        errors++;
         Token t;
         if (e != null) {
             t = e.getOffendingToken();
@@ -15,6 +28,9 @@ public class CoolErrorListener extends BaseErrorListener {
         else {
             t = (CommonToken) offendingSymbol;
         }
+        // a file read concurrently with others has its messages buffered
+        // in its own context, so they do not interleave
+        PrintStream s = Utilities.parseError(ctx, recognizer.getInputStream().getSourceName(), line);
         s.append(CoolLexer.VOCABULARY.getSymbolicName(t.getType()));
         s.append(" = ");
         s.println(t.getText());
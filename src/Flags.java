@@ -103,10 +103,98 @@ public class Flags {
     public static int verbose = 0;
 
     /**
-     * Disable register allocation
+     * Disable register allocation (allocation is enabled by -O)
      */
     public static boolean disable_reg_alloc = true;
 
+    /**
+     * Use the binary AST interchange format between phases
+     */
+    public static boolean binary_ast = false;
+
+    /**
+     * Compile each input file as a separate program
+     */
+    public static boolean batch = false;
+
+    /**
+     * Report the time spent in each phase
+     */
+    public static boolean phase_timing = false;
+
+    /**
+     * Emit an inline cache at every dynamic dispatch
+     */
+    public static boolean inline_caches = false;
+
+    /**
+     * Number of programs compiled in parallel in batch mode
+     * (default 0, one per available processor)
+     */
+    public static int threads = 0;
+
+    /**
+     * Profile the allocation sites of the program (implies GenGC)
+     */
+    public static boolean alloc_profile = false;
+
+    /**
+     * Allocation-site profile to pretenure the long-lived objects by
+     * (implies GenGC; default null, no pretenuring)
+     */
+    public static String pretenure_profile = null;
+
+    /**
+     * Smallest size in bytes of the GenGC work area (default 0, half of
+     * the initial heap)
+     */
+    public static int nursery_size = 0;
+
+    /**
+     * The old area of GenGC is at most 1/(2^old_ratio) of the heap after
+     * a major collection (default 2)
+     */
+    public static int old_ratio = 2;
+
+    /**
+     * The range of the cache of Int objects that -O boxes arithmetic
+     * results into (default -128 to 1023; empty if the minimum is greater
+     * than the maximum)
+     */
+    public static int int_cache_min = -128;
+    public static int int_cache_max = 1023;
+
+    /**
+     * Restores the default value of every flag
+     */
+    public static void reset() {
+        cgen_Memmgr = GC_NOGC;
+        cgen_Memmgr_Test = GC_NORMAL;
+        cgen_Memmgr_Debug = GC_QUICK;
+        cgen_optimize = false;
+        out_filename = null;
+        in_filename = null;
+        lexer_only = false;
+        recover = false;
+        lexer_debug = false;
+        parser_debug = false;
+        semant_debug = false;
+        cgen_debug = false;
+        verbose = 0;
+        disable_reg_alloc = true;
+        binary_ast = false;
+        batch = false;
+        phase_timing = false;
+        inline_caches = false;
+        threads = 0;
+        alloc_profile = false;
+        pretenure_profile = null;
+        nursery_size = 0;
+        old_ratio = 2;
+        int_cache_min = -128;
+        int_cache_max = 1023;
+    }
+
     /**
      * Processes command line flags and extracts filenames to be compiled
      *
@@ -120,8 +208,7 @@ public class Flags {
             if (args[i] != null) {
                 if (args[i].charAt(0) == '-') {
                     if (args[i].length() != 2) {
-                        System.err.println("Error in \"" + args[i] + "\".  frontend.Flags must be specified one at a time.\n");
-                        System.exit(1);
+                        Utilities.fatalError("Error in \"" + args[i] + "\".  frontend.Flags must be specified one at a time.\n");
                     }
                     // this is a flag
                     switch (args[i].charAt(1)) {
@@ -145,6 +232,7 @@ public class Flags {
                             break;
                         case 'O':
                             cgen_optimize = true;
+                            disable_reg_alloc = false;
                             break;
                         case 'l':
                             lexer_debug = true;
@@ -168,6 +256,89 @@ public class Flags {
                         case 'r':
                             recover = true;
                             break;
+                        case 'b':
+                            binary_ast = true;
+                            break;
+                        case 'B':
+                            batch = true;
+                            break;
+                        case 'P':
+                            phase_timing = true;
+                            break;
+                        case 'i':
+                            inline_caches = true;
+                            break;
+                        case 'j':
+                            if ((i + 1) < args.length) {
+                                try {
+                                    threads = Integer.parseInt(args[i + 1]);
+                                } catch (NumberFormatException ex) {
+                                    unknownopt = true;
+                                }
+                                args[i + 1] = null;
+                            } else {
+                                unknownopt = true;
+                            }
+                            break;
+                        case 'a':
+                            alloc_profile = true;
+                            cgen_Memmgr = GC_GENGC;
+                            break;
+                        case 'A':
+                            if ((i + 1) < args.length) {
+                                pretenure_profile = args[i + 1];
+                                cgen_Memmgr = GC_GENGC;
+                                args[i + 1] = null;
+                            } else {
+                                unknownopt = true;
+                            }
+                            break;
+                        case 'N':
+                            if ((i + 1) < args.length) {
+                                try {
+                                    nursery_size = Integer.parseInt(args[i + 1]);
+                                    if (nursery_size < 0)
+                                        unknownopt = true;
+                                } catch (NumberFormatException ex) {
+                                    unknownopt = true;
+                                }
+                                args[i + 1] = null;
+                            } else {
+                                unknownopt = true;
+                            }
+                            break;
+                        case 'R':
+                            if ((i + 1) < args.length) {
+                                try {
+                                    old_ratio = Integer.parseInt(args[i + 1]);
+                                    if (old_ratio < 0 || old_ratio > 31)
+                                        unknownopt = true;
+                                } catch (NumberFormatException ex) {
+                                    unknownopt = true;
+                                }
+                                args[i + 1] = null;
+                            } else {
+                                unknownopt = true;
+                            }
+                            break;
+                        case 'I':
+                            if ((i + 1) < args.length) {
+                                try {
+                                    String[] range = args[i + 1].split(":");
+                                    int_cache_min = Integer.parseInt(range[0]);
+                                    int_cache_max = Integer.parseInt(range[1]);
+                                    // the code indexes the cache with 16-bit immediates
+                                    if (Math.abs(int_cache_min) > 32767 || Math.abs(int_cache_max) > 32767
+                                            || int_cache_max - int_cache_min >= 32767)
+                                        unknownopt = true;
+                                } catch (NumberFormatException | ArrayIndexOutOfBoundsException ex) {
+                                    unknownopt = true;
+                                }
+                                args[i + 1] = null;
+                            } else {
+                                unknownopt = true;
+                            }
+                            break;
                         default:
                             unknownopt = true;
                             break;
@@ -183,7 +354,7 @@ public class Flags {
 
         if (unknownopt) {
             Utilities.fatalError("Unknown arguments");
-            System.err.println("usage: <program> [-OgtT -o outname] [input-files]\n");
+            System.err.println("usage: <program> [-OgtTbBPia -j threads -A profile -N bytes -R ratio -I min:max -o outname] [input-files]\n");
             System.exit(1);
         }
 
@@ -7,7 +7,9 @@ import org.antlr.v4.runtime.tree.ParseTree;
 
 import java.io.FileNotFoundException;
 import java.io.IOException;
+import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.ForkJoinTask;
 
 public class Frontend {
 
@@ -15,118 +17,171 @@ public class Frontend {
 
         args = Flags.handleFlags(args);
 
-        ProgramNode program = lexparse(args);
+        CompilationContext ctx = new CompilationContext();
+        ProgramNode program = lexparse(ctx, args);
 
         if (program != null) {
-            DumpVisitor d = new DumpVisitor(System.out);
-            d.visit(program, "");
+            if (Flags.binary_ast) {
+                BinaryASTWriter.writeAST(ctx, program, System.out);
+            } else {
+                DumpVisitor d = new DumpVisitor(System.out);
+                d.visit(program, "");
+            }
         }
     }
 
-    public static ProgramNode lexparse(String[] args) {
+    /**
+     * Lexes and parses the files of one program and merges their classes
+     * into one ProgramNode, in the order the files are given.
+     * <p>
+     * Unless tokens or parse trees are being printed, the files are lexed
+     * and parsed concurrently on the common fork-join pool.  Each file has
+     * a context of its own, which buffers its error messages until they
+     * are printed in file order; its symbols are numbered in file order
+     * once all files are read, so that the numbers are the same on every
+     * run.
+     */
+    public static ProgramNode lexparse(CompilationContext ctx, String[] args) {
+
+        List<ForkJoinTask<ProgramNode>> tasks = new ArrayList<>();
+        List<CompilationContext> files = new ArrayList<>();
+        boolean parallel = args.length > 1 && Flags.verbose == 0 && !Flags.lexer_only;
+        for (String filename : args) {
+            CompilationContext file = new CompilationContext(ctx, parallel);
+            ForkJoinTask<ProgramNode> task = ForkJoinTask.adapt(() -> lexparse(file, filename));
+            if (parallel)
+                task.fork();
+            else
+                task.invoke();
+            tasks.add(task);
+            files.add(file);
+        }
 
         ProgramNode program = null;
-        ANTLRInputStream input = null;
-        for (int i = 0; i < args.length; i++) {
+        for (int i = 0; i < tasks.size(); i++) {
+            ProgramNode ast = null;
+            Utilities.FatalError fatal = null;
             try {
-                String filename = args[i];
-                if (Flags.verbose > 0) {
-                    System.out.println("#name \"" + filename + "\"");
-                }
-
-                input = new ANTLRFileStream(filename);
-
-                CoolLexer lexer = new CoolLexer(input);
-                if (Flags.lexer_debug) {
-                    lexer.removeErrorListeners();
-                    lexer.addErrorListener(new DiagnosticErrorListener());
-                }
-
-                CommonTokenStream tokens = new CommonTokenStream(lexer);
-
-                if (Flags.verbose > 0) {
-                    // print all tokens
-                    tokens.fill();
-                    List<Token> alltokens = tokens.getTokens();
-                    for (Token t : alltokens) {
-                        System.out.println(t.toString());
+                ast = tasks.get(i).join();
+            } catch (Utilities.FatalError ex) {
+                if (!parallel)
+                    throw ex;
+                fatal = ex;
+            }
+            Utilities.printErrors(ctx, files.get(i), fatal);
+            if (program == null) {
+                program = ast;
+            } else {
+                if (ast != null)
+                    for (ClassNode c : ast.getClasses()) {
+                        program.add(c);
                     }
-                }
+            }
+        }
 
-                if (Flags.lexer_only) {
-                    tokens.fill();
-                    List<Token> alltokens = tokens.getTokens();
-                    for (Token t : alltokens) {
-                        String tokenName = CoolLexer.VOCABULARY.getSymbolicName(t.getType());
-                        String tokenText = t.getText();
-                        System.out.print("#" + t.getLine() + " "
-                                + tokenName + " "
-                        );
-
-                        if (tokenName.equals("STRING") || tokenName.equals("ERROR")) {
-                            System.out.print("\"");
-                            DumpVisitor.printEscapedString(tokenText, System.out);
-                            System.out.println("\"");
-                        } else
-                            System.out.println(tokenText);
+        ctx.merge(files);
 
-                    }
-                    continue;
-                }
+        if (Flags.lexer_only)
+            System.exit(0);
 
-                CoolParser parser = new CoolParser(tokens);
+        if (Utilities.errors(ctx)) {
+            if (Flags.recover) {
+                Utilities.error(ctx, Utilities.ErrorCode.LEXER_PARSER);
+            } else {
+                Utilities.fatalError(ctx, Utilities.ErrorCode.LEXER_PARSER);
+            }
+        }
 
-                if (Flags.parser_debug) {
-                    parser.removeErrorListeners();
-                    parser.addErrorListener(new DiagnosticErrorListener());
-                    parser.getInterpreter().setPredictionMode(PredictionMode.LL_EXACT_AMBIG_DETECTION);
-                } else {
-                    parser.removeErrorListeners();
-                    parser.addErrorListener(new CoolErrorListener());
-                }
+        return program;
+    }
 
+    /**
+     * Lexes and parses one file.
+     *
+     * @return the classes of the file, or null if it has syntax errors
+     * that are not to be recovered from
+     */
+    private static ProgramNode lexparse(CompilationContext ctx, String filename) {
+        try {
+            if (Flags.verbose > 0) {
+                System.out.println("#name \"" + filename + "\"");
+            }
 
-                parser.setErrorHandler(new CoolErrorStrategy());
+            CoolCharStream input = new CoolCharStream(filename);
 
-                ParseTree tree = parser.program();
+            CoolLexer lexer = new CoolLexer(input);
+            if (Flags.lexer_debug) {
+                lexer.removeErrorListeners();
+                lexer.addErrorListener(new DiagnosticErrorListener());
+            }
 
-                if (Flags.verbose > 0)
-                    System.out.println(tree.toStringTree(parser));
+            CommonTokenStream tokens = new CommonTokenStream(lexer);
 
-                if (Utilities.errors()) {
-                    if (Flags.recover) {
-                        Utilities.error(Utilities.ErrorCode.LEXER_PARSER);
-                    } else {
-                        Utilities.fatalError(Utilities.ErrorCode.LEXER_PARSER);
-                    }   
+            if (Flags.verbose > 0) {
+                // print all tokens
+                tokens.fill();
+                List<Token> alltokens = tokens.getTokens();
+                for (Token t : alltokens) {
+                    System.out.println(t.toString());
                 }
+            }
 
+            if (Flags.lexer_only) {
+                tokens.fill();
+                List<Token> alltokens = tokens.getTokens();
+                for (Token t : alltokens) {
+                    String tokenName = CoolLexer.VOCABULARY.getSymbolicName(t.getType());
+                    String tokenText = t.getText();
+                    System.out.print("#" + t.getLine() + " "
+                            + tokenName + " "
+                    );
+
+                    if (tokenName.equals("STRING") || tokenName.equals("ERROR")) {
+                        System.out.print("\"");
+                        DumpVisitor.printEscapedString(tokenText, System.out);
+                        System.out.println("\"");
+                    } else
+                        System.out.println(tokenText);
 
-                ASTBuilder builder = new ASTBuilder();
-                ProgramNode ast = (ProgramNode) builder.visit(tree);
-                if (program == null) {
-                    program = ast;
-                } else {
-                    if (ast != null)
-                        for (ClassNode c : ast.getClasses()) {
-                            program.add(c);
-                        }
                 }
+                return null;
+            }
+
+            CoolParser parser = new CoolParser(tokens);
+            CoolErrorListener listener = new CoolErrorListener(ctx);
 
-            } catch (FileNotFoundException ex) {
-                Utilities.fatalError(Utilities.ErrorCode.OPEN_FILE, args[i]);
-            } catch (IOException ex) {
-                Utilities.fatalError(Utilities.ErrorCode.EXCEPTION_LEXER, ex);
-            } catch (Exception ex) {
-		ex.printStackTrace();
-                Utilities.fatalError(Utilities.ErrorCode.EXCEPTION_PARSER, ex);
+            if (Flags.parser_debug) {
+                parser.removeErrorListeners();
+                parser.addErrorListener(new DiagnosticErrorListener());
+                parser.getInterpreter().setPredictionMode(PredictionMode.LL_EXACT_AMBIG_DETECTION);
+            } else {
+                parser.removeErrorListeners();
+                parser.addErrorListener(listener);
             }
 
-        }
+            parser.setErrorHandler(new CoolErrorStrategy());
 
-        if (Flags.lexer_only)
-            System.exit(0);
+            ParseTree tree = parser.program();
 
-        return program;
+            if (Flags.verbose > 0)
+                System.out.println(tree.toStringTree(parser));
+
+            if (listener.getErrors() > 0 && !Flags.recover)
+                return null;
+
+            ASTBuilder builder = new ASTBuilder(ctx);
+            return (ProgramNode) builder.visit(tree);
+
+        } catch (Utilities.FatalError ex) {
+            throw ex;
+        } catch (FileNotFoundException ex) {
+            Utilities.fatalError(ctx, Utilities.ErrorCode.OPEN_FILE, filename);
+        } catch (IOException ex) {
+            Utilities.fatalError(ctx, Utilities.ErrorCode.EXCEPTION_LEXER, ex);
+        } catch (Exception ex) {
+            ex.printStackTrace();
+            Utilities.fatalError(ctx, Utilities.ErrorCode.EXCEPTION_PARSER, ex);
+        }
+        return null;
     }
 }
@@ -2,25 +2,123 @@
 import ast.ProgramNode;
 import ast.visitor.DumpVisitor;
 
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Runs all phases of the compiler in one JVM, passing the AST between
+ * them in memory.
+ * <p>
+ * With -B every input file is compiled as a separate program, so a whole
+ * batch of programs pays for JVM startup and ANTLR warm-up only once.
+ * The programs are compiled in parallel on -j threads, one per processor
+ * by default.  With -P the time spent in each phase is reported on stderr.
+ */
 public class Runner {
 
     public static void main(String[] args) {
 
         args = Flags.handleFlags(args);
-        ProgramNode program = Frontend.lexparse(args);
+
+        if (!Flags.batch) {
+            compile(args);
+            return;
+        }
+
+        // A program with errors must not stop the rest of the batch
+        Utilities.setExitOnFatalError(false);
+
+        if (compileBatch(args) > 0)
+            System.exit(1);
+    }
+
+    /**
+     * Compiles each file as a separate program.  Fatal errors must be
+     * set to throw rather than exit.
+     *
+     * @param files the programs to compile
+     * @return the number of programs that failed to compile
+     */
+    static int compileBatch(String[] files) {
+        if (Flags.out_filename != null)
+            Utilities.fatalError("Cannot use -o when compiling a batch of programs");
+
+        int threads = Flags.threads > 0 ? Flags.threads : Runtime.getRuntime().availableProcessors();
+        ExecutorService pool = Executors.newFixedThreadPool(Math.min(threads, Math.max(files.length, 1)));
+
+        long start = System.nanoTime();
+        List<Future<?>> results = new ArrayList<>();
+        for (String filename : files) {
+            CompilationContext ctx = new CompilationContext();
+            ctx.in_filename = filename;
+            results.add(pool.submit(() -> compile(ctx, new String[]{filename})));
+        }
+        pool.shutdown();
+
+        int failed = 0;
+        for (Future<?> result : results) {
+            try {
+                result.get();
+            } catch (ExecutionException ex) {
+                if (!(ex.getCause() instanceof Utilities.FatalError))
+                    ex.getCause().printStackTrace();
+                failed++;
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+                pool.shutdownNow();
+                Utilities.fatalError("Interrupted while compiling a batch of programs");
+            }
+        }
+
+        if (Flags.phase_timing)
+            System.err.printf("%d programs, %d failed, %d threads: %.2f ms%n",
+                    files.length, failed, threads, (System.nanoTime() - start) / 1e6);
+        return failed;
+    }
+
+    /**
+     * Compiles the files as one program.
+     *
+     * @param args the files making up the program
+     */
+    static void compile(String[] args) {
+        compile(new CompilationContext(), args);
+    }
+
+    /**
+     * Compiles the files as one program in the given context.
+     *
+     * @param ctx  a context not used by any other compilation
+     * @param args the files making up the program
+     */
+    static void compile(CompilationContext ctx, String[] args) {
+        long t0 = System.nanoTime();
+        ProgramNode program = Frontend.lexparse(ctx, args);
+        long t1 = System.nanoTime();
 
         if (Flags.verbose > 0) {
             DumpVisitor d = new DumpVisitor(System.out);
             d.visit(program, "");
         }
 
-        Semant.analyze(program);
+        Semant.analyze(ctx, program);
+        long t2 = System.nanoTime();
 
         if (Flags.verbose > 0) {
             DumpVisitor d = new DumpVisitor(System.out);
             d.visit(program, "");
         }
 
-        Cgen.emit(program);
+        Cgen.emit(ctx, program);
+        long t3 = System.nanoTime();
+
+        if (Flags.phase_timing)
+            System.err.printf("%s: frontend %.2f ms, semant %.2f ms, cgen %.2f ms, total %.2f ms%n",
+                    String.join(" ", args),
+                    (t1 - t0) / 1e6, (t2 - t1) / 1e6, (t3 - t2) / 1e6, (t3 - t0) / 1e6);
     }
 }
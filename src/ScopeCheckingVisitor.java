@@ -1,6 +1,10 @@
 import ast.visitor.BaseVisitor;
 
 public class ScopeCheckingVisitor extends BaseVisitor<Object, Object> {
-    public ScopeCheckingVisitor() {
+
+    private final CompilationContext ctx;
+
+    public ScopeCheckingVisitor(CompilationContext ctx) {
+        this.ctx = ctx;
     }
 }
@@ -2,20 +2,17 @@ import ast.ProgramNode;
 
 class Semant {
 
-    public static ClassTable classTable;
-    public static SymbolTable symtable = new SymbolTable();
+    public static void analyze(CompilationContext ctx, ProgramNode program) {
 
-    public static void analyze(ProgramNode program) {
+        ctx.classTable = new ClassTable(ctx, program.getClasses());
 
-        classTable = new ClassTable(program.getClasses());
-
-        ScopeCheckingVisitor scopecheckVisitor = new ScopeCheckingVisitor();
+        ScopeCheckingVisitor scopecheckVisitor = new ScopeCheckingVisitor(ctx);
         program.accept(scopecheckVisitor, null);
-        TypeCheckingVisitor typecheckVisitor = new TypeCheckingVisitor();
+        TypeCheckingVisitor typecheckVisitor = new TypeCheckingVisitor(ctx);
         program.accept(typecheckVisitor, null);
 
-        if (Utilities.errors()) {
-            Utilities.fatalError(Utilities.ErrorCode.ERROR_SEMANT);
+        if (Utilities.errors(ctx)) {
+            Utilities.fatalError(ctx, Utilities.ErrorCode.ERROR_SEMANT);
         }
     }
 
@@ -0,0 +1,104 @@
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.PrintStream;
+
+/**
+ * Runs a program compiled by the code generator on a SpimMachine, in
+ * place of coolspim:
+ * <pre>
+ *     java Spim [-trap_file file] [-sdata bytes] -file program.s
+ * </pre>
+ * The trap file, lib/trap.handler, is loaded first.  The data segment
+ * starts with -sdata bytes after the static data, which the runtime takes
+ * as its heap; sbrk extends it.
+ * <p>
+ * After the output of the program come the statistics, as coolspim
+ * prints them, and the allocation of the program:
+ * <pre>
+ * Stats -- #instructions : 1234
+ *          #reads : 300  #writes 200  #branches 150  #other 584
+ *          #allocated bytes : 4096  #collections 1  #gc instructions 800
+ * </pre>
+ * The exit code is that of the program, 0 unless it exits with syscall
+ * 17, and 1 when the program cannot be loaded.
+ */
+class Spim {
+
+    private static final int DEFAULT_DATA_SIZE = 0x40000;
+
+    private static final String USAGE =
+            "usage: Spim [-trap_file file] [-sdata bytes] -file program.s";
+
+    public static void main(String[] args) throws IOException {
+        String trapFile = null;
+        String file = null;
+        int dataSize = DEFAULT_DATA_SIZE;
+        for (int i = 0; i < args.length; i++) {
+            String arg = args[i];
+            if (i + 1 < args.length && (arg.equals("-trap_file") || arg.equals("-exception_file"))) {
+                trapFile = args[++i];
+            } else if (i + 1 < args.length && arg.equals("-file")) {
+                file = args[++i];
+            } else if (i + 1 < args.length && arg.equals("-sdata")) {
+                try {
+                    dataSize = Integer.decode(args[++i]);
+                } catch (NumberFormatException ex) {
+                    dataSize = -1;
+                }
+                if (dataSize <= 0) {
+                    System.err.println(USAGE);
+                    System.exit(1);
+                }
+            } else if (file == null && !arg.startsWith("-")) {
+                file = arg;
+            } else {
+                System.err.println(USAGE);
+                System.exit(1);
+            }
+        }
+        if (file == null) {
+            System.err.println(USAGE);
+            System.exit(1);
+        }
+
+        PrintStream out = new PrintStream(System.out, false);
+        SpimMachine machine = new SpimMachine(new BufferedReader(new InputStreamReader(System.in)), out);
+        SpimAssembler asm = new SpimAssembler(machine);
+        Integer start;
+        try {
+            if (trapFile != null) {
+                asm.add(trapFile);
+                out.println("Loaded: " + trapFile);
+            }
+            asm.add(file);
+            asm.link();
+            start = asm.global("__start");
+            if (start == null)
+                throw new SpimAssembler.Error("no __start label");
+        } catch (SpimAssembler.Error | IOException ex) {
+            out.flush();
+            System.err.println(ex.getMessage());
+            System.exit(1);
+            return;
+        }
+
+        machine.setBreak((asm.dataEnd() + 3 & ~3) + dataSize);
+
+        Integer init = asm.global("_MemMgr_Init");
+        Integer collector = asm.global("_MemMgr_COLLECTOR");
+        machine.memMgrInit = init == null ? 0 : init;
+        machine.memMgrCollector = collector == null ? 0 : machine.peek(collector);
+
+        int rc = machine.run(start);
+
+        long other = machine.instructions - machine.reads - machine.writes - machine.branches;
+        out.println("Stats -- #instructions : " + machine.instructions);
+        out.println("         #reads : " + machine.reads + "  #writes " + machine.writes
+                + "  #branches " + machine.branches + "  #other " + other);
+        out.println("         #allocated bytes : " + machine.allocated + "  #collections "
+                + machine.collections + "  #gc instructions " + machine.memMgrInstructions);
+        out.flush();
+        System.exit(rc);
+    }
+}
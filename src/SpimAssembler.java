@@ -0,0 +1,709 @@
+import java.io.BufferedReader;
+import java.io.FileReader;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+
+/**
+ * Assembles files in the assembly language of SPIM, as CgenEmit and
+ * lib/trap.handler write it, into a SpimMachine.
+ * <p>
+ * Files are added in the order SPIM loads them, the trap file first; each
+ * goes through the first pass as it is read, which lays out the segments
+ * and defines the labels and the equates (name=value).  Names are local to
+ * their file unless it declares them .globl.  link() then resolves the
+ * operands and the words of the data.
+ * <p>
+ * Every instruction, pseudo or not, takes one word of the text segment,
+ * so a program's addresses are not quite SPIM's; the code never computes
+ * with them.  The count of each instruction is that of the expansion SPIM
+ * makes of it, so that instruction counts are SPIM's.
+ */
+class SpimAssembler {
+
+    /**
+     * Thrown for the errors in the assembly, with file and line.
+     */
+    static class Error extends RuntimeException {
+        Error(String msg) {
+            super(msg);
+        }
+    }
+
+    // A statement of the assembly: a directive or an instruction
+    private static final class Stmt {
+        String op;
+        String[] args;
+        String rest;            // the operands, unsplit, for the directives
+        int addr;
+        HashMap<String, Integer> scope;
+        String source;
+    }
+
+    private static final HashMap<String, Integer> REGISTERS = new HashMap<>();
+    static {
+        String[] names = {"zero", "at", "v0", "v1", "a0", "a1", "a2", "a3",
+                "t0", "t1", "t2", "t3", "t4", "t5", "t6", "t7",
+                "s0", "s1", "s2", "s3", "s4", "s5", "s6", "s7",
+                "t8", "t9", "k0", "k1", "gp", "sp", "fp", "ra"};
+        for (int i = 0; i < 32; i++) {
+            REGISTERS.put("$" + names[i], i);
+            REGISTERS.put("$" + i, i);
+        }
+        REGISTERS.put("$s8", 30);
+    }
+
+    private static final int TEXT = 0, DATA = 1, KTEXT = 2, KDATA = 3;
+
+    private final SpimMachine machine;
+
+    private final HashMap<String, Integer> globals = new HashMap<>();
+    private final ArrayList<String> globalNames = new ArrayList<>();
+    private final ArrayList<HashMap<String, Integer>> globalScopes = new ArrayList<>();
+    private final ArrayList<Stmt> text = new ArrayList<>();
+    private final ArrayList<Stmt> ktext = new ArrayList<>();
+    private final ArrayList<Stmt> data = new ArrayList<>();
+    private final HashSet<String> equates = new HashSet<>();
+
+    // the labels of the data since the last directive, which move with
+    // the alignment of a .word or .half
+    private final ArrayList<String> pending = new ArrayList<>();
+    private HashMap<String, Integer> pendingScope;
+
+    // the next address of each segment
+    private final int[] top = {SpimMachine.TEXT_BASE, SpimMachine.DATA_BASE,
+            SpimMachine.KTEXT_BASE, SpimMachine.KDATA_BASE};
+    private int segment;
+
+    // the file and line being assembled, for errors
+    private String source;
+
+    SpimAssembler(SpimMachine machine) {
+        this.machine = machine;
+    }
+
+    /**
+     * The end of the static data.
+     */
+    int dataEnd() {
+        return top[DATA];
+    }
+
+    /**
+     * The address of a global name, or null.
+     */
+    Integer global(String name) {
+        return globals.get(name);
+    }
+
+    //// First pass
+
+    /**
+     * Reads a file, laying out its statements and defining its names.
+     */
+    void add(String filename) throws IOException {
+        HashMap<String, Integer> scope = new HashMap<>();
+        segment = TEXT;
+        try (BufferedReader in = new BufferedReader(new FileReader(filename))) {
+            String line;
+            int lineno = 0;
+            while ((line = in.readLine()) != null) {
+                lineno++;
+                source = filename + ":" + lineno;
+                statement(stripComment(line).trim(), scope);
+            }
+        }
+    }
+
+    private static String stripComment(String line) {
+        boolean quoted = false;
+        for (int i = 0; i < line.length(); i++) {
+            char c = line.charAt(i);
+            if (c == '\\' && quoted)
+                i++;
+            else if (c == '"')
+                quoted = !quoted;
+            else if (c == '\'' && !quoted && i + 2 < line.length() && line.charAt(i + 2) == '\'')
+                i += 2;
+            else if (c == '#' && !quoted)
+                return line.substring(0, i);
+        }
+        return line;
+    }
+
+    private void statement(String line, HashMap<String, Integer> scope) {
+        // labels
+        for (;;) {
+            int n = nameLength(line);
+            if (n == 0 || n >= line.length())
+                break;
+            int i = n;
+            while (i < line.length() && Character.isWhitespace(line.charAt(i)))
+                i++;
+            if (i < line.length() && line.charAt(i) == ':') {
+                String name = line.substring(0, n);
+                define(scope, name, top[segment]);
+                if (segment == DATA || segment == KDATA) {
+                    pending.add(name);
+                    pendingScope = scope;
+                }
+                line = line.substring(i + 1).trim();
+            } else if (i < line.length() && line.charAt(i) == '=') {
+                String name = line.substring(0, n);
+                define(scope, name, value(line.substring(i + 1).trim(), scope));
+                equates.add(name);
+                return;
+            } else {
+                break;
+            }
+        }
+        if (line.isEmpty())
+            return;
+        int n = 0;
+        while (n < line.length() && !Character.isWhitespace(line.charAt(n)))
+            n++;
+        Stmt st = new Stmt();
+        st.op = line.substring(0, n);
+        st.rest = line.substring(n).trim();
+        st.args = st.rest.isEmpty() ? new String[0] : st.rest.split("[\\s,]+");
+        st.scope = scope;
+        st.source = source;
+        if (st.op.startsWith("."))
+            directive(st);
+        else if (segment == TEXT || segment == KTEXT) {
+            st.addr = top[segment];
+            top[segment] += 4;
+            (segment == TEXT ? text : ktext).add(st);
+        } else {
+            throw error("instruction in a data segment");
+        }
+    }
+
+    // aligns the next address of the segment, and the labels before it
+    private void alignTop(int size) {
+        top[segment] = align(top[segment], size);
+        for (String name : pending)
+            pendingScope.put(name, top[segment]);
+    }
+
+    private static int align(int addr, int size) {
+        return addr + size - 1 & -size;
+    }
+
+    private static int nameLength(String s) {
+        int i = 0;
+        while (i < s.length()) {
+            char c = s.charAt(i);
+            if (Character.isLetter(c) || c == '_' || c == '.' || c == '$' && i > 0
+                    || Character.isDigit(c) && i > 0)
+                i++;
+            else
+                break;
+        }
+        return i;
+    }
+
+    private void define(HashMap<String, Integer> scope, String name, int value) {
+        if (scope.containsKey(name))
+            throw error("label " + name + " defined twice");
+        scope.put(name, value);
+    }
+
+    private void directive(Stmt st) {
+        switch (st.op) {
+            case ".text":
+            case ".data":
+            case ".ktext":
+            case ".kdata":
+                segment = st.op.equals(".text") ? TEXT : st.op.equals(".data") ? DATA
+                        : st.op.equals(".ktext") ? KTEXT : KDATA;
+                if (st.args.length > 0)
+                    top[segment] = value(st.args[0], st.scope);
+                pending.clear();
+                return;
+            case ".globl":
+                for (String name : st.args) {
+                    globalNames.add(name);
+                    globalScopes.add(st.scope);
+                }
+                return;
+            case ".set":
+            case ".extern":
+            case ".ent":
+            case ".end":
+                return;
+            default:
+                break;
+        }
+        if (segment != DATA && segment != KDATA)
+            throw error(st.op + " in a text segment");
+        switch (st.op) {
+            case ".word":
+                alignTop(4);
+                st.addr = top[segment];
+                top[segment] += 4 * st.args.length;
+                break;
+            case ".half":
+                alignTop(2);
+                st.addr = top[segment];
+                top[segment] += 2 * st.args.length;
+                break;
+            case ".byte":
+                st.addr = top[segment];
+                top[segment] += st.args.length;
+                break;
+            case ".ascii":
+            case ".asciiz":
+                st.addr = top[segment];
+                st.rest = string(st.rest) + (st.op.equals(".asciiz") ? "\0" : "");
+                top[segment] += st.rest.length();
+                break;
+            case ".space":
+                st.addr = top[segment];
+                top[segment] += value(st.rest, st.scope);
+                pending.clear();
+                return;
+            case ".align":
+                alignTop(1 << value(st.rest, st.scope));
+                return;
+            default:
+                throw error("unknown directive " + st.op);
+        }
+        pending.clear();
+        data.add(st);
+    }
+
+    // the characters of a string literal
+    private String string(String lit) {
+        int end = lit.lastIndexOf('"');
+        if (!lit.startsWith("\"") || end == 0)
+            throw error("bad string " + lit);
+        StringBuilder sb = new StringBuilder();
+        for (int i = 1; i < end; i++) {
+            char c = lit.charAt(i);
+            if (c == '\\' && i + 1 < end) {
+                c = lit.charAt(++i);
+                switch (c) {
+                    case 'n': c = '\n'; break;
+                    case 't': c = '\t'; break;
+                    case 'r': c = '\r'; break;
+                    case '0': c = '\0'; break;
+                    default: break;
+                }
+            }
+            sb.append(c);
+        }
+        return sb.toString();
+    }
+
+    //// Values
+
+    // Whether the last value read named a label, which SPIM loads in two
+    // instructions
+    private boolean symbolic;
+
+    private int value(String expr, HashMap<String, Integer> scope) {
+        Integer v = evaluate(expr, scope);
+        if (v == null)
+            throw error("undefined symbol in " + expr);
+        return v;
+    }
+
+    // the value of sums and differences of numbers, characters and names,
+    // or null if a name is undefined
+    private Integer evaluate(String expr, HashMap<String, Integer> scope) {
+        symbolic = false;
+        int sum = 0;
+        int i = 0, sign = 1;
+        expr = expr.trim();
+        if (expr.isEmpty())
+            throw error("missing operand");
+        while (i < expr.length()) {
+            char c = expr.charAt(i);
+            if (c == '+' || c == '-') {
+                if (c == '-')
+                    sign = -sign;
+                i++;
+                continue;
+            }
+            if (Character.isWhitespace(c)) {
+                i++;
+                continue;
+            }
+            int j = i;
+            int term;
+            if (c == '\'') {
+                j = expr.indexOf('\'', i + 1);
+                if (j < 0)
+                    throw error("bad character " + expr);
+                String ch = string("\"" + expr.substring(i + 1, j) + "\"");
+                term = ch.isEmpty() ? 0 : ch.charAt(0);
+                j++;
+            } else if (Character.isDigit(c)) {
+                while (j < expr.length() && Character.isLetterOrDigit(expr.charAt(j)))
+                    j++;
+                String num = expr.substring(i, j);
+                try {
+                    term = num.startsWith("0x") || num.startsWith("0X")
+                            ? (int) Long.parseLong(num.substring(2), 16)
+                            : (int) Long.parseLong(num);
+                } catch (NumberFormatException ex) {
+                    throw error("bad number " + num);
+                }
+            } else {
+                j = i + nameLength(expr.substring(i));
+                if (j == i)
+                    throw error("bad operand " + expr);
+                String name = expr.substring(i, j);
+                Integer v = scope.get(name);
+                if (v == null)
+                    v = globals.get(name);
+                if (v == null)
+                    return null;
+                symbolic |= !equates.contains(name);
+                term = v;
+            }
+            sum += sign * term;
+            sign = 1;
+            i = j;
+        }
+        return sum;
+    }
+
+    private int reg(String s) {
+        Integer r = REGISTERS.get(s);
+        if (r == null)
+            throw error("bad register " + s);
+        return r;
+    }
+
+    private static boolean isReg(String s) {
+        return REGISTERS.containsKey(s);
+    }
+
+    private static boolean fits(int v) {
+        return v == (short) v;
+    }
+
+    private static boolean fitsUnsigned(int v) {
+        return (v & 0xffff0000) == 0;
+    }
+
+    //// Second pass
+
+    /**
+     * Resolves the operands and the data of all the files added, and puts
+     * them in the machine.
+     */
+    void link() {
+        for (int i = 0; i < globalNames.size(); i++) {
+            String name = globalNames.get(i);
+            Integer v = globalScopes.get(i).get(name);
+            if (v != null)
+                globals.put(name, v);
+        }
+        for (Stmt st : data) {
+            source = st.source;
+            store(st);
+        }
+        machine.text = instructions(text);
+        machine.ktext = new SpimMachine.Instr[0];
+        if (!ktext.isEmpty()) {
+            // the kernel text starts at its first address
+            int base = ktext.get(0).addr;
+            SpimMachine.Instr[] k = new SpimMachine.Instr[(base - SpimMachine.KTEXT_BASE >>> 2) + ktext.size()];
+            SpimMachine.Instr[] code = instructions(ktext);
+            System.arraycopy(code, 0, k, base - SpimMachine.KTEXT_BASE >>> 2, code.length);
+            machine.ktext = k;
+        }
+        machine.setKdataTop(top[KDATA]);
+    }
+
+    private void store(Stmt st) {
+        int addr = st.addr;
+        switch (st.op) {
+            case ".word":
+                for (String a : st.args) {
+                    machine.poke(addr, value(a, st.scope));
+                    addr += 4;
+                }
+                break;
+            case ".half":
+                for (String a : st.args) {
+                    int v = value(a, st.scope);
+                    machine.pokeByte(addr, v);
+                    machine.pokeByte(addr + 1, v >> 8);
+                    addr += 2;
+                }
+                break;
+            case ".byte":
+                for (String a : st.args)
+                    machine.pokeByte(addr++, value(a, st.scope));
+                break;
+            default:
+                for (int i = 0; i < st.rest.length(); i++)
+                    machine.pokeByte(addr++, st.rest.charAt(i));
+                break;
+        }
+    }
+
+    private SpimMachine.Instr[] instructions(ArrayList<Stmt> stmts) {
+        SpimMachine.Instr[] code = new SpimMachine.Instr[stmts.size()];
+        for (int i = 0; i < code.length; i++) {
+            Stmt st = stmts.get(i);
+            source = st.source;
+            code[i] = instruction(st);
+            code[i].source = st.source;
+        }
+        return code;
+    }
+
+    private SpimMachine.Instr instruction(Stmt st) {
+        SpimMachine.Instr in = new SpimMachine.Instr();
+        String[] a = st.args;
+        String op = st.op;
+        switch (op) {
+            // three operands, the last a register or an immediate
+            case "add": case "addi": alu(in, SpimMachine.ADD, a, st, 1); break;
+            case "addu": case "addiu": alu(in, SpimMachine.ADDU, a, st, 1); break;
+            case "sub": alu(in, SpimMachine.SUB, a, st, 1); break;
+            case "subu": alu(in, SpimMachine.SUBU, a, st, 1); break;
+            case "and": case "andi": alu(in, SpimMachine.AND, a, st, 1); break;
+            case "or": case "ori": alu(in, SpimMachine.OR, a, st, 1); break;
+            case "xor": case "xori": alu(in, SpimMachine.XOR, a, st, 1); break;
+            case "nor": alu(in, SpimMachine.NOR, a, st, 1); break;
+            case "slt": case "slti": alu(in, SpimMachine.SLT, a, st, 1); break;
+            case "sltu": case "sltiu": alu(in, SpimMachine.SLTU, a, st, 1); break;
+            case "sgt": alu(in, SpimMachine.SGT, a, st, 1); break;
+            case "sgtu": alu(in, SpimMachine.SGTU, a, st, 1); break;
+            case "sle": alu(in, SpimMachine.SLE, a, st, 3); break;
+            case "sge": alu(in, SpimMachine.SGE, a, st, 3); break;
+            case "seq": alu(in, SpimMachine.SEQ, a, st, 3); break;
+            case "sne": alu(in, SpimMachine.SNE, a, st, 3); break;
+            case "sll": case "sllv": alu(in, SpimMachine.SLL, a, st, 1); break;
+            case "srl": case "srlv": alu(in, SpimMachine.SRL, a, st, 1); break;
+            case "sra": case "srav": alu(in, SpimMachine.SRA, a, st, 1); break;
+            case "mul": alu(in, SpimMachine.MUL, a, st, 2); break;
+            case "rem": alu(in, SpimMachine.REM, a, st, 3); break;
+            case "remu": alu(in, SpimMachine.REMU, a, st, 3); break;
+            case "div":
+            case "divu":
+                if (a.length == 2) {
+                    in.op = op.equals("div") ? SpimMachine.DIV2 : SpimMachine.DIVU2;
+                    in.rs = reg(a[0]);
+                    in.rt = reg(a[1]);
+                } else {
+                    alu(in, op.equals("div") ? SpimMachine.DIV : SpimMachine.DIVU, a, st, 3);
+                }
+                break;
+            case "mult":
+            case "multu":
+                operands(a, 2);
+                in.op = op.equals("mult") ? SpimMachine.MULT : SpimMachine.MULTU;
+                in.rs = reg(a[0]);
+                in.rt = reg(a[1]);
+                break;
+            case "mfhi": case "mflo":
+                operands(a, 1);
+                in.op = op.equals("mfhi") ? SpimMachine.MFHI : SpimMachine.MFLO;
+                in.rd = reg(a[0]);
+                break;
+            case "mthi": case "mtlo":
+                operands(a, 1);
+                in.op = op.equals("mthi") ? SpimMachine.MTHI : SpimMachine.MTLO;
+                in.rs = reg(a[0]);
+                break;
+
+            // two operands
+            case "move": case "neg": case "negu": case "not": case "abs":
+                operands(a, 2);
+                in.op = op.equals("move") ? SpimMachine.MOVE : op.equals("neg") ? SpimMachine.NEG
+                        : op.equals("negu") ? SpimMachine.NEGU : op.equals("not") ? SpimMachine.NOT
+                        : SpimMachine.ABS;
+                in.rd = reg(a[0]);
+                in.rs = reg(a[1]);
+                in.count = op.equals("abs") ? 3 : 1;
+                break;
+            case "li":
+                operands(a, 2);
+                in.op = SpimMachine.LI;
+                in.rd = reg(a[0]);
+                in.imm = value(a[1], st.scope);
+                in.count = fits(in.imm) || fitsUnsigned(in.imm) ? 1 : 2;
+                break;
+            case "lui":
+                operands(a, 2);
+                in.op = SpimMachine.LUI;
+                in.rd = reg(a[0]);
+                in.imm = value(a[1], st.scope);
+                break;
+            case "la":
+                operands(a, 2);
+                in.rd = reg(a[0]);
+                address(in, a[1], st);
+                if (in.rs == 0) {
+                    in.op = SpimMachine.LI;
+                } else {
+                    in.op = SpimMachine.ADDU;
+                    in.useImm = true;
+                }
+                if (in.count == 1 && in.rs == 0)
+                    in.count = fits(in.imm) || fitsUnsigned(in.imm) ? 1 : 2;
+                break;
+
+            // loads and stores
+            case "lw": memory(in, SpimMachine.LW, a, st); break;
+            case "lh": memory(in, SpimMachine.LH, a, st); break;
+            case "lhu": memory(in, SpimMachine.LHU, a, st); break;
+            case "lb": memory(in, SpimMachine.LB, a, st); break;
+            case "lbu": memory(in, SpimMachine.LBU, a, st); break;
+            case "sw": memory(in, SpimMachine.SW, a, st); break;
+            case "sh": memory(in, SpimMachine.SH, a, st); break;
+            case "sb": memory(in, SpimMachine.SB, a, st); break;
+
+            // branches and jumps
+            case "beq": branch(in, SpimMachine.BEQ, a, st, 1, 2); break;
+            case "bne": branch(in, SpimMachine.BNE, a, st, 1, 2); break;
+            case "blt": branch(in, SpimMachine.BLT, a, st, 2, 2); break;
+            case "bge": branch(in, SpimMachine.BGE, a, st, 2, 2); break;
+            case "bgt": branch(in, SpimMachine.BGT, a, st, 2, 3); break;
+            case "ble": branch(in, SpimMachine.BLE, a, st, 2, 3); break;
+            case "bltu": branch(in, SpimMachine.BLTU, a, st, 2, 2); break;
+            case "bgeu": branch(in, SpimMachine.BGEU, a, st, 2, 2); break;
+            case "bgtu": branch(in, SpimMachine.BGTU, a, st, 2, 3); break;
+            case "bleu": branch(in, SpimMachine.BLEU, a, st, 2, 3); break;
+            case "beqz": zero(in, SpimMachine.BEQ, a, st); break;
+            case "bnez": zero(in, SpimMachine.BNE, a, st); break;
+            case "bltz": zero(in, SpimMachine.BLT, a, st); break;
+            case "blez": zero(in, SpimMachine.BLE, a, st); break;
+            case "bgtz": zero(in, SpimMachine.BGT, a, st); break;
+            case "bgez": zero(in, SpimMachine.BGE, a, st); break;
+            case "b": case "j": case "jal":
+                operands(a, 1);
+                in.op = op.equals("jal") ? SpimMachine.JAL : SpimMachine.J;
+                in.target = value(a[0], st.scope);
+                break;
+            case "jr":
+                operands(a, 1);
+                in.op = SpimMachine.JR;
+                in.rs = reg(a[0]);
+                break;
+            case "jalr":
+                in.op = SpimMachine.JALR;
+                if (a.length == 1) {
+                    in.rd = 31;
+                    in.rs = reg(a[0]);
+                } else {
+                    operands(a, 2);
+                    in.rd = reg(a[0]);
+                    in.rs = reg(a[1]);
+                }
+                break;
+
+            // the rest
+            case "syscall": in.op = SpimMachine.SYSCALL; break;
+            case "break": in.op = SpimMachine.BREAK; break;
+            case "nop": in.op = SpimMachine.NOP; break;
+            case "rfe": in.op = SpimMachine.RFE; break;
+            case "mfc0": case "mtc0":
+                operands(a, 2);
+                in.op = op.equals("mfc0") ? SpimMachine.MFC0 : SpimMachine.MTC0;
+                in.rd = reg(a[0]);
+                in.rs = reg(a[1]);
+                break;
+            default:
+                throw error("unknown instruction " + op);
+        }
+        return in;
+    }
+
+    private void operands(String[] a, int n) {
+        if (a.length != n)
+            throw error("expected " + n + " operands");
+    }
+
+    // rd rs x or rd x, where x is a register or an immediate; SPIM loads
+    // an immediate that does not fit in 16 bits with two more instructions
+    private void alu(SpimMachine.Instr in, int op, String[] a, Stmt st, int count) {
+        if (a.length == 2)
+            a = new String[] {a[0], a[0], a[1]};
+        operands(a, 3);
+        in.op = op;
+        in.rd = reg(a[0]);
+        in.rs = reg(a[1]);
+        in.count = count;
+        if (isReg(a[2])) {
+            in.rt = reg(a[2]);
+            return;
+        }
+        in.useImm = true;
+        in.imm = value(a[2], st.scope);
+        boolean logical = op == SpimMachine.AND || op == SpimMachine.OR || op == SpimMachine.XOR;
+        int imm = op == SpimMachine.SUB || op == SpimMachine.SUBU ? -in.imm : in.imm;
+        if (op == SpimMachine.SLL || op == SpimMachine.SRL || op == SpimMachine.SRA)
+            return;
+        if (op == SpimMachine.SGT || op == SpimMachine.SGTU || op == SpimMachine.NOR)
+            in.count++;         // the immediate goes to $at first
+        if (logical ? !fitsUnsigned(imm) : !fits(imm))
+            in.count += 2;
+    }
+
+    // An address: label, label+offset, offset($r) or label($r).  SPIM
+    // loads a label or a large offset in $at first.
+    private void address(SpimMachine.Instr in, String addr, Stmt st) {
+        int paren = addr.indexOf('(');
+        String expr = addr;
+        if (paren >= 0) {
+            int close = addr.indexOf(')', paren);
+            if (close < 0)
+                throw error("bad address " + addr);
+            in.rs = reg(addr.substring(paren + 1, close).trim());
+            expr = addr.substring(0, paren).trim();
+        }
+        symbolic = false;
+        in.imm = expr.isEmpty() ? 0 : value(expr, st.scope);
+        if (symbolic)
+            in.count = paren >= 0 ? 3 : 2;
+        else if (!fits(in.imm))
+            in.count = 3;
+    }
+
+    private void memory(SpimMachine.Instr in, int op, String[] a, Stmt st) {
+        if (a.length == 3 && a[2].startsWith("("))
+            a = new String[] {a[0], a[1] + a[2]};
+        operands(a, 2);
+        in.op = op;
+        in.rd = reg(a[0]);
+        address(in, a[1], st);
+    }
+
+    // rs x label, where x is a register or an immediate
+    private void branch(SpimMachine.Instr in, int op, String[] a, Stmt st, int count, int immCount) {
+        operands(a, 3);
+        in.op = op;
+        in.rs = reg(a[0]);
+        in.count = count;
+        if (isReg(a[1])) {
+            in.rt = reg(a[1]);
+        } else {
+            in.useImm = true;
+            in.imm = value(a[1], st.scope);
+            in.count = fits(in.imm) ? immCount : immCount + 1;
+        }
+        in.target = value(a[2], st.scope);
+    }
+
+    private void zero(SpimMachine.Instr in, int op, String[] a, Stmt st) {
+        operands(a, 2);
+        in.op = op;
+        in.rs = reg(a[0]);
+        in.useImm = true;
+        in.imm = 0;
+        in.target = value(a[1], st.scope);
+    }
+
+    private Error error(String msg) {
+        return new Error(source + ": " + msg);
+    }
+}
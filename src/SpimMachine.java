@@ -0,0 +1,590 @@
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.PrintStream;
+
+/**
+ * A MIPS machine as SPIM presents it to a program: the registers, the
+ * memory segments, the syscalls of the Cool runtime and the exceptions,
+ * which go to the handler at KTEXT_HANDLER that lib/trap.handler defines.
+ * <p>
+ * The text is not kept in memory: each source instruction, pseudo or not,
+ * is a SpimMachine.Instr at its own word of the text segment, and counts
+ * as the number of machine instructions SPIM expands it into.  Besides
+ * these, the machine counts the loads, stores and branches executed, the
+ * bytes the program allocates by moving $gp up, or the limit $s7 down
+ * as _GenGC_OldCopy does, and the collections.  The moves the memory
+ * manager makes, between a call to _MemMgr_Init or to the function in
+ * _MemMgr_COLLECTOR and its return, are not allocations; the
+ * instructions executed there are counted apart.
+ * <p>
+ * Memory is little-endian, in pages of 4K made when first touched.  The
+ * data segment runs from DATA_BASE to the break that sbrk moves, and the
+ * stack from STACK_LIMIT to STACK_TOP; any other access is a bus error.
+ */
+class SpimMachine {
+
+    static final int TEXT_BASE = 0x00400000;
+    static final int DATA_BASE = 0x10000000;
+    static final int STACK_TOP = 0x80000000;
+    static final int STACK_LIMIT = 0x7c000000;
+    static final int KTEXT_BASE = 0x80000000;
+    static final int KTEXT_HANDLER = 0x80000080;
+    static final int KDATA_BASE = 0x90000000;
+
+    // Operations; the pseudo-instructions of SPIM are operations of their
+    // own.  The second operand of ALU operations and the compared operand
+    // of branches may be a register or an immediate.
+    static final int ADD = 0, ADDU = 1, SUB = 2, SUBU = 3, AND = 4, OR = 5, XOR = 6, NOR = 7,
+            SLT = 8, SLTU = 9, SGT = 10, SGTU = 11, SLE = 12, SGE = 13, SEQ = 14, SNE = 15,
+            SLL = 16, SRL = 17, SRA = 18, MUL = 19, DIV = 20, DIVU = 21, REM = 22, REMU = 23,
+            MULT = 24, MULTU = 25, DIV2 = 26, DIVU2 = 27, MFHI = 28, MFLO = 29, MTHI = 30, MTLO = 31,
+            LI = 32, LUI = 33, MOVE = 34, NEG = 35, NEGU = 36, NOT = 37, ABS = 38,
+            LW = 40, LB = 41, LBU = 42, LH = 43, LHU = 44, SW = 45, SB = 46, SH = 47,
+            BEQ = 50, BNE = 51, BLT = 52, BLE = 53, BGT = 54, BGE = 55,
+            BLTU = 56, BLEU = 57, BGTU = 58, BGEU = 59,
+            J = 60, JAL = 61, JR = 62, JALR = 63,
+            SYSCALL = 70, BREAK = 71, NOP = 72, MFC0 = 73, MTC0 = 74, RFE = 75;
+
+    /**
+     * An instruction of the text segment.
+     */
+    static final class Instr {
+        int op;
+        int rd, rs, rt;         // destination, first and second register
+        int imm;                // immediate or offset
+        boolean useImm;         // the second operand is imm, not rt
+        int target;             // address a branch or jump goes to
+        int count = 1;          // machine instructions SPIM expands it into
+        String source;          // file and line, for errors
+
+        @Override
+        public String toString() {
+            return source;
+        }
+    }
+
+    // Exception codes, as in the Cause register
+    static final int EXC_ADEL = 4, EXC_ADES = 5, EXC_IBE = 6, EXC_DBE = 7, EXC_SYSCALL = 8,
+            EXC_BKPT = 9, EXC_RI = 10, EXC_OVF = 12;
+
+    private static final int S7 = 23, GP = 28, SP = 29, RA = 31;
+    private static final int V0 = 2, A0 = 4, A1 = 5;
+
+    // registers
+    final int[] reg = new int[32];
+    private int hi, lo, pc;
+    private int cause, epc, status;
+
+    // the text segments
+    Instr[] text = new Instr[0];
+    Instr[] ktext = new Instr[0];
+
+    // memory, in pages of 1024 words
+    private final int[][] pages = new int[1 << 20][];
+    private int brk = DATA_BASE;
+    private int kdataTop = KDATA_BASE;
+
+    // the memory manager functions, or 0
+    int memMgrInit;
+    int memMgrCollector;
+    private boolean inMemMgr;
+    private int memMgrReturn;
+
+    // statistics
+    long instructions, reads, writes, branches;
+    long allocated, collections, memMgrInstructions;
+
+    private boolean running;
+    private int exitCode;
+
+    private final BufferedReader in;
+    private final PrintStream out;
+
+    SpimMachine(BufferedReader in, PrintStream out) {
+        this.in = in;
+        this.out = out;
+        reg[SP] = STACK_TOP - 4 - 4096;
+        reg[GP] = DATA_BASE + 0x8000;
+    }
+
+    //// Memory
+
+    void setBreak(int addr) {
+        brk = addr;
+    }
+
+    int getBreak() {
+        return brk;
+    }
+
+    void setKdataTop(int addr) {
+        kdataTop = addr;
+    }
+
+    private boolean mapped(int addr) {
+        return addr >= DATA_BASE && addr < brk
+                || addr >= STACK_LIMIT && addr - STACK_TOP < 0
+                || addr >= KDATA_BASE && addr < kdataTop;
+    }
+
+    // the page of the address, made if the address is mapped
+    private int[] page(int addr) {
+        int[] p = pages[addr >>> 12];
+        if (p == null) {
+            if (!mapped(addr))
+                return null;
+            p = pages[addr >>> 12] = new int[1024];
+        }
+        return p;
+    }
+
+    /**
+     * Stores a word while the program is loaded; the address is mapped.
+     */
+    void poke(int addr, int val) {
+        int[] p = pages[addr >>> 12];
+        if (p == null)
+            p = pages[addr >>> 12] = new int[1024];
+        p[(addr >>> 2) & 1023] = val;
+    }
+
+    void pokeByte(int addr, int val) {
+        int[] p = pages[addr >>> 12];
+        if (p == null)
+            p = pages[addr >>> 12] = new int[1024];
+        int i = (addr >>> 2) & 1023, shift = (addr & 3) * 8;
+        p[i] = p[i] & ~(0xff << shift) | (val & 0xff) << shift;
+    }
+
+    int peek(int addr) {
+        int[] p = pages[addr >>> 12];
+        return p == null ? 0 : p[(addr >>> 2) & 1023];
+    }
+
+    // A failed access raises an exception and returns false; the value
+    // loaded is in loaded.
+    private int loaded;
+
+    private boolean loadWord(int addr) {
+        if ((addr & 3) != 0)
+            return exception(EXC_ADEL);
+        int[] p = page(addr);
+        if (p == null)
+            return exception(EXC_DBE);
+        loaded = p[(addr >>> 2) & 1023];
+        return true;
+    }
+
+    private boolean loadHalf(int addr, boolean signed) {
+        if ((addr & 1) != 0)
+            return exception(EXC_ADEL);
+        int[] p = page(addr);
+        if (p == null)
+            return exception(EXC_DBE);
+        int v = p[(addr >>> 2) & 1023] >>> (addr & 2) * 8;
+        loaded = signed ? (short) v : v & 0xffff;
+        return true;
+    }
+
+    private boolean loadByte(int addr, boolean signed) {
+        int[] p = page(addr);
+        if (p == null)
+            return exception(EXC_DBE);
+        int v = p[(addr >>> 2) & 1023] >>> (addr & 3) * 8;
+        loaded = signed ? (byte) v : v & 0xff;
+        return true;
+    }
+
+    private boolean storeWord(int addr, int val) {
+        if ((addr & 3) != 0)
+            return exception(EXC_ADES);
+        int[] p = page(addr);
+        if (p == null)
+            return exception(EXC_DBE);
+        p[(addr >>> 2) & 1023] = val;
+        return true;
+    }
+
+    private boolean storeHalf(int addr, int val) {
+        if ((addr & 1) != 0)
+            return exception(EXC_ADES);
+        int[] p = page(addr);
+        if (p == null)
+            return exception(EXC_DBE);
+        int i = (addr >>> 2) & 1023, shift = (addr & 2) * 8;
+        p[i] = p[i] & ~(0xffff << shift) | (val & 0xffff) << shift;
+        return true;
+    }
+
+    private boolean storeByte(int addr, int val) {
+        int[] p = page(addr);
+        if (p == null)
+            return exception(EXC_DBE);
+        int i = (addr >>> 2) & 1023, shift = (addr & 3) * 8;
+        p[i] = p[i] & ~(0xff << shift) | (val & 0xff) << shift;
+        return true;
+    }
+
+    //// Execution
+
+    private Instr fetch(int addr) {
+        if ((addr & 3) != 0)
+            return null;
+        int i = (addr - TEXT_BASE) >>> 2;
+        if (addr - TEXT_BASE >= 0 && i < text.length)
+            return text[i];
+        i = (addr - KTEXT_BASE) >>> 2;
+        if (addr - KTEXT_BASE >= 0 && i < ktext.length)
+            return ktext[i];
+        return null;
+    }
+
+    // Raises an exception at the current instruction: the handler of
+    // lib/trap.handler prints it and exits.  Returns false, so that the
+    // instruction stops.
+    private boolean exception(int code) {
+        cause = code << 2;
+        epc = pc;
+        if (fetch(KTEXT_HANDLER) == null) {
+            out.println("Exception " + code + " at 0x" + Integer.toHexString(pc) + " and no handler");
+            running = false;
+            exitCode = 1;
+            return false;
+        }
+        pc = KTEXT_HANDLER;
+        return false;
+    }
+
+    private void set(int r, int val) {
+        if (r == GP && !inMemMgr)
+            allocated += val - reg[GP];
+        else if (r == S7 && !inMemMgr && val - reg[S7] < 0)
+            allocated += reg[S7] - val;
+        reg[r] = val;
+        reg[0] = 0;
+    }
+
+    // the value of the second operand
+    private int second(Instr i) {
+        return i.useImm ? i.imm : reg[i.rt];
+    }
+
+    private void call(int target, int ret) {
+        if (!inMemMgr && (target == memMgrInit || target == memMgrCollector) && target != 0) {
+            inMemMgr = true;
+            memMgrReturn = ret;
+            if (target == memMgrCollector)
+                collections++;
+        }
+    }
+
+    /**
+     * Runs the program from the address until it exits.
+     *
+     * @return the exit code
+     */
+    int run(int start) throws IOException {
+        pc = start;
+        running = true;
+        while (running) {
+            if (inMemMgr && pc == memMgrReturn)
+                inMemMgr = false;
+            Instr i = fetch(pc);
+            if (i == null) {
+                exception(EXC_IBE);
+                continue;
+            }
+            instructions += i.count;
+            if (inMemMgr)
+                memMgrInstructions += i.count;
+            int next = pc + 4;
+            int a = reg[i.rs];
+            switch (i.op) {
+                case ADD: {
+                    int b = second(i), v = a + b;
+                    if (((a ^ v) & (b ^ v)) < 0) {
+                        exception(EXC_OVF);
+                        continue;
+                    }
+                    set(i.rd, v);
+                    break;
+                }
+                case SUB: {
+                    int b = second(i), v = a - b;
+                    if (((a ^ b) & (a ^ v)) < 0) {
+                        exception(EXC_OVF);
+                        continue;
+                    }
+                    set(i.rd, v);
+                    break;
+                }
+                case ADDU: set(i.rd, a + second(i)); break;
+                case SUBU: set(i.rd, a - second(i)); break;
+                case AND: set(i.rd, a & second(i)); break;
+                case OR: set(i.rd, a | second(i)); break;
+                case XOR: set(i.rd, a ^ second(i)); break;
+                case NOR: set(i.rd, ~(a | second(i))); break;
+                case SLT: set(i.rd, a < second(i) ? 1 : 0); break;
+                case SLTU: set(i.rd, Integer.compareUnsigned(a, second(i)) < 0 ? 1 : 0); break;
+                case SGT: set(i.rd, a > second(i) ? 1 : 0); break;
+                case SGTU: set(i.rd, Integer.compareUnsigned(a, second(i)) > 0 ? 1 : 0); break;
+                case SLE: set(i.rd, a <= second(i) ? 1 : 0); break;
+                case SGE: set(i.rd, a >= second(i) ? 1 : 0); break;
+                case SEQ: set(i.rd, a == second(i) ? 1 : 0); break;
+                case SNE: set(i.rd, a != second(i) ? 1 : 0); break;
+                case SLL: set(i.rd, a << second(i)); break;
+                case SRL: set(i.rd, a >>> second(i)); break;
+                case SRA: set(i.rd, a >> second(i)); break;
+                case MUL: set(i.rd, a * second(i)); break;
+                case DIV:
+                case DIVU:
+                case REM:
+                case REMU: {
+                    int b = second(i);
+                    if (b == 0) {
+                        exception(EXC_BKPT);
+                        continue;
+                    }
+                    if (i.op == DIV)
+                        set(i.rd, b == -1 ? -a : a / b);
+                    else if (i.op == REM)
+                        set(i.rd, b == -1 ? 0 : a % b);
+                    else if (i.op == DIVU)
+                        set(i.rd, Integer.divideUnsigned(a, b));
+                    else
+                        set(i.rd, Integer.remainderUnsigned(a, b));
+                    break;
+                }
+                case MULT: {
+                    long p = (long) a * reg[i.rt];
+                    lo = (int) p;
+                    hi = (int) (p >> 32);
+                    break;
+                }
+                case MULTU: {
+                    long p = (a & 0xffffffffL) * (reg[i.rt] & 0xffffffffL);
+                    lo = (int) p;
+                    hi = (int) (p >> 32);
+                    break;
+                }
+                case DIV2:
+                case DIVU2: {
+                    int b = reg[i.rt];
+                    if (b != 0) {       // the result is undefined, as on MIPS
+                        if (i.op == DIV2 && b != -1) {
+                            lo = a / b;
+                            hi = a % b;
+                        } else if (i.op == DIV2) {
+                            lo = -a;
+                            hi = 0;
+                        } else {
+                            lo = Integer.divideUnsigned(a, b);
+                            hi = Integer.remainderUnsigned(a, b);
+                        }
+                    }
+                    break;
+                }
+                case MFHI: set(i.rd, hi); break;
+                case MFLO: set(i.rd, lo); break;
+                case MTHI: hi = a; break;
+                case MTLO: lo = a; break;
+                case LI: set(i.rd, i.imm); break;
+                case LUI: set(i.rd, i.imm << 16); break;
+                case MOVE: set(i.rd, a); break;
+                case NEG:
+                    if (a == Integer.MIN_VALUE) {
+                        exception(EXC_OVF);
+                        continue;
+                    }
+                    set(i.rd, -a);
+                    break;
+                case NEGU: set(i.rd, -a); break;
+                case NOT: set(i.rd, ~a); break;
+                case ABS: set(i.rd, Math.abs(a)); break;
+                case LW:
+                    reads++;
+                    if (!loadWord(a + i.imm))
+                        continue;
+                    set(i.rd, loaded);
+                    break;
+                case LH:
+                case LHU:
+                    reads++;
+                    if (!loadHalf(a + i.imm, i.op == LH))
+                        continue;
+                    set(i.rd, loaded);
+                    break;
+                case LB:
+                case LBU:
+                    reads++;
+                    if (!loadByte(a + i.imm, i.op == LB))
+                        continue;
+                    set(i.rd, loaded);
+                    break;
+                case SW:
+                    writes++;
+                    if (!storeWord(a + i.imm, reg[i.rd]))
+                        continue;
+                    break;
+                case SH:
+                    writes++;
+                    if (!storeHalf(a + i.imm, reg[i.rd]))
+                        continue;
+                    break;
+                case SB:
+                    writes++;
+                    if (!storeByte(a + i.imm, reg[i.rd]))
+                        continue;
+                    break;
+                case BEQ:
+                    branches++;
+                    if (a == compared(i))
+                        next = i.target;
+                    break;
+                default:
+                    if (!branch(i, a))
+                        continue;
+                    next = this.next;
+            }
+            pc = next;
+        }
+        out.flush();
+        return exitCode;
+    }
+
+    // Branches, jumps and the other rare operations; sets next to the
+    // address of the next instruction, or returns false after an exception.
+    private int next;
+
+    private boolean branch(Instr i, int a) throws IOException {
+        next = pc + 4;
+        int target = i.target;
+        switch (i.op) {
+            case BNE: branches++; if (a != compared(i)) next = target; break;
+            case BLT: branches++; if (a < compared(i)) next = target; break;
+            case BLE: branches++; if (a <= compared(i)) next = target; break;
+            case BGT: branches++; if (a > compared(i)) next = target; break;
+            case BGE: branches++; if (a >= compared(i)) next = target; break;
+            case BLTU: branches++; if (Integer.compareUnsigned(a, compared(i)) < 0) next = target; break;
+            case BLEU: branches++; if (Integer.compareUnsigned(a, compared(i)) <= 0) next = target; break;
+            case BGTU: branches++; if (Integer.compareUnsigned(a, compared(i)) > 0) next = target; break;
+            case BGEU: branches++; if (Integer.compareUnsigned(a, compared(i)) >= 0) next = target; break;
+            case J: branches++; next = target; break;
+            case JAL:
+                branches++;
+                set(RA, pc + 4);
+                call(target, pc + 4);
+                next = target;
+                break;
+            case JR: branches++; next = a; break;
+            case JALR:
+                branches++;
+                set(i.rd, pc + 4);
+                call(a, pc + 4);
+                next = a;
+                break;
+            case SYSCALL:
+                return syscall();
+            case BREAK:
+                return exception(EXC_BKPT);
+            case NOP:
+            case RFE:
+                break;
+            case MFC0:
+                set(i.rd, i.rs == 13 ? cause : i.rs == 14 ? epc : i.rs == 12 ? status : 0);
+                break;
+            case MTC0:
+                if (i.rs == 12)
+                    status = reg[i.rd];
+                break;
+            default:
+                return exception(EXC_RI);
+        }
+        return true;
+    }
+
+    // the operand a branch compares the first with
+    private int compared(Instr i) {
+        return second(i);
+    }
+
+    //// Syscalls
+
+    private boolean syscall() throws IOException {
+        switch (reg[V0]) {
+            case 1:         // print_int
+                out.print(reg[A0]);
+                break;
+            case 4: {       // print_string
+                StringBuilder sb = new StringBuilder();
+                for (int addr = reg[A0]; ; addr++) {
+                    if (!loadByte(addr, false))
+                        return false;
+                    if (loaded == 0)
+                        break;
+                    sb.append((char) loaded);
+                }
+                out.print(sb);
+                break;
+            }
+            case 5: {       // read_int
+                out.flush();
+                String line = in.readLine();
+                int v = 0;
+                if (line != null) {
+                    try {
+                        v = Integer.parseInt(line.trim());
+                    } catch (NumberFormatException ex) {
+                        v = 0;
+                    }
+                }
+                set(V0, v);
+                break;
+            }
+            case 8: {       // read_string: at most $a1 - 1 characters and a NUL
+                out.flush();
+                int addr = reg[A0], n = reg[A1];
+                int k = 0;
+                while (k < n - 1) {
+                    int c = in.read();
+                    if (c < 0)
+                        break;
+                    if (!storeByte(addr + k, c))
+                        return false;
+                    k++;
+                    if (c == '\n')
+                        break;
+                }
+                if (n > 0 && !storeByte(addr + k, 0))
+                    return false;
+                break;
+            }
+            case 9: {       // sbrk
+                int old = brk;
+                brk += reg[A0] + 3 & ~3;
+                set(V0, old);
+                break;
+            }
+            case 10:        // exit
+                running = false;
+                exitCode = 0;
+                break;
+            case 11:        // print_char
+                out.print((char) (reg[A0] & 0xff));
+                break;
+            case 12: {      // read_char
+                out.flush();
+                int c = in.read();
+                set(V0, c < 0 ? 0 : c);
+                break;
+            }
+            case 17:        // exit2
+                running = false;
+                exitCode = reg[A0];
+                break;
+            default:
+                return exception(EXC_SYSCALL);
+        }
+        return true;
+    }
+}
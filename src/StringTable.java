@@ -1,33 +1,308 @@
-
 import ast.Symbol;
 
-import java.util.HashMap;
-
-public class StringTable extends HashMap<String, Symbol> {
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReferenceArray;
 
-    public static StringTable idtable = new StringTable();
-    public static StringTable stringtable = new StringTable();
-    public static StringTable inttable = new StringTable();
+/**
+ * A table of interned symbols.  Every distinct string is represented by
+ * exactly one Symbol, and symbols are numbered densely from 0 in the order
+ * they are entered.
+ * <p>
+ * The table may be used by several threads at once.  It is split into
+ * stripes by hash code; looking up a symbol that is already in the table
+ * takes no lock, and entering a new one locks only its stripe.  Symbols
+ * can be looked up directly from a range of characters, such as a token
+ * in the lexer's input, so no String is created unless the symbol is new.
+ * <p>
+ * Symbols are numbered in the order their threads enter them.  So that
+ * the files of a program can be read concurrently and still get the same
+ * numbers on every run, each file enters its symbols through a table of
+ * its own (see forFile), which shares the symbols of the program's table
+ * and numbers them in the order the file entered them; once all files
+ * are read, merge numbers the symbols of the program's table again, in
+ * file order.  Iteration and lookup by index must not overlap with
+ * additions made by other threads.
+ */
+public class StringTable implements Iterable<Symbol> {
 
     public static int MAXSIZE = 1024;
 
+    private static final int STRIPES = 16;              // a power of two
+    private static final int INITIAL_SLOTS = 8;         // per stripe, a power of two
+    private static final int FIRST_CHUNK = 32;          // size of the first index chunk
+
+    /**
+     * One stripe of the hash table: open addressing with linear probing.
+     * Slots are read without locking and written while holding the stripe.
+     */
+    private static final class Stripe {
+        volatile AtomicReferenceArray<Symbol> slots = new AtomicReferenceArray<>(INITIAL_SLOTS);
+        int used = 0;
+    }
+
+    private final Stripe[] stripes = new Stripe[STRIPES];
+
+    // number of symbols; the index of the next symbol
+    private final AtomicInteger count = new AtomicInteger();
+
+    // symbols by index, in chunks of FIRST_CHUNK, 2 * FIRST_CHUNK, 4 * FIRST_CHUNK, ...
+    private final AtomicReferenceArray<Symbol[]> chunks = new AtomicReferenceArray<>(32);
+
+    // for the table of a file: the program's table, which makes the
+    // symbols, and the number of symbols it had when the file was started
+    private final StringTable program;
+    private final int base;
+
+    public StringTable() {
+        this(null, 0);
+    }
+
+    private StringTable(StringTable program, int base) {
+        for (int i = 0; i < STRIPES; i++)
+            stripes[i] = new Stripe();
+        this.program = program;
+        this.base = base;
+    }
+
+    /**
+     * Creates a table holding the same symbols as the given one.  Symbols
+     * added later get indices following those of the copied symbols.
+     *
+     * @param t the table to copy
+     */
+    public StringTable(StringTable t) {
+        this();
+        for (Symbol sym : t) {
+            String s = sym.getName();
+            insert(s, 0, s.length(), s.hashCode(), sym);
+        }
+    }
+
+    /**
+     * Creates the table through which one file of a program enters its
+     * symbols.  It holds the symbols of this table that the file entered,
+     * numbered in the order it entered them; a symbol new to this table is
+     * entered here as well, with a number that merge may change.
+     */
+    public StringTable forFile() {
+        return new StringTable(this, size());
+    }
+
+    /**
+     * Numbers the symbols entered through the tables of the files of a
+     * program again, as if the files had been read one after the other:
+     * in the order of the files and, within each, in the order the file
+     * entered them.  Symbols the table had before the files were started
+     * keep their numbers.  No table may be in use.
+     *
+     * @param files the tables of the files, made by forFile, in command
+     *              line order
+     */
+    public void merge(List<StringTable> files) {
+        if (files.isEmpty())
+            return;
+        int base = files.get(0).base;
+        int n = size();
+        Symbol[] order = new Symbol[n];
+        boolean[] placed = new boolean[n];
+        int next = base;
+        for (StringTable file : files) {
+            for (Symbol sym : file) {
+                int i = sym.getIndex();
+                if (i >= base && !placed[i]) {
+                    placed[i] = true;
+                    order[next++] = sym;
+                }
+            }
+        }
+        for (int i = base; i < n; i++)
+            if (!placed[i])
+                order[next++] = get(i);
+        for (int i = base; i < n; i++) {
+            order[i].setIndex(i);
+            put(i, order[i]);
+        }
+    }
+
+    /**
+     * Returns the symbol for the given string, entering it if it is new.
+     * Strings longer than MAXSIZE are truncated.
+     */
     public Symbol addString(String s) {
         if (s.length() > MAXSIZE)
             s = s.substring(0, MAXSIZE);
+        int h = s.hashCode();
+        Symbol sym = find(stripe(h).slots, s, 0, s.length(), h);
+        return sym != null ? sym : insert(s, 0, s.length(), h, null);
+    }
+
+    /**
+     * Returns the symbol for the characters start (inclusive) to end
+     * (exclusive) of the given sequence, entering it if it is new.
+     * A String is created only for a new symbol.
+     */
+    public Symbol addString(CharSequence s, int start, int end) {
+        if (end - start > MAXSIZE)
+            end = start + MAXSIZE;
+        int h = hash(s, start, end);
+        Symbol sym = find(stripe(h).slots, s, start, end, h);
+        return sym != null ? sym : insert(s, start, end, h, null);
+    }
 
-        /* the following line requires java 8 */
-        return this.computeIfAbsent(s, k -> new Symbol(k,this.size()));
+    /**
+     * Returns the symbol for the given string, or null if it is not in
+     * the table.
+     */
+    public Symbol lookup(String s) {
+        int h = s.hashCode();
+        return find(stripe(h).slots, s, 0, s.length(), h);
+    }
+
+    /**
+     * Returns the symbol with the given index.
+     */
+    public Symbol get(int index) {
+        if (index < 0 || index >= count.get())
+            throw new IndexOutOfBoundsException("Symbol index " + index);
+        int k = chunk(index);
+        return chunks.get(k)[index - chunkStart(k)];
+    }
 
-        /* before java 8 use this code instead of computeIfAbsent: */
-        /*
-        Symbol sym  = this.get(s);
-        if (sym == null) {
-            sym = new Symbol(s, this.size());
-            this.put(s, sym);
+    /**
+     * Returns the number of symbols in the table.
+     */
+    public int size() {
+        return count.get();
+    }
+
+    /**
+     * Iterates over the symbols in index order.  Symbols entered after the
+     * iterator is created are not visited.
+     */
+    @Override
+    public Iterator<Symbol> iterator() {
+        final int n = size();
+        return new Iterator<Symbol>() {
+            private int i = 0;
+
+            @Override
+            public boolean hasNext() {
+                return i < n;
+            }
+
+            @Override
+            public Symbol next() {
+                if (i >= n)
+                    throw new NoSuchElementException();
+                return get(i++);
+            }
+        };
+    }
+
+    // Same value as String.hashCode of the characters
+    private static int hash(CharSequence s, int start, int end) {
+        int h = 0;
+        for (int i = start; i < end; i++)
+            h = 31 * h + s.charAt(i);
+        return h;
+    }
+
+    // Spreads the hash so that the stripe and the slot use different bits
+    private static int spread(int h) {
+        h ^= h >>> 16;
+        h *= 0x85ebca6b;
+        return h ^ (h >>> 13);
+    }
+
+    private Stripe stripe(int h) {
+        return stripes[spread(h) & (STRIPES - 1)];
+    }
+
+    private static boolean matches(Symbol sym, CharSequence s, int start, int end, int h) {
+        String name = sym.getName();
+        if (name.length() != end - start || name.hashCode() != h)
+            return false;
+        for (int i = start; i < end; i++)
+            if (name.charAt(i - start) != s.charAt(i))
+                return false;
+        return true;
+    }
+
+    private static Symbol find(AtomicReferenceArray<Symbol> slots, CharSequence s, int start, int end, int h) {
+        int mask = slots.length() - 1;
+        for (int i = (spread(h) >>> 4) & mask; ; i = (i + 1) & mask) {
+            Symbol sym = slots.get(i);
+            if (sym == null || matches(sym, s, start, end, h))
+                return sym;
         }
-        return sym;
-        */
     }
 
+    /**
+     * Enters a symbol unless another thread got there first.  If sym is
+     * null a new symbol is created, or taken from the program's table for
+     * the table of a file; otherwise sym itself is entered.
+     */
+    private Symbol insert(CharSequence s, int start, int end, int h, Symbol sym) {
+        Stripe stripe = stripe(h);
+        synchronized (stripe) {
+            Symbol old = find(stripe.slots, s, start, end, h);
+            if (old != null)
+                return old;
 
+            int index = count.getAndIncrement();
+            if (sym == null && program != null)
+                sym = program.addString(s, start, end);
+            else if (sym == null)
+                sym = new Symbol(s.subSequence(start, end).toString(), index);
+            put(index, sym);
+
+            if (2 * (stripe.used + 1) > stripe.slots.length())
+                stripe.slots = rehash(stripe.slots);
+            AtomicReferenceArray<Symbol> slots = stripe.slots;
+            int mask = slots.length() - 1;
+            int i = (spread(h) >>> 4) & mask;
+            while (slots.get(i) != null)
+                i = (i + 1) & mask;
+            slots.set(i, sym);
+            stripe.used++;
+            return sym;
+        }
+    }
+
+    private static AtomicReferenceArray<Symbol> rehash(AtomicReferenceArray<Symbol> slots) {
+        AtomicReferenceArray<Symbol> bigger = new AtomicReferenceArray<>(2 * slots.length());
+        int mask = bigger.length() - 1;
+        for (int j = 0; j < slots.length(); j++) {
+            Symbol sym = slots.get(j);
+            if (sym == null)
+                continue;
+            int i = (spread(sym.getName().hashCode()) >>> 4) & mask;
+            while (bigger.get(i) != null)
+                i = (i + 1) & mask;
+            bigger.set(i, sym);
+        }
+        return bigger;
+    }
+
+    // Chunk k holds the indices from chunkStart(k) on, FIRST_CHUNK << k of them
+    private static int chunk(int index) {
+        return 31 - Integer.numberOfLeadingZeros(index / FIRST_CHUNK + 1);
+    }
+
+    private static int chunkStart(int k) {
+        return (FIRST_CHUNK << k) - FIRST_CHUNK;
+    }
+
+    private void put(int index, Symbol sym) {
+        int k = chunk(index);
+        Symbol[] c = chunks.get(k);
+        if (c == null) {
+            chunks.compareAndSet(k, null, new Symbol[FIRST_CHUNK << k]);
+            c = chunks.get(k);
+        }
+        c[index - chunkStart(k)] = sym;
+    }
 }
@@ -29,9 +29,10 @@ class SymtabExample {
 	SymbolTable map = new SymbolTable<Integer>();
 
 	// create some names
-	Symbol fred = StringTable.stringtable.addString("Fred");
-	Symbol mary = StringTable.stringtable.addString("Mary");
-	Symbol miguel = StringTable.stringtable.addString("Miguel");
+	StringTable stringtable = new StringTable();
+	Symbol fred = stringtable.addString("Fred");
+	Symbol mary = stringtable.addString("Mary");
+	Symbol miguel = stringtable.addString("Miguel");
 	
 	map.enterScope();
 
@@ -9,81 +9,86 @@ import ast.Symbol;
 
 class TreeConstants {
 
+    /**
+     * The symbols below; every compilation's idtable starts out with them.
+     */
+    static final StringTable predefined = new StringTable();
+
     public static final Symbol arg
-            = StringTable.idtable.addString("arg");
+            = predefined.addString("arg");
 
     public static final Symbol arg2
-            = StringTable.idtable.addString("arg2");
+            = predefined.addString("arg2");
 
     public static final Symbol Bool
-            = StringTable.idtable.addString("Bool");
+            = predefined.addString("Bool");
 
     public static final Symbol concat
-            = StringTable.idtable.addString("concat");
+            = predefined.addString("concat");
 
     public static final Symbol cool_abort
-            = StringTable.idtable.addString("abort");
+            = predefined.addString("abort");
 
     public static final Symbol copy
-            = StringTable.idtable.addString("copy");
+            = predefined.addString("copy");
 
     public static final Symbol Int
-            = StringTable.idtable.addString("Int");
+            = predefined.addString("Int");
 
     public static final Symbol in_int
-            = StringTable.idtable.addString("in_int");
+            = predefined.addString("in_int");
 
     public static final Symbol in_string
-            = StringTable.idtable.addString("in_string");
+            = predefined.addString("in_string");
 
     public static final Symbol IO
-            = StringTable.idtable.addString("IO");
+            = predefined.addString("IO");
 
     public static final Symbol length
-            = StringTable.idtable.addString("length");
+            = predefined.addString("length");
 
     public static final Symbol Main
-            = StringTable.idtable.addString("Main");
+            = predefined.addString("Main");
 
     public static final Symbol main_meth
-            = StringTable.idtable.addString("main");
+            = predefined.addString("main");
 
     public static final Symbol No_class
-            = StringTable.idtable.addString("_no_class");
+            = predefined.addString("_no_class");
 
     public static final Symbol No_type
-            = StringTable.idtable.addString("_no_type");
+            = predefined.addString("_no_type");
 
     public static final Symbol Object_ =
-            StringTable.idtable.addString("Object");
+            predefined.addString("Object");
 
     public static final Symbol out_int
-            = StringTable.idtable.addString("out_int");
+            = predefined.addString("out_int");
 
     public static final Symbol out_string
-            = StringTable.idtable.addString("out_string");
+            = predefined.addString("out_string");
 
     public static final Symbol prim_slot
-            = StringTable.idtable.addString("_prim_slot");
+            = predefined.addString("_prim_slot");
 
     public static final Symbol self
-            = StringTable.idtable.addString("self");
+            = predefined.addString("self");
 
     public static final Symbol SELF_TYPE
-            = StringTable.idtable.addString("SELF_TYPE");
+            = predefined.addString("SELF_TYPE");
 
     public static final Symbol Str
-            = StringTable.idtable.addString("String");
+            = predefined.addString("String");
 
     public static final Symbol str_field
-            = StringTable.idtable.addString("_str_field");
+            = predefined.addString("_str_field");
 
     public static final Symbol substr =
-            StringTable.idtable.addString("substr");
+            predefined.addString("substr");
 
     public static final Symbol type_name =
-            StringTable.idtable.addString("type_name");
+            predefined.addString("type_name");
 
     public static final Symbol val =
-            StringTable.idtable.addString("_val");
+            predefined.addString("_val");
 }
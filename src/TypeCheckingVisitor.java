@@ -2,4 +2,9 @@ import ast.visitor.BaseVisitor;
 
 public class TypeCheckingVisitor extends BaseVisitor<Object, Object> {
 
+    private final CompilationContext ctx;
+
+    public TypeCheckingVisitor(CompilationContext ctx) {
+        this.ctx = ctx;
+    }
 }
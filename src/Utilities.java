@@ -7,10 +7,27 @@ import java.util.EnumMap;
 
 public class Utilities {
 
-    private static int lexErrors = 0;
-    private static int parseErrors = 0;
-    private static int semantErrors = 0;
-    private static PrintStream errorStream = System.err;;
+    // Where error messages outside a compilation go, and whether fatal
+    // errors exit the JVM: those of the command line, of a batch or a
+    // request of the compile server as a whole, and the internal errors
+    // raised where no compilation is at hand, as in the symbol tables.
+    // A compilation takes both when it starts and keeps them in its
+    // CompilationContext, so that changing them does not affect the
+    // compilations that are running.  They are set before any compilation
+    // starts: by Runner for a batch, and by CompileServer for each
+    // request, which it serves one at a time.
+    private static PrintStream errorStream = System.err;
+    private static boolean exitOnFatalError = true;
+
+    /**
+     * Thrown by fatalError instead of exiting the JVM when several
+     * programs are compiled by one process.
+     */
+    public static class FatalError extends RuntimeException {
+        public FatalError(String msg) {
+            super(msg);
+        }
+    }
 
     public static enum ErrorCode {
 		OPEN_FILE, EXCEPTION_LEXER, EXCEPTION_PARSER, LEXER_PARSER,
@@ -21,7 +38,7 @@ public class Utilities {
 		EOF_IN_COMMENT,
 		EOF_IN_STRING_CONSTANT,
 		UNMATCHED_BLOCK_COMMENT_END,
-        ERROR_AST_PARSING, IGNORE_INPUT_FILES, ERROR_SEMANT
+        ERROR_AST_PARSING, ERROR_AST_WRITING, IGNORE_INPUT_FILES, ERROR_SEMANT
 	}
 
 	private static EnumMap<ErrorCode, String> errorMessages = new EnumMap<ErrorCode, String>(ErrorCode.class);
@@ -42,6 +59,7 @@ public class Utilities {
 			errorMessages.put(ErrorCode.IGNORE_INPUT_FILES, "Input files ignored, reading from stdin*)");
 
 			errorMessages.put(ErrorCode.ERROR_AST_PARSING, "??? unexpected error in coolc.ast parsing ");
+			errorMessages.put(ErrorCode.ERROR_AST_WRITING, "??? unexpected error in coolc.ast writing %s");
 
 			errorMessages.put(ErrorCode.ERROR_SEMANT, "Compilation halted due to static semantic errors.");
 	};
@@ -49,16 +67,15 @@ public class Utilities {
     // change this to true to enable table checking
     private static final boolean checkTables = false;
 
-    /** Prints error message and exits
+    /** Prints error message and exits; for errors outside a compilation
     *
     * @param msg the error message
     * */
 	public static void fatalError(String msg) {
-        errorStream.println(msg);
-		System.exit(1);
+        fatalError(errorStream, exitOnFatalError, msg);
 	}
 
-    /** Prints error message and exits
+    /** Prints error message and exits; for errors outside a compilation
      *
      * @param code the error message
      * */
@@ -66,12 +83,31 @@ public class Utilities {
 		fatalError(String.format(errorMessages.get(code), args));
 	}
 
+    /**
+     * Prints the error message of a compilation and exits, or throws
+     * FatalError if the compilation is one of several in the JVM.
+     *
+     * @param ctx the compilation
+     * @param msg the error message
+     */
+    public static void fatalError(CompilationContext ctx, String msg) {
+        fatalError(ctx.errorStream, ctx.exitOnFatalError && ctx.errorBuffer == null, msg);
+    }
+
+    private static void fatalError(PrintStream s, boolean exit, String msg) {
+        s.println(msg);
+        if (!exit)
+            throw new FatalError(msg);
+        System.exit(1);
+    }
+
 	/** Prints error message
     *
+    * @param ctx  the compilation
     * @param code the error message
     * */
-	public static void error(ErrorCode code, Object... args) {
-        errorStream.println(String.format(errorMessages.get(code), args));
+	public static void error(CompilationContext ctx, ErrorCode code, Object... args) {
+        ctx.errorStream.println(String.format(errorMessages.get(code), args));
 	}
 
 	/** Prints warning message
@@ -87,12 +123,13 @@ public class Utilities {
      * <p>
      * Also increments semantic error count.
      *
+     * @param ctx the compilation
      * @param c the class
      * @return a print stream to which the rest of the error message is
      * to be printed.
      */
-    public static PrintStream semantError(ClassNode c) {
-        return semantError(c.getFilename(), c);
+    public static PrintStream semantError(CompilationContext ctx, ClassNode c) {
+        return semantError(ctx, c.getFilename(), c);
     }
 
     /**
@@ -100,50 +137,110 @@ public class Utilities {
      * <p>
      * Also increments semantic error count.
      *
+     * @param ctx      the compilation
      * @param filename the file name
      * @param t        the tree node
      * @return a print stream to which the rest of the error message is
      * to be printed.
      */
-    public static PrintStream semantError(Symbol filename, TreeNode t) {
-        errorStream.print(filename.getName() + ":" + t.getLineNumber() + ": ");
-        return semantError();
+    public static PrintStream semantError(CompilationContext ctx, Symbol filename, TreeNode t) {
+        ctx.errorStream.print(filename.getName() + ":" + t.getLineNumber() + ": ");
+        return semantError(ctx);
     }
 
     /**
      * Increments semantic error count and returns the print stream for
      * error messages.
      *
+     * @param ctx the compilation
      * @return a print stream to which the error message is
      * to be printed.
      */
-    public static PrintStream semantError() {
-        semantErrors++;
-        return errorStream;
+    public static PrintStream semantError(CompilationContext ctx) {
+        ctx.semantErrors.incrementAndGet();
+        return ctx.errorStream;
     }
 
     /**
-     * Returns true if there are any static semantic errors.
+     * Returns true if the compilation has any errors.
      */
-    public static boolean errors() {
-        return (semantErrors != 0 || parseErrors != 0 || lexErrors != 0);
+    public static boolean errors(CompilationContext ctx) {
+        return (ctx.semantErrors.get() != 0 || ctx.parseErrors.get() != 0 || ctx.lexErrors.get() != 0);
     }
 
 
-    public static PrintStream parseError(String filename, int line) {
-        errorStream.print("\"" +  filename + "\", line " + line + ": syntax error at or near ");
-        return parseError();
+    public static PrintStream parseError(CompilationContext ctx, String filename, int line) {
+        PrintStream s = parseError(ctx);
+        s.print("\"" +  filename + "\", line " + line + ": syntax error at or near ");
+        return s;
     }
 
-    public static PrintStream parseError() {
-        parseErrors++;
-        return errorStream;
+    public static PrintStream parseError(CompilationContext ctx) {
+        ctx.parseErrors.incrementAndGet();
+        return ctx.errorStream;
+    }
+
+    public static PrintStream lexError(CompilationContext ctx) {
+        ctx.lexErrors.incrementAndGet();
+        return ctx.errorStream;
+    }
+
+    /**
+     * Prints the error message and exits, as fatalError does; for a file
+     * whose errors are buffered, the message is buffered too, and the
+     * FatalError thrown is left to Frontend, which exits in file order
+     * (see printErrors).
+     *
+     * @param ctx  the context of the file
+     * @param code the error message
+     */
+    public static void fatalError(CompilationContext ctx, ErrorCode code, Object... args) {
+        fatalError(ctx, String.format(errorMessages.get(code), args));
+    }
+
+    /**
+     * Prints the errors buffered for one file of a program, and exits as
+     * fatalError does if reading the file ended in a fatal error.
+     *
+     * @param program the context of the program
+     * @param file    the context of the file
+     * @param fatal   the fatal error, or null
+     */
+    public static void printErrors(CompilationContext program, CompilationContext file, FatalError fatal) {
+        if (file.errorBuffer != null) {
+            program.errorStream.print(file.errorBuffer.toString());
+            program.errorStream.flush();
+        }
+        if (fatal != null) {
+            if (!program.exitOnFatalError)
+                throw fatal;
+            System.exit(1);
+        }
+    }
+
+    /**
+     * Redirects the error messages of the compilations started from now
+     * on, and of errors outside a compilation, to the given stream.
+     */
+    public static void setErrorStream(PrintStream s) {
+        errorStream = s;
     }
 
-    public static PrintStream lexError() {
-        lexErrors++;
+    /**
+     * Chooses whether fatal errors of the compilations started from now
+     * on, and outside a compilation, exit the JVM or throw FatalError.
+     */
+    public static void setExitOnFatalError(boolean exit) {
+        exitOnFatalError = exit;
+    }
+
+    static PrintStream getErrorStream() {
         return errorStream;
     }
+
+    static boolean exitsOnFatalError() {
+        return exitOnFatalError;
+    }
 }
 
 
@@ -13,6 +13,10 @@ public class AssignNode extends ExpressionNode {
         return expr;
     }
 
+    public void setExpr(ExpressionNode expr) {
+        this.expr = expr;
+    }
+
     protected ExpressionNode expr;
 
     public AssignNode(int lineNumber, Symbol name, ExpressionNode expr) {
@@ -15,6 +15,10 @@ public class AttributeNode extends FeatureNode {
         return init;
     }
 
+    public void setInit(ExpressionNode init) {
+        this.init = init;
+    }
+
     protected Symbol name;
     protected Symbol type_decl;
     protected ExpressionNode init;
@@ -11,10 +11,18 @@ public abstract class BinopNode extends ExpressionNode {
         return e1;
     }
 
+    public void setE1(ExpressionNode e1) {
+        this.e1 = e1;
+    }
+
     public ExpressionNode getE2() {
         return e2;
     }
 
+    public void setE2(ExpressionNode e2) {
+        this.e2 = e2;
+    }
+
     public BinopNode(int lineNumber, ExpressionNode e1, ExpressionNode e2) {
         super(lineNumber);
         this.e1 = e1;
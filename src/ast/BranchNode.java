@@ -30,4 +30,8 @@ public class BranchNode extends TreeNode {
     public ExpressionNode getExpr() {
         return expr;
     }
+
+    public void setExpr(ExpressionNode expr) {
+        this.expr = expr;
+    }
 }
@@ -11,6 +11,10 @@ public class CaseNode extends ExpressionNode {
         return expr;
     }
 
+    public void setExpr(ExpressionNode expr) {
+        this.expr = expr;
+    }
+
     public List<BranchNode> getCases() {
         return cases;
     }
@@ -12,14 +12,26 @@ public class CondNode extends ExpressionNode {
         return cond;
     }
 
+    public void setCond(ExpressionNode cond) {
+        this.cond = cond;
+    }
+
     public ExpressionNode getThenExpr() {
         return thenExpr;
     }
 
+    public void setThenExpr(ExpressionNode thenExpr) {
+        this.thenExpr = thenExpr;
+    }
+
     public ExpressionNode getElseExpr() {
         return elseExpr;
     }
 
+    public void setElseExpr(ExpressionNode elseExpr) {
+        this.elseExpr = elseExpr;
+    }
+
     public CondNode(int lineNumber, ExpressionNode cond, ExpressionNode thenE, ExpressionNode elseE) {
         super(lineNumber);
         this.cond = cond;
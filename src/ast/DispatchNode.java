@@ -12,6 +12,10 @@ public class DispatchNode extends ExpressionNode {
         return expr;
     }
 
+    public void setExpr(ExpressionNode expr) {
+        this.expr = expr;
+    }
+
     public Symbol getName() {
         return name;
     }
@@ -22,6 +26,41 @@ public class DispatchNode extends ExpressionNode {
 
     protected List<ExpressionNode> actuals;
 
+    // the class whose method this dispatch always calls, or null if the
+    // method is looked up in the dispatch table at run time
+    protected Symbol staticBinding;
+
+    public Symbol getStaticBinding() {
+        return staticBinding;
+    }
+
+    public void setStaticBinding(Symbol staticBinding) {
+        this.staticBinding = staticBinding;
+    }
+
+    // the method whose body replaces this dispatch, or null if it is called
+    protected MethodNode inlined;
+
+    public MethodNode getInlined() {
+        return inlined;
+    }
+
+    public void setInlined(MethodNode inlined) {
+        this.inlined = inlined;
+    }
+
+    // whether this is a self call in tail position, coded as a jump back
+    // to the start of the method (CgenTailCalls)
+    protected boolean tailCall;
+
+    public boolean isTailCall() {
+        return tailCall;
+    }
+
+    public void setTailCall(boolean tailCall) {
+        this.tailCall = tailCall;
+    }
+
     public DispatchNode(int lineNumber,
                            ExpressionNode expr, Symbol name, List<ExpressionNode> actuals) {
         super(lineNumber);
@@ -7,6 +7,10 @@ public class IsVoidNode extends ExpressionNode {
         return e1;
     }
 
+    public void setE1(ExpressionNode e1) {
+        this.e1 = e1;
+    }
+
     protected ExpressionNode e1;
 
     public IsVoidNode(int lineNumber, ExpressionNode expr) {
@@ -18,10 +18,18 @@ public class LetNode extends ExpressionNode {
         return init;
     }
 
+    public void setInit(ExpressionNode init) {
+        this.init = init;
+    }
+
     public ExpressionNode getBody() {
         return body;
     }
 
+    public void setBody(ExpressionNode body) {
+        this.body = body;
+    }
+
     protected ExpressionNode init;
     protected ExpressionNode body;
 
@@ -10,10 +10,18 @@ public class LoopNode extends ExpressionNode {
         return cond;
     }
 
+    public void setCond(ExpressionNode cond) {
+        this.cond = cond;
+    }
+
     public ExpressionNode getBody() {
         return body;
     }
 
+    public void setBody(ExpressionNode body) {
+        this.body = body;
+    }
+
     protected ExpressionNode body;
 
     public LoopNode(int lineNumber, ExpressionNode cond, ExpressionNode body) {
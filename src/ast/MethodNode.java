@@ -26,6 +26,10 @@ public class MethodNode  extends FeatureNode {
         return expr;
     }
 
+    public void setExpr(ExpressionNode expr) {
+        this.expr = expr;
+    }
+
     public MethodNode(int lineNumber, Symbol name, List<FormalNode> formals, Symbol return_type, ExpressionNode expr) {
         super(lineNumber);
         this.name = name;
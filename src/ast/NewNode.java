@@ -9,6 +9,30 @@ public class NewNode extends ExpressionNode {
 
     protected Symbol type_name;
 
+    // the words of the stack frame the object is allocated in, with its
+    // eye catcher, or 0 if it is allocated in the heap
+    protected int frameWords;
+
+    public int getFrameWords() {
+        return frameWords;
+    }
+
+    public void setFrameWords(int frameWords) {
+        this.frameWords = frameWords;
+    }
+
+    // whether the prototype object stands for the object, which is never
+    // changed nor compared
+    protected boolean sharesPrototype;
+
+    public boolean sharesPrototype() {
+        return sharesPrototype;
+    }
+
+    public void setSharesPrototype(boolean sharesPrototype) {
+        this.sharesPrototype = sharesPrototype;
+    }
+
     public NewNode(int lineNumber, Symbol name) {
         super(lineNumber);
         this.type_name = name;
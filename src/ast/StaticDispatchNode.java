@@ -11,6 +11,10 @@ public class StaticDispatchNode extends ExpressionNode {
         return expr;
     }
 
+    public void setExpr(ExpressionNode expr) {
+        this.expr = expr;
+    }
+
     public Symbol getType_name() {
         return type_name;
     }
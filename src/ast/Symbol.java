@@ -19,6 +19,14 @@ public class Symbol implements Tree {
         this.index = index;
     }
 
+    /**
+     * Numbers the symbol again; for StringTable, which renumbers the
+     * symbols of files read concurrently.
+     */
+    public void setIndex(int index) {
+        this.index = index;
+    }
+
     public <R,D> R accept(TreeVisitor<R,D> visitor, D data) {
         return visitor.visit(this, data);
     }
@@ -0,0 +1,50 @@
+-- cgen flags: -g -t
+-- Every allocation collects, so the holders are in the old area when
+-- new objects are stored in them; those objects are reachable only
+-- through the holders, and survive the minor collections only if the
+-- stores mark the cards of the holders.  The copies of a holder are
+-- young, so a collection follows their fields, and finds no object
+-- where a lost one was.
+class And { };
+
+class Holder {
+  item : Object;
+  text : String;
+  put(o : Object) : Object { item <- o };
+  label(s : String) : String { text <- s.concat(s) };
+};
+
+class Nat { pred() : Nat { self }; };
+class Zero inherits Nat { };
+class Pos inherits Nat { };
+class One inherits Pos { pred() : Nat { new Zero }; };
+class Two inherits Pos { pred() : Nat { new One }; };
+
+class Main inherits IO {
+  -- stores 4 ^ 2 times into each holder, allocating in between
+  fill(n : Nat, a : Holder, b : Holder, c : Holder) : Int {
+    case n of
+      z : Zero =>
+        let x : Object <- a.put(new Holder),
+            y : Object <- b.label(type_name()),
+            w : Holder <- a.copy(),
+            v : Object <- c.put(w.copy())
+        in
+          w.label(w.type_name()).length();
+      p : Pos =>
+        let m : Nat <- p.pred() in
+          fill(m, a, b, c) + fill(m, b, c, a) + fill(m, c, a, b) + fill(m, a, c, b);
+    esac
+  };
+
+  main() : Object {
+    let a : Holder <- new Holder,
+        b : Holder <- new Holder,
+        c : Holder <- new Holder,
+        n : Int <- fill(new Two, a, b, c),
+        p : Object <- out_int(n),
+        q : Object <- out_string((new And).type_name())
+    in
+      out_int(fill(new Two, c, b, a))
+  };
+};
@@ -0,0 +1,70 @@
+-- cgen flags: -O
+class A { };
+class B inherits A { };
+class C inherits B { };
+class D inherits A { };
+class E inherits D { };
+class F { };
+class G inherits F { };
+class H inherits G { };
+class K { };
+
+class And { };
+
+class Main inherits IO {
+  -- many branches: a jump table on the class tag
+  dense(o : Object) : Int {
+    case o of
+      a : A => 1;
+      c : C => 3;
+      e : E => 5;
+      f : F => 6;
+      h : H => 8;
+      k : K => 9;
+      i : Int => 10;
+      s : String => 11;
+      b : Bool => 12;
+      x : Object => 0;
+    esac
+  };
+
+  -- few branches far apart: binary search
+  sparse(o : Object) : Int {
+    case o of
+      c : C => 3;
+      g : G => 7;
+    esac
+  };
+
+  show(i : Int) : Object {
+    let p : Object <- out_int(i) in out_string((new And).type_name())
+  };
+
+  both(o : Object) : Object {
+    let p : Object <- show(dense(o)) in show(sparse(o))
+  };
+
+  main() : Object {
+    let a : Object <- show(dense(new A)),
+        b : Object <- show(dense(new B)),
+        c : Object <- show(dense(new C)),
+        d : Object <- show(dense(new D)),
+        e : Object <- show(dense(new E)),
+        f : Object <- show(dense(new F)),
+        g : Object <- show(dense(new G)),
+        h : Object <- show(dense(new H)),
+        k : Object <- show(dense(new K)),
+        i : Object <- show(dense(3)),
+        s : Object <- show(dense(type_name())),
+        t : Object <- show(dense(true)),
+        m : Object <- show(dense(self)),
+        o : Object <- show(dense(new Object)),
+        io : Object <- show(dense(new IO)),
+        sc : Object <- both(new C),
+        sg : Object <- both(new G),
+        sh : Object <- both(new H)
+    in
+      -- no branch for IO: the case aborts
+      both(new IO)
+  };
+};
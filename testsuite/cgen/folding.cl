@@ -0,0 +1,47 @@
+-- cgen flags: -O
+class And { };
+
+class Main inherits IO {
+  show(i : Int) : Object {
+    let p : Object <- out_int(i) in out_string((new And).type_name())
+  };
+
+  -- an inner let hides an outer constant
+  shadow_let(y : Int) : Int { let x : Int <- 1 in let x : Int <- y in x };
+
+  -- so does a case variable, but not in the other branches
+  shadow_case(o : Object) : Int {
+    let x : Int <- 7 in
+      case o of
+        x : Int => x;
+        s : String => x;
+        b : Bool => ~x;
+      esac
+  };
+
+  -- and a formal of a method hides nothing outside it
+  shadow_formal(x : Int) : Int { let y : Int <- x in let x : Int <- 3 in x * y };
+
+  arith() : Int { (1 + 2) * 3 - 10 / 2 + ~4 };
+
+  constant_let() : Int { let k : Int <- 6 in k * k + k };
+
+  assigned_let() : Int { let k : Int <- 6 in let z : Int <- k <- 9 in k + z };
+
+  compare() : String { case 1 < 2 of b : Bool => b.type_name(); esac };
+
+  main() : Object {
+    let a : Object <- show(shadow_let(4)),
+        b : Object <- show(shadow_case(25)),
+        c : Object <- show(shadow_case((new And).type_name())),
+        d : Object <- show(shadow_case(false)),
+        e : Object <- show(shadow_formal(5)),
+        f : Object <- show(arith()),
+        g : Object <- show(constant_let()),
+        h : Object <- show(assigned_let()),
+        i : Object <- out_string(type_name().concat(compare()))
+    in
+      -- the division by zero is left to trap at run time
+      show(10 / (3 - 3))
+  };
+};
@@ -0,0 +1,59 @@
+-- cgen flags: -O
+class And { };
+
+class Cell {
+  x : Int;
+  s : String;
+  set(v : Int) : Int { x <- v };
+  label(v : String) : String { s <- v.concat(v) };
+  twice(v : Int) : Int { v * 2 };
+};
+
+-- another class whose setter does more
+class Counter {
+  x : Int;
+  set(v : Int) : Int { x <- v + 100 };
+};
+
+class Main inherits IO {
+  show(i : Int) : Object {
+    let p : Object <- out_int(i) in out_string((new And).type_name())
+  };
+
+  -- the cell never leaves the method: it lives in the frame
+  local(v : Int) : Int {
+    let c : Cell <- new Cell in
+      let a : Int <- c.set(v), b : Int <- c.set(a + 1) in a * 10 + b + c.twice(b)
+  };
+
+  -- two cells in the same frame
+  pair(v : Int) : Int {
+    let c : Cell <- new Cell, d : Counter <- new Counter in c.set(v) + d.set(v)
+  };
+
+  labels() : String {
+    let c : Cell <- new Cell in c.label(type_name()).concat(c.label(c.type_name()))
+  };
+
+  -- the cell escapes to a call, so it stays on the heap
+  escapes(v : Int) : Int {
+    let c : Cell <- new Cell in let a : Int <- c.set(v) in size(c) + a
+  };
+  size(c : Cell) : Int { c.type_name().length() };
+
+  -- each call of a recursion has its own cell
+  nested(v : Int) : Int {
+    let c : Cell <- new Cell in
+      let a : Int <- c.set(v) in a + local(a) + c.set(a * a)
+  };
+
+  main() : Object {
+    let a : Object <- show(local(3)),
+        b : Object <- show(pair(5)),
+        c : Object <- out_string(labels()),
+        d : Object <- show(escapes(7)),
+        e : Object <- show(nested(4))
+    in
+      show(local(local(1)))
+  };
+};
@@ -0,0 +1,46 @@
+-- cgen flags: -O -g -t
+-- Every allocation collects, so the objects held in formals and locals
+-- across a call move while it runs and must be found through the
+-- stack maps.
+class Cell {
+  next : Cell;
+  link(n : Cell) : Cell { let d : Cell <- next <- n in self };
+  name() : String { type_name() };
+};
+class Red inherits Cell { };
+class Blue inherits Cell { name() : String { type_name().concat(type_name()) }; };
+
+class And { };
+
+class Main inherits IO {
+  -- allocates, and so collects, more than once
+  churn(k : Int) : Int {
+    let c : Cell <- (new Cell).link(new Red),
+        s : String <- c.name().concat(type_name())
+    in
+      s.length() + k
+  };
+
+  keep(a : Cell, s : String, k : Int) : String {
+    let i : Int <- churn(k) + k,
+        t : String <- s.concat(a.name())
+    in
+      let j : Int <- churn(i) in
+        t.concat(a.link(new Blue).name()).concat(s.substr(0, j - i - 4))
+  };
+
+  sum(a : Int, b : Int, c : Cell) : Int {
+    let x : Int <- churn(a), y : Int <- churn(b) in x * y + c.name().length()
+  };
+
+  main() : Object {
+    let r : Cell <- new Red,
+        b : Cell <- (new Blue).link(r),
+        s : String <- keep(b, type_name(), 7),
+        p : Object <- out_string(s),
+        q : Object <- out_string((new And).type_name()),
+        n : Int <- sum(3, 4, r)
+    in
+      let m : Object <- out_int(n) in out_string(keep(r, s, n))
+  };
+};
@@ -0,0 +1,56 @@
+-- cgen flags: -O
+class And { };
+
+-- no attribute is initialized, so new needs no init call
+class Plain { a : Int; b : Plain; name() : String { type_name() }; };
+
+-- its initializer prints, and so must run in the class below too
+class Loud {
+  trace : Object <- (new IO).out_string(type_name());
+  name() : String { type_name() };
+};
+class Quiet inherits Loud { };
+
+-- over 16 words: allocated out of line
+class Wide {
+  a0 : Int; a1 : Int; a2 : Int; a3 : Int; a4 : Int; a5 : Int; a6 : Int;
+  a7 : Int; a8 : Int; a9 : Int; b0 : Int; b1 : Int; b2 : Int; b3 : Int;
+  name() : String { type_name() };
+};
+
+class Nat { pred() : Nat { self }; };
+class Zero inherits Nat { };
+class Pos inherits Nat { };
+class One inherits Pos { pred() : Nat { new Zero }; };
+class Two inherits Pos { pred() : Nat { new One }; };
+class Three inherits Pos { pred() : Nat { new Two }; };
+class Four inherits Pos { pred() : Nat { new Three }; };
+
+class Main inherits IO {
+  show(i : Int) : Object {
+    let p : Object <- out_int(i) in out_string((new And).type_name())
+  };
+
+  -- 8 ^ 4 leaves, each allocating, enough to fill the work area
+  grow(n : Nat) : Int {
+    case n of
+      z : Zero =>
+        let p : Plain <- new Plain, w : Wide <- new Wide in
+          p.name().length() + w.name().length();
+      p : Pos =>
+        let m : Nat <- p.pred() in
+          grow(m) + grow(m) + grow(m) + grow(m)
+            + grow(m) + grow(m) + grow(m) + grow(m);
+    esac
+  };
+
+  main() : Object {
+    let a : Object <- out_string((new Plain).name()),
+        b : Object <- out_string((new Loud).name()),
+        c : Object <- out_string((new Quiet).name()),
+        d : Object <- out_string((new Wide).name()),
+        e : Object <- show(grow(new Four))
+    in
+      out_string((new Quiet).copy().name())
+  };
+};
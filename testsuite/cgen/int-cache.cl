@@ -0,0 +1,33 @@
+-- cgen flags: -O
+-- backend flags: -I -2:3
+-- Arithmetic results box through a cache of the Ints from -2 to 3;
+-- the values at either edge of it, and just outside, are printed.
+class And { };
+
+class Main inherits IO {
+  show(i : Int) : Object {
+    let p : Object <- out_int(i) in out_string((new And).type_name())
+  };
+
+  -- the values from x - 1 to x + 1, boxed by arithmetic
+  around(x : Int) : Object {
+    let a : Object <- show(x - 1), b : Object <- show(x + 0) in show(x + 1)
+  };
+
+  -- a boxed value kept while another box is made
+  keep(x : Int) : Int {
+    let a : Int <- x * 1, b : Int <- ~x, c : Int <- a + b in a - b + c
+  };
+
+  main() : Object {
+    let a : Object <- around(~2),
+        b : Object <- around(3),
+        c : Object <- around(0),
+        d : Object <- show(keep(3)),
+        e : Object <- show(keep(2)),
+        f : Object <- show(3),
+        g : Object <- show(4)
+    in
+      show(~2)
+  };
+};
@@ -0,0 +1,78 @@
+-- cgen flags: -g
+-- backend flags: -A $testfile
+-- The allocation profile for -A is this file, from a run under -g -a:
+-- the cells of build (site 1) all survive, so they are allocated in the
+-- old area, and the objects stored in them later need the write barrier.
+(*
+#alloc-site 0 2 0
+#alloc-site 1 320 320
+#alloc-site 2 4160 2
+#alloc-site 3 1 0
+#alloc-site 4 1 1
+#alloc-site 5 1 0
+#alloc-site 6 1 1
+#alloc-site 7 1 0
+#alloc-site 8 1120 3
+#alloc-site 9 280 3
+#alloc-site 10 70 3
+#alloc-site 11 17 3
+#alloc-site 12 4 3
+#alloc-site 13 1 1
+*)
+class And { };
+
+class Cell {
+  next : Cell;
+  item : Object;
+  link(n : Cell) : Cell { let d : Cell <- next <- n in self };
+  put(o : Object) : Object { item <- o };
+};
+
+class Nat { pred() : Nat { self }; };
+class Zero inherits Nat { };
+class Pos inherits Nat { };
+class One inherits Pos { pred() : Nat { new Zero }; };
+class Two inherits Pos { pred() : Nat { new One }; };
+class Three inherits Pos { pred() : Nat { new Two }; };
+class Four inherits Pos { pred() : Nat { new Three }; };
+class Five inherits Pos { pred() : Nat { new Four }; };
+class Six inherits Pos { pred() : Nat { new Five }; };
+
+class Main inherits IO {
+  show(i : Int) : Object {
+    let p : Object <- out_int(i) in out_string((new And).type_name())
+  };
+
+  -- 4 ^ 4 cells, linked into a list, which stays live
+  build(n : Nat, tail : Cell) : Cell {
+    case n of
+      z : Zero => (new Cell).link(tail);
+      p : Pos =>
+        let m : Nat <- p.pred() in
+          build(m, build(m, build(m, build(m, tail))));
+    esac
+  };
+
+  -- short-lived strings, stored into the long-lived cells
+  churn(n : Nat, c : Cell, d : Cell) : Int {
+    case n of
+      z : Zero =>
+        let s : String <- type_name().concat(c.type_name()),
+            x : Object <- c.put(s),
+            y : Object <- d.put(c.copy())
+        in
+          s.length();
+      p : Pos =>
+        let m : Nat <- p.pred() in
+          churn(m, c, d) + churn(m, d, c) + churn(m, c, d) + churn(m, d, c);
+    esac
+  };
+
+  main() : Object {
+    let a : Cell <- build(new Four, new Cell),
+        b : Cell <- build(new Three, a),
+        n : Object <- show(churn(new Six, a, b))
+    in
+      show(churn(new Three, b, a))
+  };
+};
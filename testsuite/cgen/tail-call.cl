@@ -0,0 +1,94 @@
+-- cgen flags: -O
+class And { };
+
+-- natural numbers up to four, each a class, so that a case on one ends
+-- a recursion
+class Nat {
+  pred() : Nat { self };
+  value() : Int { 0 };
+};
+class Zero inherits Nat { };
+class Pos inherits Nat { };
+class One inherits Pos { pred() : Nat { new Zero }; value() : Int { 1 }; };
+class Two inherits Pos { pred() : Nat { new One }; value() : Int { 2 }; };
+class Three inherits Pos { pred() : Nat { new Two }; value() : Int { 3 }; };
+class Four inherits Pos { pred() : Nat { new Three }; value() : Int { 4 }; };
+
+class Walker {
+  walk(n : Nat, acc : Int, next : Walker) : Int {
+    case n of
+      z : Zero => acc;
+      p : Pos => next.walk(p.pred(), acc + 1, next);
+    esac
+  };
+};
+
+class Runner inherits Walker {
+  walk(n : Nat, acc : Int, next : Walker) : Int {
+    case n of
+      z : Zero => acc;
+      p : Pos => next.walk(p.pred(), acc + 100, self);
+    esac
+  };
+};
+
+class Main inherits IO {
+  show(i : Int) : Object {
+    let p : Object <- out_int(i) in out_string((new And).type_name())
+  };
+
+  sum(n : Nat, acc : Int) : Int {
+    case n of
+      z : Zero => acc;
+      p : Pos => sum(p.pred(), acc + p.value());
+    esac
+  };
+
+  -- the arguments read the formals they replace
+  swap(n : Nat, a : Int, b : Int) : Int {
+    case n of
+      z : Zero => a * 10 + b;
+      p : Pos => swap(p.pred(), b, a);
+    esac
+  };
+
+  -- a tail call in a let, and a case on a formal
+  strings(n : Nat, o : Object, acc : Int) : Int {
+    case n of
+      z : Zero => acc;
+      p : Pos =>
+        let m : Nat <- p.pred() in
+          case o of
+            i : Int => strings(m, type_name(), acc);
+            s : String => strings(m, 0, acc + s.length());
+          esac;
+    esac
+  };
+
+  -- not a tail call
+  count(n : Nat) : Int {
+    case n of
+      z : Zero => 0;
+      p : Pos => 1 + count(p.pred());
+    esac
+  };
+
+  -- ends dividing by zero, with the frames of all the calls on the stack
+  -- unless they are jumps
+  spin(n : Int, acc : Int) : Int {
+    let p : Object <- show(acc), d : Int <- 100 / n in spin(n - 1, acc + d)
+  };
+
+  main() : Object {
+    let a : Object <- show(sum(new Four, 0)),
+        b : Object <- show(swap(new Three, 1, 2)),
+        c : Object <- show(swap(new Four, 1, 2)),
+        d : Object <- show(strings(new Four, 0, 0)),
+        e : Object <- show(count(new Four)),
+        f : Object <- show((new Walker).walk(new Four, 0, new Walker)),
+        g : Object <- show((new Walker).walk(new Four, 0, new Runner)),
+        h : Object <- show((new Runner).walk(new Four, 0, new Walker))
+    in
+      spin(10, 0)
+  };
+};
@@ -0,0 +1,49 @@
+-- cgen flags: -O
+class And { };
+
+class Main inherits IO {
+  show(i : Int) : Object {
+    let p : Object <- out_int(i) in out_string((new And).type_name())
+  };
+
+  three() : Int { 3 };
+
+  -- a tree over formals, unboxed throughout and boxed once
+  poly(x : Int, y : Int) : Int { x * x * x - 2 * x * y + y * y / 3 - ~x };
+
+  -- operands that are calls, left and right
+  calls(x : Int) : Int { three() * x + x * three() - three() / (x - 4) };
+
+  -- the right operand assigns the variable the left one reads, so the
+  -- left one is held while the right one runs
+  order(x : Int) : Int {
+    let y : Int <- x in (y + (y <- y * 10)) * (y - (y <- 1)) + y
+  };
+
+  -- more operands than raw registers
+  wide(a : Int, b : Int) : Int {
+    (a + b) * (a - b) + (a * 2 + b * 3) * (a * 4 - b * 5)
+      - ((a + 1) * (b + 2) - (a + 3) * (b + 4)) * ((a + 5) - (b + 6) * (a + 7))
+  };
+
+  -- results outside the Int cache, and negative division
+  big(x : Int) : Int { x * x * x * x };
+  negdiv(x : Int) : Int { ~x / 4 + x / ~3 };
+
+  -- comparisons and not in a tree escape as Bool objects
+  compare(x : Int, y : Int) : String {
+    let b : Bool <- not (x < y) in (x <= y).type_name().concat(b.type_name())
+  };
+
+  main() : Object {
+    let a : Object <- show(poly(5, 7)),
+        b : Object <- show(calls(7)),
+        c : Object <- show(order(4)),
+        d : Object <- show(wide(9, 2)),
+        e : Object <- show(big(123)),
+        f : Object <- show(negdiv(17)),
+        g : Object <- out_string(compare(1, 2))
+    in
+      show(poly(three(), ~three()))
+  };
+};
@@ -0,0 +1,56 @@
+-- cgen flags: -O
+class And { };
+
+-- never instantiated, but its methods run in the classes below
+class Shape {
+  area() : Int { 0 };
+  name() : String { type_name() };
+  unused() : Int { 99 };
+};
+class Square inherits Shape {
+  side() : Int { 4 };
+  area() : Int { side() * side() };
+};
+-- reached only by new SELF_TYPE in an inherited method
+class Big inherits Square {
+  side() : Int { 10 };
+  again() : Shape { new SELF_TYPE };
+};
+class Circle inherits Shape { area() : Int { 3 }; };
+
+-- no object of these is made, and nothing calls their methods
+class Unused {
+  f() : Int { (new Square).area() };
+};
+class AlsoUnused inherits Square { area() : Int { 1 }; };
+
+class Main inherits IO {
+  show(i : Int) : Object {
+    let p : Object <- out_int(i) in out_string((new And).type_name())
+  };
+
+  never() : Object { (new Unused).f() };
+
+  -- a case branch on a class that is never instantiated
+  kind(s : Shape) : Int {
+    case s of
+      u : AlsoUnused => 1;
+      q : Square => 2;
+      c : Circle => 3;
+      o : Object => 4;
+    esac
+  };
+
+  measure(s : Shape) : Object {
+    let a : Object <- show(s.area()), b : Object <- show(kind(s)) in
+      out_string(s.name())
+  };
+
+  main() : Object {
+    let a : Object <- measure(new Square),
+        b : Object <- measure(new Circle),
+        c : Object <- measure(new Big)
+    in
+      measure((new Big).again())
+  };
+};
@@ -0,0 +1,169 @@
+# The instructions of the simulator, without the runtime.
+# spim flags: -trap_file /dev/null
+#> 7 -3 10 -2 1 -1
+#> 1 0 1 1 0 1
+#> -16 268435455 -1 12 6
+#> -128 128 -2 65534 305419896
+#> -6 4294967290 6 1
+#> 42 12 after
+#> 15 25
+#> end
+
+	.data
+word:	.word	0x12345678
+bytes:	.byte	0x80, 0x7f
+	.align	1
+half:	.half	0xfffe
+sp:	.asciiz	" "
+nl:	.asciiz	"\n"
+after:	.asciiz	"after"
+end:	.asciiz	"end\n"
+
+	.text
+	.globl	__start
+__start:
+	li	$s0 4			# arithmetic
+	li	$s1 3
+	add	$a0 $s0 $s1
+	jal	int
+	sub	$a0 $s1 $s0
+	addi	$a0 $a0 -2
+	jal	int
+	li	$a0 -7
+	li	$t0 3
+	mul	$a0 $t0 $a0
+	neg	$a0 $a0
+	addiu	$a0 $a0 -11
+	jal	int
+	li	$t0 -7
+	div	$a0 $t0 3
+	jal	int
+	rem	$a0 $s0 $s1
+	jal	int
+	rem	$a0 $t0 3
+	jal	intnl
+
+	slt	$a0 $s1 $s0		# comparisons
+	jal	int
+	sltu	$a0 $t0 $s0
+	jal	int
+	sgt	$a0 $s0 $s1
+	jal	int
+	seq	$a0 $s0 4
+	jal	int
+	sne	$a0 $s0 4
+	jal	int
+	sle	$a0 $s1 $s1
+	jal	intnl
+
+	li	$t0 -2			# shifts and logic
+	sll	$a0 $t0 3
+	jal	int
+	srl	$a0 $t0 4
+	jal	int
+	sra	$a0 $t0 4
+	jal	int
+	andi	$a0 $s0 12
+	or	$a0 $a0 $s0
+	xor	$a0 $a0 0
+	addiu	$a0 $a0 8
+	jal	int
+	nor	$a0 $zero $zero
+	not	$a0 $a0
+	addiu	$a0 $a0 6
+	jal	intnl
+
+	la	$t0 bytes		# loads
+	lb	$a0 0($t0)
+	jal	int
+	lbu	$a0 0($t0)
+	jal	int
+	lh	$a0 half
+	jal	int
+	lhu	$a0 half
+	jal	int
+	lw	$a0 word
+	jal	intnl
+
+	li	$t0 -2			# the halves of a product
+	li	$t1 3
+	mult	$t0 $t1
+	mflo	$a0
+	jal	int
+	multu	$t0 $t1		# 0xfffffffe * 3 = 0x2fffffffa
+	mfhi	$s2
+	mflo	$a0
+	bgeu	$a0 $zero unsigned	# always taken
+	li	$a0 0
+unsigned:
+	jal	uint
+	addiu	$a0 $s2 4
+	jal	int
+	li	$t3 7
+	divu	$t3 $t1
+	mfhi	$a0
+	jal	intnl
+
+	la	$t0 word		# stores
+	li	$t1 42
+	sw	$t1 0($t0)
+	lw	$a0 0($t0)
+	jal	int
+	sb	$t1 0($t0)		# little endian: the low byte
+	lbu	$a0 0($t0)
+	addiu	$a0 $a0 -30
+	jal	int
+	la	$a0 after
+	li	$v0 4
+	syscall
+	jal	nl_
+
+	li	$a0 0			# loops and calls
+	li	$t0 1
+loop:	addu	$a0 $a0 $t0
+	addiu	$t0 $t0 1
+	ble	$t0 5 loop
+	jal	int
+	la	$t0 square
+	li	$a0 5
+	jalr	$t0
+	jal	intnl
+
+	la	$a0 end
+	li	$v0 4
+	syscall
+	li	$v0 10
+	syscall
+
+square:	mul	$a0 $a0 $a0
+	jr	$ra
+
+# print $a0 and a space, or a newline
+int:	li	$v0 1
+	syscall
+	la	$a0 sp
+	li	$v0 4
+	syscall
+	jr	$ra
+intnl:	li	$v0 1
+	syscall
+nl_:	la	$a0 nl
+	li	$v0 4
+	syscall
+	jr	$ra
+
+# print $a0 as an unsigned number: $a0 / 10, then the last digit
+uint:	li	$t4 10
+	divu	$a0 $t4
+	mflo	$t5
+	mfhi	$t6
+	move	$a0 $t5
+	li	$v0 1
+	syscall
+	move	$a0 $t6
+	li	$v0 1
+	syscall
+	la	$a0 sp
+	li	$v0 4
+	syscall
+	jr	$ra
@@ -0,0 +1,23 @@
+# An exception with no handler stops the simulator with exit code 1.
+# spim flags: -trap_file /dev/null
+#> before
+#> Exception 4 at 0x400010 and no handler
+#rc 1
+
+	.data
+before:	.asciiz	"before\n"
+after:	.asciiz	"after\n"
+
+	.text
+	.globl	__start
+__start:
+	la	$a0 before
+	li	$v0 4
+	syscall
+	li	$t0 1
+	lw	$t1 0($t0)		# unaligned load
+	la	$a0 after
+	li	$v0 4
+	syscall
+	li	$v0 10
+	syscall
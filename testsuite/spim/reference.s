@@ -0,0 +1,737 @@
+# A program file from the reference coolc (coolc -g -t reference.cl),
+# which has none of the tables this coolc adds: heap_start is 0, so the
+# runtime keeps its own configuration, and GenGC walks the stack without
+# stack maps.  The program ends dividing by 0, which the trap handler of
+# the runtime reports.
+#
+# class Cell {
+#   value : Int;
+#   next : Cell;
+#   init(v : Int, n : Cell) : Cell { { value <- v; next <- n; self; } };
+#   sum() : Int { if isvoid next then value else value + next.sum() fi };
+# };
+#
+# class Main inherits IO {
+#   build(n : Int, l : Cell) : Cell {
+#     if n = 0 then l else build(n - 1, (new Cell).init(n, l)) fi
+#   };
+#
+#   main() : Object { {
+#     out_string("reference coolc\n");
+#     out_int(build(10, new Cell).sum());
+#     out_string("\n");
+#     out_string("abc".concat("def").substr(2, 3));
+#     out_string("\n");
+#     out_int(1 / 0);
+#   } };
+# };
+#
+#> GenGC initialized in test mode.
+#> reference coolc
+#> 55
+#> cde
+#>   Exception 9  [Breakpoint/Division by 0]  Execution aborted
+
+	.data
+	.align	2
+	.globl	class_nameTab
+	.globl	Main_protObj
+	.globl	Int_protObj
+	.globl	String_protObj
+	.globl	bool_const0
+	.globl	bool_const1
+	.globl	_int_tag
+	.globl	_bool_tag
+	.globl	_string_tag
+_int_tag:
+	.word	3
+_bool_tag:
+	.word	4
+_string_tag:
+	.word	5
+	.globl	_MemMgr_INITIALIZER
+_MemMgr_INITIALIZER:
+	.word	_GenGC_Init
+	.globl	_MemMgr_COLLECTOR
+_MemMgr_COLLECTOR:
+	.word	_GenGC_Collect
+	.globl	_MemMgr_TEST
+_MemMgr_TEST:
+	.word	1
+	.word	-1
+str_const13:
+	.word	5
+	.word	5
+	.word	String_dispTab
+	.word	int_const0
+	.byte	0	
+	.align	2
+	.word	-1
+str_const12:
+	.word	5
+	.word	6
+	.word	String_dispTab
+	.word	int_const5
+	.ascii	"Cell"
+	.byte	0	
+	.align	2
+	.word	-1
+str_const11:
+	.word	5
+	.word	6
+	.word	String_dispTab
+	.word	int_const6
+	.ascii	"String"
+	.byte	0	
+	.align	2
+	.word	-1
+str_const10:
+	.word	5
+	.word	6
+	.word	String_dispTab
+	.word	int_const5
+	.ascii	"Bool"
+	.byte	0	
+	.align	2
+	.word	-1
+str_const9:
+	.word	5
+	.word	5
+	.word	String_dispTab
+	.word	int_const4
+	.ascii	"Int"
+	.byte	0	
+	.align	2
+	.word	-1
+str_const8:
+	.word	5
+	.word	6
+	.word	String_dispTab
+	.word	int_const5
+	.ascii	"Main"
+	.byte	0	
+	.align	2
+	.word	-1
+str_const7:
+	.word	5
+	.word	5
+	.word	String_dispTab
+	.word	int_const3
+	.ascii	"IO"
+	.byte	0	
+	.align	2
+	.word	-1
+str_const6:
+	.word	5
+	.word	6
+	.word	String_dispTab
+	.word	int_const6
+	.ascii	"Object"
+	.byte	0	
+	.align	2
+	.word	-1
+str_const5:
+	.word	5
+	.word	8
+	.word	String_dispTab
+	.word	int_const7
+	.ascii	"<basic class>"
+	.byte	0	
+	.align	2
+	.word	-1
+str_const4:
+	.word	5
+	.word	5
+	.word	String_dispTab
+	.word	int_const4
+	.ascii	"def"
+	.byte	0	
+	.align	2
+	.word	-1
+str_const3:
+	.word	5
+	.word	5
+	.word	String_dispTab
+	.word	int_const4
+	.ascii	"abc"
+	.byte	0	
+	.align	2
+	.word	-1
+str_const2:
+	.word	5
+	.word	5
+	.word	String_dispTab
+	.word	int_const1
+	.ascii	"\n"
+	.byte	0	
+	.align	2
+	.word	-1
+str_const1:
+	.word	5
+	.word	9
+	.word	String_dispTab
+	.word	int_const8
+	.ascii	"reference coolc\n"
+	.byte	0	
+	.align	2
+	.word	-1
+str_const0:
+	.word	5
+	.word	8
+	.word	String_dispTab
+	.word	int_const9
+	.ascii	"reference.cl"
+	.byte	0	
+	.align	2
+	.word	-1
+int_const9:
+	.word	3
+	.word	4
+	.word	Int_dispTab
+	.word	12
+	.word	-1
+int_const8:
+	.word	3
+	.word	4
+	.word	Int_dispTab
+	.word	16
+	.word	-1
+int_const7:
+	.word	3
+	.word	4
+	.word	Int_dispTab
+	.word	13
+	.word	-1
+int_const6:
+	.word	3
+	.word	4
+	.word	Int_dispTab
+	.word	6
+	.word	-1
+int_const5:
+	.word	3
+	.word	4
+	.word	Int_dispTab
+	.word	4
+	.word	-1
+int_const4:
+	.word	3
+	.word	4
+	.word	Int_dispTab
+	.word	3
+	.word	-1
+int_const3:
+	.word	3
+	.word	4
+	.word	Int_dispTab
+	.word	2
+	.word	-1
+int_const2:
+	.word	3
+	.word	4
+	.word	Int_dispTab
+	.word	10
+	.word	-1
+int_const1:
+	.word	3
+	.word	4
+	.word	Int_dispTab
+	.word	1
+	.word	-1
+int_const0:
+	.word	3
+	.word	4
+	.word	Int_dispTab
+	.word	0
+	.word	-1
+bool_const0:
+	.word	4
+	.word	4
+	.word	Bool_dispTab
+	.word	0
+	.word	-1
+bool_const1:
+	.word	4
+	.word	4
+	.word	Bool_dispTab
+	.word	1
+class_nameTab:
+	.word	str_const6
+	.word	str_const7
+	.word	str_const8
+	.word	str_const9
+	.word	str_const10
+	.word	str_const11
+	.word	str_const12
+class_objTab:
+	.word	Object_protObj
+	.word	Object_init
+	.word	IO_protObj
+	.word	IO_init
+	.word	Main_protObj
+	.word	Main_init
+	.word	Int_protObj
+	.word	Int_init
+	.word	Bool_protObj
+	.word	Bool_init
+	.word	String_protObj
+	.word	String_init
+	.word	Cell_protObj
+	.word	Cell_init
+Object_dispTab:
+	.word	Object.abort
+	.word	Object.type_name
+	.word	Object.copy
+Cell_dispTab:
+	.word	Object.abort
+	.word	Object.type_name
+	.word	Object.copy
+	.word	Cell.init
+	.word	Cell.sum
+String_dispTab:
+	.word	Object.abort
+	.word	Object.type_name
+	.word	Object.copy
+	.word	String.length
+	.word	String.concat
+	.word	String.substr
+Bool_dispTab:
+	.word	Object.abort
+	.word	Object.type_name
+	.word	Object.copy
+Int_dispTab:
+	.word	Object.abort
+	.word	Object.type_name
+	.word	Object.copy
+IO_dispTab:
+	.word	Object.abort
+	.word	Object.type_name
+	.word	Object.copy
+	.word	IO.out_string
+	.word	IO.out_int
+	.word	IO.in_string
+	.word	IO.in_int
+Main_dispTab:
+	.word	Object.abort
+	.word	Object.type_name
+	.word	Object.copy
+	.word	IO.out_string
+	.word	IO.out_int
+	.word	IO.in_string
+	.word	IO.in_int
+	.word	Main.build
+	.word	Main.main
+	.word	-1
+Object_protObj:
+	.word	0
+	.word	3
+	.word	Object_dispTab
+	.word	-1
+Cell_protObj:
+	.word	6
+	.word	5
+	.word	Cell_dispTab
+	.word	int_const0
+	.word	0
+	.word	-1
+String_protObj:
+	.word	5
+	.word	5
+	.word	String_dispTab
+	.word	int_const0
+	.word	0
+	.word	-1
+Bool_protObj:
+	.word	4
+	.word	4
+	.word	Bool_dispTab
+	.word	0
+	.word	-1
+Int_protObj:
+	.word	3
+	.word	4
+	.word	Int_dispTab
+	.word	0
+	.word	-1
+IO_protObj:
+	.word	1
+	.word	3
+	.word	IO_dispTab
+	.word	-1
+Main_protObj:
+	.word	2
+	.word	3
+	.word	Main_dispTab
+	.globl	heap_start
+heap_start:
+	.word	0
+	.text
+	.globl	Main_init
+	.globl	Int_init
+	.globl	String_init
+	.globl	Bool_init
+	.globl	Main.main
+Object_init:
+	addiu	$sp $sp -12
+	sw	$fp 12($sp)
+	sw	$s0 8($sp)
+	sw	$ra 4($sp)
+	addiu	$fp $sp 4
+	move	$s0 $a0
+	move	$a0 $s0
+	lw	$fp 12($sp)
+	lw	$s0 8($sp)
+	lw	$ra 4($sp)
+	addiu	$sp $sp 12
+	jr	$ra	
+Cell_init:
+	addiu	$sp $sp -12
+	sw	$fp 12($sp)
+	sw	$s0 8($sp)
+	sw	$ra 4($sp)
+	addiu	$fp $sp 4
+	move	$s0 $a0
+	jal	Object_init
+	move	$a0 $s0
+	lw	$fp 12($sp)
+	lw	$s0 8($sp)
+	lw	$ra 4($sp)
+	addiu	$sp $sp 12
+	jr	$ra	
+String_init:
+	addiu	$sp $sp -12
+	sw	$fp 12($sp)
+	sw	$s0 8($sp)
+	sw	$ra 4($sp)
+	addiu	$fp $sp 4
+	move	$s0 $a0
+	jal	Object_init
+	move	$a0 $s0
+	lw	$fp 12($sp)
+	lw	$s0 8($sp)
+	lw	$ra 4($sp)
+	addiu	$sp $sp 12
+	jr	$ra	
+Bool_init:
+	addiu	$sp $sp -12
+	sw	$fp 12($sp)
+	sw	$s0 8($sp)
+	sw	$ra 4($sp)
+	addiu	$fp $sp 4
+	move	$s0 $a0
+	jal	Object_init
+	move	$a0 $s0
+	lw	$fp 12($sp)
+	lw	$s0 8($sp)
+	lw	$ra 4($sp)
+	addiu	$sp $sp 12
+	jr	$ra	
+Int_init:
+	addiu	$sp $sp -12
+	sw	$fp 12($sp)
+	sw	$s0 8($sp)
+	sw	$ra 4($sp)
+	addiu	$fp $sp 4
+	move	$s0 $a0
+	jal	Object_init
+	move	$a0 $s0
+	lw	$fp 12($sp)
+	lw	$s0 8($sp)
+	lw	$ra 4($sp)
+	addiu	$sp $sp 12
+	jr	$ra	
+IO_init:
+	addiu	$sp $sp -12
+	sw	$fp 12($sp)
+	sw	$s0 8($sp)
+	sw	$ra 4($sp)
+	addiu	$fp $sp 4
+	move	$s0 $a0
+	jal	Object_init
+	move	$a0 $s0
+	lw	$fp 12($sp)
+	lw	$s0 8($sp)
+	lw	$ra 4($sp)
+	addiu	$sp $sp 12
+	jr	$ra	
+Main_init:
+	addiu	$sp $sp -12
+	sw	$fp 12($sp)
+	sw	$s0 8($sp)
+	sw	$ra 4($sp)
+	addiu	$fp $sp 4
+	move	$s0 $a0
+	jal	IO_init
+	move	$a0 $s0
+	lw	$fp 12($sp)
+	lw	$s0 8($sp)
+	lw	$ra 4($sp)
+	addiu	$sp $sp 12
+	jr	$ra	
+Cell.init:
+	addiu	$sp $sp -12
+	sw	$fp 12($sp)
+	sw	$s0 8($sp)
+	sw	$ra 4($sp)
+	addiu	$fp $sp 4
+	move	$s0 $a0
+	lw	$a0 16($fp)
+	sw	$a0 12($s0)
+	addiu	$a1 $s0 12
+	jal	_GenGC_Assign
+	lw	$a0 12($fp)
+	sw	$a0 16($s0)
+	addiu	$a1 $s0 16
+	jal	_GenGC_Assign
+	move	$a0 $s0
+	lw	$fp 12($sp)
+	lw	$s0 8($sp)
+	lw	$ra 4($sp)
+	addiu	$sp $sp 20
+	jr	$ra	
+Cell.sum:
+	addiu	$sp $sp -16
+	sw	$fp 16($sp)
+	sw	$s0 12($sp)
+	sw	$ra 8($sp)
+	addiu	$fp $sp 4
+	move	$s0 $a0
+	sw	$zero 4($sp)
+	lw	$a0 16($s0)
+	move	$t1 $a0
+	la	$a0 bool_const1
+	beqz	$t1 label2
+	la	$a0 bool_const0
+label2:
+	lw	$t1 12($a0)
+	beqz	$t1 label0
+	lw	$a0 12($s0)
+	b	label1
+label0:
+	lw	$s1 12($s0)
+	lw	$a0 16($s0)
+	sw	$s1 0($fp)
+	bne	$a0 $zero label3
+	la	$a0 str_const0
+	li	$t1 1
+	jal	_dispatch_abort
+label3:
+	lw	$t1 8($a0)
+	lw	$t1 16($t1)
+	jalr		$t1
+	lw	$s1 0($fp)
+	jal	Object.copy
+	lw	$t2 12($a0)
+	lw	$t1 12($s1)
+	add	$t1 $t1 $t2
+	sw	$t1 12($a0)
+label1:
+	lw	$fp 16($sp)
+	lw	$s0 12($sp)
+	lw	$ra 8($sp)
+	addiu	$sp $sp 16
+	jr	$ra	
+Main.build:
+	addiu	$sp $sp -16
+	sw	$fp 16($sp)
+	sw	$s0 12($sp)
+	sw	$ra 8($sp)
+	addiu	$fp $sp 4
+	move	$s0 $a0
+	sw	$zero 4($sp)
+	lw	$s1 20($fp)
+	la	$t2 int_const0
+	move	$t1 $s1
+	la	$a0 bool_const1
+	beq	$t1 $t2 label6
+	la	$a1 bool_const0
+	jal	equality_test
+label6:
+	lw	$t1 12($a0)
+	beqz	$t1 label4
+	lw	$a0 16($fp)
+	b	label5
+label4:
+	lw	$s1 20($fp)
+	la	$a0 int_const1
+	jal	Object.copy
+	lw	$t2 12($a0)
+	lw	$t1 12($s1)
+	sub	$t1 $t1 $t2
+	sw	$t1 12($a0)
+	sw	$a0 0($sp)
+	addiu	$sp $sp -4
+	lw	$a0 20($fp)
+	sw	$a0 0($sp)
+	addiu	$sp $sp -4
+	lw	$a0 16($fp)
+	sw	$a0 0($sp)
+	addiu	$sp $sp -4
+	la	$a0 Cell_protObj
+	jal	Object.copy
+	jal	Cell_init
+	bne	$a0 $zero label7
+	la	$a0 str_const0
+	li	$t1 1
+	jal	_dispatch_abort
+label7:
+	lw	$t1 8($a0)
+	lw	$t1 12($t1)
+	jalr		$t1
+	sw	$a0 0($sp)
+	addiu	$sp $sp -4
+	move	$a0 $s0
+	bne	$a0 $zero label8
+	la	$a0 str_const0
+	li	$t1 1
+	jal	_dispatch_abort
+label8:
+	lw	$t1 8($a0)
+	lw	$t1 28($t1)
+	jalr		$t1
+label5:
+	lw	$fp 16($sp)
+	lw	$s0 12($sp)
+	lw	$ra 8($sp)
+	addiu	$sp $sp 24
+	jr	$ra	
+Main.main:
+	addiu	$sp $sp -16
+	sw	$fp 16($sp)
+	sw	$s0 12($sp)
+	sw	$ra 8($sp)
+	addiu	$fp $sp 4
+	move	$s0 $a0
+	sw	$zero 4($sp)
+	la	$a0 str_const1
+	sw	$a0 0($sp)
+	addiu	$sp $sp -4
+	move	$a0 $s0
+	bne	$a0 $zero label9
+	la	$a0 str_const0
+	li	$t1 1
+	jal	_dispatch_abort
+label9:
+	lw	$t1 8($a0)
+	lw	$t1 12($t1)
+	jalr		$t1
+	la	$a0 int_const2
+	sw	$a0 0($sp)
+	addiu	$sp $sp -4
+	la	$a0 Cell_protObj
+	jal	Object.copy
+	jal	Cell_init
+	sw	$a0 0($sp)
+	addiu	$sp $sp -4
+	move	$a0 $s0
+	bne	$a0 $zero label10
+	la	$a0 str_const0
+	li	$t1 1
+	jal	_dispatch_abort
+label10:
+	lw	$t1 8($a0)
+	lw	$t1 28($t1)
+	jalr		$t1
+	bne	$a0 $zero label11
+	la	$a0 str_const0
+	li	$t1 1
+	jal	_dispatch_abort
+label11:
+	lw	$t1 8($a0)
+	lw	$t1 16($t1)
+	jalr		$t1
+	sw	$a0 0($sp)
+	addiu	$sp $sp -4
+	move	$a0 $s0
+	bne	$a0 $zero label12
+	la	$a0 str_const0
+	li	$t1 1
+	jal	_dispatch_abort
+label12:
+	lw	$t1 8($a0)
+	lw	$t1 16($t1)
+	jalr		$t1
+	la	$a0 str_const2
+	sw	$a0 0($sp)
+	addiu	$sp $sp -4
+	move	$a0 $s0
+	bne	$a0 $zero label13
+	la	$a0 str_const0
+	li	$t1 1
+	jal	_dispatch_abort
+label13:
+	lw	$t1 8($a0)
+	lw	$t1 12($t1)
+	jalr		$t1
+	la	$a0 int_const3
+	sw	$a0 0($sp)
+	addiu	$sp $sp -4
+	la	$a0 int_const4
+	sw	$a0 0($sp)
+	addiu	$sp $sp -4
+	la	$a0 str_const4
+	sw	$a0 0($sp)
+	addiu	$sp $sp -4
+	la	$a0 str_const3
+	bne	$a0 $zero label14
+	la	$a0 str_const0
+	li	$t1 1
+	jal	_dispatch_abort
+label14:
+	lw	$t1 8($a0)
+	lw	$t1 16($t1)
+	jalr		$t1
+	bne	$a0 $zero label15
+	la	$a0 str_const0
+	li	$t1 1
+	jal	_dispatch_abort
+label15:
+	lw	$t1 8($a0)
+	lw	$t1 20($t1)
+	jalr		$t1
+	sw	$a0 0($sp)
+	addiu	$sp $sp -4
+	move	$a0 $s0
+	bne	$a0 $zero label16
+	la	$a0 str_const0
+	li	$t1 1
+	jal	_dispatch_abort
+label16:
+	lw	$t1 8($a0)
+	lw	$t1 12($t1)
+	jalr		$t1
+	la	$a0 str_const2
+	sw	$a0 0($sp)
+	addiu	$sp $sp -4
+	move	$a0 $s0
+	bne	$a0 $zero label17
+	la	$a0 str_const0
+	li	$t1 1
+	jal	_dispatch_abort
+label17:
+	lw	$t1 8($a0)
+	lw	$t1 12($t1)
+	jalr		$t1
+	la	$s1 int_const1
+	la	$a0 int_const0
+	jal	Object.copy
+	lw	$t2 12($a0)
+	lw	$t1 12($s1)
+	div	$t1 $t1 $t2
+	sw	$t1 12($a0)
+	sw	$a0 0($sp)
+	addiu	$sp $sp -4
+	move	$a0 $s0
+	bne	$a0 $zero label18
+	la	$a0 str_const0
+	li	$t1 1
+	jal	_dispatch_abort
+label18:
+	lw	$t1 8($a0)
+	lw	$t1 16($t1)
+	jalr		$t1
+	lw	$fp 16($sp)
+	lw	$s0 12($sp)
+	lw	$ra 8($sp)
+	addiu	$sp $sp 16
+	jr	$ra	
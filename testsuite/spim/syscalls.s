@@ -0,0 +1,99 @@
+# The system calls of the simulator, without the runtime.
+# spim flags: -trap_file /dev/null
+#< 123
+#< -45
+#< hello, world
+#< xy
+#> 78
+#> [hello]
+#> [, world
+#> ]
+#> x!
+#> 64 1
+#> exiting
+#rc 3
+
+	.data
+buf:	.space	16
+open:	.asciiz	"["
+close:	.asciiz	"]\n"
+exit:	.asciiz	"exiting\n"
+
+	.text
+	.globl	__start
+__start:
+	li	$v0 5			# read_int, twice
+	syscall
+	move	$s0 $v0
+	li	$v0 5
+	syscall
+	addu	$a0 $s0 $v0
+	li	$v0 1			# print_int
+	syscall
+	li	$a0 10
+	li	$v0 11			# print_char
+	syscall
+
+	li	$s1 2			# read_string of at most 5
+	li	$s2 6			#   characters, then of the
+read:	la	$a0 open		#   rest of the line with
+	li	$v0 4			#   its newline
+	syscall
+	la	$a0 buf
+	move	$a1 $s2
+	li	$s2 16
+	li	$v0 8
+	syscall
+	la	$a0 buf
+	li	$v0 4
+	syscall
+	la	$a0 close
+	li	$v0 4
+	syscall
+	addiu	$s1 $s1 -1
+	bgtz	$s1 read
+
+	li	$v0 12			# read_char
+	syscall
+	move	$a0 $v0
+	li	$v0 11
+	syscall
+	li	$a0 33			# '!'
+	li	$v0 11
+	syscall
+	li	$a0 10
+	li	$v0 11
+	syscall
+
+	li	$a0 64			# sbrk: the break moves up
+	li	$v0 9			#   by the bytes asked for
+	syscall
+	move	$s0 $v0
+	li	$a0 0
+	li	$v0 9
+	syscall
+	subu	$a0 $v0 $s0
+	li	$v0 1
+	syscall
+	li	$a0 32			# ' '
+	li	$v0 11
+	syscall
+	li	$t0 7			# the new memory can be used
+	sw	$t0 60($s0)
+	lw	$t1 60($s0)
+	seq	$a0 $t1 7
+	li	$v0 1
+	syscall
+	li	$a0 10
+	li	$v0 11
+	syscall
+
+	la	$a0 exit
+	li	$v0 4
+	syscall
+	li	$a0 3			# exit2
+	li	$v0 17
+	syscall
+	li	$a0 99			# not reached
+	li	$v0 1
+	syscall
@@ -0,0 +1,88 @@
+# The exceptions of the simulator, caught by a handler of the program:
+# each prints the exception code and whether EPC is the instruction
+# that raised it, then goes on with the next instruction.
+# spim flags: -trap_file /dev/null
+#> 4 1
+#> 5 1
+#> 7 1
+#> 9 1
+#> 9 1
+#> 12 1
+#> 12 1
+#> 8 1
+#> -2147483648 0
+#> done
+
+	.kdata
+saved:	.word	0, 0
+
+	.ktext	0x80000080
+	sw	$v0 saved
+	sw	$a0 saved+4
+	mfc0	$k0 $13			# Cause
+	srl	$a0 $k0 2
+	li	$v0 1
+	syscall
+	li	$a0 32
+	li	$v0 11
+	syscall
+	mfc0	$k0 $14			# EPC
+	seq	$a0 $k0 $s0
+	li	$v0 1
+	syscall
+	li	$a0 10
+	li	$v0 11
+	syscall
+	lw	$v0 saved
+	lw	$a0 saved+4
+	rfe
+	addiu	$k0 $k0 4
+	jr	$k0
+
+	.data
+word:	.word	0
+done:	.asciiz	"done\n"
+
+	.text
+	.globl	__start
+__start:
+	la	$t0 word
+	la	$s0 t1			# $s0 is the instruction that traps
+t1:	lw	$t1 1($t0)		# unaligned load
+	la	$s0 t2
+t2:	sw	$t1 2($t0)		# unaligned store
+	la	$s0 t3
+t3:	lw	$t1 0($zero)		# no memory there
+	li	$t2 0
+	la	$s0 t4
+t4:	div	$t1 $t0 $t2		# division by 0
+	la	$s0 t5
+t5:	break	0
+	li	$t1 0x7fffffff
+	la	$s0 t6
+t6:	add	$t1 $t1 1		# overflow
+	li	$t1 0x80000000
+	la	$s0 t7
+t7:	sub	$t1 $t1 1
+	li	$v0 99
+	la	$s0 t8
+t8:	syscall				# no such system call
+	li	$t1 0x80000000
+	addu	$a0 $t1 0		# no overflow without a trap
+	addiu	$a0 $a0 0
+	li	$v0 1
+	syscall
+	li	$a0 32
+	li	$v0 11
+	syscall
+	addi	$a0 $zero 0		# addi traps, but not here
+	li	$v0 1
+	syscall
+	li	$a0 10
+	li	$v0 11
+	syscall
+	la	$a0 done
+	li	$v0 4
+	syscall
+	li	$v0 10
+	syscall